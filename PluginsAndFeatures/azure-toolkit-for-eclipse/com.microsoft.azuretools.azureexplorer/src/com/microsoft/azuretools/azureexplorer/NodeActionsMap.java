@@ -38,10 +38,12 @@ import com.microsoft.azuretools.azureexplorer.actions.docker.CreateNewDockerHost
 import com.microsoft.azuretools.azureexplorer.actions.docker.DeleteDockerHostAction;
 import com.microsoft.azuretools.azureexplorer.actions.docker.DeployDockerContainerAction;
 import com.microsoft.azuretools.azureexplorer.actions.docker.PublishDockerContainerAction;
+import com.microsoft.azuretools.azureexplorer.actions.docker.ViewDockerContainerLogsAction;
 import com.microsoft.azuretools.azureexplorer.actions.docker.ViewDockerHostAction;
 import com.microsoft.azuretools.azureexplorer.actions.RemoteDebugAction;
 import com.microsoft.tooling.msservices.serviceexplorer.Node;
 import com.microsoft.tooling.msservices.serviceexplorer.NodeActionListener;
+import com.microsoft.tooling.msservices.serviceexplorer.azure.docker.DockerContainerNode;
 import com.microsoft.tooling.msservices.serviceexplorer.azure.docker.DockerHostModule;
 import com.microsoft.tooling.msservices.serviceexplorer.azure.docker.DockerHostNode;
 //import com.microsoft.tooling.msservices.serviceexplorer.azure.rediscache.RedisCacheModule;
@@ -65,5 +67,6 @@ public class NodeActionsMap {
         node2Actions.put(HDInsightRootModuleImpl.class, new ImmutableList.Builder().add(AddNewClusterAction.class,AddNewEmulatorAction.class).build());
         node2Actions.put(DockerHostNode.class, new ImmutableList.Builder().add(DeployDockerContainerAction.class, ViewDockerHostAction.class, DeleteDockerHostAction.class).build());
         node2Actions.put(DockerHostModule.class, new ImmutableList.Builder().add(CreateNewDockerHostAction.class, PublishDockerContainerAction.class).build());
+        node2Actions.put(DockerContainerNode.class, new ImmutableList.Builder().add(ViewDockerContainerLogsAction.class).build());
     }
 }
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * 
+ * All rights reserved. 
+ * 
+ * MIT License
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+ * (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ * ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.microsoft.azuretools.azureexplorer.actions.docker;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.console.ConsolePlugin;
+import org.eclipse.ui.console.MessageConsole;
+import org.eclipse.ui.console.MessageConsoleStream;
+
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.DockerContainer;
+import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.ops.AzureDockerContainerOps;
+import com.microsoft.azure.docker.ops.SshSessionPool;
+import com.microsoft.azuretools.core.Activator;
+import com.microsoft.tooling.msservices.helpers.Name;
+import com.microsoft.tooling.msservices.serviceexplorer.NodeActionEvent;
+import com.microsoft.tooling.msservices.serviceexplorer.NodeActionListener;
+import com.microsoft.tooling.msservices.serviceexplorer.azure.docker.DockerContainerNode;
+
+/**
+ * Follows the container's log in a console until the job is cancelled from the Progress view.
+ * The log is followed over its own SSH session, so it does not hold one of the pooled session's channels.
+ */
+@Name("View Logs")
+public class ViewDockerContainerLogsAction extends NodeActionListener {
+	private static final Logger log = Logger.getLogger(ViewDockerContainerLogsAction.class.getName());
+	DockerHost dockerHost;
+	DockerContainer dockerContainer;
+
+	public ViewDockerContainerLogsAction(DockerContainerNode dockerContainerNode) {
+		this.dockerHost = dockerContainerNode.getDockerHost();
+		this.dockerContainer = dockerContainerNode.getDockerContainer();
+	}
+
+	@Override
+	public void actionPerformed(NodeActionEvent e) {
+		String title = String.format("%s (%s)", dockerContainer.name, dockerHost.name);
+		MessageConsole console = Activator.findConsole("Docker Logs: " + title);
+		console.clearConsole();
+		ConsolePlugin.getDefault().getConsoleManager().showConsoleView(console);
+		final MessageConsoleStream out = console.newMessageStream();
+
+		final AtomicReference<Session> logsSession = new AtomicReference<>();
+		Job job = new Job("Following logs of " + title) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					logsSession.set(SshSessionPool.getInstance().openDedicatedSession(dockerHost));
+					if (monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+					AzureDockerContainerOps.getLogs(dockerContainer, logsSession.get(), true, new Consumer<String>() {
+						@Override
+						public void accept(String line) {
+							out.println(line);
+						}
+					});
+					out.println();
+					out.println("The container's log has ended.");
+				} catch (Exception ex) {
+					if (monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+					log.log(Level.WARNING, ex.getMessage(), ex);
+					out.println(ex.getMessage());
+				} finally {
+					disconnect(logsSession.getAndSet(null));
+				}
+				return Status.OK_STATUS;
+			}
+
+			@Override
+			protected void canceling() {
+				// interrupting the reader and dropping the session stop the remote command
+				Thread thread = getThread();
+				if (thread != null) {
+					thread.interrupt();
+				}
+				disconnect(logsSession.getAndSet(null));
+			}
+		};
+		job.schedule();
+	}
+
+	private static void disconnect(Session session) {
+		if (session != null) {
+			session.disconnect();
+		}
+	}
+}
@@ -39,6 +39,8 @@ import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IMenuListener;
 import org.eclipse.jface.action.IMenuManager;
 import org.eclipse.jface.action.MenuManager;
+import org.eclipse.jface.action.Separator;
+import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.viewers.DoubleClickEvent;
 import org.eclipse.jface.viewers.IDoubleClickListener;
 import org.eclipse.jface.viewers.ILabelProviderListener;
@@ -62,6 +64,7 @@ import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.layout.RowLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.Table;
@@ -86,11 +89,14 @@ import com.microsoft.tooling.msservices.model.storage.BlobContainer;
 import com.microsoft.tooling.msservices.model.storage.BlobDirectory;
 import com.microsoft.tooling.msservices.model.storage.BlobFile;
 import com.microsoft.tooling.msservices.model.storage.BlobItem;
+import com.microsoft.tooling.msservices.model.storage.BlobSyncResult;
 import com.microsoft.tooling.msservices.model.storage.ClientStorageAccount;
 
 import sun.misc.IOUtils;
 
 public class BlobExplorerFileEditor extends EditorPart {
+    private static final int MAX_SYNC_PREVIEW_PATHS = 50;
+
     private Text queryTextField;
     private Button queryButton;
     private Button refreshButton;
@@ -151,7 +157,26 @@ public class BlobExplorerFileEditor extends EditorPart {
         menuMgr.setRemoveAllWhenShown(true);
         menuMgr.addMenuListener(new IMenuListener() {
             public void menuAboutToShow(IMenuManager manager) {
-                if (tableViewer.getSelection().isEmpty() || getFileSelection() == null) {
+                if (tableViewer.getSelection().isEmpty()) {
+                    return;
+                }
+                final BlobDirectory folderSelection = getFolderSelection();
+                if (folderSelection != null) {
+                    manager.add(new Action("Upload Folder Into...") {
+                        @Override
+                        public void run() {
+                            syncFolder(folderSelection.getPath(), true);
+                        }
+                    });
+                    manager.add(new Action("Download Folder...") {
+                        @Override
+                        public void run() {
+                            syncFolder(folderSelection.getPath(), false);
+                        }
+                    });
+                    return;
+                }
+                if (getFileSelection() == null) {
                     return;
                 }
                 if (tableViewer.getSelection() instanceof IStructuredSelection) {
@@ -176,6 +201,15 @@ public class BlobExplorerFileEditor extends EditorPart {
                         }
                     };
                     manager.add(action);
+                    manager.add(new Separator());
+                    action = new Action("Upload Folder Here...") {
+                        @Override
+                        public void run() {
+                            BlobDirectory currentDirectory = directoryQueue.peekLast();
+                            syncFolder(currentDirectory == null ? "" : currentDirectory.getPath(), true);
+                        }
+                    };
+                    manager.add(action);
                 }
             }
         });
@@ -678,16 +712,11 @@ public class BlobExplorerFileEditor extends EditorPart {
 //                        }
 
                         try {
-                            directoryQueue.clear();
-                            directoryQueue.addLast(StorageClientSDKManager.getManager().getRootDirectory(connectionString, blobContainer));
+                            java.util.List<BlobDirectory> blobDirectories =
+                                    StorageClientSDKManager.getManager().getBlobDirectories(connectionString, blobContainer, path);
 
-                            for (String pathDir : path.split("/")) {
-                                for (BlobItem blobItem : StorageClientSDKManager.getManager().getBlobItems(connectionString, directoryQueue.getLast())) {
-                                    if (blobItem instanceof BlobDirectory && blobItem.getName().equals(pathDir)) {
-                                        directoryQueue.addLast((BlobDirectory) blobItem);
-                                    }
-                                }
-                            }
+                            directoryQueue.clear();
+                            directoryQueue.addAll(blobDirectories);
                         } catch (AzureCmdException e) {
                             DefaultLoader.getUIHelper().showException("Error showing new blob", e, "Error showing new blob", false, true);
                         }
@@ -727,6 +756,88 @@ public class BlobExplorerFileEditor extends EditorPart {
         job.schedule();
     }
 
+    /**
+     * Uploads a local folder into the blobs under <code>prefix</code>, or downloads them into a local folder,
+     * copying only the files that differ on the two sides. A preview lists those files without copying them.
+     */
+    private void syncFolder(final String prefix, final boolean upload) {
+        DirectoryDialog dialog = new DirectoryDialog(PluginUtil.getParentShell());
+        dialog.setText(upload ? "Select the folder to upload" : "Select the folder to download to");
+        String directory = dialog.open();
+        if (directory == null) {
+            return;
+        }
+        final File localDirectory = new File(directory);
+
+        MessageDialog optionDialog = new MessageDialog(PluginUtil.getParentShell(), "Synchronize Folder", null,
+                String.format("%s only the files that differ between %s and the blobs under /%s?", upload ? "Upload" : "Download", localDirectory, prefix),
+                MessageDialog.QUESTION, new String[] {upload ? "Upload" : "Download", "Preview Changes", "Cancel"}, 0);
+        int option = optionDialog.open();
+        if (option != 0 && option != 1) {
+            return;
+        }
+        final boolean dryRun = option == 1;
+        final String title = dryRun ? "Comparing folder..." : upload ? "Uploading folder..." : "Downloading folder...";
+
+        Job job = new Job(title) {
+            @Override
+            protected IStatus run(final IProgressMonitor monitor) {
+                monitor.beginTask(title, IProgressMonitor.UNKNOWN);
+                try {
+                    CallableSingleArg<Void, String> processFile = new CallableSingleArg<Void, String>() {
+                        @Override
+                        public Void call(String path) throws Exception {
+                            monitor.subTask(path);
+                            return null;
+                        }
+                    };
+
+                    final BlobSyncResult result = upload
+                            ? StorageClientSDKManager.getManager().uploadDirectory(connectionString, blobContainer, localDirectory, prefix, dryRun, processFile)
+                            : StorageClientSDKManager.getManager().downloadDirectory(connectionString, blobContainer, localDirectory, prefix, dryRun, processFile);
+
+                    DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (upload && !dryRun) {
+                                fillGrid();
+                            }
+                            if (dryRun) {
+                                StringBuilder preview = new StringBuilder(result.toString());
+                                java.util.List<String> transferred = result.getTransferred();
+                                for (String path : transferred.subList(0, Math.min(transferred.size(), MAX_SYNC_PREVIEW_PATHS))) {
+                                    preview.append("\n").append(path);
+                                }
+                                if (transferred.size() > MAX_SYNC_PREVIEW_PATHS) {
+                                    preview.append(String.format("\n... and %d more", transferred.size() - MAX_SYNC_PREVIEW_PATHS));
+                                }
+                                for (String path : result.getFailed().keySet()) {
+                                    preview.append("\n").append(path).append(": ").append(result.getFailed().get(path).getMessage());
+                                }
+                                MessageDialog.openInformation(PluginUtil.getParentShell(), "Folder Synchronization Preview", preview.toString());
+                            } else if (result.getFailed().isEmpty()) {
+                                MessageDialog.openInformation(PluginUtil.getParentShell(), "Folder Synchronized", result.toString());
+                            } else {
+                                StringBuilder failed = new StringBuilder(result.toString());
+                                for (String path : result.getFailed().keySet()) {
+                                    failed.append("\n").append(path);
+                                }
+                                MessageDialog.openWarning(PluginUtil.getParentShell(), "Folder Synchronized With Errors", failed.toString());
+                            }
+                        }
+                    });
+                } catch (AzureCmdException e) {
+                    DefaultLoader.getUIHelper().showException("Error synchronizing the folder", e, "Error synchronizing the folder", false, true);
+                    return Status.CANCEL_STATUS;
+                } finally {
+                    monitor.done();
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.schedule();
+    }
+
     @Override
     public void setFocus() {
     }
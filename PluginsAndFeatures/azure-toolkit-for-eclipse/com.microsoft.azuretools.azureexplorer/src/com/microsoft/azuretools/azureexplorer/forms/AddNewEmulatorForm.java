@@ -218,10 +218,10 @@ public class AddNewEmulatorForm extends TitleAreaDialog {
 	}
 
 	private boolean checkLivyEndpoint() {
-		SparkBatchSubmission.getInstance().setCredentialsProvider(userName, password);
 		HttpResponse httpResponse = null;
 
 		try {
+			SparkBatchSubmission.getInstance().setCredentialsProvider(livyEndpoint + "/batches", userName, password);
 			httpResponse = SparkBatchSubmission.getInstance().getAllBatchesSparkJobs(livyEndpoint + "/batches");
 		} catch (Exception e) {
 			return false;
@@ -231,10 +231,10 @@ public class AddNewEmulatorForm extends TitleAreaDialog {
 	}
 
 	private boolean checkSparkHistoryEndpoint() {
-		SparkBatchSubmission.getInstance().setCredentialsProvider(userName, password);
 		HttpResponse httpResponse = null;
 
 		try {
+			SparkBatchSubmission.getInstance().setCredentialsProvider(sparkHistoryEndpoint + "/api/v1/applications", userName, password);
 			httpResponse = SparkBatchSubmission.getInstance()
 					.getHttpResponseViaGet(sparkHistoryEndpoint + "/api/v1/applications");
 		} catch (Exception e) {
@@ -245,10 +245,10 @@ public class AddNewEmulatorForm extends TitleAreaDialog {
 	}
 
 	private boolean checkAmbariEndpoint() {
-		SparkBatchSubmission.getInstance().setCredentialsProvider("admin", "admin");
 		HttpResponse httpResponse = null;
 
 		try {
+			SparkBatchSubmission.getInstance().setCredentialsProvider(ambariEndpoint, "admin", "admin");
 			httpResponse = SparkBatchSubmission.getInstance().getHttpResponseViaGet(ambariEndpoint);
 		} catch (Exception e) {
 			return false;
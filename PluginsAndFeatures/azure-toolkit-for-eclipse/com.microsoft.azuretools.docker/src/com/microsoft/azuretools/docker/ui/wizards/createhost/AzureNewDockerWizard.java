@@ -37,12 +37,12 @@ import org.eclipse.swt.widgets.Shell;
 import com.microsoft.azure.docker.AzureDockerHostsManager;
 import com.microsoft.azure.docker.model.AzureDockerPreferredSettings;
 import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.ops.AzureDockerHostProvisioner;
 import com.microsoft.azure.docker.ops.AzureDockerVMOps;
 import com.microsoft.azure.docker.ops.utils.AzureDockerUtils;
 import com.microsoft.azure.keyvault.KeyVaultClient;
 import com.microsoft.azure.management.Azure;
 import com.microsoft.azure.management.compute.VirtualMachine;
-import com.microsoft.azuretools.docker.utils.AzureDockerUIResources;
 import com.microsoft.azuretools.utils.AzureUIRefreshCore;
 import com.microsoft.azuretools.utils.AzureUIRefreshEvent;
 
@@ -128,70 +128,52 @@ public class AzureNewDockerWizard extends Wizard {
 						}
 					}
 
-					progressMonitor.subTask(String.format("Creating new virtual machine %s ...", dockerHost.name));
-					progressMonitor.worked(10);
-					if (AzureDockerUtils.DEBUG) System.out.println("Creating new virtual machine: " + new Date().toString());
-					AzureDockerVMOps.createDockerHostVM(azureClient, dockerHost);
-					if (AzureDockerUtils.DEBUG) System.out.println("Done creating new virtual machine: " + new Date().toString());
-					if (progressMonitor.isCanceled()) {
-						if (displayWarningOnCreateHostCancelAction() == 0) {
-							progressMonitor.done();
-							return Status.CANCEL_STATUS;
-						}
-					}
-					
-					progressMonitor.subTask("Getting the new Docker virtual machines details...");
-					progressMonitor.worked(5);
-					if (AzureDockerUtils.DEBUG) System.out.println("Getting the new Docker hosts details: " + new Date().toString());
-					VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerHost.hostVM.resourceGroupName, dockerHost.hostVM.name);
-					if (vm != null) {
-						DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
-						if (updatedHost != null) {
-							dockerHost.hostVM = updatedHost.hostVM;
-							dockerHost.apiUrl = updatedHost.apiUrl;
-						}
-					}
-					if (AzureDockerUtils.DEBUG) System.out.println("Done getting the new Docker hosts details: " + new Date().toString());
-					if (progressMonitor.isCanceled()) {
-						if (displayWarningOnCreateHostCancelAction() == 0) {
-							progressMonitor.done();
-							return Status.CANCEL_STATUS;
-						}
-					}
+					// the host's resources and setup steps run in parallel where they can; a failed step can be retried
+					KeyVaultClient keyVaultClient = dockerManager.getSubscriptionsMap().get(dockerHost.sid).keyVaultClient;
+					AzureDockerHostProvisioner provisioner = new AzureDockerHostProvisioner(azureClient, keyVaultClient, dockerHost);
+					AzureDockerHostProvisioner.ProgressListener progressListener = new AzureDockerHostProvisioner.ProgressListener() {
+						private int reportedWork;
 
-					progressMonitor.subTask(String.format("Waiting for virtual machine %s to be up...", dockerHost.name));
-					progressMonitor.worked(55);
-					if (AzureDockerUtils.DEBUG) System.out.println("Waiting for virtual machine to be up: " + new Date().toString());
-					AzureDockerVMOps.waitForVirtualMachineStartup(azureClient, dockerHost);
-					if (AzureDockerUtils.DEBUG) System.out.println("Done Waiting for virtual machine to be up: " + new Date().toString());
-					if (progressMonitor.isCanceled()) {
-						if (displayWarningOnCreateHostCancelAction() == 0) {
-							progressMonitor.done();
-							return Status.CANCEL_STATUS;
+						@Override
+						public synchronized void onStepChanged(AzureDockerHostProvisioner.Step step, AzureDockerHostProvisioner.StepState state,
+								Throwable error, int completed, int total) {
+							if (state == AzureDockerHostProvisioner.StepState.RUNNING) {
+								progressMonitor.subTask(String.format("%s for %s ...", step.getDescription(), dockerHost.name));
+							}
+							int work = 85 * completed / total;
+							if (work > reportedWork) {
+								progressMonitor.worked(work - reportedWork);
+								reportedWork = work;
+							}
+							if (AzureDockerUtils.DEBUG) System.out.format("%s %s: %s\n", step.getDescription(), state, new Date().toString());
+							if (progressMonitor.isCanceled()) {
+								provisioner.cancel();
+							}
 						}
-					}
-
-					progressMonitor.subTask(String.format("Configuring Docker service for %s ...", dockerHost.apiUrl));
-					progressMonitor.worked(15);
-					if (AzureDockerUtils.DEBUG) System.out.println("Configuring Docker host: " + new Date().toString());
-					AzureDockerVMOps.installDocker(dockerHost);
-					if (AzureDockerUtils.DEBUG) System.out.println("Done configuring Docker host: " + new Date().toString());
-					if (AzureDockerUtils.DEBUG) System.out.println("Finished setting up Docker host");
-					if (progressMonitor.isCanceled()) {
-						if (displayWarningOnCreateHostCancelAction() == 0) {
-							progressMonitor.done();
-							return Status.CANCEL_STATUS;
+					};
+					while (true) {
+						try {
+							provisioner.provision(progressListener);
+							break;
+						} catch (Exception e) {
+							if (progressMonitor.isCanceled()) {
+								progressMonitor.done();
+								return Status.CANCEL_STATUS;
+							}
+							if (!displayRetryOnCreateHostFailure(e)) {
+								throw e;
+							}
 						}
 					}
-
-					if (dockerHost.certVault != null && dockerHost.certVault.hostName != null) {
-						AzureDockerUIResources.createDockerKeyVault(dockerHost, dockerManager);
+					if (provisioner.getState(AzureDockerHostProvisioner.Step.KEY_VAULT) == AzureDockerHostProvisioner.StepState.DONE) {
+						dockerManager.refreshDockerVaults();
+						dockerManager.refreshDockerVaultDetails();
 					}
 
 					progressMonitor.subTask("Refreshing the Docker virtual machines details...");
 					progressMonitor.worked(5);
 					if (AzureDockerUtils.DEBUG) System.out.println("Refreshing Docker hosts details: " + new Date().toString());
-					vm = azureClient.virtualMachines().getByResourceGroup(dockerHost.hostVM.resourceGroupName, dockerHost.hostVM.name);
+					VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerHost.hostVM.resourceGroupName, dockerHost.hostVM.name);
 					if (vm != null) {
 						DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
 						if (updatedHost != null) {
@@ -262,6 +244,24 @@ public class AzureNewDockerWizard extends Wizard {
 //        });
 	}
 
+	private boolean displayRetryOnCreateHostFailure(Exception e) {
+		final int[] result = new int[] {SWT.CANCEL};
+		Display.getDefault().syncExec(new Runnable() {
+			@Override
+			public void run() {
+				Shell shell = Display.getDefault().getActiveShell();
+				if (shell != null) {
+					MessageBox retryDialog = new MessageBox(shell, SWT.ICON_QUESTION | SWT.RETRY | SWT.CANCEL);
+					retryDialog.setText("Failed to Create Docker Host");
+					retryDialog.setMessage("An error occurred while attempting to create Docker host.\n" + e.getMessage() + "\n\nDo you want to retry the failed steps? The steps which succeeded will not run again.");
+					result[0] = retryDialog.open();
+				}
+			}
+		});
+
+		return result[0] == SWT.RETRY;
+	}
+
 	private int displayWarningOnCreateHostCancelAction() {
 		Display currentDisplay = Display.getCurrent();
 		Shell shell = currentDisplay.getActiveShell();
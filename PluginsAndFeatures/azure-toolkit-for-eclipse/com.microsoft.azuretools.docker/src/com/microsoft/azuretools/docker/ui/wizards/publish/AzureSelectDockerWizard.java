@@ -23,9 +23,11 @@ import com.jcraft.jsch.Session;
 import com.microsoft.azure.docker.AzureDockerHostsManager;
 import com.microsoft.azure.docker.model.AzureDockerImageInstance;
 import com.microsoft.azure.docker.model.AzureDockerPreferredSettings;
+import com.microsoft.azure.docker.model.AzureDockerUploadResult;
 import com.microsoft.azure.docker.model.DockerHost;
 import com.microsoft.azure.docker.model.EditableDockerHost;
 import com.microsoft.azure.docker.ops.AzureDockerContainerOps;
+import com.microsoft.azure.docker.ops.AzureDockerHostProvisioner;
 import com.microsoft.azure.docker.ops.AzureDockerImageOps;
 import com.microsoft.azure.docker.ops.AzureDockerSSHOps;
 import com.microsoft.azure.docker.ops.AzureDockerVMOps;
@@ -256,52 +258,44 @@ public class AzureSelectDockerWizard extends Wizard {
 					}
 					
 		            if (dockerImageInstance.hasNewDockerHost) {
-		                msg = String.format("Creating new virtual machine %s ...", dockerImageInstance.host.name);
-						AzureDeploymentProgressNotification.notifyProgress(this, deploymentName, url, 20, msg);
-		                AzureDockerUIResources.printDebugMessage(this, "Creating new virtual machine: " + new Date().toString());
-		                AzureDockerVMOps.createDockerHostVM(azureClient, dockerImageInstance.host);
-		                AzureDockerUIResources.printDebugMessage(this, "Done creating new virtual machine: " + new Date().toString());
-						if (progressMonitor.isCanceled()) {
-							displayWarningOnCreateDockerContainerDeployTask(this, progressMonitor, deploymentName);
-							return Status.CANCEL_STATUS;
-						}
-						
-		                msg = String.format("Updating Docker hosts ...");
-						AzureDeploymentProgressNotification.notifyProgress(this, deploymentName, url, 5, msg);
-			            AzureDockerUIResources.printDebugMessage(this, "Getting the new docker host details: " + new Date().toString());
-//			            dockerManager.refreshDockerHostDetails();
-			            VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerImageInstance.host.hostVM.resourceGroupName, dockerImageInstance.host.hostVM.name);
-			            if (vm != null) {
-			                DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
-			                if (updatedHost != null) {
-								dockerImageInstance.host.hostVM = updatedHost.hostVM;
-								dockerImageInstance.host.apiUrl = updatedHost.apiUrl;
-			                }
-			            }
-			            AzureDockerUIResources.printDebugMessage(this, "Done getting new Docker host details: " + new Date().toString());
-
-		                msg = String.format("Waiting for virtual machine to be up %s ...", dockerImageInstance.host.name);
-						AzureDeploymentProgressNotification.notifyProgress(this, deploymentName, url, 10, msg);
-		                AzureDockerUIResources.printDebugMessage(this, "Waiting for virtual machine to be up: " + new Date().toString());
-		                AzureDockerVMOps.waitForVirtualMachineStartup(azureClient, dockerImageInstance.host);
-		                AzureDockerUIResources.printDebugMessage(this, "Done Waiting for virtual machine to be up: " + new Date().toString());
+		                // the key vault is still created in the background once the host is up, so it is not part of the provisioning
+		                final Object notificationSource = this;
+		                AzureDockerHostProvisioner provisioner = new AzureDockerHostProvisioner(azureClient, null, dockerImageInstance.host);
+		                AzureDockerHostProvisioner.ProgressListener progressListener = new AzureDockerHostProvisioner.ProgressListener() {
+		                	private int reportedWork;
+
+		                	@Override
+		                	public synchronized void onStepChanged(AzureDockerHostProvisioner.Step step, AzureDockerHostProvisioner.StepState state,
+		                			Throwable error, int completed, int total) {
+		                		int work = 45 * completed / total;
+		                		if (state == AzureDockerHostProvisioner.StepState.RUNNING || work > reportedWork) {
+		                			String stepMsg = String.format("%s for %s ...", step.getDescription(), dockerImageInstance.host.name);
+		                			AzureDeploymentProgressNotification.notifyProgress(notificationSource, deploymentName, url, Math.max(work - reportedWork, 0), stepMsg);
+		                			reportedWork = Math.max(work, reportedWork);
+		                		}
+		                		AzureDockerUIResources.printDebugMessage(notificationSource, String.format("%s %s: %s", step.getDescription(), state, new Date().toString()));
+		                		if (progressMonitor.isCanceled()) {
+		                			provisioner.cancel();
+		                		}
+		                	}
+		                };
+		                try {
+		                	provisioner.provision(progressListener);
+		                } catch (Exception e) {
+		                	if (!progressMonitor.isCanceled()) {
+		                		throw e;
+		                	}
+		                }
 						if (progressMonitor.isCanceled()) {
 							displayWarningOnCreateDockerContainerDeployTask(this, progressMonitor, deploymentName);
 							return Status.CANCEL_STATUS;
 						}
-						
-
-		                msg = String.format("Configuring Docker service for %s ...", dockerImageInstance.host.name);
-						AzureDeploymentProgressNotification.notifyProgress(this, deploymentName, url, 10, msg);
-		                AzureDockerUIResources.printDebugMessage(this, "Configuring Docker host: " + new Date().toString());
-		                AzureDockerVMOps.installDocker(dockerImageInstance.host);
-		                AzureDockerUIResources.printDebugMessage(this, "Done configuring Docker host: " + new Date().toString());
 
 		                msg = String.format("Updating Docker hosts ...");
 						AzureDeploymentProgressNotification.notifyProgress(this, deploymentName, url, 5, msg);
 			            AzureDockerUIResources.printDebugMessage(this, "Refreshing docker hosts: " + new Date().toString());
 //			            dockerManager.refreshDockerHostDetails();
-			            vm = azureClient.virtualMachines().getByResourceGroup(dockerImageInstance.host.hostVM.resourceGroupName, dockerImageInstance.host.hostVM.name);
+			            VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerImageInstance.host.hostVM.resourceGroupName, dockerImageInstance.host.hostVM.name);
 			            if (vm != null) {
 			                DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
 			                if (updatedHost != null) {
@@ -346,8 +340,12 @@ public class AzureSelectDockerWizard extends Wizard {
 		            msg = String.format("Uploading Dockerfile and artifact %s on %s ...", dockerImageInstance.artifactName, dockerImageInstance.host.name);
 					AzureDeploymentProgressNotification.notifyProgress(this, deploymentName, url, 15, msg);
 		            AzureDockerUIResources.printDebugMessage(this, "Uploading Dockerfile and artifact: " + new Date().toString());
-		            AzureDockerVMOps.uploadDockerfileAndArtifact(dockerImageInstance, dockerImageInstance.host.session);
+		            AzureDockerUploadResult uploadResult = AzureDockerVMOps.uploadDockerfileAndArtifact(dockerImageInstance, dockerImageInstance.host.session);
 		            AzureDockerUIResources.printDebugMessage(this, "Uploading Dockerfile and artifact: " + new Date().toString());
+		            if (uploadResult.isDelta) {
+		                msg = String.format("Uploaded changes of %s (%d of %d bytes) ...", uploadResult.fileName, uploadResult.bytesSent, uploadResult.fileSize);
+		                AzureDeploymentProgressNotification.notifyProgress(this, deploymentName, url, 0, msg);
+		            }
 					if (progressMonitor.isCanceled()) {
 						displayWarningOnCreateDockerContainerDeployTask(this, progressMonitor, deploymentName);
 						return Status.CANCEL_STATUS;
@@ -284,11 +284,19 @@ public class SparkSubmitModel {
                 SparkSubmitHelper.uploadFileToEmulator(selectedClusterDetail, buildJarPath) :
                 SparkSubmitHelper.uploadFileToHDFS(selectedClusterDetail, buildJarPath);
         submissionParameter.setFilePath(filePath);
+
+        if (!selectedClusterDetail.isEmulator()) {
+            submissionParameter.setReferencedJars(
+                    SparkSubmitHelper.uploadReferencedJarsToHDFS(selectedClusterDetail, submissionParameter.getReferencedJars()));
+        }
     }
     
     
-    private void tryToCreateBatchSparkJob(@NotNull final IClusterDetail selectedClusterDetail) throws HDIException,IOException {
-        SparkBatchSubmission.getInstance().setCredentialsProvider(selectedClusterDetail.getHttpUserName(), selectedClusterDetail.getHttpPassword());
+    /**
+     * @return true if the job was submitted, {@link #onSubmissionFinished} is then called once its log is printed
+     */
+    private boolean tryToCreateBatchSparkJob(@NotNull final IClusterDetail selectedClusterDetail) throws HDIException,IOException {
+        SparkBatchSubmission.getInstance().setCredentialsProvider(SparkSubmitHelper.getLivyConnectionURL(selectedClusterDetail), selectedClusterDetail.getHttpUserName(), selectedClusterDetail.getHttpPassword());
         HttpResponse response = SparkBatchSubmission.getInstance().createBatchSparkJob(SparkSubmitHelper.getLivyConnectionURL(selectedClusterDetail), submissionParameter);
 
         if (response.getCode() == 201 || response.getCode() == 200) {
@@ -311,13 +319,21 @@ public class SparkSubmitModel {
       				view.getJobStatusManager().resetJobStateManager();
       			}
       		});
-      		SparkSubmitHelper.getInstance().printRunningLogStreamingly(sparkSubmitResponse.getId(), selectedClusterDetail, postEventProperty);
+      		SparkSubmitHelper.getInstance().printRunningLogStreamingly(sparkSubmitResponse.getId(), selectedClusterDetail, postEventProperty,
+      		        new Runnable() {
+      		            @Override
+      		            public void run() {
+      		                onSubmissionFinished(selectedClusterDetail);
+      		            }
+      		        });
+      		return true;
         } else {
             HDInsightUtil.showErrorMessageOnSubmissionMessageWindow(
                     String.format("Error : Failed to submit to spark cluster. error code : %d, reason :  %s.", response.getCode(), response.getContent()));
             postEventProperty.put("IsSubmitSucceed", "false");
             postEventProperty.put("SubmitFailedReason", response.getContent());
             AppInsightsCustomEvent.create(Messages.SparkSubmissionButtonClickEvent, null, postEventProperty);
+            return false;
         }
     }
 
@@ -386,30 +402,38 @@ public class SparkSubmitModel {
                     return;
                 }
 
+                boolean isSubmitted = false;
                 try {
                 	uploadFileToCluster(selectedClusterDetail, selectedArtifactName);
-                	tryToCreateBatchSparkJob(selectedClusterDetail);
+                	isSubmitted = tryToCreateBatchSparkJob(selectedClusterDetail);
                 } catch (Exception exception) {
                 	exception.printStackTrace();
                     showFailedSubmitErrorMessage(exception);
                 } finally {
-                    HDInsightUtil.getSparkSubmissionToolWindowView().setStopButtonState(false);
-                    HDInsightUtil.getSparkSubmissionToolWindowView().setBrowserButtonState(false);
-
-                    if (HDInsightUtil.getSparkSubmissionToolWindowView().getJobStatusManager().isApplicationGenerated()) {
-                        String applicationId = HDInsightUtil.getSparkSubmissionToolWindowView().getJobStatusManager().getApplicationId();
-
-                        // ApplicationYarnUrl example : https://sparklivylogtest.azurehdinsight.net/yarnui/hn/cluster/app/application_01_111
-                        String applicationYarnUrl = String.format(SparkYarnLogUrlFormat, selectedClusterDetail.getConnectionUrl(), applicationId);
-                        HDInsightUtil.setHyperLinkWithText("See detailed job information from ", applicationYarnUrl, applicationYarnUrl);
-
-                        writeJobLogToLocal();
+                    // a submitted job finishes once its log is printed, without holding this thread
+                    if (!isSubmitted) {
+                        onSubmissionFinished(selectedClusterDetail);
                     }
-                    HDInsightUtil.getSparkSubmissionToolWindowView().getJobStatusManager().setJobRunningState(false);
                 }
             }
         });
     }
+
+    private void onSubmissionFinished(@NotNull final IClusterDetail selectedClusterDetail) {
+        HDInsightUtil.getSparkSubmissionToolWindowView().setStopButtonState(false);
+        HDInsightUtil.getSparkSubmissionToolWindowView().setBrowserButtonState(false);
+
+        if (HDInsightUtil.getSparkSubmissionToolWindowView().getJobStatusManager().isApplicationGenerated()) {
+            String applicationId = HDInsightUtil.getSparkSubmissionToolWindowView().getJobStatusManager().getApplicationId();
+
+            // ApplicationYarnUrl example : https://sparklivylogtest.azurehdinsight.net/yarnui/hn/cluster/app/application_01_111
+            String applicationYarnUrl = String.format(SparkYarnLogUrlFormat, selectedClusterDetail.getConnectionUrl(), applicationId);
+            HDInsightUtil.setHyperLinkWithText("See detailed job information from ", applicationYarnUrl, applicationYarnUrl);
+
+            writeJobLogToLocal();
+        }
+        HDInsightUtil.getSparkSubmissionToolWindowView().getJobStatusManager().setJobRunningState(false);
+    }
 //
     private void postEventAction() {
         postEventProperty.clear();
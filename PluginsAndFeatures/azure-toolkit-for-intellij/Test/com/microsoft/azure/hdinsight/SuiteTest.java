@@ -1,13 +1,29 @@
 package com.microsoft.azure.hdinsight;
 
+import com.microsoft.azure.hdinsight.common.task.MultiRestTaskTest;
+import com.microsoft.azure.hdinsight.metadata.ClusterMetaDataServiceTest;
+import com.microsoft.azure.hdinsight.sdk.storage.adls.ADLSFileUploaderTest;
+import com.microsoft.azure.hdinsight.spark.common.SparkBatchSubmissionTest;
 import com.microsoft.azure.hdinsight.spark.common.SubmissionTableModelTest;
+import com.microsoft.azure.hdinsight.spark.jobs.JobUtilsTest;
+import com.microsoft.azure.hdinsight.spark.jobs.JobViewDummyHttpServerLoadTest;
+import com.microsoft.azure.hdinsight.spark.jobs.JobViewResponseCacheTest;
+import com.microsoft.azure.hdinsight.spark.jobs.analytics.SparkEventLogAnalyzerTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
         //add Test class to here for local suite test
-        SubmissionTableModelTest.class
+        SubmissionTableModelTest.class,
+        MultiRestTaskTest.class,
+        JobViewResponseCacheTest.class,
+        JobViewDummyHttpServerLoadTest.class,
+        ADLSFileUploaderTest.class,
+        ClusterMetaDataServiceTest.class,
+        SparkEventLogAnalyzerTest.class,
+        JobUtilsTest.class,
+        SparkBatchSubmissionTest.class
 })
 public class SuiteTest {
 }
@@ -0,0 +1,158 @@
+package com.microsoft.azure.hdinsight.common.task;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.azure.hdinsight.sdk.cluster.HDInsightAdditionalClusterDetail;
+import com.microsoft.azure.hdinsight.sdk.common.HDIException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sends the task's requests to a local Spark history stub where every request takes {@link #DELAY_MS}.
+ */
+public class MultiRestTaskTest {
+    private static final int DELAY_MS = 200;
+    private static final int PATH_COUNT = 24;
+    private static final int TASK_COUNT = 40;
+
+    private HttpServer server;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(DELAY_MS);
+                } catch (InterruptedException ignored) {
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+
+                String path = exchange.getRequestURI().getPath();
+                boolean isUnauthorized = path.endsWith("/unauthorized");
+                byte[] body = (isUnauthorized ? "" : path).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(isUnauthorized ? 401 : 200, body.length == 0 ? -1 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testResultsInPathOrderWithinClusterLimit() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < PATH_COUNT; i++) {
+            paths.add(getUrl("/api/v1/applications/app/stages/" + i));
+        }
+
+        MultiRestTask task = new MultiRestTask(newCluster("ordered"), paths, newCallback());
+        long start = System.currentTimeMillis();
+        List<String> results = task.call();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(PATH_COUNT, results.size());
+        for (int i = 0; i < PATH_COUNT; i++) {
+            assertEquals("/api/v1/applications/app/stages/" + i, results.get(i));
+        }
+        assertTrue("requests were not concurrent", maxInFlight.get() > 1);
+        assertTrue("cluster limit exceeded: " + maxInFlight.get(),
+                maxInFlight.get() <= MultiRestTask.MAX_CONCURRENT_REQUESTS_PER_CLUSTER);
+        assertTrue("took " + elapsed + " ms", elapsed < (long) PATH_COUNT * DELAY_MS / 2);
+        assertEquals(PATH_COUNT, task.getRequestDurations().size());
+        for (long duration : task.getRequestDurations()) {
+            assertTrue(duration >= DELAY_MS);
+        }
+    }
+
+    @Test
+    public void testUnauthorizedPathStopsTheBatch() throws Exception {
+        List<String> paths = new ArrayList<>();
+        paths.add(getUrl("/api/v1/applications/unauthorized"));
+        for (int i = 0; i < PATH_COUNT * 2; i++) {
+            paths.add(getUrl("/api/v1/applications/app/jobs/" + i));
+        }
+
+        try {
+            new MultiRestTask(newCluster("unauthorized"), paths, newCallback()).call();
+            fail("expected the 401 to fail the task");
+        } catch (HDIException e) {
+            assertEquals(401, e.getErrorCode());
+        }
+
+        // let cancelled requests already sent to the stub finish
+        Thread.sleep(DELAY_MS * 2);
+        assertTrue("sent " + requestCount.get() + " requests", requestCount.get() < paths.size());
+    }
+
+    @Test
+    public void testMoreTasksThanTaskThreadsComplete() throws Exception {
+        // every task waits for its requests on a task thread, so its requests must not queue behind the other tasks
+        List<ListenableFuture<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            List<String> paths = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                paths.add(getUrl("/api/v1/applications/app" + i + "/stages/" + j));
+            }
+
+            futures.add(TaskExecutor.submit(new MultiRestTask(newCluster("task" + i), paths, newCallback())));
+        }
+
+        for (int i = 0; i < TASK_COUNT; i++) {
+            List<String> results = futures.get(i).get(30, TimeUnit.SECONDS);
+            assertEquals("/api/v1/applications/app" + i + "/stages/3", results.get(3));
+        }
+        assertEquals(TASK_COUNT * 4, requestCount.get());
+    }
+
+    private String getUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static HDInsightAdditionalClusterDetail newCluster(String name) {
+        return new HDInsightAdditionalClusterDetail(name + System.nanoTime(), "admin", "password", null);
+    }
+
+    private static FutureCallback<List<String>> newCallback() {
+        return new FutureCallback<List<String>>() {
+            @Override
+            public void onSuccess(List<String> result) {
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+            }
+        };
+    }
+}
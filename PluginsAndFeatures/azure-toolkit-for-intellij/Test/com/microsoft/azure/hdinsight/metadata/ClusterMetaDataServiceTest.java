@@ -0,0 +1,61 @@
+package com.microsoft.azure.hdinsight.metadata;
+
+import com.microsoft.azure.hdinsight.sdk.cluster.HDInsightAdditionalClusterDetail;
+import com.microsoft.azure.hdinsight.sdk.cluster.IClusterDetail;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ClusterMetaDataServiceTest {
+    private final ClusterMetaDataService service = ClusterMetaDataService.getInstance();
+
+    private final IClusterDetail spark = newCluster("Spark");
+    private final IClusterDetail sparkOfOtherSubscription = newCluster("spark");
+    private final IClusterDetail hadoop = newCluster("hadoop");
+
+    @After
+    public void tearDown() {
+        service.addCachedClusters(new ArrayList<IClusterDetail>());
+    }
+
+    @Test
+    public void testClustersSharingANameAreAllKept() {
+        service.addCachedClusters(Arrays.asList(spark, sparkOfOtherSubscription, hadoop));
+
+        assertEquals(Arrays.asList(spark, sparkOfOtherSubscription, hadoop), service.getCachedClusterDetails());
+        assertSame(spark, service.getCachedCluster("SPARK"));
+        assertTrue(service.isCachedClusterExist(sparkOfOtherSubscription));
+    }
+
+    @Test
+    public void testRemoveKeepsTheOtherClusterWithTheName() {
+        service.addCachedClusters(Arrays.asList(spark, hadoop));
+        service.addCachedCluster(sparkOfOtherSubscription);
+        assertEquals(3, service.getCachedClusterDetails().size());
+
+        service.removeCachedCluster(spark);
+
+        assertEquals(Arrays.asList(hadoop, sparkOfOtherSubscription), service.getCachedClusterDetails());
+        assertSame(sparkOfOtherSubscription, service.getCachedCluster("spark"));
+
+        service.removeCachedCluster(sparkOfOtherSubscription);
+        assertNull(service.getCachedCluster("spark"));
+    }
+
+    @Test
+    public void testSnapshotIsACopy() {
+        service.addCachedClusters(Arrays.asList(spark, hadoop));
+
+        service.getCachedClusterDetails().clear();
+
+        assertEquals(2, service.getCachedClusterDetails().size());
+    }
+
+    private static IClusterDetail newCluster(String name) {
+        return new HDInsightAdditionalClusterDetail(name, "admin", "password", null);
+    }
+}
@@ -0,0 +1,221 @@
+package com.microsoft.azure.hdinsight.sdk.storage.adls;
+
+import com.microsoft.azure.hdinsight.sdk.common.HDIException;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Uploads to a WebHDFS stub which keeps the file in memory and fails chosen APPEND requests, either with an
+ * error status or by writing the chunk and dropping the connection before the response.
+ */
+public class ADLSFileUploaderTest {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int FILE_SIZE = 10 * CHUNK_SIZE + 12345;
+
+    private HttpServer webHdfs;
+    private CloseableHttpClient httpClient;
+    private File localFile;
+    private byte[] content;
+
+    private final ByteArrayOutputStream remoteFile = new ByteArrayOutputStream();
+    private final Set<Long> failingOffsets = new HashSet<>();
+    private final Set<Long> lostResponseOffsets = new HashSet<>();
+    private final List<String> operations = new ArrayList<>();
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private volatile int createCode = 201;
+    private volatile String validToken = "token-1";
+    private volatile boolean isAlwaysFailing = false;
+    private volatile long tokenExpiryOffset = -1;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[FILE_SIZE];
+        new Random(7).nextBytes(content);
+        localFile = File.createTempFile("artifact", ".jar");
+        Files.write(localFile.toPath(), content);
+
+        webHdfs = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        webHdfs.createContext("/webhdfs/v1/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleOperation(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        webHdfs.start();
+        httpClient = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.close();
+        webHdfs.stop(0);
+        localFile.delete();
+    }
+
+    @Test
+    public void testRetriedAndLostAppendsStoreExactBytes() throws Exception {
+        failingOffsets.add(3L * CHUNK_SIZE);
+        lostResponseOffsets.add(6L * CHUNK_SIZE);
+        final List<Long> progress = new ArrayList<>();
+
+        newUploader().upload(localFile, new ADLSFileUploader.ProgressListener() {
+            @Override
+            public void onProgress(long uploadedBytes, long totalBytes) {
+                assertEquals(FILE_SIZE, totalBytes);
+                progress.add(uploadedBytes);
+            }
+        });
+
+        assertArrayEquals(content, remoteFile.toByteArray());
+        assertEquals(1, tokenRequests.get());
+        assertEquals(11, progress.size());
+        assertEquals(Long.valueOf(FILE_SIZE), progress.get(progress.size() - 1));
+        // the 503 chunk is sent again, the chunk whose response was lost is not
+        assertEquals(12, count("APPEND"));
+        assertEquals(2, count("GETFILESTATUS"));
+    }
+
+    @Test
+    public void testPersistentFailureGivesUpAfterMaxAttempts() throws Exception {
+        failingOffsets.add(2L * CHUNK_SIZE);
+        isAlwaysFailing = true;
+
+        try {
+            newUploader().upload(localFile, null);
+            fail("expected the upload to fail");
+        } catch (HDIException e) {
+            assertEquals(503, e.getErrorCode());
+        }
+
+        assertEquals(2 + ADLSFileUploader.MAX_ATTEMPTS_PER_CHUNK, count("APPEND"));
+        assertEquals(2L * CHUNK_SIZE, remoteFile.size());
+    }
+
+    @Test
+    public void testTokenExpiringDuringUploadIsRefreshedOnce() throws Exception {
+        tokenExpiryOffset = 5L * CHUNK_SIZE;
+
+        newUploader().upload(localFile, null);
+
+        assertArrayEquals(content, remoteFile.toByteArray());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    public void testForbiddenCreate() throws Exception {
+        createCode = 403;
+
+        try {
+            newUploader().upload(localFile, null);
+            fail("expected the upload to fail");
+        } catch (HDIException e) {
+            assertEquals(403, e.getErrorCode());
+        }
+
+        assertEquals(0, count("APPEND"));
+    }
+
+    private ADLSFileUploader newUploader() {
+        String fileUrl = "http://127.0.0.1:" + webHdfs.getAddress().getPort() + "/webhdfs/v1/SparkSubmission/artifact.jar";
+        return new ADLSFileUploader(httpClient, fileUrl, new ADLSFileUploader.AccessTokenProvider() {
+            @NotNull
+            @Override
+            public String getAccessToken(boolean refresh) throws Exception {
+                return "token-" + tokenRequests.incrementAndGet();
+            }
+        }, CHUNK_SIZE, 1);
+    }
+
+    private synchronized int count(String operation) {
+        int count = 0;
+        for (String recorded : operations) {
+            if (recorded.equals(operation)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private void handleOperation(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        String operation = query.replaceAll(".*op=([A-Z]+).*", "$1");
+        byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+        synchronized (this) {
+            operations.add(operation);
+        }
+
+        if (operation.equals("APPEND") && query.endsWith("offset=" + tokenExpiryOffset)) {
+            validToken = "token-2";
+        }
+
+        if (!("Bearer " + validToken).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            exchange.sendResponseHeaders(401, -1);
+            return;
+        }
+
+        if (operation.equals("CREATE")) {
+            if (createCode == 201) {
+                remoteFile.reset();
+            }
+            exchange.sendResponseHeaders(createCode, -1);
+        } else if (operation.equals("GETFILESTATUS")) {
+            sendJson(exchange, "{\"FileStatus\":{\"length\":" + remoteFile.size() + ",\"type\":\"FILE\"}}");
+        } else if (operation.equals("APPEND")) {
+            long offset = Long.parseLong(query.replaceAll(".*offset=(\\d+).*", "$1"));
+            if (offset != remoteFile.size()) {
+                exchange.sendResponseHeaders(400, -1);
+            } else if (failingOffsets.contains(offset)) {
+                if (!isAlwaysFailing) {
+                    failingOffsets.remove(offset);
+                }
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                remoteFile.write(body);
+                if (lostResponseOffsets.remove(offset)) {
+                    // written, but the connection drops before the response
+                    return;
+                }
+                exchange.sendResponseHeaders(200, -1);
+            }
+        } else {
+            exchange.sendResponseHeaders(400, -1);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
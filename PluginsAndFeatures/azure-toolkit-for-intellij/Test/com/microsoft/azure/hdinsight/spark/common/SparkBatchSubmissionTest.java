@@ -0,0 +1,170 @@
+package com.microsoft.azure.hdinsight.spark.common;
+
+import com.microsoft.azure.hdinsight.common.HDInsightHelper;
+import com.microsoft.azure.hdinsight.common.HDInsightLoader;
+import com.microsoft.azure.hdinsight.sdk.common.HttpClientPool;
+import com.microsoft.azure.hdinsight.sdk.common.HttpResponse;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sends batch requests to two local Livy stubs, each of them only accepting its own user.
+ */
+public class SparkBatchSubmissionTest {
+    private static final int REQUEST_COUNT = 20;
+
+    private HDInsightHelper previousHelper;
+    private LivyStub alice;
+    private LivyStub bob;
+
+    @Before
+    public void setUp() throws IOException {
+        previousHelper = HDInsightLoader.getHDInsightHelper();
+        HDInsightLoader.setHHDInsightHelper(new HDInsightHelper() {
+            @Override
+            public void openJobViewEditor(@NotNull Object projectObject, @NotNull String uuid) {
+            }
+
+            @Override
+            public void closeJobViewEditor(@NotNull Object projectObject, @NotNull String uuid) {
+            }
+
+            @Override
+            public String getPluginRootPath() {
+                return null;
+            }
+
+            @Override
+            public String getInstallationId() {
+                return "test";
+            }
+
+            @Override
+            public boolean isIntelliJPlugin() {
+                return true;
+            }
+        });
+
+        alice = new LivyStub("alice", "alice-password");
+        bob = new LivyStub("bob", "bob-password");
+    }
+
+    @After
+    public void tearDown() {
+        HttpClientPool.getInstance().release(alice.getBatchesUrl());
+        HttpClientPool.getInstance().release(bob.getBatchesUrl());
+        alice.server.stop(0);
+        bob.server.stop(0);
+        HDInsightLoader.setHHDInsightHelper(previousHelper);
+    }
+
+    @Test
+    public void testEachEndpointIsSentItsOwnCredentials() throws IOException {
+        SparkBatchSubmission submission = SparkBatchSubmission.getInstance();
+        submission.setCredentialsProvider(alice.getBatchesUrl(), "alice", "alice-password");
+        submission.setCredentialsProvider(bob.getBatchesUrl(), "bob", "bob-password");
+
+        // the monitor and the log tailers poll several clusters in turn with the same submission instance
+        for (int i = 0; i < REQUEST_COUNT / 2; i++) {
+            assertEquals(200, submission.getAllBatchesSparkJobs(alice.getBatchesUrl()).getCode());
+            assertEquals(200, submission.getBatchSparkJobStatus(bob.getBatchesUrl(), i).getCode());
+            assertEquals(200, submission.getBatchJobLog(alice.getBatchesUrl(), i, 0, 100).getCode());
+            assertEquals(200, submission.getAllBatchesSparkJobs(bob.getBatchesUrl()).getCode());
+        }
+
+        assertEquals(REQUEST_COUNT, alice.requestCount.get());
+        assertEquals(REQUEST_COUNT, bob.requestCount.get());
+        assertEquals(0, alice.rejectedCount.get());
+        assertEquals(0, bob.rejectedCount.get());
+    }
+
+    @Test
+    public void testCredentialsAreSentPreemptivelyOverPooledConnections() throws IOException {
+        SparkBatchSubmission submission = SparkBatchSubmission.getInstance();
+        submission.setCredentialsProvider(alice.getBatchesUrl(), "alice", "alice-password");
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            HttpResponse response = submission.getBatchSparkJobStatus(alice.getBatchesUrl(), i);
+            assertEquals(200, response.getCode());
+            assertEquals("/batches/" + i, response.getMessage());
+        }
+
+        // no request was challenged first, and all of them went over the same kept alive connection
+        assertEquals(REQUEST_COUNT, alice.requestCount.get());
+        assertEquals(0, alice.rejectedCount.get());
+        assertEquals(1, alice.remotePorts.stream().distinct().count());
+
+        HttpClientPool.EndpointStats stats = HttpClientPool.getInstance().getStats()
+                .get(HttpClientPool.getEndpoint(alice.getBatchesUrl()) + "|alice");
+        assertNotNull(stats);
+        assertEquals(REQUEST_COUNT, stats.requests);
+        assertEquals(1, stats.connections);
+        assertEquals(0, stats.leased);
+    }
+
+    @Test
+    public void testEndpointWithoutCredentialsIsChallenged() throws IOException {
+        SparkBatchSubmission submission = SparkBatchSubmission.getInstance();
+        submission.setCredentialsProvider(alice.getBatchesUrl(), "alice", "alice-password");
+
+        assertEquals(401, submission.getAllBatchesSparkJobs(bob.getBatchesUrl()).getCode());
+        assertEquals(1, bob.rejectedCount.get());
+    }
+
+    private static class LivyStub {
+        private final HttpServer server;
+        private final String authorization;
+        private final AtomicInteger requestCount = new AtomicInteger();
+        private final AtomicInteger rejectedCount = new AtomicInteger();
+        private final List<Integer> remotePorts = new CopyOnWriteArrayList<>();
+
+        LivyStub(String userName, String password) throws IOException {
+            authorization = "Basic " + Base64.getEncoder().encodeToString(
+                    (userName + ":" + password).getBytes(StandardCharsets.UTF_8));
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    requestCount.incrementAndGet();
+                    remotePorts.add(exchange.getRemoteAddress().getPort());
+
+                    boolean isAuthorized = authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"));
+                    if (!isAuthorized) {
+                        rejectedCount.incrementAndGet();
+                        exchange.getResponseHeaders().add("WWW-Authenticate", "Basic realm=\"livy\"");
+                    }
+
+                    // echo the path, so the caller can check where the request went
+                    byte[] body = exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(isAuthorized ? 200 : 401, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+            });
+            server.start();
+        }
+
+        String getBatchesUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/batches";
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.microsoft.azure.hdinsight.spark.jobs;
+
+import com.microsoft.azure.hdinsight.common.HDInsightHelper;
+import com.microsoft.azure.hdinsight.common.HDInsightLoader;
+import com.microsoft.azure.hdinsight.spark.jobs.analytics.SparkEventLogAnalyzer;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Asks for event log summaries the way the job view server does, with the plugin folder in a temporary folder.
+ */
+public class JobUtilsTest {
+    private static final String APPLICATION_ID = "application_1500000000000_0001";
+
+    private File workFolder;
+    private File pluginRoot;
+    private HDInsightHelper previousHelper;
+
+    @Before
+    public void setUp() throws IOException {
+        workFolder = Files.createTempDirectory("job-utils").toFile();
+        pluginRoot = new File(workFolder, "plugin");
+        pluginRoot.mkdirs();
+        previousHelper = HDInsightLoader.getHDInsightHelper();
+        HDInsightLoader.setHHDInsightHelper(new HDInsightHelper() {
+            @Override
+            public void openJobViewEditor(@NotNull Object projectObject, @NotNull String uuid) {
+            }
+
+            @Override
+            public void closeJobViewEditor(@NotNull Object projectObject, @NotNull String uuid) {
+            }
+
+            @Override
+            public String getPluginRootPath() {
+                return pluginRoot.getPath();
+            }
+
+            @Override
+            public String getInstallationId() {
+                return "test";
+            }
+
+            @Override
+            public boolean isIntelliJPlugin() {
+                return true;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        HDInsightLoader.setHHDInsightHelper(previousHelper);
+        FileUtils.deleteQuietly(workFolder);
+    }
+
+    @Test
+    public void testApplicationIdOutsideTheEventLogFolderIsRejected() {
+        for (String applicationId : new String[] {"../../x", "..", "application_1_1/../../x", "application_1_1/x", "", null}) {
+            assertEquals("", JobUtils.getSparkEventLogSummary("unknown-cluster", applicationId));
+        }
+
+        assertArrayEquals(new String[] {"plugin"}, workFolder.list());
+        assertFalse(new File(pluginRoot, "SparkEventLog").exists());
+    }
+
+    @Test
+    public void testConcurrentSummariesOfOneApplication() throws Exception {
+        final File folder = new File(pluginRoot, "SparkEventLog" + File.separator + APPLICATION_ID);
+        folder.mkdirs();
+        writeEventLog(new File(folder, "eventLogs.zip"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> summaries = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            summaries.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return JobUtils.getSparkEventLogSummary("unknown-cluster", APPLICATION_ID);
+                }
+            }));
+        }
+
+        String expected = summaries.get(0).get();
+        assertTrue(expected, expected.contains("\"applicationId\":\"" + APPLICATION_ID + "\""));
+        for (Future<String> summary : summaries) {
+            assertEquals(expected, summary.get());
+        }
+        executor.shutdown();
+
+        // the saved summary is whole and no temporary file is left behind
+        assertEquals(expected, JobUtils.getSparkEventLogSummary("unknown-cluster", APPLICATION_ID));
+        String[] files = folder.list();
+        assertNotNull(files);
+        Arrays.sort(files);
+        assertArrayEquals(new String[] {"eventLogs.zip", SparkEventLogAnalyzer.SUMMARY_FILE_NAME}, files);
+    }
+
+    private static void writeEventLog(File zip) throws IOException {
+        StringBuilder log = new StringBuilder();
+        log.append("{\"Event\":\"SparkListenerApplicationStart\",\"App Name\":\"test\",\"App ID\":\"")
+                .append(APPLICATION_ID).append("\",\"Timestamp\":1500000000000}\n");
+        for (int stage = 0; stage < 50; stage++) {
+            log.append("{\"Event\":\"SparkListenerStageSubmitted\",\"Stage Info\":{\"Stage ID\":").append(stage)
+                    .append(",\"Stage Attempt ID\":0,\"Stage Name\":\"stage\",\"Number of Tasks\":100,\"Submission Time\":1}}\n");
+            for (int task = 0; task < 100; task++) {
+                log.append("{\"Event\":\"SparkListenerTaskEnd\",\"Stage ID\":").append(stage)
+                        .append(",\"Stage Attempt ID\":0,\"Task Info\":{\"Launch Time\":0,\"Finish Time\":").append(100 + task)
+                        .append(",\"Failed\":false,\"Killed\":false},\"Task Metrics\":{\"Executor Run Time\":").append(task)
+                        .append(",\"JVM GC Time\":1}}\n");
+            }
+        }
+
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry(APPLICATION_ID + "_1"));
+            out.write(log.toString().getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+    }
+}
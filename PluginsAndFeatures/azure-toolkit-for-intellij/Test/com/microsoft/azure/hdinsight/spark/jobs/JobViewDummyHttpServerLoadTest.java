@@ -0,0 +1,166 @@
+package com.microsoft.azure.hdinsight.spark.jobs;
+
+import com.microsoft.azure.hdinsight.common.JobViewManager;
+import com.microsoft.azure.hdinsight.sdk.cluster.HDInsightAdditionalClusterDetail;
+import com.microsoft.azure.hdinsight.sdk.common.HttpClientPool;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Opens many job view panels at once against a stub Spark history server and checks that every page gets
+ * its response byte for byte, while the proxy keeps to its pooled upstream connections.
+ */
+public class JobViewDummyHttpServerLoadTest {
+    private static final int PANEL_COUNT = 50;
+    private static final int REQUESTS_PER_PANEL = 20;
+    private static final int STAGES_PER_RESPONSE = 2000;
+    private static final String APPLICATION_ID = "application_1500000000000_0001";
+
+    private static final ConcurrentMap<String, byte[]> responses = new ConcurrentHashMap<>();
+
+    private HttpServer sparkHistory;
+    private final List<String> panelIds = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        sparkHistory = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        sparkHistory.setExecutor(Executors.newCachedThreadPool());
+        sparkHistory.createContext("/sparkhistory/api/v1/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath().substring("/sparkhistory/api/v1".length());
+                byte[] body = getResponse(path);
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+                // every other response has no length, so the proxy has to forward it chunked
+                boolean isChunked = path.hashCode() % 2 == 0;
+                exchange.sendResponseHeaders(200, isChunked ? 0 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        sparkHistory.start();
+
+        JobViewDummyHttpServer.initlize();
+        assumeTrue("the job view port " + JobViewDummyHttpServer.PORT + " is in use", JobViewDummyHttpServer.isEnabled());
+
+        final String connectionUrl = "http://127.0.0.1:" + sparkHistory.getAddress().getPort();
+        for (int i = 0; i < PANEL_COUNT; i++) {
+            String panelId = UUID.randomUUID().toString();
+            JobViewManager.registerJovViewNode(panelId, new HDInsightAdditionalClusterDetail("load" + i, "admin", "password", null) {
+                @Override
+                public String getConnectionUrl() {
+                    return connectionUrl;
+                }
+            });
+            panelIds.add(panelId);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (String panelId : panelIds) {
+            JobViewManager.unRegisterJobView(panelId);
+        }
+        JobViewDummyHttpServer.close();
+        HttpClientPool.getInstance().release("http://127.0.0.1:" + sparkHistory.getAddress().getPort());
+        sparkHistory.stop(0);
+    }
+
+    @Test
+    public void testConcurrentPanelsGetExactResponses() throws Exception {
+        ExecutorService panels = Executors.newFixedThreadPool(PANEL_COUNT);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (final String panelId : panelIds) {
+            results.add(panels.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    for (int i = 0; i < REQUESTS_PER_PANEL; i++) {
+                        String path = "/applications/" + APPLICATION_ID + "/1/stages/" + i;
+                        byte[] page = get("http://localhost:" + JobViewDummyHttpServer.PORT + "/clusters/" + panelId + path);
+                        assertTrue("response of " + path + " differs", Arrays.equals(getResponse(path), page));
+                    }
+
+                    return REQUESTS_PER_PANEL;
+                }
+            }));
+        }
+
+        int completed = 0;
+        for (Future<Integer> result : results) {
+            completed += result.get(2, TimeUnit.MINUTES);
+        }
+        panels.shutdown();
+
+        HttpClientPool.EndpointStats stats = HttpClientPool.getInstance().getStats()
+                .get("http://127.0.0.1:" + sparkHistory.getAddress().getPort() + "|admin");
+        assertEquals(PANEL_COUNT * REQUESTS_PER_PANEL, completed);
+        assertNotNull(stats);
+        assertTrue(stats.connections <= HttpClientPool.MAX_CONNECTIONS_PER_ENDPOINT);
+    }
+
+    @Test
+    public void testUnknownPanelGetsNotFound() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + JobViewDummyHttpServer.PORT +
+                "/clusters/" + UUID.randomUUID() + "/applications").openConnection();
+        assertEquals(404, connection.getResponseCode());
+    }
+
+    private static byte[] get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    /**
+     * A stage list of several hundred KB, with non-ASCII names so that chars and bytes differ
+     */
+    private static byte[] getResponse(String path) {
+        byte[] response = responses.get(path);
+        if (response != null) {
+            return response;
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < STAGES_PER_RESPONSE; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format("{\"stageId\":%d,\"name\":\"%s — étape %d «données»\",\"numTasks\":%d}",
+                    i, path, i, i * 7));
+        }
+
+        response = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        responses.putIfAbsent(path, response);
+        return response;
+    }
+}
@@ -0,0 +1,126 @@
+package com.microsoft.azure.hdinsight.spark.jobs;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the cache the application responses the job view sees, with the disk tier in a temporary folder.
+ */
+public class JobViewResponseCacheTest {
+    private static final String CLUSTER_ID = "cluster-1";
+    private static final String APPLICATION_ID = "application_1500000000000_0001";
+    private static final String STAGES_KEY = "/" + CLUSTER_ID + "/applications/" + APPLICATION_ID + "/stages";
+
+    private File diskFolder;
+    private JobViewResponseCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        diskFolder = Files.createTempDirectory("job-view-cache").toFile();
+        cache = new JobViewResponseCache(diskFolder);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(diskFolder);
+    }
+
+    @Test
+    public void testCompletedSparkApplicationIsKeptOnDisk() {
+        cache.onApplicationResponse(CLUSTER_ID, "/applications/" + APPLICATION_ID,
+                "{\"id\":\"" + APPLICATION_ID + "\",\"attempts\":[{\"completed\":true},{\"completed\":true}]}");
+        cache.put(STAGES_KEY, CLUSTER_ID, "[stages]", true);
+
+        assertEquals("[stages]", cache.get(STAGES_KEY));
+        assertEquals(1, cache.getStats().memoryHits);
+
+        JobViewResponseCache restarted = new JobViewResponseCache(diskFolder);
+        assertEquals("[stages]", restarted.get(STAGES_KEY));
+        assertEquals(1, restarted.getStats().diskHits);
+        assertEquals("[stages]", restarted.get(STAGES_KEY));
+        assertEquals(1, restarted.getStats().memoryHits);
+    }
+
+    @Test
+    public void testRunningSparkApplicationIsNotPersisted() {
+        cache.onApplicationResponse(CLUSTER_ID, "/applications",
+                "[{\"id\":\"" + APPLICATION_ID + "\",\"attempts\":[{\"completed\":true},{\"completed\":false}]}]");
+        cache.put(STAGES_KEY, CLUSTER_ID, "[stages]", true);
+
+        assertEquals("[stages]", cache.get(STAGES_KEY));
+        assertNull(new JobViewResponseCache(diskFolder).get(STAGES_KEY));
+    }
+
+    @Test
+    public void testMutableResponseIsNotPersistedForCompletedApplication() {
+        cache.onApplicationResponse(CLUSTER_ID, "/cluster/apps/" + APPLICATION_ID,
+                "{\"app\":{\"id\":\"" + APPLICATION_ID + "\",\"state\":\"KILLED\"}}");
+        String logKey = "/" + CLUSTER_ID + "/jobhistory/logs/" + APPLICATION_ID + "/stderr";
+        cache.put(logKey, CLUSTER_ID, "log page", false);
+        cache.put(STAGES_KEY, CLUSTER_ID, "[stages]", true);
+
+        JobViewResponseCache restarted = new JobViewResponseCache(diskFolder);
+        assertNull(restarted.get(logKey));
+        assertEquals("[stages]", restarted.get(STAGES_KEY));
+    }
+
+    @Test
+    public void testApplicationsOfOtherClustersStayMutable() {
+        cache.onApplicationResponse("cluster-2", "/cluster/apps/" + APPLICATION_ID,
+                "{\"app\":{\"id\":\"" + APPLICATION_ID + "\",\"state\":\"FINISHED\"}}");
+        cache.put(STAGES_KEY, CLUSTER_ID, "[stages]", true);
+
+        assertNull(new JobViewResponseCache(diskFolder).get(STAGES_KEY));
+    }
+
+    @Test
+    public void testMutableEntryExpires() throws InterruptedException {
+        cache.put(STAGES_KEY, CLUSTER_ID, "[stages]", true);
+        assertEquals("[stages]", cache.get(STAGES_KEY));
+
+        Thread.sleep(JobViewResponseCache.MUTABLE_ENTRY_TTL_MS + 100);
+        assertNull(cache.get(STAGES_KEY));
+        assertEquals(0, cache.getStats().memoryEntries);
+        assertEquals(0, cache.getStats().memoryChars);
+    }
+
+    @Test
+    public void testMemoryTierIsBounded() {
+        String large = new String(new char[(int) (JobViewResponseCache.MAX_MEMORY_CHARS / 3)]).replace('\0', 'x');
+        for (int i = 0; i < 3; i++) {
+            cache.put("/" + CLUSTER_ID + "/large/" + i, CLUSTER_ID, large, false);
+        }
+        assertEquals(0, cache.getStats().evictions);
+
+        // a recent read keeps the first entry, so the next two are evicted instead
+        assertNotNull(cache.get("/" + CLUSTER_ID + "/large/0"));
+        cache.put("/" + CLUSTER_ID + "/large/3", CLUSTER_ID, large, false);
+        cache.put("/" + CLUSTER_ID + "/large/4", CLUSTER_ID, large, false);
+
+        JobViewResponseCache.Stats stats = cache.getStats();
+        assertTrue(stats.memoryChars <= JobViewResponseCache.MAX_MEMORY_CHARS);
+        assertEquals(2, stats.evictions);
+        assertNotNull(cache.get("/" + CLUSTER_ID + "/large/0"));
+        assertNull(cache.get("/" + CLUSTER_ID + "/large/1"));
+        assertNull(cache.get("/" + CLUSTER_ID + "/large/2"));
+    }
+
+    @Test
+    public void testClearDropsBothTiers() {
+        cache.onApplicationResponse(CLUSTER_ID, "/applications/" + APPLICATION_ID,
+                "{\"id\":\"" + APPLICATION_ID + "\",\"attempts\":[{\"completed\":true}]}");
+        cache.put(STAGES_KEY, CLUSTER_ID, "[stages]", true);
+        cache.clear();
+
+        assertNull(cache.get(STAGES_KEY));
+        assertNull(new JobViewResponseCache(diskFolder).get(STAGES_KEY));
+    }
+}
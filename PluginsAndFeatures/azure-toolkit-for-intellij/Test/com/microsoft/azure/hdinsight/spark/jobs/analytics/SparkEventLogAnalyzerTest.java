@@ -0,0 +1,244 @@
+package com.microsoft.azure.hdinsight.spark.jobs.analytics;
+
+import com.google.gson.Gson;
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Summarizes a synthetic event log of {@link #STAGE_COUNT} stages with {@link #TASKS_PER_STAGE} tasks each, written
+ * the way the Spark history server returns it: a zip of JSON lines mixed with large SQL plan events.
+ */
+public class SparkEventLogAnalyzerTest {
+    private static final String APPLICATION_ID = "application_1500000000000_0001";
+    private static final int STAGE_COUNT = 20;
+    private static final int TASKS_PER_STAGE = 5000;
+    private static final int SKEWED_STAGE = 7;
+    private static final long SKEWED_TASK_TIME = 60000;
+    private static final int RETRIED_STAGE = 3;
+    private static final int FAILED_TASKS = 25;
+    private static final long APPLICATION_START = 1500000000000L;
+
+    private static File eventLogFolder;
+    private static File eventLogZip;
+
+    // the exact values, accumulated while the log is written
+    private static final long[] executorRunTime = new long[STAGE_COUNT];
+    private static final long[] gcTime = new long[STAGE_COUNT];
+    private static final long[] shuffleReadBytes = new long[STAGE_COUNT];
+    private static final long[] shuffleWriteBytes = new long[STAGE_COUNT];
+    private static final long[][] taskTimes = new long[STAGE_COUNT][TASKS_PER_STAGE];
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        eventLogFolder = Files.createTempDirectory("spark-event-log").toFile();
+        eventLogZip = new File(eventLogFolder, "eventLogs.zip");
+        writeEventLog(eventLogZip);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        FileUtils.deleteQuietly(eventLogFolder);
+    }
+
+    @Test
+    public void testLargeEventLogSummary() throws IOException {
+        new File(eventLogFolder, SparkEventLogAnalyzer.SUMMARY_FILE_NAME).delete();
+        SparkApplicationSummary summary = SparkEventLogAnalyzer.getSummary(eventLogZip);
+
+        assertEquals(APPLICATION_ID, summary.getApplicationId());
+        assertEquals(eventLogZip.length(), summary.getSourceLength());
+        // the retried stage has a failed attempt and a successful one
+        assertEquals(STAGE_COUNT + 1, summary.getStages().size());
+        assertEquals((long) STAGE_COUNT * TASKS_PER_STAGE, summary.getTotalTasks());
+
+        for (SparkApplicationSummary.StageSummary stage : summary.getStages()) {
+            int id = stage.getStageId();
+            if (id == RETRIED_STAGE && stage.getAttemptId() == 0) {
+                assertEquals(FAILED_TASKS, stage.getFailedTasks());
+                assertEquals(0, stage.getCompletedTasks());
+                assertEquals("fetch failed", stage.getFailureReason());
+                continue;
+            }
+
+            assertEquals(TASKS_PER_STAGE, stage.getCompletedTasks());
+            assertEquals(executorRunTime[id], stage.getExecutorRunTime());
+            assertEquals(gcTime[id], stage.getGcTime());
+            assertEquals(shuffleReadBytes[id], stage.getShuffleReadBytes());
+            assertEquals(shuffleWriteBytes[id], stage.getShuffleWriteBytes());
+
+            long[] sorted = taskTimes[id].clone();
+            Arrays.sort(sorted);
+            assertEquals(sorted[TASKS_PER_STAGE - 1], stage.getTaskTimeMax());
+            assertWithin(sorted[TASKS_PER_STAGE / 2], stage.getTaskTimeMedian());
+            assertWithin(sorted[(int) Math.ceil(0.95 * TASKS_PER_STAGE) - 1], stage.getTaskTimeP95());
+        }
+
+        SparkApplicationSummary.StageSummary mostSkewed = summary.getMostSkewedStage();
+        assertNotNull(mostSkewed);
+        assertEquals(SKEWED_STAGE, mostSkewed.getStageId());
+        assertTrue(mostSkewed.getTaskSkew() > 50);
+    }
+
+    @Test
+    public void testSummaryIsReadBackUntilTheLogChanges() throws IOException {
+        File folder = Files.createTempDirectory("spark-event-log").toFile();
+        try {
+            File zip = new File(folder, eventLogZip.getName());
+            FileUtils.copyFile(eventLogZip, zip);
+            SparkApplicationSummary computed = SparkEventLogAnalyzer.getSummary(zip);
+            File summaryFile = new File(folder, SparkEventLogAnalyzer.SUMMARY_FILE_NAME);
+            assertTrue(summaryFile.exists());
+            assertTrue("summary of " + summaryFile.length() + " bytes", summaryFile.length() * 100 < zip.length());
+
+            SparkApplicationSummary saved = SparkEventLogAnalyzer.getSummary(zip);
+            assertEquals(new Gson().toJson(computed), new Gson().toJson(saved));
+
+            // a newer download of the log is analyzed again
+            try (FileOutputStream out = new FileOutputStream(zip, true)) {
+                out.write(new byte[16]);
+            }
+            assertEquals(zip.length(), SparkEventLogAnalyzer.getSummary(zip).getSourceLength());
+            assertEquals(zip.length(), readSummaryFile(summaryFile).getSourceLength());
+        } finally {
+            FileUtils.deleteQuietly(folder);
+        }
+    }
+
+    @Test
+    public void testSummaryRoundTrip() throws IOException {
+        SparkApplicationSummary summary = SparkEventLogAnalyzer.getSummary(eventLogZip);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        summary.writeTo(out);
+
+        SparkApplicationSummary read = SparkApplicationSummary.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(new Gson().toJson(summary), new Gson().toJson(read));
+    }
+
+    @Test
+    public void testJsonHasTheJobViewColumns() throws IOException {
+        // the job view gets the summary as JobUtils.getSparkEventLogSummary serializes it
+        String json = new Gson().toJson(SparkEventLogAnalyzer.getSummary(eventLogZip));
+        for (String column : new String[] {"stages", "stageId", "attemptId", "name", "numTasks", "failedTasks",
+                "submissionTime", "completionTime", "taskTimeMedian", "taskTimeP95", "taskTimeMax", "executorRunTime",
+                "gcTime", "shuffleReadBytes", "shuffleWriteBytes", "diskBytesSpilled"}) {
+            assertTrue(column + " is missing", json.contains("\"" + column + "\":"));
+        }
+    }
+
+    private static SparkApplicationSummary readSummaryFile(File summaryFile) throws IOException {
+        try (InputStream in = new FileInputStream(summaryFile)) {
+            return SparkApplicationSummary.readFrom(in);
+        }
+    }
+
+    /**
+     * The log-bucketed percentiles are within about 10% of the exact ones
+     */
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.1);
+    }
+
+    private static void writeEventLog(File zip) throws IOException {
+        Random random = new Random(11);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry(APPLICATION_ID + "_1"));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(String.format("{\"Event\":\"SparkListenerApplicationStart\",\"App Name\":\"synthetic\"," +
+                    "\"App ID\":\"%s\",\"Timestamp\":%d,\"User\":\"spark\"}\n", APPLICATION_ID, APPLICATION_START));
+
+            long time = APPLICATION_START;
+            StringBuilder plan = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                plan.append("{\\\"nodeName\\\":\\\"Exchange hashpartitioning\\\",\\\"simpleString\\\":\\\"node ").append(i).append("\\\"},");
+            }
+
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                // the SQL plans are the largest events of a real log, and are never parsed
+                writer.write("{\"Event\":\"org.apache.spark.sql.execution.ui.SparkListenerSQLExecutionStart\"," +
+                        "\"executionId\":" + stage + ",\"sparkPlanInfo\":\"[" + plan + "]\"}\n");
+
+                if (stage == RETRIED_STAGE) {
+                    writeStage(writer, stage, 0, time, time + 1000, "fetch failed");
+                    for (int task = 0; task < FAILED_TASKS; task++) {
+                        writer.write(String.format("{\"Event\":\"SparkListenerTaskEnd\",\"Stage ID\":%d,\"Stage Attempt ID\":0," +
+                                "\"Task End Reason\":{\"Reason\":\"FetchFailed\"},\"Task Info\":{\"Task ID\":%d," +
+                                "\"Launch Time\":%d,\"Finish Time\":%d,\"Failed\":true,\"Killed\":false}}\n",
+                                stage, task, time, time + 500));
+                    }
+                    time += 1000;
+                }
+
+                int attempt = stage == RETRIED_STAGE ? 1 : 0;
+                long stageStart = time;
+                for (int task = 0; task < TASKS_PER_STAGE; task++) {
+                    long taskTime = stage == SKEWED_STAGE && task == TASKS_PER_STAGE / 3
+                            ? SKEWED_TASK_TIME : 200 + random.nextInt(400) + stage * 50;
+                    long runTime = taskTime - 10;
+                    long gc = random.nextInt(20);
+                    long remoteRead = random.nextInt(1 << 20);
+                    long localRead = random.nextInt(1 << 18);
+                    long written = random.nextInt(1 << 20);
+                    taskTimes[stage][task] = taskTime;
+                    executorRunTime[stage] += runTime;
+                    gcTime[stage] += gc;
+                    shuffleReadBytes[stage] += remoteRead + localRead;
+                    shuffleWriteBytes[stage] += written;
+
+                    long launch = stageStart + task;
+                    writer.write(String.format("{\"Event\":\"SparkListenerTaskEnd\",\"Stage ID\":%d,\"Stage Attempt ID\":%d," +
+                            "\"Task Type\":\"ShuffleMapTask\",\"Task End Reason\":{\"Reason\":\"Success\"}," +
+                            "\"Task Info\":{\"Task ID\":%d,\"Index\":%d,\"Attempt\":0,\"Launch Time\":%d,\"Executor ID\":\"%d\"," +
+                            "\"Host\":\"wn%d\",\"Locality\":\"PROCESS_LOCAL\",\"Speculative\":false,\"Getting Result Time\":0," +
+                            "\"Finish Time\":%d,\"Failed\":false,\"Killed\":false,\"Accumulables\":[]}," +
+                            "\"Task Metrics\":{\"Executor Deserialize Time\":3,\"Executor Run Time\":%d,\"Result Size\":2000," +
+                            "\"JVM GC Time\":%d,\"Memory Bytes Spilled\":0,\"Disk Bytes Spilled\":0," +
+                            "\"Shuffle Read Metrics\":{\"Remote Blocks Fetched\":4,\"Local Blocks Fetched\":1,\"Fetch Wait Time\":2," +
+                            "\"Remote Bytes Read\":%d,\"Local Bytes Read\":%d,\"Total Records Read\":100}," +
+                            "\"Shuffle Write Metrics\":{\"Shuffle Bytes Written\":%d,\"Shuffle Write Time\":12000,\"Shuffle Records Written\":100}," +
+                            "\"Input Metrics\":{\"Bytes Read\":0,\"Records Read\":0}}}\n",
+                            stage, attempt, task, task, launch, task % 8, task % 8, launch + taskTime, runTime, gc,
+                            remoteRead, localRead, written));
+                }
+
+                time = stageStart + TASKS_PER_STAGE + SKEWED_TASK_TIME;
+                writeStage(writer, stage, attempt, stageStart, time, null);
+            }
+
+            writer.write(String.format("{\"Event\":\"SparkListenerApplicationEnd\",\"Timestamp\":%d}\n", time));
+            // the last line of a log being written may be cut off
+            writer.write("{\"Event\":\"SparkListenerTaskEnd\",\"Stage ID\":0,\"Stage Att");
+            writer.flush();
+            out.closeEntry();
+        }
+    }
+
+    private static void writeStage(Writer writer, int stage, int attempt, long submitted, long completed,
+                                   String failureReason) throws IOException {
+        String info = String.format("\"Stage Info\":{\"Stage ID\":%d,\"Stage Attempt ID\":%d,\"Stage Name\":\"map at Job.scala:%d\"," +
+                "\"Number of Tasks\":%d,\"Submission Time\":%d", stage, attempt, stage, TASKS_PER_STAGE, submitted);
+        writer.write("{\"Event\":\"SparkListenerStageSubmitted\"," + info + "}}\n");
+        writer.write("{\"Event\":\"SparkListenerStageCompleted\"," + info + ",\"Completion Time\":" + completed +
+                (failureReason == null ? "" : ",\"Failure Reason\":\"" + failureReason + "\"") + "}}\n");
+    }
+}
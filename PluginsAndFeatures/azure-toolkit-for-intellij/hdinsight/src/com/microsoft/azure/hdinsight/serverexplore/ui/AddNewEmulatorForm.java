@@ -292,10 +292,10 @@ public class AddNewEmulatorForm extends DialogWrapper {
     }
 
     private boolean checkLivyEndpoint() {
-        SparkBatchSubmission.getInstance().setCredentialsProvider(userName, password);
         HttpResponse httpResponse = null;
 
         try {
+            SparkBatchSubmission.getInstance().setCredentialsProvider(livyEndpoint + "/batches", userName, password);
             httpResponse = SparkBatchSubmission.getInstance().getAllBatchesSparkJobs(livyEndpoint + "/batches");
         } catch (Exception e) {
             return false;
@@ -305,10 +305,10 @@ public class AddNewEmulatorForm extends DialogWrapper {
     }
 
     private boolean checkSparkHistoryEndpoint() {
-        SparkBatchSubmission.getInstance().setCredentialsProvider(userName, password);
         HttpResponse httpResponse = null;
 
         try {
+            SparkBatchSubmission.getInstance().setCredentialsProvider(sparkHistoryEndpoint + "/api/v1/applications", userName, password);
             httpResponse = SparkBatchSubmission.getInstance().getHttpResponseViaGet(sparkHistoryEndpoint + "/api/v1/applications");
         } catch (Exception e) {
             return false;
@@ -318,10 +318,10 @@ public class AddNewEmulatorForm extends DialogWrapper {
     }
 
     private boolean checkAmbariEndpoint() {
-        SparkBatchSubmission.getInstance().setCredentialsProvider("admin", "admin");
         HttpResponse httpResponse = null;
 
         try {
+            SparkBatchSubmission.getInstance().setCredentialsProvider(ambariEndpoint, "admin", "admin");
             httpResponse = SparkBatchSubmission.getInstance().getHttpResponseViaGet(ambariEndpoint);
         } catch (Exception e) {
             return false;
@@ -21,33 +21,24 @@
  */
 package com.microsoft.azure.hdinsight.spark.common;
 
-import com.google.common.base.Joiner;
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
 import com.intellij.openapi.project.Project;
 import com.jcraft.jsch.*;
 import com.microsoft.azure.hdinsight.common.HDInsightUtil;
-import com.microsoft.azure.hdinsight.common.StreamUtil;
 import com.microsoft.azure.hdinsight.sdk.cluster.EmulatorClusterDetail;
 import com.microsoft.azure.hdinsight.sdk.cluster.IClusterDetail;
 import com.microsoft.azure.hdinsight.sdk.common.HDIException;
-import com.microsoft.azure.hdinsight.sdk.common.HttpResponse;
-import com.microsoft.azure.hdinsight.sdk.storage.HDStorageAccount;
 import com.microsoft.azure.hdinsight.sdk.storage.IHDIStorageAccount;
 import com.microsoft.azure.hdinsight.sdk.storage.StorageAccountTypeEnum;
-import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
 import com.microsoft.azuretools.azurecommons.helpers.StringHelper;
 import com.microsoft.intellij.hdinsight.messages.HDInsightBundle;
 import com.microsoft.intellij.util.AppInsightsCustomEvent;
 import com.microsoft.intellij.util.PluginUtil;
-import com.microsoft.tooling.msservices.helpers.CallableSingleArg;
-import com.microsoft.tooling.msservices.helpers.azure.sdk.StorageClientSDKManager;
-import com.microsoft.tooling.msservices.model.storage.BlobContainer;
-import com.microsoft.tooling.msservices.model.storage.ClientStorageAccount;
 
 import java.io.*;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -57,13 +48,9 @@ import java.util.regex.Pattern;
 public class SparkSubmitHelper {
     private static SparkSubmitHelper ourInstance = new SparkSubmitHelper();
 
-    private static final int MAX_INTERVAL_TIME = 5000;
-    private static final int MIN_INTERVAL_TIME = 1000;
-    private static final int INC_TIME = 100;
-
     private static final String applicationIdPattern = "Application report for ([^ ]*) \\(state: ACCEPTED\\)";
 
-    private SparkJobLog sparkJobLog;
+    private final List<String> jobLogLines = new ArrayList<>();
 
     public static SparkSubmitHelper getInstance() {
         return ourInstance;
@@ -74,7 +61,7 @@ public class SparkSubmitHelper {
 
     private String JobLogFolderName = "SparkJobLog";
     public String writeLogToLocalFile(@NotNull Project project) throws IOException{
-        if (sparkJobLog == null) {
+        if (jobLogLines.isEmpty()) {
             return null;
         }
 
@@ -94,7 +81,7 @@ public class SparkSubmitHelper {
 
             logFileWrite = new FileWriter(fullFileName);
             bufferedWriter = new BufferedWriter(logFileWrite);
-            for (String str : sparkJobLog.getLog()) {
+            for (String str : jobLogLines) {
                 bufferedWriter.write(str);
                 bufferedWriter.newLine();
             }
@@ -112,74 +99,66 @@ public class SparkSubmitHelper {
         }
     }
 
-    public void printRunningLogStreamingly(Project project, int id, IClusterDetail clusterDetail, Map<String, String> postEventProperty) throws IOException {
-        try {
-            boolean isFailedJob = false;
-            boolean isKilledJob = false;
-
-            int from_index = 0;
-            int pre_index;
-            int times = 0;
-            HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo("======================Begin printing out spark job log.=======================");
-            while (true) {
-                pre_index = from_index;
-                if (HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isJobKilled()) {
-                    isKilledJob = true;
-                    break;
-                }
-
-                from_index = printoutJobLog(project, id, from_index, clusterDetail);
-                HttpResponse statusHttpResponse = SparkBatchSubmission.getInstance().getBatchSparkJobStatus(getLivyConnectionURL(clusterDetail), id);
-
-                SparkSubmitResponse status = new Gson().fromJson(statusHttpResponse.getMessage(), new TypeToken<SparkSubmitResponse>() {
-                }.getType());
-
-                // only the lines of the log are same between two http requests, we try to get the job status
-                if (from_index == pre_index) {
-                    String finalStatus = status.getState().toLowerCase();
-                    if (finalStatus.equals("error") || finalStatus.equals("success") || finalStatus.equals("dead")) {
-                        if (finalStatus.equals("error") || finalStatus.equals("dead")) {
-                            isFailedJob = true;
-                        }
-
-                        if (!HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isJobKilled()) {
-                            printoutJobLog(project, id, from_index, clusterDetail);
-                            HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo("======================Finish printing out spark job log.=======================");
-                        } else {
-                            isKilledJob = true;
-                        }
-                        break;
-                    }
-                }
-
-                Thread.sleep(getIntervalTime(times));
-                times++;
+    /**
+     * Prints the job log into the tool window as the job runs, returns at once
+     * @param onFinished : called on a log thread once the whole log is printed, the job was killed or the log failed
+     */
+    public void printRunningLogStreamingly(final Project project, int id, IClusterDetail clusterDetail,
+                                           final Map<String, String> postEventProperty, @NotNull final Runnable onFinished) {
+        jobLogLines.clear();
+        HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo("======================Begin printing out spark job log.=======================");
+
+        // the job monitor polls the job state together with the other jobs of the cluster, the log is fetched after each poll
+        new SparkBatchJobLogTailer(getLivyConnectionURL(clusterDetail), id).follow(new SparkBatchJobLogTailer.JobLogListener() {
+            @Override
+            public void onLogLines(List<String> lines, int fromIndex) {
+                printoutJobLog(project, lines);
             }
 
+            @Override
+            public void onStateChanged(@NotNull String state) {
+                HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo(String.format("Info : Spark job state is %s", state));
+            }
 
-            if (isKilledJob) {
-                postEventProperty.put("IsKilled", "true");
-                AppInsightsCustomEvent.create(HDInsightBundle.message("SparkSubmissionButtonClickEvent"), null, postEventProperty);
-                return;
+            @Override
+            public boolean isCancelled() {
+                return HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isJobKilled();
             }
 
-            if (isFailedJob) {
-                postEventProperty.put("IsRunningSucceed", "false");
-                HDInsightUtil.getSparkSubmissionToolWindowManager(project).setError("Error : Your submitted job run failed");
-            } else {
-                postEventProperty.put("IsRunningSucceed", "true");
-                HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo("The Spark application completed successfully");
+            @Override
+            public void onFinished(@Nullable String finalState, @Nullable Exception failure) {
+                try {
+                    printFinalState(project, finalState, failure, postEventProperty);
+                } finally {
+                    onFinished.run();
+                }
             }
+        });
+    }
 
+    private void printFinalState(Project project, String finalState, Exception failure, Map<String, String> postEventProperty) {
+        boolean isKilled = HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isJobKilled();
+        if (failure != null && !isKilled) {
+            HDInsightUtil.getSparkSubmissionToolWindowManager(project).setError("Error : Failed to getting running log. Exception : " + failure.toString());
+            return;
+        }
+
+        if (finalState == null || isKilled) {
+            postEventProperty.put("IsKilled", "true");
             AppInsightsCustomEvent.create(HDInsightBundle.message("SparkSubmissionButtonClickEvent"), null, postEventProperty);
-        } catch (Exception e) {
-            if (HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isJobKilled() == false) {
-                HDInsightUtil.getSparkSubmissionToolWindowManager(project).setError("Error : Failed to getting running log. Exception : " + e.toString());
-            } else {
-                postEventProperty.put("IsKilled", "true");
-                AppInsightsCustomEvent.create(HDInsightBundle.message("SparkSubmissionButtonClickEvent"), null, postEventProperty);
-            }
+            return;
         }
+
+        HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo("======================Finish printing out spark job log.=======================");
+        if (!"success".equals(finalState)) {
+            postEventProperty.put("IsRunningSucceed", "false");
+            HDInsightUtil.getSparkSubmissionToolWindowManager(project).setError("Error : Your submitted job run failed");
+        } else {
+            postEventProperty.put("IsRunningSucceed", "true");
+            HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo("The Spark application completed successfully");
+        }
+
+        AppInsightsCustomEvent.create(HDInsightBundle.message("SparkSubmissionButtonClickEvent"), null, postEventProperty);
     }
 
     public String sftpFileToEmulator(Project project, String localFile, String folderPath, IClusterDetail clusterDetail) throws  IOException,HDIException, JSchException, SftpException {
@@ -224,98 +203,51 @@ public class SparkSubmitHelper {
         }
     }
 
-    public String uploadFileToHDFS(Project project, String localFile, IHDIStorageAccount storageAccount, String defaultContainerName, String uniqueFolderId)
+    public String uploadFileToHDFS(Project project, String localFile, IHDIStorageAccount storageAccount)
             throws Exception {
         final File file = new File(localFile);
-        if(storageAccount.getAccountType() == StorageAccountTypeEnum.BLOB) {
-            try (FileInputStream fileInputStream = new FileInputStream(file)) {
-                try (BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream)) {
-                    final CallableSingleArg<Void, Long> callable = new CallableSingleArg<Void, Long>() {
-                        @Override
-                        public Void call(Long uploadedBytes) throws Exception {
-                            double progress = ((double) uploadedBytes) / file.length();
-                            return null;
-                        }
-                    };
-
-                    HDStorageAccount blobStorageAccount = (HDStorageAccount) storageAccount;
-                    BlobContainer defaultContainer = getSparkClusterDefaultContainer(blobStorageAccount, defaultContainerName);
-                    String path = String.format("SparkSubmission/%s/%s", uniqueFolderId, file.getName());
-                    String uploadedPath = String.format("wasb://%s@%s/%s", defaultContainerName, blobStorageAccount.getFullStorageBlobName(), path);
-
-                    HDInsightUtil.showInfoOnSubmissionMessageWindow(project,
-                            String.format("Info : Begin uploading file %s to Azure Blob Storage Account %s ...", localFile, uploadedPath));
-
-                    StorageClientSDKManager.getManager().uploadBlobFileContent(
-                            blobStorageAccount.getConnectionString(),
-                            defaultContainer,
-                            path,
-                            bufferedInputStream,
-                            callable,
-                            1024 * 1024,
-                            file.length());
-
-                    HDInsightUtil.showInfoOnSubmissionMessageWindow(project, String.format("Info : Submit file to azure blob '%s' successfully.", uploadedPath));
-                    return uploadedPath;
-                }
-            }
-        } else if(storageAccount.getAccountType() == StorageAccountTypeEnum.ADLS) {
-            String uploadPath = String.format("adl://%s.azuredatalakestore.net%s%s", storageAccount.getName(), storageAccount.getDefaultContainerOrRootPath(), "SparkSubmission");
-            HDInsightUtil.showInfoOnSubmissionMessageWindow(project,
-                    String.format("Info : Begin uploading file %s to Azure Datalake store %s ...", localFile, uploadPath));
-            String uploadedPath = StreamUtil.uploadArtifactToADLS(file, storageAccount);
-            HDInsightUtil.showInfoOnSubmissionMessageWindow(project,
-                    String.format("Info : Submit file to Azure Datalake store '%s' successfully.", uploadedPath));
-            return uploadedPath;
+        final String storageName;
+        if (storageAccount.getAccountType() == StorageAccountTypeEnum.BLOB) {
+            storageName = "Azure Blob Storage Account";
+        } else if (storageAccount.getAccountType() == StorageAccountTypeEnum.ADLS) {
+            storageName = "Azure Datalake store";
         } else {
             throw new UnsupportedOperationException("unknown storage account type");
         }
-    }
 
-    private int printoutJobLog(Project project, int id, int from_index, IClusterDetail clusterDetail) throws IOException {
-        HttpResponse httpResponse = SparkBatchSubmission.getInstance().getBatchJobFullLog( getLivyConnectionURL(clusterDetail), id);
-        sparkJobLog = new Gson().fromJson(httpResponse.getMessage(), new TypeToken<SparkJobLog>() {
-        }.getType());
-
-        if (!HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isApplicationGenerated()) {
-            String sparkLogs = Joiner.on("").join(sparkJobLog.getLog());
-            String applicationId = getApplicationIdFromYarnLog(sparkLogs);
-            if (applicationId != null) {
-                HDInsightUtil.getSparkSubmissionToolWindowManager(project).setBrowserButtonState(true);
-                HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().setApplicationIdGenerated();
-                HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().setApplicationId(applicationId);
-            }
+        SparkArtifactStore.Artifact artifact = SparkArtifactStore.getInstance().locate(file, storageAccount);
+        if (artifact.isStored()) {
+            HDInsightUtil.showInfoOnSubmissionMessageWindow(project,
+                    String.format("Info : File %s is unchanged since it was uploaded to %s '%s', skip uploading.", localFile, storageName, artifact.getUri()));
+            return artifact.getUri();
         }
 
-        int counter = 0;
-        if (sparkJobLog.getLog().size() > 0) {
-            for (String line : sparkJobLog.getLog()) {
-                if (counter >= from_index && !StringHelper.isNullOrWhiteSpace(line)) {
-                    HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo(line, true);
-                }
+        HDInsightUtil.showInfoOnSubmissionMessageWindow(project,
+                String.format("Info : Begin uploading file %s to %s %s ...", localFile, storageName, artifact.getUri()));
+        SparkArtifactStore.getInstance().upload(artifact);
+        HDInsightUtil.showInfoOnSubmissionMessageWindow(project,
+                String.format("Info : Submit file to %s '%s' successfully.", storageName, artifact.getUri()));
+        return artifact.getUri();
+    }
 
-                counter++;
+    private void printoutJobLog(Project project, List<String> lines) {
+        jobLogLines.addAll(lines);
+        for (String line : lines) {
+            if (!HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isApplicationGenerated()) {
+                String applicationId = getApplicationIdFromYarnLog(line);
+                if (applicationId != null) {
+                    HDInsightUtil.getSparkSubmissionToolWindowManager(project).setBrowserButtonState(true);
+                    HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().setApplicationIdGenerated();
+                    HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().setApplicationId(applicationId);
+                }
             }
-        }
 
-        return sparkJobLog.getTotal();
-    }
-
-    private BlobContainer getSparkClusterDefaultContainer(ClientStorageAccount storageAccount, String dealtContainerName) throws AzureCmdException {
-        List<BlobContainer> containerList = StorageClientSDKManager.getManager().getBlobContainers(storageAccount.getConnectionString());
-        for (BlobContainer container : containerList) {
-            if (container.getName().toLowerCase().equals(dealtContainerName.toLowerCase())) {
-                return container;
+            if (!StringHelper.isNullOrWhiteSpace(line)) {
+                HDInsightUtil.getSparkSubmissionToolWindowManager(project).setInfo(line, true);
             }
         }
-
-        return null;
     }
 
-    private int getIntervalTime(int times) {
-        int interval = MIN_INTERVAL_TIME + times * INC_TIME;
-        return interval > MAX_INTERVAL_TIME ? MAX_INTERVAL_TIME : interval;
-    }
 
     private String getApplicationIdFromYarnLog(String yarnLog) {
         Pattern r = Pattern.compile(applicationIdPattern);
@@ -337,10 +269,30 @@ public class SparkSubmitHelper {
     public static String uploadFileToHDFS(@NotNull Project project, @NotNull IClusterDetail selectedClusterDetail, @NotNull String buildJarPath) throws Exception {
 
         HDInsightUtil.showInfoOnSubmissionMessageWindow(project, String.format("Info : Get target jar from %s.", buildJarPath));
-        String uniqueFolderId = UUID.randomUUID().toString();
 
-        return SparkSubmitHelper.getInstance().uploadFileToHDFS(project, buildJarPath,
-                selectedClusterDetail.getStorageAccount(), selectedClusterDetail.getStorageAccount().getDefaultContainerOrRootPath(), uniqueFolderId);
+        return SparkSubmitHelper.getInstance().uploadFileToHDFS(project, buildJarPath, selectedClusterDetail.getStorageAccount());
+    }
+
+    /**
+     * Uploads the referenced jars which are local files, so the dependencies are stored apart from the application
+     * jar and are only uploaded again when they change
+     * @return the referenced jars with the local files replaced by their uploaded paths
+     */
+    public static List<String> uploadReferencedJarsToHDFS(@NotNull Project project, @NotNull IClusterDetail selectedClusterDetail, List<String> referencedJars) throws Exception {
+        if (referencedJars == null) {
+            return null;
+        }
+
+        List<String> uploadedJars = new ArrayList<String>();
+        for (String jar : referencedJars) {
+            if (new File(jar).isFile()) {
+                uploadedJars.add(SparkSubmitHelper.getInstance().uploadFileToHDFS(project, jar, selectedClusterDetail.getStorageAccount()));
+            } else {
+                uploadedJars.add(jar);
+            }
+        }
+
+        return uploadedJars;
     }
 
     public static boolean isLocalArtifactPath(String path) {
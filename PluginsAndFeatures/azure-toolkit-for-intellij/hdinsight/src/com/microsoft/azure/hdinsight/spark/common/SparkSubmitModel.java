@@ -224,10 +224,18 @@ public class SparkSubmitModel {
                 SparkSubmitHelper.uploadFileToEmulator(project, selectedClusterDetail, buildJarPath) :
                 SparkSubmitHelper.uploadFileToHDFS(project, selectedClusterDetail, buildJarPath);
         submissionParameter.setFilePath(filePath);
+
+        if (!selectedClusterDetail.isEmulator()) {
+            submissionParameter.setReferencedJars(
+                    SparkSubmitHelper.uploadReferencedJarsToHDFS(project, selectedClusterDetail, submissionParameter.getReferencedJars()));
+        }
     }
 
-    private void tryToCreateBatchSparkJob(@NotNull final IClusterDetail selectedClusterDetail) throws HDIException,IOException {
-        SparkBatchSubmission.getInstance().setCredentialsProvider(selectedClusterDetail.getHttpUserName(), selectedClusterDetail.getHttpPassword());
+    /**
+     * @return true if the job was submitted, {@link #onSubmissionFinished} is then called once its log is printed
+     */
+    private boolean tryToCreateBatchSparkJob(@NotNull final IClusterDetail selectedClusterDetail) throws HDIException,IOException {
+        SparkBatchSubmission.getInstance().setCredentialsProvider(SparkSubmitHelper.getLivyConnectionURL(selectedClusterDetail), selectedClusterDetail.getHttpUserName(), selectedClusterDetail.getHttpPassword());
         HttpResponse response = SparkBatchSubmission.getInstance().createBatchSparkJob(SparkSubmitHelper.getLivyConnectionURL(selectedClusterDetail), submissionParameter);
 
         if (response.getCode() == 201 || response.getCode() == 200) {
@@ -245,13 +253,21 @@ public class SparkSubmitModel {
             HDInsightUtil.getSparkSubmissionToolWindowManager(project).setSparkApplicationStopInfo(selectedClusterDetail, sparkSubmitResponse.getId());
             HDInsightUtil.getSparkSubmissionToolWindowManager(project).setStopButtonState(true);
             HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().resetJobStateManager();
-            SparkSubmitHelper.getInstance().printRunningLogStreamingly(project, sparkSubmitResponse.getId(), selectedClusterDetail, postEventProperty);
+            SparkSubmitHelper.getInstance().printRunningLogStreamingly(project, sparkSubmitResponse.getId(), selectedClusterDetail, postEventProperty,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            onSubmissionFinished(selectedClusterDetail);
+                        }
+                    });
+            return true;
         } else {
             HDInsightUtil.showErrorMessageOnSubmissionMessageWindow(project,
                     String.format("Error : Failed to submit to spark cluster. error code : %d, reason :  %s.", response.getCode(), response.getContent()));
             postEventProperty.put("IsSubmitSucceed", "false");
             postEventProperty.put("SubmitFailedReason", response.getContent());
             AppInsightsCustomEvent.create(HDInsightBundle.message("SparkSubmissionButtonClickEvent"), null, postEventProperty);
+            return false;
         }
     }
 
@@ -320,31 +336,39 @@ public class SparkSubmitModel {
                     return;
                 }
 
+                boolean isSubmitted = false;
                 try {
                     uploadFileToCluster(selectedClusterDetail, selectedArtifactName);
-                    tryToCreateBatchSparkJob(selectedClusterDetail);
+                    isSubmitted = tryToCreateBatchSparkJob(selectedClusterDetail);
                 } catch (Exception exception) {
                     showFailedSubmitErrorMessage(exception);
                 } finally {
-                    HDInsightUtil.getSparkSubmissionToolWindowManager(project).setStopButtonState(false);
-                    HDInsightUtil.getSparkSubmissionToolWindowManager(project).setBrowserButtonState(false);
-
-                    if (HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isApplicationGenerated()) {
-                        String applicationId = HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().getApplicationId();
-
-                        // ApplicationYarnUrl example : https://sparklivylogtest.azurehdinsight.net/yarnui/hn/cluster/app/application_01_111
-                        String applicationYarnUrl = String.format(SparkYarnLogUrlFormat, selectedClusterDetail.getConnectionUrl(), applicationId);
-                        HDInsightUtil.getSparkSubmissionToolWindowManager(project).setHyperLinkWithText("See detailed job information from ", applicationYarnUrl, applicationYarnUrl);
-
-                        writeJobLogToLocal();
+                    // a submitted job finishes once its log is printed, without holding this thread
+                    if (!isSubmitted) {
+                        onSubmissionFinished(selectedClusterDetail);
                     }
-
-                    HDInsightUtil.getJobStatusManager(project).setJobRunningState(false);
                 }
             }
         });
     }
 
+    private void onSubmissionFinished(@NotNull final IClusterDetail selectedClusterDetail) {
+        HDInsightUtil.getSparkSubmissionToolWindowManager(project).setStopButtonState(false);
+        HDInsightUtil.getSparkSubmissionToolWindowManager(project).setBrowserButtonState(false);
+
+        if (HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().isApplicationGenerated()) {
+            String applicationId = HDInsightUtil.getSparkSubmissionToolWindowManager(project).getJobStatusManager().getApplicationId();
+
+            // ApplicationYarnUrl example : https://sparklivylogtest.azurehdinsight.net/yarnui/hn/cluster/app/application_01_111
+            String applicationYarnUrl = String.format(SparkYarnLogUrlFormat, selectedClusterDetail.getConnectionUrl(), applicationId);
+            HDInsightUtil.getSparkSubmissionToolWindowManager(project).setHyperLinkWithText("See detailed job information from ", applicationYarnUrl, applicationYarnUrl);
+
+            writeJobLogToLocal();
+        }
+
+        HDInsightUtil.getJobStatusManager(project).setJobRunningState(false);
+    }
+
     private void postEventAction() {
         postEventProperty.clear();
         postEventProperty.put("ClusterName", submissionParameter.getClusterName());
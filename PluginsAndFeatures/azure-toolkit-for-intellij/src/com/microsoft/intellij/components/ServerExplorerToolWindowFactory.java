@@ -61,6 +61,7 @@ import java.beans.PropertyChangeListener;
 import java.net.URL;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ServerExplorerToolWindowFactory implements ToolWindowFactory, PropertyChangeListener {
@@ -265,9 +266,12 @@ public class ServerExplorerToolWindowFactory implements ToolWindowFactory, Prope
 
             switch (e.getAction()) {
                 case add:
-                    // create child tree nodes for the new nodes
+                    // create child tree nodes for the new nodes, at their place in the list
+                    List<Node> childNodes = (List<Node>) e.getSource();
                     for (Node childNode : (Collection<Node>) e.getNewItems()) {
-                        treeNode.add(createTreeNode(childNode, project));
+                        int index = childNodes.indexOf(childNode);
+                        treeNode.insert(createTreeNode(childNode, project),
+                                index < 0 ? treeNode.getChildCount() : Math.min(index, treeNode.getChildCount()));
                     }
                     break;
                 case remove:
@@ -26,8 +26,10 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.microsoft.azure.docker.AzureDockerHostsManager;
 import com.microsoft.azure.docker.model.AzureDockerImageInstance;
+import com.microsoft.azure.docker.model.AzureDockerUploadResult;
 import com.microsoft.azure.docker.model.DockerHost;
 import com.microsoft.azure.docker.ops.AzureDockerContainerOps;
+import com.microsoft.azure.docker.ops.AzureDockerHostProvisioner;
 import com.microsoft.azure.docker.ops.AzureDockerImageOps;
 import com.microsoft.azure.docker.ops.AzureDockerSSHOps;
 import com.microsoft.azure.docker.ops.AzureDockerVMOps;
@@ -154,42 +156,25 @@ public final class AzureDeploymentProgressNotification {
             KeyVaultClient keyVaultClient = dockerManager.getSubscriptionsMap().get(dockerImageInstance.sid).keyVaultClient;
 
             if (dockerImageInstance.hasNewDockerHost) {
-              msg = String.format("Creating new virtual machine %s ...", dockerImageInstance.host.name);
-              notifyProgress(descriptionTask, startDate, null, 10, msg);
-              if (AzureDockerUtils.DEBUG) System.out.println("Creating new virtual machine: " + new Date().toString());
-              AzureDockerVMOps.createDockerHostVM(azureClient, dockerImageInstance.host);
-              if (AzureDockerUtils.DEBUG) System.out.println("Done creating new virtual machine: " + new Date().toString());
-
-              msg = String.format("Get new VM details...");
-              notifyProgress(descriptionTask, startDate, null, 30, msg);
-              if (AzureDockerUtils.DEBUG) System.out.println("Getting the new Docker host details: " + new Date().toString());
-              VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerImageInstance.host.hostVM.resourceGroupName, dockerImageInstance.host.hostVM.name);
-              if (vm != null) {
-                DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
-                if (updatedHost != null) {
-                  dockerImageInstance.host.hostVM = updatedHost.hostVM;
-                  dockerImageInstance.host.apiUrl = updatedHost.apiUrl;
+              // the key vault is still created in the background once the host is up, so it is not part of the provisioning
+              AzureDockerHostProvisioner provisioner = new AzureDockerHostProvisioner(azureClient, null, dockerImageInstance.host);
+              provisioner.provision(new AzureDockerHostProvisioner.ProgressListener() {
+                @Override
+                public void onStepChanged(AzureDockerHostProvisioner.Step step, AzureDockerHostProvisioner.StepState state,
+                                          Throwable error, int completed, int total) {
+                  if (state == AzureDockerHostProvisioner.StepState.RUNNING) {
+                    String stepMsg = String.format("%s for %s ...", step.getDescription(), dockerImageInstance.host.name);
+                    notifyProgress(descriptionTask, startDate, null, 10 + 40 * completed / total, stepMsg);
+                  }
+                  if (AzureDockerUtils.DEBUG) System.out.format("%s %s: %s\n", step.getDescription(), state, new Date().toString());
                 }
-              }
-              if (AzureDockerUtils.DEBUG) System.out.println("Done getting the new Docker host details: " + new Date().toString());
-
-              msg = String.format("Waiting for virtual machine to be up %s ...", dockerImageInstance.host.name);
-              notifyProgress(descriptionTask, startDate, null, 35, msg);
-              if (AzureDockerUtils.DEBUG) System.out.println("Waiting for virtual machine to be up: " + new Date().toString());
-              AzureDockerVMOps.waitForVirtualMachineStartup(azureClient, dockerImageInstance.host);
-              if (AzureDockerUtils.DEBUG) System.out.println("Done Waiting for virtual machine to be up: " + new Date().toString());
-
-              msg = String.format("Configuring Docker service for %s ...", dockerImageInstance.host.name);
-              notifyProgress(descriptionTask, startDate, null, 45, msg);
-              if (AzureDockerUtils.DEBUG) System.out.println("Configuring Docker host: " + new Date().toString());
-              AzureDockerVMOps.installDocker(dockerImageInstance.host);
-              if (AzureDockerUtils.DEBUG) System.out.println("Done configuring Docker host: " + new Date().toString());
+              });
 
               msg = String.format("Updating Docker hosts ...");
               notifyProgress(descriptionTask, startDate, null, 50, msg);
               if (AzureDockerUtils.DEBUG) System.out.println("Refreshing docker hosts: " + new Date().toString());
 //            dockerManager.refreshDockerHostDetails();
-              vm = azureClient.virtualMachines().getByResourceGroup(dockerImageInstance.host.hostVM.resourceGroupName, dockerImageInstance.host.hostVM.name);
+              VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerImageInstance.host.hostVM.resourceGroupName, dockerImageInstance.host.hostVM.name);
               if (vm != null) {
                 DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
                 if (updatedHost != null) {
@@ -230,8 +215,12 @@ public final class AzureDeploymentProgressNotification {
             msg = String.format("Uploading Dockerfile and artifact %s on %s ...", dockerImageInstance.artifactName, dockerImageInstance.host.name);
             notifyProgress(descriptionTask, startDate, null, 60, msg);
             if (AzureDockerUtils.DEBUG) System.out.println("Uploading Dockerfile and artifact: " + new Date().toString());
-            AzureDockerVMOps.uploadDockerfileAndArtifact(dockerImageInstance, dockerImageInstance.host.session);
+            AzureDockerUploadResult uploadResult = AzureDockerVMOps.uploadDockerfileAndArtifact(dockerImageInstance, dockerImageInstance.host.session);
             if (AzureDockerUtils.DEBUG) System.out.println("Uploading Dockerfile and artifact: " + new Date().toString());
+            if (uploadResult.isDelta) {
+                msg = String.format("Uploaded changes of %s (%d of %d bytes) ...", uploadResult.fileName, uploadResult.bytesSent, uploadResult.fileSize);
+                notifyProgress(descriptionTask, startDate, null, 70, msg);
+            }
 
             msg = String.format("Creating Docker image %s on %s ...", dockerImageInstance.dockerImageName, dockerImageInstance.host.name);
             notifyProgress(descriptionTask, startDate, null, 80, msg);
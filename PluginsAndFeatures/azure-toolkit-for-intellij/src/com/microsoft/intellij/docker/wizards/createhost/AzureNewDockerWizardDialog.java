@@ -21,6 +21,8 @@
  */
 package com.microsoft.intellij.docker.wizards.createhost;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
@@ -30,19 +32,22 @@ import com.intellij.ui.wizard.WizardDialog;
 import com.microsoft.azure.docker.AzureDockerHostsManager;
 import com.microsoft.azure.docker.model.AzureDockerPreferredSettings;
 import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.ops.AzureDockerHostProvisioner;
 import com.microsoft.azure.docker.ops.AzureDockerVMOps;
 import com.microsoft.azure.docker.ops.utils.AzureDockerUtils;
+import com.microsoft.azure.keyvault.KeyVaultClient;
 import com.microsoft.azure.management.Azure;
 import com.microsoft.azure.management.compute.VirtualMachine;
 import com.microsoft.azuretools.utils.AzureUIRefreshCore;
 import com.microsoft.azuretools.utils.AzureUIRefreshEvent;
-import com.microsoft.intellij.docker.utils.AzureDockerUIResources;
 import com.microsoft.intellij.util.PluginUtil;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AzureNewDockerWizardDialog extends WizardDialog<AzureNewDockerWizardModel> {
   private static final Logger LOGGER = Logger.getInstance(AzureNewDockerWizardDialog.class);
@@ -124,62 +129,50 @@ public class AzureNewDockerWizardDialog extends WizardDialog<AzureNewDockerWizar
             }
           }
 
-          progressIndicator.setFraction(.10);
-          progressIndicator.setText2(String.format("Creating new virtual machine %s ...", dockerHost.name));
-          if (AzureDockerUtils.DEBUG) System.out.println("Creating new virtual machine: " + new Date().toString());
-          AzureDockerVMOps.createDockerHostVM(azureClient, dockerHost);
-          if (AzureDockerUtils.DEBUG) System.out.println("Done creating new virtual machine: " + new Date().toString());
-          if (progressIndicator.isCanceled()) {
-            if (displayWarningOnCreateHostCancelAction() == 1) {
-              return;
-            }
-          }
-
-          progressIndicator.setFraction(.60);
-          progressIndicator.setIndeterminate(true);
-          progressIndicator.setText2("Getting the new Docker virtual machines details...");
-          if (AzureDockerUtils.DEBUG) System.out.println("Getting the new Docker virtual machines details: " + new Date().toString());
-          // dockerManager.refreshDockerHostDetails();
-          VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerHost.hostVM.resourceGroupName, dockerHost.hostVM.name);
-          if (vm != null) {
-            DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
-            if (updatedHost != null) {
-              dockerHost.hostVM = updatedHost.hostVM;
-              dockerHost.apiUrl = updatedHost.apiUrl;
-            }
-          }
-          if (AzureDockerUtils.DEBUG) System.out.println("Done getting the new Docker virtual machines details: " + new Date().toString());
-          if (progressIndicator.isCanceled()) {
-            if (displayWarningOnCreateHostCancelAction() == 1) {
-              return;
-            }
-          }
+          // the host's resources and setup steps run in parallel where they can; a failed step can be retried
+          KeyVaultClient keyVaultClient = dockerManager.getSubscriptionsMap().get(dockerHost.sid).keyVaultClient;
+          AzureDockerHostProvisioner provisioner = new AzureDockerHostProvisioner(azureClient, keyVaultClient, dockerHost);
+          AzureDockerHostProvisioner.ProgressListener progressListener = new AzureDockerHostProvisioner.ProgressListener() {
+            // the steps run in parallel and each of them reports here from its own thread
+            private final AtomicBoolean isCancelHandled = new AtomicBoolean();
 
-          progressIndicator.setFraction(.65);
-          progressIndicator.setText2(String.format("Waiting for virtual machine %s to be up...", dockerHost.name));
-          if (AzureDockerUtils.DEBUG) System.out.println("Waiting for virtual machine to be up: " + new Date().toString());
-          AzureDockerVMOps.waitForVirtualMachineStartup(azureClient, dockerHost);
-          if (AzureDockerUtils.DEBUG) System.out.println("Done Waiting for virtual machine to be up: " + new Date().toString());
-          if (progressIndicator.isCanceled()) {
-            if (displayWarningOnCreateHostCancelAction() == 1) {
-              return;
+            @Override
+            public void onStepChanged(AzureDockerHostProvisioner.Step step, AzureDockerHostProvisioner.StepState state,
+                                      Throwable error, int completed, int total) {
+              if (state == AzureDockerHostProvisioner.StepState.RUNNING) {
+                progressIndicator.setText2(String.format("%s for %s ...", step.getDescription(), dockerHost.name));
+              }
+              progressIndicator.setFraction(.10 + .80 * completed / total);
+              if (AzureDockerUtils.DEBUG) System.out.format("%s %s: %s\n", step.getDescription(), state, new Date().toString());
+              if (progressIndicator.isCanceled() && isCancelHandled.compareAndSet(false, true)) {
+                // ask on the event dispatch thread and let the steps go on meanwhile
+                ApplicationManager.getApplication().invokeLater(new Runnable() {
+                  @Override
+                  public void run() {
+                    if (displayWarningOnCreateHostCancelAction() == 1) {
+                      provisioner.cancel();
+                    }
+                  }
+                }, ModalityState.any());
+              }
             }
-          }
-
-          progressIndicator.setFraction(.75);
-          progressIndicator.setText2(String.format("Configuring Docker service for %s ...", dockerHost.apiUrl));
-          if (AzureDockerUtils.DEBUG) System.out.println("Configuring Docker host: " + new Date().toString());
-          AzureDockerVMOps.installDocker(dockerHost);
-          if (AzureDockerUtils.DEBUG) System.out.println("Done configuring Docker host: " + new Date().toString());
-          if (AzureDockerUtils.DEBUG) System.out.println("Finished setting up Docker host");
-          if (progressIndicator.isCanceled()) {
-            if (displayWarningOnCreateHostCancelAction() == 1) {
-              return;
+          };
+          while (true) {
+            try {
+              provisioner.provision(progressListener);
+              break;
+            } catch (Exception e) {
+              if (progressIndicator.isCanceled()) {
+                return;
+              }
+              if (displayRetryOnCreateHostFailure(e) != 1) {
+                throw e;
+              }
             }
           }
-
-          if (dockerHost.certVault != null && dockerHost.certVault.hostName != null) {
-            AzureDockerUIResources.createDockerKeyVault(model.getProject(), dockerHost, dockerManager);
+          if (provisioner.getState(AzureDockerHostProvisioner.Step.KEY_VAULT) == AzureDockerHostProvisioner.StepState.DONE) {
+            dockerManager.refreshDockerVaults();
+            dockerManager.refreshDockerVaultDetails();
           }
 
           progressIndicator.setFraction(.90);
@@ -187,7 +180,7 @@ public class AzureNewDockerWizardDialog extends WizardDialog<AzureNewDockerWizar
           progressIndicator.setText2("Refreshing the Docker virtual machines details...");
           if (AzureDockerUtils.DEBUG) System.out.println("Refreshing Docker hosts details: " + new Date().toString());
           // dockerManager.refreshDockerHostDetails();
-          vm = azureClient.virtualMachines().getByResourceGroup(dockerHost.hostVM.resourceGroupName, dockerHost.hostVM.name);
+          VirtualMachine vm = azureClient.virtualMachines().getByResourceGroup(dockerHost.hostVM.resourceGroupName, dockerHost.hostVM.name);
           if (vm != null) {
             DockerHost updatedHost = AzureDockerVMOps.getDockerHost(vm, dockerManager.getDockerVaultsMap());
             if (updatedHost != null) {
@@ -225,14 +218,41 @@ public class AzureNewDockerWizardDialog extends WizardDialog<AzureNewDockerWizar
 
   }
 
+  private int displayRetryOnCreateHostFailure(Exception e) {
+    return showOptionDialog(
+        "An error occurred while attempting to create Docker host.\n" + e.getMessage() + "\n\nDo you want to retry the failed steps? The steps which succeeded will not run again.",
+        "Failed to Create Docker Host",
+        new String[]{"Cancel", "Retry"});
+  }
+
   private int displayWarningOnCreateHostCancelAction(){
-    return JOptionPane.showOptionDialog(null,
+    return showOptionDialog(
         "This action can leave the Docker virtual machine host in an partial setup state and which can cause publishing to a Docker container to fail!\n\n Are you sure you want this?",
         "Stop Create Docker Host",
-        JOptionPane.YES_NO_OPTION,
-        JOptionPane.QUESTION_MESSAGE,
-        PluginUtil.getIcon("/icons/logwarn.png"),
-        new String[]{"Cancel", "OK"},
-        null);
+        new String[]{"Cancel", "OK"});
+  }
+
+  // the creation runs in a background task, while Swing dialogs must only be shown on the event dispatch thread
+  private static int showOptionDialog(final String message, final String title, final String[] options) {
+    final AtomicInteger option = new AtomicInteger(JOptionPane.CLOSED_OPTION);
+    Runnable showDialog = new Runnable() {
+      @Override
+      public void run() {
+        option.set(JOptionPane.showOptionDialog(null,
+            message,
+            title,
+            JOptionPane.YES_NO_OPTION,
+            JOptionPane.QUESTION_MESSAGE,
+            PluginUtil.getIcon("/icons/logwarn.png"),
+            options,
+            null));
+      }
+    };
+    if (ApplicationManager.getApplication().isDispatchThread()) {
+      showDialog.run();
+    } else {
+      ApplicationManager.getApplication().invokeAndWait(showDialog, ModalityState.any());
+    }
+    return option.get();
   }
 }
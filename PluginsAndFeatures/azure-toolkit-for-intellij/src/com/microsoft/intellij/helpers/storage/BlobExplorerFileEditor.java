@@ -48,6 +48,7 @@ import com.microsoft.tooling.msservices.model.storage.BlobContainer;
 import com.microsoft.tooling.msservices.model.storage.BlobDirectory;
 import com.microsoft.tooling.msservices.model.storage.BlobFile;
 import com.microsoft.tooling.msservices.model.storage.BlobItem;
+import com.microsoft.tooling.msservices.model.storage.BlobSyncResult;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import sun.misc.IOUtils;
@@ -77,6 +78,8 @@ import java.util.concurrent.Future;
 import static com.microsoft.intellij.ui.messages.AzureBundle.message;
 
 public class BlobExplorerFileEditor implements FileEditor {
+    private static final int MAX_SYNC_PREVIEW_PATHS = 50;
+
     private JPanel mainPanel;
     private JTextField queryTextField;
     private JTable blobListTable;
@@ -229,10 +232,14 @@ public class BlobExplorerFileEditor implements FileEditor {
 
                     if (me.getButton() == 3) {
                         BlobFile fileSelection = getFileSelection();
+                        BlobDirectory folderSelection = getFolderSelection();
 
                         if (fileSelection != null) {
                             JPopupMenu popup = createTablePopUp();
                             popup.show(me.getComponent(), me.getX(), me.getY());
+                        } else if (folderSelection != null) {
+                            JPopupMenu popup = createFolderPopUp(folderSelection);
+                            popup.show(me.getComponent(), me.getX(), me.getY());
                         }
                     }
                 }
@@ -478,14 +485,141 @@ public class BlobExplorerFileEditor implements FileEditor {
             }
         });
 
+        JMenuItem uploadFolderMenu = new JMenuItem("Upload Folder Here...");
+        uploadFolderMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                BlobDirectory currentDirectory = directoryQueue.peekLast();
+
+                syncFolder(currentDirectory == null ? "" : currentDirectory.getPath(), true);
+            }
+        });
+
         menu.add(openMenu);
         menu.add(saveAsMenu);
         menu.add(copyMenu);
         menu.add(deleteMenu);
+        menu.addSeparator();
+        menu.add(uploadFolderMenu);
 
         return menu;
     }
 
+    private JPopupMenu createFolderPopUp(final BlobDirectory folderSelection) {
+        JPopupMenu menu = new JPopupMenu();
+
+        JMenuItem uploadMenu = new JMenuItem("Upload Folder Into...");
+        uploadMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                syncFolder(folderSelection.getPath(), true);
+            }
+        });
+
+        JMenuItem downloadMenu = new JMenuItem("Download Folder...");
+        downloadMenu.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                syncFolder(folderSelection.getPath(), false);
+            }
+        });
+
+        menu.add(uploadMenu);
+        menu.add(downloadMenu);
+
+        return menu;
+    }
+
+    /**
+     * Uploads a local folder into the blobs under <code>prefix</code>, or downloads them into a local folder,
+     * copying only the files that differ on the two sides. A preview lists those files without copying them.
+     */
+    private void syncFolder(final String prefix, final boolean upload) {
+        JFileChooser jFileChooser = new JFileChooser();
+        jFileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        jFileChooser.setDialogTitle(upload ? "Select the folder to upload" : "Select the folder to download to");
+
+        if (jFileChooser.showDialog(this.mainPanel, upload ? "Upload" : "Download") != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        final File localDirectory = jFileChooser.getSelectedFile();
+
+        String[] options = {upload ? "Upload" : "Download", "Preview Changes", "Cancel"};
+        int option = JOptionPane.showOptionDialog(mainPanel,
+                String.format("%s only the files that differ between %s and the blobs under /%s?", upload ? "Upload" : "Download", localDirectory, prefix),
+                "Synchronize Folder", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+
+        if (option != 0 && option != 1) {
+            return;
+        }
+
+        final boolean dryRun = option == 1;
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, dryRun ? "Comparing folder..." : upload ? "Uploading folder..." : "Downloading folder...", false) {
+            @Override
+            public void run(@NotNull final ProgressIndicator progressIndicator) {
+                progressIndicator.setIndeterminate(true);
+
+                try {
+                    CallableSingleArg<Void, String> processFile = new CallableSingleArg<Void, String>() {
+                        @Override
+                        public Void call(String path) throws Exception {
+                            progressIndicator.setText2(path);
+                            return null;
+                        }
+                    };
+
+                    final BlobSyncResult result = upload
+                            ? StorageClientSDKManager.getManager().uploadDirectory(connectionString, blobContainer, localDirectory, prefix, dryRun, processFile)
+                            : StorageClientSDKManager.getManager().downloadDirectory(connectionString, blobContainer, localDirectory, prefix, dryRun, processFile);
+
+                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (upload && !dryRun) {
+                                fillGrid();
+                            }
+
+                            if (dryRun) {
+                                StringBuilder preview = new StringBuilder(result.toString());
+
+                                List<String> transferred = result.getTransferred();
+
+                                for (String path : transferred.subList(0, Math.min(transferred.size(), MAX_SYNC_PREVIEW_PATHS))) {
+                                    preview.append("\n").append(path);
+                                }
+
+                                if (transferred.size() > MAX_SYNC_PREVIEW_PATHS) {
+                                    preview.append(String.format("\n... and %d more", transferred.size() - MAX_SYNC_PREVIEW_PATHS));
+                                }
+
+                                for (String path : result.getFailed().keySet()) {
+                                    preview.append("\n").append(path).append(": ").append(result.getFailed().get(path).getMessage());
+                                }
+
+                                PluginUtil.displayInfoDialog("Folder Synchronization Preview", preview.toString());
+                            } else if (result.getFailed().isEmpty()) {
+                                PluginUtil.displayInfoDialog("Folder Synchronized", result.toString());
+                            } else {
+                                StringBuilder failed = new StringBuilder(result.toString());
+
+                                for (String path : result.getFailed().keySet()) {
+                                    failed.append("\n").append(path);
+                                }
+
+                                PluginUtil.displayWarningDialog("Folder Synchronized With Errors", failed.toString());
+                            }
+                        }
+                    });
+                } catch (AzureCmdException e) {
+                    String msg = "An error occurred while attempting to synchronize the folder." + "\n" + String.format(message("webappExpMsg"), e.getMessage());
+                    PluginUtil.displayErrorDialogInAWTAndLog(message("errTtl"), msg, e);
+                }
+            }
+        });
+    }
+
     private void deleteSelectedFile() {
         final BlobFile blobItem = getFileSelection();
 
@@ -732,16 +866,11 @@ public class BlobExplorerFileEditor implements FileEditor {
                         }
 
                         try {
-                            directoryQueue.clear();
-                            directoryQueue.addLast(StorageClientSDKManager.getManager().getRootDirectory(connectionString, blobContainer));
+                            List<BlobDirectory> blobDirectories =
+                                    StorageClientSDKManager.getManager().getBlobDirectories(connectionString, blobContainer, path);
 
-                            for (String pathDir : path.split("/")) {
-                                for (BlobItem blobItem : StorageClientSDKManager.getManager().getBlobItems(connectionString, directoryQueue.getLast())) {
-                                    if (blobItem instanceof BlobDirectory && blobItem.getName().equals(pathDir)) {
-                                        directoryQueue.addLast((BlobDirectory) blobItem);
-                                    }
-                                }
-                            }
+                            directoryQueue.clear();
+                            directoryQueue.addAll(blobDirectories);
                         } catch (AzureCmdException e) {
                             String msg = "An error occurred while attempting to show new blob." + "\n" + String.format(message("webappExpMsg"), e.getMessage());
                             PluginUtil.displayErrorDialogAndLog(message("errTtl"), msg, e);
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.intellij.serviceexplorer.azure.docker;
+
+import com.intellij.execution.ExecutionManager;
+import com.intellij.execution.executors.DefaultRunExecutor;
+import com.intellij.execution.filters.TextConsoleBuilderFactory;
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.execution.ui.RunContentDescriptor;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.DockerContainer;
+import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.ops.AzureDockerContainerOps;
+import com.microsoft.azure.docker.ops.SshSessionPool;
+import com.microsoft.tooling.msservices.helpers.Name;
+import com.microsoft.tooling.msservices.serviceexplorer.NodeActionEvent;
+import com.microsoft.tooling.msservices.serviceexplorer.NodeActionListener;
+import com.microsoft.tooling.msservices.serviceexplorer.azure.docker.DockerContainerNode;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Follows the container's log in a Run tool window tab; closing the tab ends the remote {@code docker logs}.
+ * The log is followed over its own SSH session, so it does not hold one of the pooled session's channels.
+ */
+@Name("View Logs")
+public class ViewDockerContainerLogsAction extends NodeActionListener {
+  private static final Logger LOGGER = Logger.getInstance(ViewDockerContainerLogsAction.class);
+  DockerHost dockerHost;
+  DockerContainer dockerContainer;
+  Project project;
+
+  public ViewDockerContainerLogsAction(DockerContainerNode dockerContainerNode) {
+    this.dockerHost = dockerContainerNode.getDockerHost();
+    this.dockerContainer = dockerContainerNode.getDockerContainer();
+    this.project = (Project) dockerContainerNode.getProject();
+  }
+
+  @Override
+  public void actionPerformed(NodeActionEvent e) {
+    final ConsoleView console = TextConsoleBuilderFactory.getInstance().createBuilder(project).getConsole();
+    String title = String.format("%s (%s)", dockerContainer.name, dockerHost.name);
+    RunContentDescriptor descriptor = new RunContentDescriptor(console, null, console.getComponent(), title);
+    ExecutionManager.getInstance(project).getContentManager().showRunContent(DefaultRunExecutor.getRunExecutorInstance(), descriptor);
+
+    final AtomicReference<Session> logsSession = new AtomicReference<>();
+    final Future<?> follow = ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          logsSession.set(SshSessionPool.getInstance().openDedicatedSession(dockerHost));
+          if (Thread.currentThread().isInterrupted()) {
+            return;
+          }
+          AzureDockerContainerOps.getLogs(dockerContainer, logsSession.get(), true, new Consumer<String>() {
+            @Override
+            public void accept(String line) {
+              console.print(line + "\n", ConsoleViewContentType.NORMAL_OUTPUT);
+            }
+          });
+          console.print("\nThe container's log has ended.\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+        } catch (Exception ex) {
+          if (!Thread.currentThread().isInterrupted()) {
+            LOGGER.warn(ex.getMessage(), ex);
+            console.print("\n" + ex.getMessage() + "\n", ConsoleViewContentType.ERROR_OUTPUT);
+          }
+        } finally {
+          disconnect(logsSession.getAndSet(null));
+        }
+      }
+    });
+
+    // interrupting the reader and dropping the session stop the remote command
+    Disposer.register(console, new Disposable() {
+      @Override
+      public void dispose() {
+        follow.cancel(true);
+        disconnect(logsSession.getAndSet(null));
+      }
+    });
+  }
+
+  private static void disconnect(Session session) {
+    if (session != null) {
+      session.disconnect();
+    }
+  }
+}
@@ -23,8 +23,10 @@ package com.microsoft.azure.docker;
 
 import com.microsoft.azure.docker.model.*;
 import com.microsoft.azure.docker.ops.AzureDockerCertVaultOps;
+import com.microsoft.azure.docker.ops.AzureDockerHostEventsSubscriber;
 import com.microsoft.azure.docker.ops.utils.AzureDockerUtils;
 import com.microsoft.azure.keyvault.KeyVaultClient;
+import com.microsoft.azure.management.compute.VirtualMachine;
 import com.microsoft.azure.management.keyvault.Vault;
 import com.microsoft.azuretools.authmanage.SubscriptionManager;
 import com.microsoft.azuretools.authmanage.models.SubscriptionDetail;
@@ -34,8 +36,11 @@ import com.microsoft.azuretools.utils.AzureUIRefreshEvent;
 import com.microsoft.azuretools.utils.AzureUIRefreshListener;
 import com.microsoft.azuretools.utils.Pair;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class AzureDockerHostsManager {
   private static AzureDockerHostsManager instance = null;
@@ -51,6 +56,7 @@ public class AzureDockerHostsManager {
   private List<DockerHost> dockerHostsList;
   private Map<String, List<AzureDockerVnet>> dockerNetworkMap;
   private Map<String, List<AzureDockerStorageAccount>> dockerStorageAccountMap;
+  private Map<String, AzureDockerHostEventsSubscriber> dockerHostEventsSubscribers = new HashMap<>();
   private String userId;
   private AzureDockerPreferredSettings dockerPreferredSettings;
 
@@ -71,6 +77,7 @@ public class AzureDockerHostsManager {
 
   public static void resetAzureDockerHostsManager() {
     if (instance != null) {
+      instance.unsubscribeFromAllDockerHostEvents();
       instance.subscriptionsList = null;
       instance.subscriptionsMap = null;
       instance.vaultsMap = null;
@@ -139,6 +146,7 @@ public class AzureDockerHostsManager {
 
   public AzureDockerHostsManager forceRefresh(AzureManager azureAuthManager) {
     try {
+      unsubscribeFromAllDockerHostEvents();
       instance = new AzureDockerHostsManager(azureAuthManager);
       instance.forceRefreshSubscriptions();
     } catch (Exception e) {
@@ -197,7 +205,9 @@ public class AzureDockerHostsManager {
 
   public Map<String, AzureDockerCertVault> refreshDockerVaultDetails() {
     try {
-      dockerVaultsMap = AzureDockerUtils.refreshDockerVaultDetails(subscriptionsList);
+      dockerVaultsMap = vaultsMap != null ?
+          AzureDockerUtils.refreshDockerVaultDetails(subscriptionsList, vaultsMap) :
+          AzureDockerUtils.refreshDockerVaultDetails(subscriptionsList);
     } catch (Exception e) {
       e.printStackTrace();
       DefaultLoader.getUIHelper().showError(e.getMessage(), "Error loading key vault details");
@@ -237,9 +247,16 @@ public class AzureDockerHostsManager {
   }
 
   public Map<String, DockerHost> refreshDockerHostDetails() {
+    return refreshDockerHostDetails(null);
+  }
+
+  private Map<String, DockerHost> refreshDockerHostDetails(Map<String, List<VirtualMachine>> dockerHostVirtualMachines) {
     try {
+      Map<String, List<DockerHost>> dockerHosts = dockerHostVirtualMachines != null ?
+          AzureDockerUtils.refreshDockerHostDetails(dockerHostVirtualMachines, dockerVaultsMap) :
+          AzureDockerUtils.refreshDockerHostDetails(subscriptionsList, dockerVaultsMap);
       Map<String, DockerHost> localDockerHostsMap = new HashMap<>();
-      for (List<DockerHost> dockerHostList : AzureDockerUtils.refreshDockerHostDetails(subscriptionsList, dockerVaultsMap).values()) {
+      for (List<DockerHost> dockerHostList : dockerHosts.values()) {
         for (DockerHost dockerHost : dockerHostList) {
           localDockerHostsMap.put(dockerHost.apiUrl, dockerHost);
           if (dockerHost.certVault == null && dockerHostsMap != null) {
@@ -271,21 +288,48 @@ public class AzureDockerHostsManager {
 //    dockerHostsList = createNewFakeDockerHostList();
   }
 
+  /* Reloads everything the Docker tools need; the phases that only depend on the subscriptions run in parallel:
+   *   subscriptions -> (vaults -> vault details), host virtual machines, virtual networks, storage accounts -> hosts
+   */
   public void forceRefreshSubscriptions() {
-    refreshDockerSubscriptions();
-
-    refreshDockerVaults();
-
-    refreshDockerVaultDetails();
-
-    refreshDockerVnetDetails();
-
-    refreshDockerStorageAccountDetails();
+    timeRefreshPhase("subscriptions", this::refreshDockerSubscriptions);
+
+    final Map<String, List<VirtualMachine>> dockerHostVirtualMachines = new ConcurrentHashMap<>();
+    List<Runnable> phases = Arrays.asList(
+        () -> {
+          timeRefreshPhase("vaults", this::refreshDockerVaults);
+          timeRefreshPhase("vault details", this::refreshDockerVaultDetails);
+        },
+        () -> timeRefreshPhase("virtual machines", () -> dockerHostVirtualMachines.putAll(AzureDockerUtils.getDockerHostVirtualMachines(subscriptionsList))),
+        () -> timeRefreshPhase("virtual networks", this::refreshDockerVnetDetails),
+        () -> timeRefreshPhase("storage accounts", this::refreshDockerStorageAccountDetails));
+    try {
+      ParallelExecutor.forEach(phases, (Runnable phase) -> {
+        phase.run();
+        return null;
+      }).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (ExecutionException ignored) {
+      // not thrown when collecting all failures; each phase reports its own errors
+    }
 
-    refreshDockerHostDetails();
+    timeRefreshPhase("hosts", () -> refreshDockerHostDetails(dockerHostVirtualMachines));
 
     isInitialized = true;
+  }
 
+  private void timeRefreshPhase(String phase, Runnable refresh) {
+    long start = System.currentTimeMillis();
+    try {
+      refresh.run();
+    } finally {
+      long duration = System.currentTimeMillis() - start;
+      if (AzureDockerUtils.DEBUG) {
+        System.out.format("AzureDockerHostsManager refresh of %s took %d ms\n", phase, duration);
+      }
+    }
   }
 
   public List<KnownDockerImages> getDefaultDockerImages() {
@@ -435,6 +479,41 @@ public class AzureDockerHostsManager {
     }
   }
 
+  /* Follows the Docker events of a host so that its images and containers stay current without listing them again
+   *   Pass isListed when dockerHost.dockerImages was just listed from the host; returns the subscriber for the host
+   */
+  public synchronized AzureDockerHostEventsSubscriber subscribeToDockerHostEvents(DockerHost host,
+      AzureDockerHostEventsSubscriber.DockerHostEventsListener listener, boolean isListed) {
+    AzureDockerHostEventsSubscriber subscriber = dockerHostEventsSubscribers.get(host.apiUrl);
+    if (subscriber == null) {
+      subscriber = new AzureDockerHostEventsSubscriber(host, listener);
+      dockerHostEventsSubscribers.put(host.apiUrl, subscriber);
+      subscriber.start();
+    } else {
+      subscriber.update(host, listener, isListed);
+    }
+
+    return subscriber;
+  }
+
+  public synchronized AzureDockerHostEventsSubscriber getDockerHostEventsSubscriber(DockerHost host) {
+    return host != null ? dockerHostEventsSubscribers.get(host.apiUrl) : null;
+  }
+
+  public synchronized void unsubscribeFromDockerHostEvents(DockerHost host) {
+    AzureDockerHostEventsSubscriber subscriber = dockerHostEventsSubscribers.remove(host.apiUrl);
+    if (subscriber != null) {
+      subscriber.stop();
+    }
+  }
+
+  private synchronized void unsubscribeFromAllDockerHostEvents() {
+    for (AzureDockerHostEventsSubscriber subscriber : dockerHostEventsSubscribers.values()) {
+      subscriber.stop();
+    }
+    dockerHostEventsSubscribers.clear();
+  }
+
   public List<String> getDockerVMStates() {
     List<String> result = new ArrayList<>();
     for (DockerHost.DockerHostVMState state : DockerHost.DockerHostVMState.values()) {
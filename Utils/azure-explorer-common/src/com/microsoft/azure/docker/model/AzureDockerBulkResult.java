@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of an operation that was run on several Docker hosts, one entry per host in the order the hosts were given.
+ */
+public class AzureDockerBulkResult<R> {
+  public enum Status {
+    SUCCEEDED,
+    FAILED,
+    TIMED_OUT
+  }
+
+  public static class HostResult<R> {
+    public final DockerHost dockerHost;
+    public final Status status;
+    public final R result;
+    public final Throwable error;
+    public final long durationMs;
+
+    public HostResult(DockerHost dockerHost, Status status, R result, Throwable error, long durationMs) {
+      this.dockerHost = dockerHost;
+      this.status = status;
+      this.result = result;
+      this.error = error;
+      this.durationMs = durationMs;
+    }
+
+    public String toString() {
+      String message = status == Status.FAILED && error != null ? ": " + error.getMessage() : "";
+      return String.format("%s %s in %d ms%s", dockerHost.name, status.toString().toLowerCase().replace('_', ' '), durationMs, message);
+    }
+  }
+
+  private final List<HostResult<R>> hostResults;
+  private final long durationMs;
+
+  public AzureDockerBulkResult(List<HostResult<R>> hostResults, long durationMs) {
+    this.hostResults = Collections.unmodifiableList(new ArrayList<>(hostResults));
+    this.durationMs = durationMs;
+  }
+
+  public List<HostResult<R>> getHostResults() {
+    return hostResults;
+  }
+
+  public List<HostResult<R>> getHostResults(Status status) {
+    List<HostResult<R>> results = new ArrayList<>();
+    for (HostResult<R> hostResult : hostResults) {
+      if (hostResult.status == status) {
+        results.add(hostResult);
+      }
+    }
+
+    return results;
+  }
+
+  public boolean isSuccess() {
+    return getHostResults(Status.SUCCEEDED).size() == hostResults.size();
+  }
+
+  public long getDurationMs() {
+    return durationMs;
+  }
+
+  public String toString() {
+    return String.format("%d of %d Docker hosts succeeded, %d failed, %d timed out (%d ms)",
+        getHostResults(Status.SUCCEEDED).size(), hostResults.size(), getHostResults(Status.FAILED).size(),
+        getHostResults(Status.TIMED_OUT).size(), durationMs);
+  }
+}
@@ -36,4 +36,6 @@ public class AzureDockerImageInstance {
   public boolean isHttpsWebApp;
   public String predefinedDockerfile;
   public boolean hasRootDeployment;
+  // opt-in: split the artifact into a libraries layer and an application layer when the predefined image allows it
+  public boolean isLayeredBuild = false;
 }
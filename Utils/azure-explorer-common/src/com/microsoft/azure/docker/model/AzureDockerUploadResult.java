@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.model;
+
+public class AzureDockerUploadResult {
+  public final String fileName;
+  public final long fileSize;
+  public final long bytesSent;
+  public final boolean isDelta;
+
+  public AzureDockerUploadResult(String fileName, long fileSize, long bytesSent, boolean isDelta) {
+    this.fileName = fileName;
+    this.fileSize = fileSize;
+    this.bytesSent = bytesSent;
+    this.isDelta = isDelta;
+  }
+
+  public long getBytesSaved() {
+    return Math.max(0, fileSize - bytesSent);
+  }
+
+  public String toString() {
+    return String.format("%s: sent %d of %d bytes%s", fileName, bytesSent, fileSize,
+        isDelta ? String.format(" (delta, saved %d bytes)", getBytesSaved()) : "");
+  }
+}
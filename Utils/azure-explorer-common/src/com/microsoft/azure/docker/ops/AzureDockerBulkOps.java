@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.ops;
+
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.*;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.DEBUG;
+
+/**
+ * Runs one operation on many Docker hosts at once, for instance restarting the same container across a fleet.
+ * <p/>
+ * At most {@code maxConcurrency} hosts are worked on at a time and each host gets its own time limit; a host which
+ * fails or times out is reported in the {@link AzureDockerBulkResult} without stopping the others. Operations reach
+ * the hosts through the pooled SSH sessions of {@link SshSessionPool} and the shared Remote API client, so repeated
+ * bulk actions do not pay for a new handshake per host.
+ */
+public class AzureDockerBulkOps {
+  public static final int DEFAULT_MAX_CONCURRENCY = 8;
+  public static final long DEFAULT_HOST_TIMEOUT_MS = 2 * 60 * 1000;
+
+  // runs the operations so that a host which stops responding can be abandoned once its time is up
+  private static final ExecutorService operationPool = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "AzureDockerBulkOps-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  public interface DockerHostOperation<R> {
+    R execute(DockerHost dockerHost) throws Exception;
+  }
+
+  public interface ProgressListener {
+    /**
+     * Called from a worker thread each time a host completes, successfully or not.
+     */
+    void onHostCompleted(AzureDockerBulkResult.HostResult<?> hostResult, int completed, int total);
+  }
+
+  public static <R> AzureDockerBulkResult<R> execute(Collection<DockerHost> dockerHosts, DockerHostOperation<R> operation,
+                                                     ProgressListener progressListener) {
+    return execute(dockerHosts, operation, DEFAULT_MAX_CONCURRENCY, DEFAULT_HOST_TIMEOUT_MS, progressListener);
+  }
+
+  public static <R> AzureDockerBulkResult<R> execute(Collection<DockerHost> dockerHosts, DockerHostOperation<R> operation,
+                                                     int maxConcurrency, long hostTimeoutMs,
+                                                     ProgressListener progressListener) {
+    if (dockerHosts == null || operation == null) {
+      throw new AzureDockerException("Unexpected param values; dockerHosts and operation cannot be null");
+    }
+
+    long start = System.currentTimeMillis();
+    AtomicInteger completed = new AtomicInteger();
+    int total = dockerHosts.size();
+
+    try {
+      List<AzureDockerBulkResult.HostResult<R>> hostResults = ParallelExecutor.<DockerHost, AzureDockerBulkResult.HostResult<R>>forEach(
+          dockerHosts, dockerHost -> {
+            AzureDockerBulkResult.HostResult<R> hostResult = executeOnHost(dockerHost, operation, hostTimeoutMs);
+            if (DEBUG) System.out.println(hostResult);
+            if (progressListener != null) {
+              progressListener.onHostCompleted(hostResult, completed.incrementAndGet(), total);
+            }
+            return hostResult;
+          })
+          .withMaxConcurrency(maxConcurrency)
+          .execute()
+          .getResults();
+
+      return new AzureDockerBulkResult<>(hostResults, System.currentTimeMillis() - start);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AzureDockerException("Interrupted while running the operation on the Docker hosts", e);
+    } catch (ExecutionException e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  private static <R> AzureDockerBulkResult.HostResult<R> executeOnHost(DockerHost dockerHost, DockerHostOperation<R> operation,
+                                                                       long hostTimeoutMs) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    Future<R> future = operationPool.submit(() -> operation.execute(dockerHost));
+
+    try {
+      R result = future.get(hostTimeoutMs, TimeUnit.MILLISECONDS);
+      return new AzureDockerBulkResult.HostResult<>(dockerHost, AzureDockerBulkResult.Status.SUCCEEDED, result, null,
+          System.currentTimeMillis() - start);
+    } catch (ExecutionException e) {
+      return new AzureDockerBulkResult.HostResult<>(dockerHost, AzureDockerBulkResult.Status.FAILED, null, e.getCause(),
+          System.currentTimeMillis() - start);
+    } catch (TimeoutException e) {
+      // interrupting the operation closes its SSH channel; the pooled session stays up for the other operations
+      future.cancel(true);
+      return new AzureDockerBulkResult.HostResult<>(dockerHost, AzureDockerBulkResult.Status.TIMED_OUT, null, e,
+          System.currentTimeMillis() - start);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    }
+  }
+
+  public static DockerHostOperation<AzureDockerCommandResult> startContainer(String containerName) {
+    return containerCommand("start", containerName);
+  }
+
+  public static DockerHostOperation<AzureDockerCommandResult> stopContainer(String containerName) {
+    return containerCommand("stop", containerName);
+  }
+
+  public static DockerHostOperation<AzureDockerCommandResult> restartContainer(String containerName) {
+    return containerCommand("restart", containerName);
+  }
+
+  /**
+   * Lists the images and containers of each host into {@link DockerHost#dockerImages}.
+   */
+  public static DockerHostOperation<Map<String, DockerImage>> refreshImagesAndContainers() {
+    return dockerHost -> {
+      Map<String, DockerImage> dockerImages = AzureDockerImageOps.getImages(dockerHost);
+      Map<String, DockerContainer> dockerContainers = AzureDockerContainerOps.getContainers(dockerHost);
+      AzureDockerContainerOps.setContainersAndImages(dockerContainers, dockerImages);
+      dockerHost.dockerImages = dockerImages;
+
+      return dockerImages;
+    };
+  }
+
+  private static DockerHostOperation<AzureDockerCommandResult> containerCommand(String command, String containerName) {
+    if (containerName == null || !containerName.matches("[a-zA-Z0-9][a-zA-Z0-9_.-]*")) {
+      throw new AzureDockerException("Unexpected param values; invalid Docker container name " + containerName);
+    }
+
+    return dockerHost -> {
+      Session session = AzureDockerSSHOps.getLoginInstance(dockerHost);
+      if (session == null) {
+        throw new AzureDockerException("Missing login credentials for " + dockerHost.name);
+      }
+      AzureDockerVMOps.waitForDockerDaemonStartup(session);
+
+      AzureDockerCommandResult result = AzureDockerSSHOps.execute(String.format("docker %s %s", command, containerName), session);
+      if (!result.isSuccess()) {
+        throw new AzureDockerException(String.format("Docker container %s failed to %s on %s: %s",
+            containerName, command, dockerHost.name, result.error.trim()));
+      }
+
+      return result;
+    };
+  }
+}
@@ -104,6 +104,17 @@ public class AzureDockerCertVaultOps {
   }
 
   public static void createOrUpdateVault(Azure azureClient, AzureDockerCertVault certVault, KeyVaultClient keyVaultClient) throws AzureDockerException {
+    String vaultUri = createOrUpdateVaultResource(azureClient, certVault, keyVaultClient);
+    setVaultSecrets(certVault, keyVaultClient, vaultUri);
+  }
+
+  /**
+   * Creates the key vault, or grants access to an existing one, and waits until its secrets can be read; the secrets
+   * themselves are written by {@link #setVaultSecrets}, so the vault can be created before all of them are known.
+   *
+   * @return the URI of the vault
+   */
+  public static String createOrUpdateVaultResource(Azure azureClient, AzureDockerCertVault certVault, KeyVaultClient keyVaultClient) throws AzureDockerException {
     if (azureClient == null  || keyVaultClient == null || certVault == null ||
         certVault.name == null || certVault.hostName == null ||
         certVault.resourceGroupName == null || certVault.region == null ||
@@ -199,6 +210,15 @@ public class AzureDockerCertVaultOps {
         }
       }
 
+      return vaultUri;
+    } catch(Exception e) {
+      DefaultLoader.getUIHelper().logError(String.format("WARN: Unexpected error creating Azure Key Vault %s - %s\n", certVault.name, e.getMessage()), e);
+      throw new AzureDockerException(e.getMessage());
+    }
+  }
+
+  public static void setVaultSecrets(AzureDockerCertVault certVault, KeyVaultClient keyVaultClient, String vaultUri) throws AzureDockerException {
+    try {
       Map<String, String> secretsMap = getSecretsMap(certVault);
 
 //      //Execute Key Vault Secret Update in parallel
@@ -30,6 +30,7 @@ import com.microsoft.azure.docker.ops.utils.AzureDockerUtils;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.DEBUG;
 import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.checkDockerContainerUrlAvailability;
@@ -120,6 +121,41 @@ public class AzureDockerContainerOps {
     return getDetails(dockerContainer, dockerContainer.dockerHost.session);
   }
 
+  /**
+   * Streams the container's log to {@code logLineHandler} line by line as the remote command produces it.
+   */
+  public static AzureDockerCommandResult getLogs(DockerContainer dockerContainer, Session session, Consumer<String> logLineHandler) {
+    return getLogs(dockerContainer, session, false, logLineHandler);
+  }
+
+  /**
+   * Like {@link #getLogs(DockerContainer, Session, Consumer)}; with {@code follow} it keeps passing on the lines the
+   * container writes afterwards and only returns once the calling thread is interrupted or the container is removed.
+   */
+  public static AzureDockerCommandResult getLogs(DockerContainer dockerContainer, Session session, boolean follow, Consumer<String> logLineHandler) {
+    if (dockerContainer == null || session == null || logLineHandler == null) {
+      throw new AzureDockerException("Unexpected param values; dockerContainer, login session and log handler cannot be null");
+    }
+
+    try {
+      if (!session.isConnected()) session.connect();
+
+      AzureDockerVMOps.waitForDockerDaemonStartup(session);
+
+      // the container writes to both streams; merge them so the lines keep their original order
+      String cmd1 = String.format("docker logs --timestamps %s%s 2>&1 \n", follow ? "--follow " : "", dockerContainer.name);
+      if (DEBUG) System.out.format("Start executing: %s\n", cmd1);
+      AzureDockerCommandResult cmdOut1 = AzureDockerSSHOps.execute(cmd1, session, logLineHandler);
+      if (DEBUG) System.out.println(cmdOut1);
+      if (DEBUG) System.out.format("Done executing: %s\n", cmd1);
+
+      return cmdOut1;
+
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
   public static void start(DockerContainer dockerContainer, Session session) {
     if (dockerContainer == null || session == null) {
       throw new AzureDockerException("Unexpected param values; dockerContainer and login session cannot be null");
@@ -397,13 +433,20 @@ public class AzureDockerContainerOps {
       throw new AzureDockerException("Unexpected param values: dockerHost and login session cannot be null");
     }
 
+    if (AzureDockerRemoteApiOps.isAvailable(dockerHost)) {
+      try {
+        return AzureDockerRemoteApiOps.getContainers(dockerHost);
+      } catch (Exception e) {
+        // the API port can be closed by the network security group; fall back to the docker client over SSH
+        if (DEBUG) e.printStackTrace();
+      }
+    }
+
     Map<String, DockerContainer> dockerContainerMap = new HashMap<>();
 
-    if (dockerHost.session == null) dockerHost.session = AzureDockerSSHOps.createLoginInstance(dockerHost);
+    AzureDockerSSHOps.getLoginInstance(dockerHost);
 
     try {
-      if (!dockerHost.session.isConnected()) dockerHost.session.connect();
-
       AzureDockerVMOps.waitForDockerDaemonStartup(dockerHost.session);
 
       ObjectMapper mapper = new ObjectMapper()
@@ -491,15 +534,7 @@ public class AzureDockerContainerOps {
       try {
         DockerImage dockerImage = dockerImageMap.get(dockerContainer.image);
         if (dockerImage != null) {
-          if (dockerImage.artifactFile != null && !dockerImage.artifactFile.isEmpty()) {
-            // adjust the Url path to capture the artifact name
-            String url = dockerImage.artifactFile.toLowerCase().matches(".*\\.war") ?
-                dockerContainer.url + dockerImage.artifactFile.substring(0, dockerImage.artifactFile.lastIndexOf(".")) :
-                dockerContainer.url;
-            if (dockerContainer.isRunning && checkDockerContainerUrlAvailability(url)) {
-              dockerContainer.url = url;
-            }
-          }
+          setContainerUrl(dockerContainer, dockerImage);
 
           dockerImage.containers.put(dockerContainer.name, dockerContainer);
         }
@@ -510,4 +545,16 @@ public class AzureDockerContainerOps {
 
   }
 
+  public static void setContainerUrl(DockerContainer dockerContainer, DockerImage dockerImage) {
+    if (dockerImage.artifactFile != null && !dockerImage.artifactFile.isEmpty()) {
+      // adjust the Url path to capture the artifact name
+      String url = dockerImage.artifactFile.toLowerCase().matches(".*\\.war") ?
+          dockerContainer.url + dockerImage.artifactFile.substring(0, dockerImage.artifactFile.lastIndexOf(".")) :
+          dockerContainer.url;
+      if (dockerContainer.isRunning && checkDockerContainerUrlAvailability(url)) {
+        dockerContainer.url = url;
+      }
+    }
+  }
+
 }
@@ -0,0 +1,387 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.ops;
+
+import com.google.common.io.BaseEncoding;
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.AzureDockerCommandResult;
+import com.microsoft.azure.docker.model.AzureDockerException;
+import com.microsoft.azure.docker.model.AzureDockerUploadResult;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.DEBUG;
+
+/**
+ * Uploads build artifacts to a Docker host by sending only what changed since the previous upload, in the manner of
+ * rsync.
+ * <p/>
+ * Every upload leaves a block signature of the artifact next to it on the host ({@code .<artifact>.sig}: a weak
+ * rolling checksum and an MD5 per block). The next upload reads that signature, finds the blocks of the new artifact
+ * that the host already has at any offset, and sends the remaining bytes together with a small shell script that
+ * rebuilds the file from the old copy with {@code dd}, {@code tail} and {@code head}. The rebuilt file is checked
+ * against the MD5 of the local artifact; whenever the delta cannot be used the whole artifact is uploaded instead.
+ */
+public class AzureDockerDeltaUploadOps {
+  private static final String SIGNATURE_HEADER = "azuredocker-delta 1";
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+  private static final int MIN_BLOCK_SIZE = 2048;
+  private static final int MAX_BLOCK_SIZE = 64 * 1024;
+  // the artifact is read into memory to look for the blocks the host already has
+  private static final long MAX_DELTA_FILE_SIZE = 256 * 1024 * 1024;
+  // above this share of new bytes, the delta is not worth the extra round trips
+  private static final double MAX_LITERAL_RATIO = 0.7;
+
+  public static AzureDockerUploadResult upload(Session session, File artifact, String toPath) {
+    String fileName = artifact.getName();
+    long fileSize = artifact.length();
+
+    if (fileSize > MAX_DELTA_FILE_SIZE) {
+      // too large to hold in memory; not worth a delta either
+      AzureDockerSSHOps.upload(session, fileName, artifact.getParent(), toPath, true, null);
+      return new AzureDockerUploadResult(fileName, fileSize, fileSize, false);
+    }
+
+    try {
+      ByteBuffer content = read(artifact);
+      byte[] signature = createSignature(content, getBlockSize(fileSize));
+
+      AzureDockerUploadResult result = null;
+      try {
+        result = uploadDelta(session, content, fileName, toPath);
+      } catch (Exception e) {
+        if (DEBUG) e.printStackTrace();
+      }
+      if (result == null) {
+        AzureDockerSSHOps.upload(session, fileName, artifact.getParent(), toPath, true, null);
+        result = new AzureDockerUploadResult(fileName, fileSize, fileSize, false);
+      }
+
+      AzureDockerSSHOps.upload(session, new ByteArrayInputStream(signature), getSignatureName(fileName), toPath, true, null);
+      result = new AzureDockerUploadResult(fileName, fileSize, result.bytesSent + signature.length, result.isDelta);
+      if (DEBUG) System.out.format("Uploaded %s\n", result);
+
+      return result;
+    } catch (IOException e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  // read rather than mapped: a mapping keeps the file locked on Windows until it is garbage collected, which would
+  // fail the next build of the artifact
+  static ByteBuffer read(File artifact) throws IOException {
+    try (FileChannel channel = FileChannel.open(artifact.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+      while (content.hasRemaining()) {
+        if (channel.read(content) < 0) {
+          throw new IOException(artifact + " was truncated while reading it");
+        }
+      }
+      content.flip();
+      return content;
+    }
+  }
+
+  /**
+   * Returns {@code null} if there is no usable signature on the host, the delta is too large or rebuilding failed.
+   */
+  private static AzureDockerUploadResult uploadDelta(Session session, ByteBuffer content, String fileName, String toPath) throws Exception {
+    Signature signature;
+    try {
+      signature = Signature.parse(AzureDockerSSHOps.download(session, getSignatureName(fileName), toPath, true));
+    } catch (Exception e) {
+      // first upload of this artifact
+      return null;
+    }
+
+    Delta delta = computeDelta(content, signature, (long) (content.limit() * MAX_LITERAL_RATIO));
+    if (delta == null) {
+      return null;
+    }
+
+    String deltaName = "." + fileName + ".delta";
+    String script = createRebuildScript(delta.operations, signature.blockSize, fileName, deltaName, md5(content, 0, content.limit()));
+    byte[] scriptBytes = script.getBytes(StandardCharsets.UTF_8);
+    AzureDockerSSHOps.upload(session, new LiteralsInputStream(content, delta.operations), deltaName, toPath, true, null);
+    AzureDockerSSHOps.upload(session, new ByteArrayInputStream(scriptBytes), deltaName + ".sh", toPath, true, null);
+
+    AzureDockerCommandResult result = AzureDockerSSHOps.execute(
+        String.format("cd %s && sh %s", quote(toPath), quote(deltaName + ".sh")), session);
+    if (!result.isSuccess()) {
+      if (DEBUG) System.out.format("Rebuilding %s from its delta failed: %s\n", fileName, result.error);
+      AzureDockerSSHOps.execute(String.format("cd %s && rm -f %s %s %s", quote(toPath), quote(deltaName),
+          quote(deltaName + ".sh"), quote("." + fileName + ".new")), session);
+      return null;
+    }
+
+    return new AzureDockerUploadResult(fileName, content.limit(), delta.literalLength + scriptBytes.length, true);
+  }
+
+  /**
+   * Matches the content against the blocks of the signature with a rolling checksum. Returns {@code null} once more
+   * than {@code maxLiteralLength} new bytes would have to be sent.
+   */
+  static Delta computeDelta(ByteBuffer content, Signature signature, long maxLiteralLength) {
+    int blockSize = signature.blockSize;
+    int length = content.limit();
+    Delta delta = new Delta();
+    List<long[]> operations = delta.operations;
+
+    Map<Integer, List<Integer>> blocksByChecksum = new HashMap<>();
+    boolean[] checksumTags = new boolean[1 << 16];
+    for (int i = 0; i < signature.weakChecksums.length; i++) {
+      blocksByChecksum.computeIfAbsent(signature.weakChecksums[i], k -> new ArrayList<>()).add(i);
+      checksumTags[tag(signature.weakChecksums[i])] = true;
+    }
+
+    int position = 0;
+    int literalStart = 0;
+    int lastBlock = -2;
+    int a = 0;
+    int b = 0;
+    if (length >= blockSize) {
+      int[] checksum = checksum(content, 0, blockSize);
+      a = checksum[0];
+      b = checksum[1];
+    }
+
+    while (position + blockSize <= length) {
+      int weak = a | (b << 16);
+      int match = -1;
+      if (checksumTags[tag(weak)] && blocksByChecksum.containsKey(weak)) {
+        byte[] strong = md5(content, position, blockSize);
+        for (int block : blocksByChecksum.get(weak)) {
+          if (Arrays.equals(strong, signature.strongChecksums[block])) {
+            match = block;
+            // keep runs of consecutive blocks together
+            if (block == lastBlock + 1) break;
+          }
+        }
+      }
+
+      if (match >= 0) {
+        if (literalStart < position) {
+          delta.addLiteral(literalStart, position);
+        }
+        long[] last = operations.isEmpty() ? null : operations.get(operations.size() - 1);
+        if (last != null && last[0] == 0 && match == lastBlock + 1) {
+          last[2]++;
+        } else {
+          operations.add(new long[]{0, match, 1});
+        }
+        lastBlock = match;
+        position += blockSize;
+        literalStart = position;
+        if (position + blockSize <= length) {
+          int[] checksum = checksum(content, position, blockSize);
+          a = checksum[0];
+          b = checksum[1];
+        }
+      } else {
+        if (delta.literalLength + position - literalStart > maxLiteralLength) {
+          return null;
+        }
+        if (position + blockSize < length) {
+          int out = content.get(position) & 0xff;
+          int in = content.get(position + blockSize) & 0xff;
+          a = (a - out + in) & 0xffff;
+          b = (b - blockSize * out + a) & 0xffff;
+        }
+        position++;
+      }
+    }
+
+    if (literalStart < length) {
+      delta.addLiteral(literalStart, length);
+    }
+
+    return delta.literalLength > maxLiteralLength ? null : delta;
+  }
+
+  static byte[] createSignature(ByteBuffer content, int blockSize) {
+    StringBuilder signature = new StringBuilder(SIGNATURE_HEADER).append('\n');
+    signature.append(blockSize).append(' ').append(content.limit()).append('\n');
+    for (int position = 0; position + blockSize <= content.limit(); position += blockSize) {
+      int[] checksum = checksum(content, position, blockSize);
+      signature.append(Integer.toHexString(checksum[0] | (checksum[1] << 16))).append(' ')
+          .append(HEX.encode(md5(content, position, blockSize))).append('\n');
+    }
+
+    return signature.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String createRebuildScript(List<long[]> operations, int blockSize, String fileName, String deltaName, byte[] md5) {
+    String newName = "." + fileName + ".new";
+    StringBuilder script = new StringBuilder("set -e\n{\n");
+    for (long[] operation : operations) {
+      if (operation[0] == 0) {
+        script.append(String.format("dd if=%s bs=%d skip=%d count=%d 2>/dev/null\n", quote(fileName), blockSize, operation[1], operation[2]));
+      } else {
+        script.append(String.format("tail -c +%d %s | head -c %d\n", operation[1] + 1, quote(deltaName), operation[2]));
+      }
+    }
+    script.append("} > ").append(quote(newName)).append('\n');
+    script.append(String.format("echo '%s  %s' | md5sum -c --status\n", HEX.encode(md5), newName));
+    script.append(String.format("mv -f %s %s\n", quote(newName), quote(fileName)));
+    script.append(String.format("rm -f %s %s\n", quote(deltaName), quote(deltaName + ".sh")));
+
+    return script.toString();
+  }
+
+  // the rsync rolling checksum: a is the sum of the bytes, b the sum weighted by distance from the block end
+  private static int[] checksum(ByteBuffer content, int offset, int length) {
+    int a = 0;
+    int b = 0;
+    for (int i = 0; i < length; i++) {
+      int value = content.get(offset + i) & 0xff;
+      a += value;
+      b += (length - i) * value;
+    }
+
+    return new int[]{a & 0xffff, b & 0xffff};
+  }
+
+  private static int tag(int weak) {
+    return (weak ^ (weak >>> 16)) & 0xffff;
+  }
+
+  private static byte[] md5(ByteBuffer content, int offset, int length) {
+    try {
+      ByteBuffer block = content.duplicate();
+      block.position(offset);
+      block.limit(offset + length);
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      digest.update(block);
+      return digest.digest();
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  // about the square root of the file size, as rsync does, so that signatures stay small for large artifacts
+  private static int getBlockSize(long fileSize) {
+    int blockSize = (int) Math.sqrt(fileSize) & ~7;
+    return Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, blockSize));
+  }
+
+  private static String getSignatureName(String fileName) {
+    return "." + fileName + ".sig";
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "'\\''") + "'";
+  }
+
+  /**
+   * Rebuild operations: {@code {0, firstBlock, blockCount}} copies blocks of the old file, and
+   * {@code {1, deltaOffset, length, contentOffset}} copies new bytes, which are sent in order as the delta file.
+   */
+  static class Delta {
+    final List<long[]> operations = new ArrayList<>();
+    long literalLength;
+
+    void addLiteral(int from, int to) {
+      operations.add(new long[]{1, literalLength, to - from, from});
+      literalLength += to - from;
+    }
+  }
+
+  // streams the new bytes of a delta straight from the artifact's content
+  private static class LiteralsInputStream extends InputStream {
+    private final ByteBuffer content;
+    private final Iterator<long[]> operations;
+    private ByteBuffer literal;
+
+    LiteralsInputStream(ByteBuffer content, List<long[]> operations) {
+      this.content = content;
+      this.operations = operations.iterator();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] value = new byte[1];
+      return read(value, 0, 1) < 0 ? -1 : value[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      while (literal == null || !literal.hasRemaining()) {
+        if (!operations.hasNext()) {
+          return -1;
+        }
+        long[] operation = operations.next();
+        if (operation[0] == 1) {
+          literal = content.duplicate();
+          literal.position((int) operation[3]);
+          literal.limit((int) (operation[3] + operation[2]));
+        }
+      }
+
+      int count = Math.min(length, literal.remaining());
+      literal.get(buffer, offset, count);
+      return count;
+    }
+  }
+
+  static class Signature {
+    final int blockSize;
+    final int[] weakChecksums;
+    final byte[][] strongChecksums;
+
+    private Signature(int blockSize, int[] weakChecksums, byte[][] strongChecksums) {
+      this.blockSize = blockSize;
+      this.weakChecksums = weakChecksums;
+      this.strongChecksums = strongChecksums;
+    }
+
+    static Signature parse(String text) throws IOException {
+      BufferedReader reader = new BufferedReader(new StringReader(text));
+      if (!SIGNATURE_HEADER.equals(reader.readLine())) {
+        throw new IOException("Unknown signature format");
+      }
+      String[] header = reader.readLine().split(" ");
+      int blockSize = Integer.parseInt(header[0]);
+      int blockCount = (int) (Long.parseLong(header[1]) / blockSize);
+
+      int[] weakChecksums = new int[blockCount];
+      byte[][] strongChecksums = new byte[blockCount][];
+      for (int i = 0; i < blockCount; i++) {
+        String[] block = reader.readLine().split(" ");
+        weakChecksums[i] = (int) Long.parseLong(block[0], 16);
+        strongChecksums[i] = HEX.decode(block[1]);
+      }
+
+      return new Signature(blockSize, weakChecksums, strongChecksums);
+    }
+  }
+}
@@ -0,0 +1,436 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.ops;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.AzureDockerCommandResult;
+import com.microsoft.azure.docker.model.DockerContainer;
+import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.model.DockerImage;
+import okhttp3.Call;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.DEBUG;
+
+/**
+ * Keeps the images and containers of a Docker host current by following the daemon's event stream, so refreshing
+ * the host in the explorer does not have to list everything again.
+ * <p/>
+ * The events are read from the TLS Remote API when the host has client certificates and from {@code docker events}
+ * over SSH otherwise. Container create, start, stop and destroy events are applied to {@code dockerHost.dockerImages}
+ * in place; image events re-read the image list. After a dropped connection the events missed in the meantime are
+ * replayed from the time of the last event seen, and the model is reported as not live until that replay or the next
+ * listing succeeded. The SSH stream runs on a session of its own, so that it does not keep a pooled session busy.
+ */
+public class AzureDockerHostEventsSubscriber {
+  private static final long MIN_RETRY_DELAY_MS = 1000;
+  private static final long MAX_RETRY_DELAY_MS = 60 * 1000;
+  // the remote command ends on its own after a while, so one left behind by a dropped connection does not linger
+  private static final int SSH_EVENTS_WINDOW_SECONDS = 300;
+  private static final String SSH_EVENTS_FORMAT = "--format '{{json .}}'";
+
+  public interface DockerHostEventsListener {
+    void onContainerAdded(DockerImage dockerImage, DockerContainer dockerContainer);
+
+    void onContainerChanged(DockerImage dockerImage, DockerContainer dockerContainer);
+
+    void onContainerRemoved(DockerImage dockerImage, DockerContainer dockerContainer);
+
+    void onImagesChanged(Map<String, DockerImage> dockerImages);
+  }
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private volatile DockerHost dockerHost;
+  private volatile DockerHostEventsListener listener;
+  private volatile boolean isLive;
+  // set once an event could not be applied; only a new listing makes the model trustworthy again
+  private volatile boolean needsListing;
+  private volatile boolean isStopped;
+  private volatile Call eventsCall;
+  private volatile Session eventsSession;
+  private volatile Thread eventsThread;
+  // in seconds, as reported by the daemon; only used from the events thread
+  private long lastEventTime;
+
+  /**
+   * @param dockerHost a host whose {@code dockerImages} were just listed together with their containers
+   */
+  public AzureDockerHostEventsSubscriber(DockerHost dockerHost, DockerHostEventsListener listener) {
+    this.dockerHost = dockerHost;
+    this.listener = listener;
+    this.isLive = true;
+  }
+
+  public synchronized void start() {
+    if (eventsThread == null) {
+      eventsThread = new Thread(this::run, "AzureDockerHostEventsSubscriber." + dockerHost.name);
+      eventsThread.setDaemon(true);
+      eventsThread.start();
+    }
+  }
+
+  public synchronized void stop() {
+    isStopped = true;
+    isLive = false;
+    Call call = eventsCall;
+    if (call != null) {
+      call.cancel();
+    }
+    // ends a running "docker events" as well
+    Session session = eventsSession;
+    if (session != null) {
+      session.disconnect();
+    }
+    if (eventsThread != null) {
+      eventsThread.interrupt();
+    }
+  }
+
+  /**
+   * Switches the subscriber to a refreshed copy of the host; if its images were listed again the model is live from
+   * here on, even if the stream had dropped events before.
+   */
+  public void update(DockerHost dockerHost, DockerHostEventsListener listener, boolean isListed) {
+    this.dockerHost = dockerHost;
+    this.listener = listener;
+    if (isListed) {
+      needsListing = false;
+      isLive = true;
+    }
+  }
+
+  /**
+   * Whether the images and containers of {@link #getDockerHost()} reflect the host without listing them again.
+   */
+  public boolean isLive() {
+    return isLive && !isStopped;
+  }
+
+  public DockerHost getDockerHost() {
+    return dockerHost;
+  }
+
+  public DockerContainer getDockerContainer(String containerId) {
+    DockerImage dockerImage = findImageOfContainer(containerId);
+    return dockerImage != null ? findContainer(dockerImage, containerId) : null;
+  }
+
+  private void run() {
+    long retryDelay = MIN_RETRY_DELAY_MS;
+
+    while (!isStopped) {
+      boolean isWindowDone = false;
+      long eventTime = lastEventTime;
+      try {
+        if (AzureDockerRemoteApiOps.isAvailable(dockerHost)) {
+          readApiEvents();
+        } else {
+          isWindowDone = readSshEvents();
+        }
+      } catch (Exception e) {
+        if (DEBUG && !isStopped) e.printStackTrace();
+      }
+
+      if (isStopped) {
+        break;
+      }
+      if (isWindowDone) {
+        continue;
+      }
+
+      isLive = false;
+      retryDelay = lastEventTime > eventTime ? MIN_RETRY_DELAY_MS : Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+      try {
+        Thread.sleep(retryDelay);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+
+    closeEventsSession();
+    isLive = false;
+  }
+
+  /**
+   * Events can only be replayed from the last one seen; without one the model stays not live until the next listing.
+   */
+  private boolean needsReplay() {
+    return !isLive && lastEventTime > 0;
+  }
+
+  private void onReplayed(long untilTime) {
+    lastEventTime = Math.max(lastEventTime, untilTime);
+    if (!needsListing && !isStopped) {
+      isLive = true;
+    }
+  }
+
+  private void readApiEvents() throws Exception {
+    if (needsReplay()) {
+      long until = AzureDockerRemoteApiOps.getDaemonTime(dockerHost);
+      readApiEvents(AzureDockerRemoteApiOps.newEventsCall(dockerHost, lastEventTime, until));
+      if (isStopped) {
+        return;
+      }
+      onReplayed(until);
+    }
+
+    readApiEvents(AzureDockerRemoteApiOps.newEventsCall(dockerHost, lastEventTime));
+  }
+
+  private void readApiEvents(Call call) throws Exception {
+    eventsCall = call;
+    try {
+      if (isStopped) {
+        return;
+      }
+      AzureDockerRemoteApiOps.readEvents(call, this::onEvent);
+    } finally {
+      eventsCall = null;
+    }
+  }
+
+  private boolean readSshEvents() {
+    AzureDockerVMOps.waitForDockerDaemonStartup(AzureDockerSSHOps.getLoginInstance(dockerHost));
+
+    Session session = eventsSession;
+    if (session == null || !session.isConnected()) {
+      session = SshSessionPool.getInstance().openDedicatedSession(dockerHost);
+      eventsSession = session;
+      if (isStopped) {
+        return false;
+      }
+    }
+
+    String cmd;
+    if (needsReplay()) {
+      // "replayed" follows the missed events only if all of them could be read
+      cmd = String.format("now=$(date +%%s) && docker events --since %d --until $now %s && echo replayed $now && " +
+          "timeout %d docker events --since $now %s", lastEventTime, SSH_EVENTS_FORMAT, SSH_EVENTS_WINDOW_SECONDS, SSH_EVENTS_FORMAT);
+    } else {
+      // the host clock is printed first so that a window without events still moves the resume point forward
+      String since = lastEventTime > 0 ? String.valueOf(lastEventTime) : "$(date +%s)";
+      cmd = String.format("date +%%s; timeout %d docker events --since %s %s", SSH_EVENTS_WINDOW_SECONDS, since, SSH_EVENTS_FORMAT);
+    }
+    if (DEBUG) System.out.format("Start executing: %s\n", cmd);
+    AzureDockerCommandResult result = AzureDockerSSHOps.execute(cmd, session, line -> {
+      line = line.trim();
+      if (line.matches("\\d+")) {
+        lastEventTime = Math.max(lastEventTime, Long.parseLong(line));
+      } else if (line.matches("replayed \\d+")) {
+        onReplayed(Long.parseLong(line.substring("replayed ".length())));
+      } else if (line.startsWith("{")) {
+        try {
+          onEvent(mapper.readTree(line));
+        } catch (Exception e) {
+          if (DEBUG) e.printStackTrace();
+        }
+      }
+    });
+    if (DEBUG) System.out.format("Done executing: %s\n", cmd);
+
+    // only a window closed by the timeout is resumed right away; anything else is retried with a delay
+    return result.exitStatus == 124 && lastEventTime > 0;
+  }
+
+  private void closeEventsSession() {
+    Session session = eventsSession;
+    eventsSession = null;
+    if (session != null) {
+      session.disconnect();
+    }
+  }
+
+  private void onEvent(JsonNode event) {
+    lastEventTime = Math.max(lastEventTime, event.path("time").asLong());
+
+    // "status", "id" and "from" are the names used before the 1.22 API
+    String type = event.path("Type").asText("container");
+    String action = event.path("Action").asText(event.path("status").asText());
+    String id = event.path("Actor").path("ID").asText(event.path("id").asText());
+
+    try {
+      if (type.equals("container")) {
+        onContainerEvent(action, id);
+      } else if (type.equals("image")) {
+        onImageEvent(action);
+      }
+    } catch (Exception e) {
+      // the model can no longer be trusted; the next refresh lists the host again
+      needsListing = true;
+      isLive = false;
+      if (DEBUG) e.printStackTrace();
+    }
+  }
+
+  private void onContainerEvent(String action, String containerId) {
+    switch (action) {
+      case "create":
+        addContainer(containerId);
+        break;
+      case "start":
+      case "unpause":
+        updateContainer(containerId, true);
+        break;
+      case "die":
+      case "stop":
+      case "pause":
+        updateContainer(containerId, false);
+        break;
+      case "rename":
+        removeContainer(containerId);
+        addContainer(containerId);
+        break;
+      case "destroy":
+        removeContainer(containerId);
+        break;
+      default:
+        // exec, attach, health status and the like do not change what the explorer shows
+    }
+  }
+
+  private void onImageEvent(String action) {
+    switch (action) {
+      case "pull":
+      case "tag":
+      case "untag":
+      case "delete":
+      case "import":
+      case "load":
+        DockerHost host = dockerHost;
+        Map<String, DockerImage> dockerImages = AzureDockerImageOps.getImages(host);
+        Map<String, DockerContainer> dockerContainers = AzureDockerContainerOps.getContainers(host);
+        AzureDockerContainerOps.setContainersAndImages(dockerContainers, dockerImages);
+        host.dockerImages = dockerImages;
+        listener.onImagesChanged(dockerImages);
+        break;
+      default:
+    }
+  }
+
+  private void addContainer(String containerId) {
+    DockerContainer dockerContainer = readContainer(containerId);
+    Map<String, DockerImage> dockerImages = dockerHost.dockerImages;
+    if (dockerContainer == null || dockerImages == null) {
+      return;
+    }
+
+    // containers of untagged images are not shown by the explorer
+    DockerImage dockerImage = dockerImages.get(dockerContainer.image);
+    if (dockerImage != null) {
+      AzureDockerContainerOps.setContainerUrl(dockerContainer, dockerImage);
+      putContainer(dockerImage, dockerContainer);
+      listener.onContainerAdded(dockerImage, dockerContainer);
+    }
+  }
+
+  private void updateContainer(String containerId, boolean isRunning) {
+    DockerImage dockerImage = findImageOfContainer(containerId);
+    if (dockerImage == null) {
+      return;
+    }
+
+    DockerContainer dockerContainer;
+    if (AzureDockerRemoteApiOps.isAvailable(dockerHost)) {
+      // a single request also brings the published ports, which only show while the container runs
+      dockerContainer = AzureDockerRemoteApiOps.getContainer(dockerHost, containerId);
+      if (dockerContainer == null) {
+        return;
+      }
+      AzureDockerContainerOps.setContainerUrl(dockerContainer, dockerImage);
+    } else {
+      dockerContainer = findContainer(dockerImage, containerId);
+      dockerContainer.isRunning = isRunning;
+      dockerContainer.status = isRunning ? "Up" : "Exited";
+    }
+
+    putContainer(dockerImage, dockerContainer);
+    listener.onContainerChanged(dockerImage, dockerContainer);
+  }
+
+  private void removeContainer(String containerId) {
+    DockerImage dockerImage = findImageOfContainer(containerId);
+    if (dockerImage == null) {
+      return;
+    }
+
+    DockerContainer dockerContainer = findContainer(dockerImage, containerId);
+    // the explorer iterates these maps on other threads, so they are replaced rather than modified
+    Map<String, DockerContainer> containers = new HashMap<>(dockerImage.containers);
+    containers.remove(dockerContainer.name);
+    dockerImage.containers = containers;
+    listener.onContainerRemoved(dockerImage, dockerContainer);
+  }
+
+  private void putContainer(DockerImage dockerImage, DockerContainer dockerContainer) {
+    Map<String, DockerContainer> containers = new HashMap<>(dockerImage.containers);
+    containers.values().removeIf(c -> containerIdEquals(c, dockerContainer.id));
+    containers.put(dockerContainer.name, dockerContainer);
+    dockerImage.containers = containers;
+  }
+
+  private DockerContainer readContainer(String containerId) {
+    if (AzureDockerRemoteApiOps.isAvailable(dockerHost)) {
+      return AzureDockerRemoteApiOps.getContainer(dockerHost, containerId);
+    }
+
+    for (DockerContainer dockerContainer : AzureDockerContainerOps.getContainers(dockerHost).values()) {
+      if (containerIdEquals(dockerContainer, containerId)) {
+        return dockerContainer;
+      }
+    }
+
+    return null;
+  }
+
+  private DockerImage findImageOfContainer(String containerId) {
+    Map<String, DockerImage> dockerImages = dockerHost.dockerImages;
+    if (dockerImages != null) {
+      for (DockerImage dockerImage : dockerImages.values()) {
+        if (dockerImage.containers != null && findContainer(dockerImage, containerId) != null) {
+          return dockerImage;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  private static DockerContainer findContainer(DockerImage dockerImage, String containerId) {
+    for (DockerContainer dockerContainer : dockerImage.containers.values()) {
+      if (containerIdEquals(dockerContainer, containerId)) {
+        return dockerContainer;
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean containerIdEquals(DockerContainer dockerContainer, String containerId) {
+    return dockerContainer.id != null && containerId != null && !containerId.isEmpty() &&
+        (dockerContainer.id.startsWith(containerId) || containerId.startsWith(dockerContainer.id));
+  }
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.ops;
+
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.AzureDockerException;
+import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.keyvault.KeyVaultClient;
+import com.microsoft.azure.management.Azure;
+import com.microsoft.azure.management.compute.VirtualMachine;
+import com.microsoft.azure.management.network.Network;
+import com.microsoft.azure.management.storage.StorageAccount;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.DEBUG;
+
+/**
+ * Creates a Docker host as a graph of steps instead of one long sequence: the virtual network and the storage account
+ * are created side by side, the key vault is created while the virtual machine boots, and the TLS certificates are
+ * set up on the host while the Docker service is being installed. A step starts as soon as the steps it depends on
+ * are done.
+ * <p/>
+ * A failed step stops the provisioning once the running steps finish; calling {@link #provision} again resumes it,
+ * skipping every step that already succeeded.
+ */
+public class AzureDockerHostProvisioner {
+  public enum Step {
+    RESOURCE_GROUP("Creating resource group"),
+    VIRTUAL_NETWORK("Creating virtual network", RESOURCE_GROUP),
+    STORAGE_ACCOUNT("Creating storage account", RESOURCE_GROUP),
+    KEY_VAULT("Creating key vault", RESOURCE_GROUP),
+    VIRTUAL_MACHINE("Creating virtual machine", VIRTUAL_NETWORK, STORAGE_ACCOUNT),
+    VIRTUAL_MACHINE_STARTUP("Waiting for virtual machine to be up", VIRTUAL_MACHINE),
+    DOCKER_SERVICE("Installing Docker service", VIRTUAL_MACHINE_STARTUP),
+    TLS_CERTS("Setting up TLS certificates", VIRTUAL_MACHINE_STARTUP),
+    DOCKER_CONFIG("Configuring Docker service", DOCKER_SERVICE, TLS_CERTS),
+    KEY_VAULT_SECRETS("Saving login credentials and certificates to key vault", KEY_VAULT, TLS_CERTS);
+
+    private final String description;
+    private final Step[] dependencies;
+
+    Step(String description, Step... dependencies) {
+      this.description = description;
+      this.dependencies = dependencies;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public List<Step> getDependencies() {
+      return Arrays.asList(dependencies);
+    }
+  }
+
+  public enum StepState {
+    PENDING,
+    RUNNING,
+    DONE,
+    SKIPPED,
+    FAILED
+  }
+
+  public interface ProgressListener {
+    /**
+     * Called from the thread running the step each time the step starts, completes or fails.
+     */
+    void onStepChanged(Step step, StepState state, Throwable error, int completed, int total);
+  }
+
+  // the steps only wait on Azure and on the host, so a thread per running step is cheap
+  private static final ExecutorService stepPool = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "AzureDockerHostProvisioner-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final Azure azureClient;
+  private final KeyVaultClient keyVaultClient;
+  private final DockerHost dockerHost;
+  private final Map<Step, StepState> states = new EnumMap<>(Step.class);
+  private final Map<Step, Throwable> errors = new EnumMap<>(Step.class);
+  private final Map<Step, Long> durations = new EnumMap<>(Step.class);
+
+  private volatile boolean cancelled;
+  private volatile String resourceGroupName;
+  private volatile Network vnet;
+  private volatile StorageAccount storageAccount;
+  private volatile String vaultUri;
+
+  /**
+   * @param keyVaultClient the client for the host's key vault; {@code null} if the login credentials are not saved
+   */
+  public AzureDockerHostProvisioner(Azure azureClient, KeyVaultClient keyVaultClient, DockerHost dockerHost) {
+    if (azureClient == null || dockerHost == null || dockerHost.hostVM == null || dockerHost.certVault == null) {
+      throw new AzureDockerException("Unexpected param values; azureClient, dockerHost, host VM and login credentials cannot be null");
+    }
+
+    this.azureClient = azureClient;
+    this.keyVaultClient = keyVaultClient;
+    this.dockerHost = dockerHost;
+
+    boolean hasKeyVault = keyVaultClient != null && dockerHost.certVault.hostName != null;
+    for (Step step : Step.values()) {
+      states.put(step, StepState.PENDING);
+    }
+    if (!hasKeyVault) {
+      states.put(Step.KEY_VAULT, StepState.SKIPPED);
+      states.put(Step.KEY_VAULT_SECRETS, StepState.SKIPPED);
+    }
+    if (!dockerHost.isTLSSecured) {
+      states.put(Step.TLS_CERTS, StepState.SKIPPED);
+    }
+  }
+
+  /**
+   * Runs every step which has not succeeded yet, in dependency order and in parallel where the steps allow it.
+   *
+   * @throws AzureDockerException naming the first step that failed; the steps which succeeded are kept for the next call
+   */
+  public synchronized DockerHost provision(ProgressListener progressListener) throws AzureDockerException {
+    synchronized (states) {
+      // steps which failed or were interrupted by an earlier call run again
+      for (Map.Entry<Step, StepState> entry : states.entrySet()) {
+        if (entry.getValue() == StepState.FAILED || entry.getValue() == StepState.RUNNING) {
+          entry.setValue(StepState.PENDING);
+        }
+      }
+      errors.clear();
+    }
+    cancelled = false;
+
+    CompletionService<Step> completionService = new ExecutorCompletionService<>(stepPool);
+    Map<Step, Future<Step>> running = new EnumMap<>(Step.class);
+    Step failedStep = null;
+
+    try {
+      while (true) {
+        if (failedStep == null && !cancelled) {
+          for (Step step : getReadySteps()) {
+            setState(step, StepState.RUNNING, null, progressListener);
+            running.put(step, completionService.submit(() -> {
+              runStep(step, progressListener);
+              return step;
+            }));
+          }
+        }
+
+        if (running.isEmpty()) {
+          break;
+        }
+
+        Future<Step> future = completionService.take();
+        for (Iterator<Map.Entry<Step, Future<Step>>> it = running.entrySet().iterator(); it.hasNext(); ) {
+          if (it.next().getValue() == future) {
+            it.remove();
+          }
+        }
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // the step recorded its own failure; the ones still running are allowed to finish
+          if (failedStep == null) {
+            failedStep = ((StepFailure) e.getCause()).step;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Future<Step> future : running.values()) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new AzureDockerException("Docker host provisioning was interrupted", e);
+    }
+
+    if (failedStep == null && cancelled && !isDone()) {
+      throw new AzureDockerException("Docker host provisioning was cancelled");
+    }
+
+    if (failedStep != null) {
+      Throwable error = getError(failedStep);
+      throw new AzureDockerException(String.format("%s failed: %s", failedStep.getDescription(), error.getMessage()),
+          error instanceof Exception ? (Exception) error : new Exception(error));
+    }
+
+    return dockerHost;
+  }
+
+  /**
+   * Stops starting new steps; the running ones finish and {@link #provision} can resume from there later.
+   * May be called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public StepState getState(Step step) {
+    synchronized (states) {
+      return states.get(step);
+    }
+  }
+
+  public Throwable getError(Step step) {
+    synchronized (states) {
+      return errors.get(step);
+    }
+  }
+
+  /**
+   * How long each completed step took, in milliseconds.
+   */
+  public Map<Step, Long> getStepDurations() {
+    synchronized (states) {
+      return new EnumMap<>(durations);
+    }
+  }
+
+  public boolean isDone() {
+    synchronized (states) {
+      for (StepState state : states.values()) {
+        if (state != StepState.DONE && state != StepState.SKIPPED) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private List<Step> getReadySteps() {
+    List<Step> ready = new ArrayList<>();
+    synchronized (states) {
+      for (Step step : Step.values()) {
+        if (states.get(step) != StepState.PENDING) {
+          continue;
+        }
+        boolean isReady = true;
+        for (Step dependency : step.getDependencies()) {
+          StepState state = states.get(dependency);
+          isReady &= state == StepState.DONE || state == StepState.SKIPPED;
+        }
+        if (isReady) {
+          ready.add(step);
+        }
+      }
+    }
+
+    return ready;
+  }
+
+  private void runStep(Step step, ProgressListener progressListener) throws StepFailure {
+    long start = System.currentTimeMillis();
+    try {
+      if (DEBUG) System.out.format("Start %s for %s\n", step.getDescription(), dockerHost.name);
+      executeStep(step);
+      if (DEBUG) System.out.format("Done %s for %s in %d ms\n", step.getDescription(), dockerHost.name, System.currentTimeMillis() - start);
+      synchronized (states) {
+        durations.put(step, System.currentTimeMillis() - start);
+      }
+      setState(step, StepState.DONE, null, progressListener);
+    } catch (Throwable e) {
+      setState(step, StepState.FAILED, e, progressListener);
+      throw new StepFailure(step, e);
+    }
+  }
+
+  private void executeStep(Step step) {
+    Session session;
+    switch (step) {
+      case RESOURCE_GROUP:
+        resourceGroupName = AzureDockerVMOps.createDockerHostResourceGroup(azureClient, dockerHost);
+        break;
+      case VIRTUAL_NETWORK:
+        vnet = AzureDockerVMOps.getOrCreateDockerHostVnet(azureClient, dockerHost, resourceGroupName);
+        break;
+      case STORAGE_ACCOUNT:
+        storageAccount = AzureDockerVMOps.getOrCreateDockerHostStorageAccount(azureClient, dockerHost, resourceGroupName);
+        break;
+      case KEY_VAULT:
+        vaultUri = AzureDockerCertVaultOps.createOrUpdateVaultResource(azureClient, dockerHost.certVault, keyVaultClient);
+        break;
+      case VIRTUAL_MACHINE:
+        VirtualMachine vm = AzureDockerVMOps.createDockerHostVM(azureClient, dockerHost, resourceGroupName, vnet, storageAccount);
+        String sid = dockerHost.hostVM.sid;
+        dockerHost.hostVM = AzureDockerVMOps.getDockerVM(vm);
+        dockerHost.hostVM.sid = sid;
+        dockerHost.apiUrl = dockerHost.hostVM.dnsName;
+        break;
+      case VIRTUAL_MACHINE_STARTUP:
+        AzureDockerVMOps.waitForVirtualMachineStartup(azureClient, dockerHost);
+        break;
+      case DOCKER_SERVICE:
+        session = AzureDockerSSHOps.createLoginInstance(dockerHost);
+        AzureDockerVMOps.installDockerServiceOnUbuntuServer(dockerHost, session);
+        break;
+      case TLS_CERTS:
+        session = AzureDockerSSHOps.createLoginInstance(dockerHost);
+        AzureDockerVMOps.installDockerTlsCertsForUbuntuServer(dockerHost, session);
+        break;
+      case DOCKER_CONFIG:
+        session = AzureDockerSSHOps.createLoginInstance(dockerHost);
+        AzureDockerVMOps.createDockerConfigForUbuntuServer(dockerHost, session);
+        break;
+      case KEY_VAULT_SECRETS:
+        AzureDockerCertVaultOps.setVaultSecrets(dockerHost.certVault, keyVaultClient, vaultUri);
+        break;
+      default:
+        throw new AzureDockerException("Unexpected provisioning step " + step);
+    }
+  }
+
+  private void setState(Step step, StepState state, Throwable error, ProgressListener progressListener) {
+    int completed = 0;
+    synchronized (states) {
+      states.put(step, state);
+      if (error != null) {
+        errors.put(step, error);
+      }
+      for (StepState stepState : states.values()) {
+        if (stepState == StepState.DONE || stepState == StepState.SKIPPED) {
+          completed++;
+        }
+      }
+    }
+
+    if (progressListener != null) {
+      progressListener.onStepChanged(step, state, error, completed, Step.values().length);
+    }
+  }
+
+  private static class StepFailure extends Exception {
+    final Step step;
+
+    StepFailure(Step step, Throwable cause) {
+      super(cause);
+      this.step = step;
+    }
+  }
+}
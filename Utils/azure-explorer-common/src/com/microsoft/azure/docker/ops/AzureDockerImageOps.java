@@ -164,56 +164,67 @@ public class AzureDockerImageOps {
       throw new AzureDockerException("Unexpected param values: dockerHost and login session cannot be null");
     }
 
-    if (dockerHost.session == null) dockerHost.session = AzureDockerSSHOps.createLoginInstance(dockerHost);
-
-    try {
-      if (!dockerHost.session.isConnected()) dockerHost.session.connect();
-
-      Map<String, DockerImage> dockerImageMap = new HashMap<>();
-
-      AzureDockerVMOps.waitForDockerDaemonStartup(dockerHost.session);
+    Map<String, DockerImage> dockerImageMap = null;
+
+    if (AzureDockerRemoteApiOps.isAvailable(dockerHost)) {
+      try {
+        dockerImageMap = AzureDockerRemoteApiOps.getImages(dockerHost);
+      } catch (Exception e) {
+        // the API port can be closed by the network security group; fall back to the docker client over SSH
+        if (DEBUG) e.printStackTrace();
+      }
+    }
 
-      ObjectMapper mapper = new ObjectMapper()
-          .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-          .configure(SerializationFeature.INDENT_OUTPUT, true);
+    AzureDockerSSHOps.getLoginInstance(dockerHost);
 
-      // list all the Docker images on the Docker host
-      String cmd1 = String.format("docker images -a --format \"{ \\\"name\\\" : \\\"{{.Repository}}\\\", \\\"tag\\\" : \\\"{{.Tag}}\\\", \\\"id\\\" : \\\"{{.ID}}\\\", \\\"size\\\" : \\\"{{.Size}}\\\" }\"");
-      if (DEBUG) System.out.format("Start executing: %s\n", cmd1);
-      String cmdOut1 = AzureDockerSSHOps.executeCommand(cmd1, dockerHost.session, false);
-      if (DEBUG) System.out.println(cmdOut1);
-      if (DEBUG) System.out.format("Done executing: %s\n", cmd1);
-      String jsonAllImages = cmdOut1;
+    try {
+      if (dockerImageMap == null) {
+        dockerImageMap = new HashMap<>();
+
+        AzureDockerVMOps.waitForDockerDaemonStartup(dockerHost.session);
+
+        ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(SerializationFeature.INDENT_OUTPUT, true);
+
+        // list all the Docker images on the Docker host
+        String cmd1 = String.format("docker images -a --format \"{ \\\"name\\\" : \\\"{{.Repository}}\\\", \\\"tag\\\" : \\\"{{.Tag}}\\\", \\\"id\\\" : \\\"{{.ID}}\\\", \\\"size\\\" : \\\"{{.Size}}\\\" }\"");
+        if (DEBUG) System.out.format("Start executing: %s\n", cmd1);
+        String cmdOut1 = AzureDockerSSHOps.executeCommand(cmd1, dockerHost.session, false);
+        if (DEBUG) System.out.println(cmdOut1);
+        if (DEBUG) System.out.format("Done executing: %s\n", cmd1);
+        String jsonAllImages = cmdOut1;
+
+        Scanner lines = new Scanner(jsonAllImages);
+        while (lines.hasNextLine()) {
+          String currentLine = lines.nextLine();
+          try {
+            DockerImageRawInfo rawImage = mapper.readValue(currentLine, DockerImageRawInfo.class);
+            if (rawImage.name != null && !rawImage.name.equals("<none>")) {
+              DockerImage dockerImage = new DockerImage();
+              dockerImage.name = rawImage.name;
+              dockerImage.tag = (rawImage.tag != null && rawImage.tag.toLowerCase().equals("latest")) ? "" : rawImage.tag;
+              dockerImage.id = rawImage.id;
+              dockerImage.size = rawImage.size;
+              dockerImage.dockerHostApiUrl = dockerHost.apiUrl;
+              dockerImage.containers = new HashMap<>();
+
+              dockerImageMap.put(dockerImage.name + (dockerImage.tag.isEmpty() ? "" : ":" + dockerImage.tag), dockerImage);
+            }
+          } catch (Exception ignored){}
+        }
+        lines.close();
+      }
 
       // list all the Azure Plugin images
-      cmd1 = String.format("cd %s/ && ls -1 -d */ && cd ~", DEFAULT_DOCKER_IMAGES_DIRECTORY);
+      String cmd1 = String.format("cd %s/ && ls -1 -d */ && cd ~", DEFAULT_DOCKER_IMAGES_DIRECTORY);
       if (DEBUG) System.out.format("Start executing: %s\n", cmd1);
-      cmdOut1 = AzureDockerSSHOps.executeCommand(cmd1, dockerHost.session, false);
+      String cmdOut1 = AzureDockerSSHOps.executeCommand(cmd1, dockerHost.session, false);
       if (DEBUG) System.out.println(cmdOut1);
       if (DEBUG) System.out.format("Done executing: %s\n", cmd1);
       String pluginImages = cmdOut1;
 
-      Scanner lines = new Scanner(jsonAllImages);
-      while (lines.hasNextLine()) {
-        String currentLine = lines.nextLine();
-        try {
-          DockerImageRawInfo rawImage = mapper.readValue(currentLine, DockerImageRawInfo.class);
-          if (rawImage.name != null && !rawImage.name.equals("<none>")) {
-            DockerImage dockerImage = new DockerImage();
-            dockerImage.name = rawImage.name;
-            dockerImage.tag = (rawImage.tag != null && rawImage.tag.toLowerCase().equals("latest")) ? "" : rawImage.tag;
-            dockerImage.id = rawImage.id;
-            dockerImage.size = rawImage.size;
-            dockerImage.dockerHostApiUrl = dockerHost.apiUrl;
-            dockerImage.containers = new HashMap<>();
-
-            dockerImageMap.put(dockerImage.name + (dockerImage.tag.isEmpty() ? "" : ":" + dockerImage.tag), dockerImage);
-          }
-        } catch (Exception ignored){}
-      }
-      lines.close();
-
-      lines = new Scanner(pluginImages);
+      Scanner lines = new Scanner(pluginImages);
       while (lines.hasNextLine()) {
         String currentLine = lines.nextLine();
         try {
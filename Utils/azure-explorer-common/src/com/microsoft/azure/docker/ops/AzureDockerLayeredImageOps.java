@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.ops;
+
+import com.microsoft.azure.docker.model.AzureDockerException;
+import com.microsoft.azure.docker.model.AzureDockerImageInstance;
+import com.microsoft.azure.docker.model.KnownDockerImages;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Splits the artifact of a predefined Docker image into a dependency libraries layer and an application layer, so
+ * that {@code docker build} keeps reusing the libraries layer while only the application classes change.
+ * <p/>
+ * Each layer is written as a tar archive that the Dockerfile {@code ADD}s, which Docker extracts into the image. The
+ * archives are deterministic (sorted entries, fixed owners, modes and times), so an unchanged set of libraries gives
+ * a byte-identical archive: its {@code ADD} step hits the build cache and the delta upload has nothing to send.
+ * <p/>
+ * WAR files on Tomcat and WildFly are deployed exploded, and Spring Boot jars on OpenJDK are started with their
+ * launcher from the exploded directory. Any other artifact or a custom Dockerfile keeps the single artifact layer.
+ */
+public class AzureDockerLayeredImageOps {
+  public static final String LIBS_LAYER_SUFFIX = ".libs.tar";
+  public static final String APP_LAYER_SUFFIX = ".app.tar";
+
+  private static final String SPRING_BOOT_LAUNCHER_PACKAGE = "org.springframework.boot.loader.";
+  // 1980-01-01, the earliest time a zip entry can carry
+  private static final long LAYER_ENTRY_TIME = 315532800L;
+  private static final int TAR_BLOCK_SIZE = 512;
+
+  public static class Layers {
+    public final File libsLayer;
+    public final File appLayer;
+    public final String dockerfileContent;
+
+    Layers(File libsLayer, File appLayer, String dockerfileContent) {
+      this.libsLayer = libsLayer;
+      this.appLayer = appLayer;
+      this.dockerfileContent = dockerfileContent;
+    }
+
+    public void delete() {
+      libsLayer.delete();
+      appLayer.delete();
+      libsLayer.getParentFile().delete();
+    }
+  }
+
+  /**
+   * Writes the two layers of the image's artifact to a temporary directory and rewrites its Dockerfile to add them.
+   *
+   * @return {@code null} if the image does not use a predefined Dockerfile or the artifact has no libraries to split
+   */
+  public static Layers createLayers(AzureDockerImageInstance dockerImageInstance) {
+    if (dockerImageInstance.predefinedDockerfile == null || dockerImageInstance.artifactPath == null) {
+      return null;
+    }
+
+    File artifact = new File(dockerImageInstance.artifactPath);
+    String artifactName = artifact.getName();
+    String baseName = artifactName.contains(".") ? artifactName.substring(0, artifactName.lastIndexOf('.')) : artifactName;
+
+    try (JarFile jarFile = new JarFile(artifact)) {
+      KnownDockerImages knownImage = KnownDockerImages.valueOf(dockerImageInstance.predefinedDockerfile);
+      String libsPrefix;
+      String deploymentDir;
+      String marker = null;
+      String dockerfileContent = dockerImageInstance.dockerfileContent;
+
+      if (!knownImage.isCanRunJarFile() && artifactName.toLowerCase().endsWith(".war")) {
+        libsPrefix = "WEB-INF/lib/";
+        if (knownImage == KnownDockerImages.JBOSS_WILDFLY || knownImage == KnownDockerImages.JBOSS_WILDFLY_DEBUG) {
+          // WildFly deploys an exploded directory named like the archive once it sees the marker file
+          deploymentDir = artifactName;
+          marker = artifactName + ".dodeploy";
+        } else {
+          deploymentDir = baseName;
+        }
+      } else if (knownImage.isCanRunJarFile() && artifactName.toLowerCase().endsWith(".jar")) {
+        Manifest manifest = jarFile.getManifest();
+        String mainClass = manifest != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
+        if (mainClass == null || !mainClass.startsWith(SPRING_BOOT_LAUNCHER_PACKAGE)) {
+          return null;
+        }
+        libsPrefix = "BOOT-INF/lib/";
+        deploymentDir = baseName;
+        String jarCommand = String.format("\"-jar\", \"/home/%s\"", artifactName);
+        if (!dockerfileContent.contains(jarCommand)) {
+          return null;
+        }
+        dockerfileContent = dockerfileContent.replace(jarCommand,
+            String.format("\"-cp\", \"/home/%s\", \"%s\"", deploymentDir, mainClass));
+      } else {
+        return null;
+      }
+
+      String addArtifact = "ADD " + artifactName + " ";
+      int addStart = dockerfileContent.indexOf(addArtifact);
+      if (addStart < 0 || !hasEntries(jarFile, libsPrefix)) {
+        return null;
+      }
+      int addEnd = dockerfileContent.indexOf('\n', addStart);
+      String destination = dockerfileContent.substring(addStart + addArtifact.length(), addEnd < 0 ? dockerfileContent.length() : addEnd).trim();
+      String layersAdd = String.format("ADD %s%s %s\nADD %s%s %s",
+          baseName, LIBS_LAYER_SUFFIX, destination, baseName, APP_LAYER_SUFFIX, destination);
+      dockerfileContent = dockerfileContent.substring(0, addStart) + layersAdd +
+          (addEnd < 0 ? "" : dockerfileContent.substring(addEnd));
+
+      File layersDir = Files.createTempDirectory("azuredocker-layers").toFile();
+      File libsLayer = new File(layersDir, baseName + LIBS_LAYER_SUFFIX);
+      File appLayer = new File(layersDir, baseName + APP_LAYER_SUFFIX);
+      writeLayer(jarFile, libsLayer, deploymentDir, libsPrefix, true, null);
+      writeLayer(jarFile, appLayer, deploymentDir, libsPrefix, false, marker);
+
+      return new Layers(libsLayer, appLayer, dockerfileContent);
+    } catch (IllegalArgumentException e) {
+      // not one of the known images
+      return null;
+    } catch (IOException e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The {@code .dockerignore} for the image directory on the host, keeping delta upload files and earlier artifacts
+   * out of the build context.
+   */
+  public static String getDockerignoreContent(String... contextFiles) {
+    StringBuilder content = new StringBuilder("*\n!Dockerfile\n");
+    for (String contextFile : contextFiles) {
+      content.append('!').append(contextFile).append('\n');
+    }
+
+    return content.toString();
+  }
+
+  private static boolean hasEntries(ZipFile zipFile, String prefix) {
+    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+    while (entries.hasMoreElements()) {
+      if (entries.nextElement().getName().startsWith(prefix)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static void writeLayer(ZipFile zipFile, File layer, String deploymentDir, String libsPrefix, boolean isLibs,
+                                 String marker) throws IOException {
+    // sorted by path, so parents precede their children and the archive does not depend on the zip entry order
+    SortedMap<String, ZipEntry> entries = new TreeMap<>();
+    Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+    while (zipEntries.hasMoreElements()) {
+      ZipEntry entry = zipEntries.nextElement();
+      String name = entry.getName();
+      if (name.startsWith(libsPrefix) == isLibs && !name.startsWith("/") && !name.contains("../")) {
+        String path = deploymentDir + "/" + name;
+        entries.put(path, entry);
+        for (int slash = path.indexOf('/'); slash >= 0 && slash < path.length() - 1; slash = path.indexOf('/', slash + 1)) {
+          entries.putIfAbsent(path.substring(0, slash + 1), null);
+        }
+      }
+    }
+
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(layer))) {
+      byte[] buffer = new byte[64 * 1024];
+      for (Map.Entry<String, ZipEntry> entry : entries.entrySet()) {
+        String path = entry.getKey();
+        if (path.endsWith("/")) {
+          writeTarHeader(out, path, 0, true);
+          continue;
+        }
+
+        ZipEntry zipEntry = entry.getValue();
+        writeTarHeader(out, path, zipEntry.getSize(), false);
+        long written = 0;
+        try (InputStream in = zipFile.getInputStream(zipEntry)) {
+          int count;
+          while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+            written += count;
+          }
+        }
+        if (written != zipEntry.getSize()) {
+          throw new IOException("Unexpected size of " + zipEntry.getName());
+        }
+        writePadding(out, written);
+      }
+      if (marker != null) {
+        writeTarHeader(out, marker, 0, false);
+      }
+
+      // two empty blocks end the archive
+      out.write(new byte[2 * TAR_BLOCK_SIZE]);
+    }
+  }
+
+  private static void writeTarHeader(OutputStream out, String path, long size, boolean isDirectory) throws IOException {
+    byte[] name = path.getBytes(StandardCharsets.UTF_8);
+    byte[] prefix = new byte[0];
+    if (name.length > 100) {
+      // ustar keeps up to 155 bytes of the directory in a separate prefix field
+      int split = path.lastIndexOf('/', path.length() - 2);
+      if (split > 0 && path.substring(split + 1).getBytes(StandardCharsets.UTF_8).length <= 100 &&
+          path.substring(0, split).getBytes(StandardCharsets.UTF_8).length <= 155) {
+        prefix = path.substring(0, split).getBytes(StandardCharsets.UTF_8);
+        name = path.substring(split + 1).getBytes(StandardCharsets.UTF_8);
+      } else {
+        // GNU long name entry, understood by Docker's archive reader
+        byte[] longName = Arrays.copyOf(name, name.length + 1);
+        writeTarHeader(out, "././@LongLink".getBytes(StandardCharsets.UTF_8), new byte[0], longName.length, 'L', 0644);
+        out.write(longName);
+        writePadding(out, longName.length);
+        name = Arrays.copyOf(name, 100);
+      }
+    }
+
+    writeTarHeader(out, name, prefix, size, isDirectory ? '5' : '0', isDirectory ? 0755 : 0644);
+  }
+
+  private static void writeTarHeader(OutputStream out, byte[] name, byte[] prefix, long size, char type, int mode) throws IOException {
+    byte[] header = new byte[TAR_BLOCK_SIZE];
+    System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+    writeOctal(header, 100, 8, mode);
+    writeOctal(header, 108, 8, 0);
+    writeOctal(header, 116, 8, 0);
+    writeOctal(header, 124, 12, size);
+    writeOctal(header, 136, 12, LAYER_ENTRY_TIME);
+    header[156] = (byte) type;
+    System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+    System.arraycopy(prefix, 0, header, 345, Math.min(prefix.length, 155));
+
+    // the checksum is computed with its own field filled with spaces
+    Arrays.fill(header, 148, 156, (byte) ' ');
+    long checksum = 0;
+    for (byte value : header) {
+      checksum += value & 0xff;
+    }
+    writeOctal(header, 148, 7, checksum);
+
+    out.write(header);
+  }
+
+  private static void writeOctal(byte[] header, int offset, int length, long value) {
+    String octal = Long.toOctalString(value);
+    while (octal.length() < length - 1) {
+      octal = "0" + octal;
+    }
+    System.arraycopy(octal.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+    header[offset + length - 1] = 0;
+  }
+
+  private static void writePadding(OutputStream out, long size) throws IOException {
+    int remainder = (int) (size % TAR_BLOCK_SIZE);
+    if (remainder != 0) {
+      out.write(new byte[TAR_BLOCK_SIZE - remainder]);
+    }
+  }
+}
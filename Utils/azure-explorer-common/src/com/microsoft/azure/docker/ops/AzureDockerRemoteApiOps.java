@@ -0,0 +1,445 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.ops;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.docker.model.AzureDockerException;
+import com.microsoft.azure.docker.model.DockerContainer;
+import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.model.DockerImage;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.DEBUG;
+import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.isValid;
+import static com.microsoft.azure.docker.ops.utils.AzureDockerVMSetupScriptsForUbuntu.DOCKER_API_PORT_TLS_ENABLED;
+
+/**
+ * Reads Docker host state from the TLS-secured Docker Remote API that {@link AzureDockerVMOps} configures on the
+ * hosts it creates, authenticating with the client certificates kept in the host's {@code AzureDockerCertVault}.
+ * <p/>
+ * One HTTP client is kept per host and certificate set, and all of them share a single connection pool, so repeated
+ * listings reuse the same TLS connection.
+ */
+public class AzureDockerRemoteApiOps {
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final ConnectionPool connectionPool = new ConnectionPool(5, 5, TimeUnit.MINUTES);
+  private static final ConcurrentMap<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+  // DER prefix turning a PKCS#1 "RSA PRIVATE KEY" into a PKCS#8 PrivateKeyInfo; the lengths are patched in
+  private static final byte[] PKCS8_RSA_ALGORITHM = {
+      0x02, 0x01, 0x00,                                                    // version 0
+      0x30, 0x0d, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86,        // rsaEncryption
+      (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00};
+
+  /**
+   * Tells whether the host exposes the TLS-secured API and the cert vault holds what is needed to call it.
+   */
+  public static boolean isAvailable(DockerHost dockerHost) {
+    return dockerHost != null && dockerHost.isTLSSecured && isValid(dockerHost.apiUrl) &&
+        dockerHost.certVault != null &&
+        isValid(dockerHost.certVault.tlsCACert) &&
+        isValid(dockerHost.certVault.tlsClientCert) &&
+        isValid(dockerHost.certVault.tlsClientKey);
+  }
+
+  public static Map<String, DockerImage> getImages(DockerHost dockerHost) {
+    try {
+      Map<String, DockerImage> dockerImageMap = new HashMap<>();
+
+      for (JsonNode rawImage : get(dockerHost, "/images/json")) {
+        for (JsonNode repoTag : rawImage.path("RepoTags")) {
+          // "registry:5000/name:tag"; the tag follows the last colon after the last slash
+          String nameAndTag = repoTag.asText();
+          int tagSeparator = nameAndTag.lastIndexOf(':');
+          if (tagSeparator < nameAndTag.lastIndexOf('/')) tagSeparator = -1;
+          String name = tagSeparator < 0 ? nameAndTag : nameAndTag.substring(0, tagSeparator);
+          String tag = tagSeparator < 0 ? "" : nameAndTag.substring(tagSeparator + 1);
+
+          if (name.equals("<none>")) continue;
+
+          DockerImage dockerImage = new DockerImage();
+          dockerImage.name = name;
+          dockerImage.tag = tag.toLowerCase().equals("latest") ? "" : tag;
+          dockerImage.id = getShortId(rawImage.path("Id").asText());
+          dockerImage.size = formatSize(rawImage.path("Size").asLong());
+          dockerImage.dockerHostApiUrl = dockerHost.apiUrl;
+          dockerImage.containers = new HashMap<>();
+
+          dockerImageMap.put(dockerImage.name + (dockerImage.tag.isEmpty() ? "" : ":" + dockerImage.tag), dockerImage);
+        }
+      }
+
+      return dockerImageMap;
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  public static Map<String, DockerContainer> getContainers(DockerHost dockerHost) {
+    try {
+      Map<String, DockerContainer> dockerContainerMap = new HashMap<>();
+
+      for (JsonNode rawContainer : get(dockerHost, "/containers/json?all=1&size=1")) {
+        DockerContainer dockerContainer = toDockerContainer(dockerHost, rawContainer);
+        dockerContainerMap.put(dockerContainer.name, dockerContainer);
+      }
+
+      return dockerContainerMap;
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Reads a single container by its full id, or returns {@code null} if the host does not know it (anymore).
+   */
+  public static DockerContainer getContainer(DockerHost dockerHost, String containerId) {
+    try {
+      String filters = URLEncoder.encode("{\"id\":[\"" + containerId + "\"]}", "UTF-8");
+      for (JsonNode rawContainer : get(dockerHost, "/containers/json?all=1&size=1&filters=" + filters)) {
+        return toDockerContainer(dockerHost, rawContainer);
+      }
+
+      return null;
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Converts an entry of {@code /containers/json} into the model used by the explorer, with the same port and url
+   * conventions as the SSH based listing in {@link AzureDockerContainerOps#getContainers(DockerHost)}.
+   */
+  public static DockerContainer toDockerContainer(DockerHost dockerHost, JsonNode rawContainer) throws IOException {
+    DockerContainer dockerContainer = new DockerContainer();
+    String name = rawContainer.path("Names").path(0).asText();
+    dockerContainer.name = name.startsWith("/") ? name.substring(1) : name;
+    dockerContainer.id = rawContainer.path("Id").asText();
+    dockerContainer.status = rawContainer.path("Status").asText();
+    dockerContainer.image = rawContainer.path("Image").asText();
+    dockerContainer.command = rawContainer.path("Command").asText();
+    dockerContainer.size = String.format("%s (virtual %s)",
+        formatSize(rawContainer.path("SizeRw").asLong()),
+        formatSize(rawContainer.path("SizeRootFs").asLong()));
+    dockerContainer.isRunning = "running".equals(rawContainer.path("State").asText());
+
+    String hostPort = "80";
+    String containerPort = "8080";
+    JsonNode port = findPublishedPort(rawContainer.path("Ports"));
+    if (port != null) {
+      hostPort = port.path("PublicPort").asText();
+      containerPort = port.path("PrivatePort").asText() + "/" + port.path("Type").asText();
+    } else {
+      // stopped containers do not report their ports; the bindings are kept in the host configuration
+      try {
+        JsonNode bindings = get(dockerHost, "/containers/" + dockerContainer.id + "/json").path("HostConfig").path("PortBindings");
+        Iterator<String> ports = bindings.fieldNames();
+        if (ports.hasNext()) {
+          containerPort = ports.next();
+          hostPort = bindings.path(containerPort).path(0).path("HostPort").asText(hostPort);
+        }
+      } catch (Exception ignored) {}
+    }
+    dockerContainer.ports = hostPort + ":" + containerPort;
+    dockerContainer.url = String.format("http://%s:%s/", dockerHost.hostVM.dnsName, hostPort);
+    dockerContainer.dockerHostApiUrl = dockerHost.apiUrl;
+
+    return dockerContainer;
+  }
+
+  /**
+   * Prepares a {@code /events} request that reports the events since the given time (in seconds since the epoch,
+   * as seen by the daemon; zero or less streams only new events) and then keeps streaming new ones; pass it to {@link #readEvents(Call, Consumer)} and cancel it to stop.
+   */
+  public static Call newEventsCall(DockerHost dockerHost, long sinceSeconds) {
+    return newEventsCall(dockerHost, sinceSeconds, 0);
+  }
+
+  /**
+   * Like {@link #newEventsCall(DockerHost, long)}; a positive {@code untilSeconds} only replays the events up to that
+   * time and then ends the response.
+   */
+  public static Call newEventsCall(DockerHost dockerHost, long sinceSeconds, long untilSeconds) {
+    // the stream stays open while the host is idle, so it must not time out between events
+    OkHttpClient client = getClient(dockerHost).newBuilder().readTimeout(0, TimeUnit.MILLISECONDS).build();
+    List<String> query = new ArrayList<>();
+    if (sinceSeconds > 0) query.add("since=" + sinceSeconds);
+    if (untilSeconds > 0) query.add("until=" + untilSeconds);
+    String url = getBaseUrl(dockerHost) + "/events" + (query.isEmpty() ? "" : "?" + String.join("&", query));
+    return client.newCall(new Request.Builder().url(url).build());
+  }
+
+  /**
+   * Returns the daemon's clock in seconds since the epoch, taken from the date of a {@code /_ping} response, so that
+   * event times can be compared without trusting the local clock.
+   */
+  public static long getDaemonTime(DockerHost dockerHost) {
+    Request request = new Request.Builder().url(getBaseUrl(dockerHost) + "/_ping").build();
+
+    try (Response response = getClient(dockerHost).newCall(request).execute()) {
+      Date date = response.headers().getDate("Date");
+      if (!response.isSuccessful() || date == null) {
+        throw new IOException("Docker API ping failed: " + response.code() + " " + response.message());
+      }
+
+      return date.getTime() / 1000;
+    } catch (IOException e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Executes the events call and hands every event to {@code eventHandler} until the call is cancelled or the
+   * connection drops.
+   */
+  public static void readEvents(Call eventsCall, Consumer<JsonNode> eventHandler) throws IOException {
+    try (Response response = eventsCall.execute()) {
+      if (!response.isSuccessful()) {
+        throw new IOException("Docker events request failed: " + response.code() + " " + response.message());
+      }
+
+      // the daemon writes one JSON object per event into a chunked response
+      Iterator<JsonNode> events = mapper.readerFor(JsonNode.class).readValues(response.body().byteStream());
+      while (events.hasNext()) {
+        eventHandler.accept(events.next());
+      }
+    }
+  }
+
+  /**
+   * Drops the cached client of a host, e.g. after its certificates were regenerated.
+   */
+  public static void invalidate(DockerHost dockerHost) {
+    Iterator<String> keys = clients.keySet().iterator();
+    String prefix = getBaseUrl(dockerHost) + "#";
+    while (keys.hasNext()) {
+      if (keys.next().startsWith(prefix)) keys.remove();
+    }
+  }
+
+  private static JsonNode get(DockerHost dockerHost, String path) throws IOException {
+    Request request = new Request.Builder().url(getBaseUrl(dockerHost) + path).build();
+    if (DEBUG) System.out.format("Start requesting: %s\n", request.url());
+
+    try (Response response = getClient(dockerHost).newCall(request).execute()) {
+      if (!response.isSuccessful()) {
+        throw new IOException(String.format("Docker API request %s failed: %d %s", path, response.code(), response.message()));
+      }
+
+      return mapper.readTree(response.body().byteStream());
+    } finally {
+      if (DEBUG) System.out.format("Done requesting: %s\n", request.url());
+    }
+  }
+
+  private static JsonNode findPublishedPort(JsonNode ports) {
+    for (JsonNode port : ports) {
+      if (port.hasNonNull("PublicPort")) {
+        return port;
+      }
+    }
+
+    return null;
+  }
+
+  private static String getBaseUrl(DockerHost dockerHost) {
+    String host = dockerHost.apiUrl.replaceFirst("^[a-zA-Z]+://", "");
+    if (host.endsWith("/")) host = host.substring(0, host.length() - 1);
+    String port = isValid(dockerHost.port) ? dockerHost.port : DOCKER_API_PORT_TLS_ENABLED;
+
+    return "https://" + host + ":" + port;
+  }
+
+  private static OkHttpClient getClient(DockerHost dockerHost) {
+    String key = getBaseUrl(dockerHost) + "#" + digest(dockerHost.certVault.tlsCACert, dockerHost.certVault.tlsClientCert,
+        dockerHost.certVault.tlsClientKey);
+
+    OkHttpClient client = clients.get(key);
+    if (client == null) {
+      client = createClient(dockerHost);
+      OkHttpClient existing = clients.putIfAbsent(key, client);
+      if (existing != null) client = existing;
+    }
+
+    return client;
+  }
+
+  private static OkHttpClient createClient(DockerHost dockerHost) {
+    try {
+      CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+      char[] password = UUID.randomUUID().toString().toCharArray();
+
+      KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      trustStore.load(null, null);
+      int index = 0;
+      for (Certificate caCert : certificateFactory.generateCertificates(toStream(dockerHost.certVault.tlsCACert))) {
+        trustStore.setCertificateEntry("ca" + index++, caCert);
+      }
+      TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init(trustStore);
+
+      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      keyStore.load(null, null);
+      Collection<? extends Certificate> clientCerts = certificateFactory.generateCertificates(toStream(dockerHost.certVault.tlsClientCert));
+      keyStore.setKeyEntry("client", readPrivateKey(dockerHost.certVault.tlsClientKey), password,
+          clientCerts.toArray(new Certificate[clientCerts.size()]));
+      KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManagerFactory.init(keyStore, password);
+
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+      X509TrustManager trustManager = null;
+      for (TrustManager tm : trustManagerFactory.getTrustManagers()) {
+        if (tm instanceof X509TrustManager) trustManager = (X509TrustManager) tm;
+      }
+
+      return new OkHttpClient.Builder()
+          .connectionPool(connectionPool)
+          .sslSocketFactory(sslContext.getSocketFactory(), trustManager)
+          .connectTimeout(30, TimeUnit.SECONDS)
+          .readTimeout(60, TimeUnit.SECONDS)
+          .build();
+    } catch (Exception e) {
+      throw new AzureDockerException("Create Docker API client: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Reads an unencrypted PEM private key, either PKCS#8 ("PRIVATE KEY") or PKCS#1 ("RSA PRIVATE KEY") as written by
+   * {@code openssl genrsa} on the Docker host.
+   */
+  private static PrivateKey readPrivateKey(String pem) throws Exception {
+    boolean isPkcs1 = pem.contains("BEGIN RSA PRIVATE KEY");
+    byte[] der = Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", "").trim());
+
+    if (isPkcs1) {
+      ByteArrayOutputStream octetString = new ByteArrayOutputStream();
+      octetString.write(0x04);
+      writeDerLength(octetString, der.length);
+      octetString.write(der);
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      body.write(PKCS8_RSA_ALGORITHM);
+      body.write(octetString.toByteArray());
+
+      ByteArrayOutputStream pkcs8 = new ByteArrayOutputStream();
+      pkcs8.write(0x30);
+      writeDerLength(pkcs8, body.size());
+      pkcs8.write(body.toByteArray());
+      der = pkcs8.toByteArray();
+    }
+
+    return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(der));
+  }
+
+  private static void writeDerLength(ByteArrayOutputStream out, int length) {
+    if (length < 0x80) {
+      out.write(length);
+    } else if (length < 0x100) {
+      out.write(0x81);
+      out.write(length);
+    } else if (length < 0x10000) {
+      out.write(0x82);
+      out.write(length >> 8);
+      out.write(length & 0xff);
+    } else {
+      out.write(0x83);
+      out.write(length >> 16);
+      out.write((length >> 8) & 0xff);
+      out.write(length & 0xff);
+    }
+  }
+
+  private static InputStream toStream(String pem) {
+    return new ByteArrayInputStream(pem.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static String digest(String... values) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String value : values) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+      }
+
+      StringBuilder result = new StringBuilder();
+      for (byte b : digest.digest()) {
+        result.append(String.format("%02x", b));
+      }
+      return result.toString();
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  private static String getShortId(String id) {
+    String hex = id.startsWith("sha256:") ? id.substring("sha256:".length()) : id;
+    return hex.length() > 12 ? hex.substring(0, 12) : hex;
+  }
+
+  /**
+   * Formats a size the way the docker client does: decimal units with three significant digits.
+   */
+  private static String formatSize(long size) {
+    String[] units = {"B", "kB", "MB", "GB", "TB"};
+    double value = size;
+    int unit = 0;
+    while (value >= 1000 && unit < units.length - 1) {
+      value /= 1000;
+      unit++;
+    }
+
+    return new BigDecimal(value).round(new MathContext(3)).stripTrailingZeros().toPlainString() + units[unit];
+  }
+}
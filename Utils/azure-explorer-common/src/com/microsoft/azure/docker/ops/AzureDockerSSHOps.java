@@ -22,91 +22,130 @@
 package com.microsoft.azure.docker.ops;
 
 import com.jcraft.jsch.*;
+import com.microsoft.azure.docker.model.AzureDockerCommandResult;
 import com.microsoft.azure.docker.model.AzureDockerException;
 import com.microsoft.azure.docker.model.DockerHost;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
 public class AzureDockerSSHOps {
-  public static Session createLoginInstance(DockerHost dockerHost) {
-    if (dockerHost != null && dockerHost.certVault != null &&
-        dockerHost.certVault.vmUsername != null && !dockerHost.certVault.vmUsername.isEmpty() &&
-        ((dockerHost.certVault.vmPwd != null  && !dockerHost.certVault.vmPwd.isEmpty()) ||
-         (dockerHost.certVault.sshPubKey != null && !dockerHost.certVault.sshPubKey.isEmpty()))) {
-      try {
-        JSch jsch = new JSch();
-        jsch.setKnownHosts(System.getProperty("user.home")+"/.ssh/known_hosts");
-        if (dockerHost.certVault.sshKey != null && !dockerHost.certVault.sshKey.isEmpty()) {
-          jsch.addIdentity(dockerHost.certVault.hostName, dockerHost.certVault.sshKey.getBytes(), dockerHost.certVault.sshPubKey.getBytes(), (byte[]) null);
-        }
-
-        Session session = jsch.getSession(dockerHost.certVault.vmUsername, dockerHost.hostVM.dnsName);
+  private static final long EXIT_STATUS_TIMEOUT_MS = 5000;
 
-        if (dockerHost.certVault.vmPwd != null && !dockerHost.certVault.vmPwd.isEmpty()) {
-          session.setPassword(dockerHost.certVault.vmPwd);
-        }
-        session.setConfig("StrictHostKeyChecking", "no");
-        session.setConfig("PreferredAuthentications", "publickey,keyboard-interactive,password");
-        session.connect();
-
-        return session;
-      } catch (Exception e) {
-        throw new AzureDockerException("Create Log In Instance: " + e.getMessage(), e);
-      }
+  /**
+   * Returns the pooled SSH session for the Docker host; see {@link SshSessionPool}.
+   */
+  public static Session createLoginInstance(DockerHost dockerHost) {
+    if (hasLoginCredentials(dockerHost)) {
+      return SshSessionPool.getInstance().getSession(dockerHost);
     } else {
       throw new AzureDockerException("Unexpected param values; dockerHost cannot be null");
     }
   }
 
+  /**
+   * Refreshes {@code dockerHost.session} from the session pool, which reconnects it if it was dropped or evicted;
+   * hosts without login credentials keep their current session.
+   */
+  public static Session getLoginInstance(DockerHost dockerHost) {
+    if (hasLoginCredentials(dockerHost)) {
+      dockerHost.session = SshSessionPool.getInstance().getSession(dockerHost);
+    }
+
+    return dockerHost != null ? dockerHost.session : null;
+  }
+
+  private static boolean hasLoginCredentials(DockerHost dockerHost) {
+    return dockerHost != null && dockerHost.certVault != null &&
+        dockerHost.certVault.vmUsername != null && !dockerHost.certVault.vmUsername.isEmpty() &&
+        ((dockerHost.certVault.vmPwd != null  && !dockerHost.certVault.vmPwd.isEmpty()) ||
+         (dockerHost.certVault.sshPubKey != null && !dockerHost.certVault.sshPubKey.isEmpty()));
+  }
+
   public static String executeCommand(String command, Session session, Boolean getExitStatus) {
     return executeCommand(command, session, getExitStatus, false);
   }
 
   public static String executeCommand(String command, Session session, Boolean getExitStatus, Boolean withErr) {
-    String result = "";
-    String resultErr = "";
+    AzureDockerCommandResult result = execute(command, session, null);
+
+    if (!getExitStatus) {
+      return result.output;
+    }
+
+    return result.output + "exit-status: " + result.exitStatus + (withErr ? "\n With error:\n" + result.error : "");
+  }
+
+  public static AzureDockerCommandResult execute(String command, Session session) {
+    return execute(command, session, null);
+  }
+
+  /**
+   * Runs the command and blocks on its output rather than polling it. With an {@code outputLineHandler} every line of
+   * standard output is passed on as soon as it arrives and is not kept in the result, so commands which never end,
+   * like {@code docker logs --follow}, run in constant memory; interrupting the calling thread closes the channel
+   * and ends such a command.
+   */
+  public static AzureDockerCommandResult execute(String command, Session session, Consumer<String> outputLineHandler) {
+    ChannelExec channel = null;
     try {
-      Channel channel = session.openChannel("exec");
-      ((ChannelExec)channel).setCommand(command);
+      channel = (ChannelExec) SshSessionPool.getInstance().openChannel(session, "exec");
+      channel.setCommand(command);
+      // JSch writes standard error into the buffer from its own thread, so reading standard output can block safely
+      ByteArrayOutputStream commandErr = new ByteArrayOutputStream();
+      channel.setErrStream(commandErr);
       InputStream commandOutput = channel.getInputStream();
-      InputStream commandErr = ((ChannelExec) channel).getErrStream();
       channel.connect();
-      byte[] tmp  = new byte[4096];
-      while(true){
-        while(commandOutput.available()>0){
-          int i=commandOutput.read(tmp, 0, 4096);
-          if(i<0)break;
-          result += new String(tmp, 0, i);
-        }
-        while(commandErr.available()>0){
-          int i=commandErr.read(tmp, 0, 4096);
-          if(i<0)break;
-          resultErr += new String(tmp, 0, i);
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      if (outputLineHandler != null) {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(commandOutput, StandardCharsets.UTF_8));
+        String line;
+        while ((line = lines.readLine()) != null) {
+          outputLineHandler.accept(line);
         }
-        if(channel.isClosed()){
-          if(commandOutput.available()>0) continue;
-          if (getExitStatus) {
-            result += "exit-status: " + channel.getExitStatus();
-            if (withErr) {
-              result += "\n With error:\n" + resultErr;
-            }
-          }
-          break;
+      } else {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = commandOutput.read(buffer)) != -1) {
+          output.write(buffer, 0, count);
         }
-        try{Thread.sleep(100);}catch(Exception ee){}
       }
-      channel.disconnect();
+
+      waitForExitStatus(channel);
+
+      AzureDockerCommandResult result = new AzureDockerCommandResult(channel.getExitStatus(), output.toString("UTF-8"), commandErr.toString("UTF-8"));
+      if (!result.isSuccess() && (AzureDockerVMOps.isDockerDaemonGone(result.error) || AzureDockerVMOps.isDockerDaemonGone(result.output))) {
+        AzureDockerVMOps.invalidateDockerDaemonStartup(session);
+      }
 
       return result;
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
+    } finally {
+      SshSessionPool.getInstance().closeChannel(channel);
+    }
+  }
+
+  /**
+   * The exit status follows the end of the output and is normally there already; JSch does not signal its arrival,
+   * so the remaining wait is a short bounded one.
+   */
+  private static void waitForExitStatus(ChannelExec channel) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + EXIT_STATUS_TIMEOUT_MS;
+    long delay = 1;
+    while (!channel.isClosed() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(delay);
+      delay = Math.min(delay * 2, 100);
     }
   }
 
   public static String download(Session session, String fileName, String fromPath, boolean isUserHomeBased) {
+    ChannelSftp channel = null;
     try {
-      ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+      channel = (ChannelSftp) SshSessionPool.getInstance().openChannel(session, "sftp");
       channel.connect();
       ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
       BufferedOutputStream buff = new BufferedOutputStream(outputStream);
@@ -114,33 +153,35 @@ public class AzureDockerSSHOps {
       channel.cd(absolutePath);
       channel.get(fileName, buff);
 
-      channel.disconnect();
-
       return outputStream.toString();
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
+    } finally {
+      SshSessionPool.getInstance().closeChannel(channel);
     }
   }
 
   public static void download(Session session, String fileName, String fromPath, String toPath) {
+    ChannelSftp channel = null;
     try {
-      ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+      channel = (ChannelSftp) SshSessionPool.getInstance().openChannel(session, "sftp");
       channel.connect();
       File toFile = new File(toPath, fileName);
       OutputStream outputStream = new FileOutputStream(toFile);
       BufferedOutputStream buff = new BufferedOutputStream(outputStream);
       channel.cd(fromPath);
       channel.get(fileName, buff);
-
-      channel.disconnect();
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
+    } finally {
+      SshSessionPool.getInstance().closeChannel(channel);
     }
   }
 
   public static void upload(Session session, InputStream from, String fileName, String toPath, boolean isUserHomeBased, String filePerm) {
+    ChannelSftp channel = null;
     try {
-      ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+      channel = (ChannelSftp) SshSessionPool.getInstance().openChannel(session, "sftp");
       channel.connect();
       String absolutePath = isUserHomeBased ? channel.getHome() + "/" + toPath : toPath;
 
@@ -157,17 +198,18 @@ public class AzureDockerSSHOps {
       if (filePerm != null) {
         channel.chmod(Integer.parseInt(filePerm), absolutePath + "/" + fileName);
       }
-
-      channel.disconnect();
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
+    } finally {
+      SshSessionPool.getInstance().closeChannel(channel);
     }
   }
 
   public static void upload(Session session, String fileName, String fromPath, String toPath, boolean isUserHomeBased, String filePerm) {
+    ChannelSftp channel = null;
     try {
       FileInputStream inputStream = new FileInputStream(fromPath + File.separator + fileName);
-      ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+      channel = (ChannelSftp) SshSessionPool.getInstance().openChannel(session, "sftp");
       channel.connect();
       String absolutePath = isUserHomeBased ? channel.getHome() + "/" + toPath : toPath;
 
@@ -181,10 +223,10 @@ public class AzureDockerSSHOps {
       }
       channel.cd(toPath);
       channel.put(inputStream, fileName);
-
-      channel.disconnect();
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
+    } finally {
+      SshSessionPool.getInstance().closeChannel(channel);
     }
   }
 }
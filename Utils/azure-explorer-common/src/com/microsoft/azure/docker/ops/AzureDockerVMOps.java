@@ -43,6 +43,17 @@ import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.isValid;
 import static com.microsoft.azure.docker.ops.utils.AzureDockerVMSetupScriptsForUbuntu.*;
 
 public class AzureDockerVMOps {
+  private static final long DOCKER_DAEMON_STARTUP_TIMEOUT_MS = 60000;
+  private static final long DOCKER_DAEMON_POLL_MIN_DELAY_MS = 250;
+  private static final long DOCKER_DAEMON_POLL_MAX_DELAY_MS = 8000;
+  private static final String DOCKER_DAEMON_GONE_MESSAGE = "Cannot connect to the Docker daemon";
+
+  // keyed by session, so a reconnected session checks the daemon again; dropped sessions are released with their keys
+  private static final Map<Session, DockerDaemonState> dockerDaemonStates = new WeakHashMap<>();
+
+  private static class DockerDaemonState {
+    volatile boolean isReady;
+  }
 
   public static VirtualMachine updateDockerHostVM(Azure azureClient, DockerHost dockerHost) throws AzureDockerException {
     try {
@@ -83,36 +94,88 @@ public class AzureDockerVMOps {
   }
 
   public static VirtualMachine createDockerHostVM(Azure azureClient, DockerHost newHost) throws AzureDockerException {
+    String resourceGroupName = createDockerHostResourceGroup(azureClient, newHost);
+    Network vnet = getOrCreateDockerHostVnet(azureClient, newHost, resourceGroupName);
+    StorageAccount storageAccount = getOrCreateDockerHostStorageAccount(azureClient, newHost, resourceGroupName);
+
+    return createDockerHostVM(azureClient, newHost, resourceGroupName, vnet, storageAccount);
+  }
+
+  /**
+   * Creates the resource group of a new Docker host unless the host uses an existing one ("name@").
+   *
+   * @return the name of the resource group
+   */
+  public static String createDockerHostResourceGroup(Azure azureClient, DockerHost newHost) throws AzureDockerException {
     try {
-      String resourceGroupName;
       if (newHost.hostVM.resourceGroupName.contains("@")) {
         // Existing resource group
-        resourceGroupName = newHost.hostVM.resourceGroupName.split("@")[0];
+        return newHost.hostVM.resourceGroupName.split("@")[0];
       } else {
         // Create a new resource group
-        resourceGroupName = newHost.hostVM.resourceGroupName;
-        ResourceGroup resourceGroup = azureClient.resourceGroups()
+        azureClient.resourceGroups()
             .define(newHost.hostVM.resourceGroupName)
             .withRegion(newHost.hostVM.region)
             .create();
+        return newHost.hostVM.resourceGroupName;
       }
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
 
-      Network vnet;
+  public static Network getOrCreateDockerHostVnet(Azure azureClient, DockerHost newHost, String resourceGroupName) throws AzureDockerException {
+    try {
       if (newHost.hostVM.vnetName.contains("@")) {
         // reuse existing virtual network
         String vnetName = newHost.hostVM.vnetName.split("@")[0];
         String vnetResourceGroupName = newHost.hostVM.vnetName.split("@")[1];
-        vnet = azureClient.networks().getByResourceGroup(vnetResourceGroupName, vnetName);
+        return azureClient.networks().getByResourceGroup(vnetResourceGroupName, vnetName);
       } else {
         // create a new virtual network (a subnet will be automatically created as part of this)
-        vnet = azureClient.networks()
+        return azureClient.networks()
             .define(newHost.hostVM.vnetName)
             .withRegion(newHost.hostVM.region)
             .withExistingResourceGroup(resourceGroupName)
             .withAddressSpace(newHost.hostVM.vnetAddressSpace)
             .create();
       }
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
 
+  public static StorageAccount getOrCreateDockerHostStorageAccount(Azure azureClient, DockerHost newHost, String resourceGroupName) throws AzureDockerException {
+    try {
+      if (newHost.hostVM.storageAccountName.contains("@")) {
+        // Existing storage account
+        for (StorageAccount item : azureClient.storageAccounts().list()) {
+          String storageAccountName = item.name() + "@";
+          if (storageAccountName.equals(newHost.hostVM.storageAccountName)) {
+            return item;
+          }
+        }
+        throw new AzureDockerException("Can't find storage account " + newHost.hostVM.storageAccountName.split("@")[0]);
+      } else {
+        return azureClient.storageAccounts()
+            .define(newHost.hostVM.storageAccountName)
+            .withRegion(newHost.hostVM.region)
+            .withExistingResourceGroup(resourceGroupName)
+            .create();
+      }
+    } catch (AzureDockerException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Creates the Docker host virtual machine once its resource group, virtual network and storage account exist.
+   */
+  public static VirtualMachine createDockerHostVM(Azure azureClient, DockerHost newHost, String resourceGroupName,
+                                                  Network vnet, StorageAccount storageAccount) throws AzureDockerException {
+    try {
       VirtualMachine.DefinitionStages.WithLinuxRootPasswordOrPublicKeyManagedOrUnmanaged defStage1 = azureClient.virtualMachines()
           .define(newHost.hostVM.name)
           .withRegion(newHost.hostVM.region)
@@ -135,21 +198,7 @@ public class AzureDockerVMOps {
             defStage1.withRootPassword(newHost.certVault.vmPwd);
       }
       // todo - temporary not using managed disks as we do not support them yet for docker hosts
-      VirtualMachine.DefinitionStages.WithCreate defStage3 = null;
-      if (newHost.hostVM.storageAccountName.contains("@")) {
-        // Existing storage account
-        for (StorageAccount item : azureClient.storageAccounts().list()) {
-          String storageAccountName = item.name() + "@";
-          if (storageAccountName.equals(newHost.hostVM.storageAccountName)) {
-            defStage3 = defStage2.withUnmanagedDisks().withExistingStorageAccount(item);
-            break;
-          }
-        }
-        if (defStage3 == null)
-          throw new AzureDockerException("Can't find storage account " + newHost.hostVM.storageAccountName.split("@")[0]);
-      } else {
-        defStage3 = defStage2.withUnmanagedDisks().withNewStorageAccount(newHost.hostVM.storageAccountName);
-      }
+      VirtualMachine.DefinitionStages.WithCreate defStage3 = defStage2.withUnmanagedDisks().withExistingStorageAccount(storageAccount);
       defStage3 = defStage3.withSize(newHost.hostVM.vmSize);
 
       defStage3 = defStage3.withTag("dockerhost", newHost.port);
@@ -418,38 +467,54 @@ public class AzureDockerVMOps {
     try {
       Session session = AzureDockerSSHOps.createLoginInstance(dockerHost);
 
-      switch (dockerHost.hostOSType) {
-        case UBUNTU_SERVER_14_04_LTS:
-          installDockerServiceOnUbuntuServer_14_04_LTS(session);
-        case UBUNTU_SERVER_16_04_LTS:
-          installDockerServiceOnUbuntuServer_16_04_LTS(session);
-          break;
-        default:
-          throw new AzureDockerException("Docker dockerHost OS type is not supported");
-      }
+      installDockerServiceOnUbuntuServer(dockerHost, session);
+      dockerHost = installDockerTlsCertsForUbuntuServer(dockerHost, session);
+      createDockerConfigForUbuntuServer(dockerHost, session);
 
-      if (dockerHost.isTLSSecured) {
-        if (isValid(dockerHost.certVault.tlsServerCert)) {
-          // Docker certificates are passed in; copy them to the docker dockerHost
-          uploadDockerTlsCertsForUbuntuServer(dockerHost, session);
-        } else {
-          // Create new TLS certificates and upload them into the current machine representation
-          dockerHost = createDockerCertsForUbuntuServer(dockerHost, session);
-          dockerHost = downloadDockerTlsCertsForUbuntuServer(dockerHost, session);
-        }
-        setupDockerTlsCertsForUbuntuServer(session);
+      return dockerHost;
+
+    } catch (Exception e) {
+      throw new AzureDockerException(e.getMessage(), e);
+    }
+  }
+
+  public static void installDockerServiceOnUbuntuServer(DockerHost dockerHost, Session session) {
+    switch (dockerHost.hostOSType) {
+      case UBUNTU_SERVER_14_04_LTS:
+        installDockerServiceOnUbuntuServer_14_04_LTS(session);
+      case UBUNTU_SERVER_16_04_LTS:
+        installDockerServiceOnUbuntuServer_16_04_LTS(session);
+        break;
+      default:
+        throw new AzureDockerException("Docker dockerHost OS type is not supported");
+    }
+  }
 
-        createDockerConfigWithTlsForUbuntuServer(dockerHost, session);
+  /**
+   * Puts the TLS certificates of a TLS secured host in place, creating them on the host unless they were passed in.
+   * It does not need the Docker service, so it can run while the service is being installed.
+   */
+  public static DockerHost installDockerTlsCertsForUbuntuServer(DockerHost dockerHost, Session session) {
+    if (dockerHost.isTLSSecured) {
+      if (isValid(dockerHost.certVault.tlsServerCert)) {
+        // Docker certificates are passed in; copy them to the docker dockerHost
+        uploadDockerTlsCertsForUbuntuServer(dockerHost, session);
       } else {
-        createDockerConfigNoTlsForUbuntuServer(dockerHost, session);
+        // Create new TLS certificates and upload them into the current machine representation
+        dockerHost = createDockerCertsForUbuntuServer(dockerHost, session);
+        dockerHost = downloadDockerTlsCertsForUbuntuServer(dockerHost, session);
       }
+      setupDockerTlsCertsForUbuntuServer(session);
+    }
 
-      session.disconnect();
-
-      return dockerHost;
+    return dockerHost;
+  }
 
-    } catch (Exception e) {
-      throw new AzureDockerException(e.getMessage(), e);
+  public static void createDockerConfigForUbuntuServer(DockerHost dockerHost, Session session) {
+    if (dockerHost.isTLSSecured) {
+      createDockerConfigWithTlsForUbuntuServer(dockerHost, session);
+    } else {
+      createDockerConfigNoTlsForUbuntuServer(dockerHost, session);
     }
   }
 
@@ -640,6 +705,9 @@ public class AzureDockerVMOps {
       if (DEBUG) System.out.println(cmdOut1);
       if (DEBUG) System.out.println("Done executing docker config setup");
 
+      // the setup script restarts the Docker daemon
+      invalidateDockerDaemonStartup(session);
+
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
     }
@@ -671,6 +739,9 @@ public class AzureDockerVMOps {
       if (DEBUG) System.out.println(cmdOut1);
       if (DEBUG) System.out.println("Done executing docker config setup");
 
+      // the setup script restarts the Docker daemon
+      invalidateDockerDaemonStartup(session);
+
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
     }
@@ -699,7 +770,6 @@ public class AzureDockerVMOps {
           Session session = AzureDockerSSHOps.createLoginInstance(dockerHost);
           String result = AzureDockerSSHOps.executeCommand("ls -l /", session, true);
           if (DEBUG) System.out.println(result);
-          session.disconnect();
           break;
         }
       } catch (Exception e) {
@@ -712,7 +782,14 @@ public class AzureDockerVMOps {
     }
   }
 
-  public static void uploadDockerfileAndArtifact(AzureDockerImageInstance dockerImageInstance, Session session) {
+  /**
+   * Uploads the Dockerfile and the artifact; after the first publish only the changed parts of the artifact are sent.
+   * When the image allows it the artifact is uploaded as a libraries layer and an application layer, see
+   * {@link AzureDockerLayeredImageOps}.
+   *
+   * @return how much of the artifact had to be sent
+   */
+  public static AzureDockerUploadResult uploadDockerfileAndArtifact(AzureDockerImageInstance dockerImageInstance, Session session) {
     if (dockerImageInstance == null || dockerImageInstance.host == null || (session == null && dockerImageInstance.host.session == null)) {
       throw new AzureDockerException("Unexpected param values; dockerHost, dockerHost name, dockerHost dns and login session cannot be null");
     }
@@ -727,13 +804,37 @@ public class AzureDockerVMOps {
 
       if (DEBUG) System.out.println("Start uploading Dockerfile and artifact");
       String toPath = ".azuredocker/images/" + dockerImageInstance.dockerImageName;
-      AzureDockerSSHOps.upload(session,
-          new File(dockerImageInstance.artifactPath).getName(),
-          new File(dockerImageInstance.artifactPath).getParent(),
-          toPath, true, null);
-      AzureDockerSSHOps.upload(session, (new ByteArrayInputStream(dockerImageInstance.dockerfileContent.getBytes())),
+      AzureDockerLayeredImageOps.Layers layers = dockerImageInstance.isLayeredBuild ?
+          AzureDockerLayeredImageOps.createLayers(dockerImageInstance) : null;
+      AzureDockerUploadResult result;
+      String dockerfileContent;
+      String dockerignoreContent;
+      if (layers != null) {
+        try {
+          AzureDockerUploadResult libsResult = AzureDockerDeltaUploadOps.upload(session, layers.libsLayer, toPath);
+          AzureDockerUploadResult appResult = AzureDockerDeltaUploadOps.upload(session, layers.appLayer, toPath);
+          result = new AzureDockerUploadResult(dockerImageInstance.artifactName,
+              libsResult.fileSize + appResult.fileSize, libsResult.bytesSent + appResult.bytesSent,
+              libsResult.isDelta || appResult.isDelta);
+          dockerfileContent = layers.dockerfileContent;
+          dockerignoreContent = AzureDockerLayeredImageOps.getDockerignoreContent(layers.libsLayer.getName(),
+              layers.appLayer.getName());
+        } finally {
+          layers.delete();
+        }
+      } else {
+        File artifact = new File(dockerImageInstance.artifactPath);
+        result = AzureDockerDeltaUploadOps.upload(session, artifact, toPath);
+        dockerfileContent = dockerImageInstance.dockerfileContent;
+        dockerignoreContent = AzureDockerLayeredImageOps.getDockerignoreContent(artifact.getName());
+      }
+      AzureDockerSSHOps.upload(session, (new ByteArrayInputStream(dockerfileContent.getBytes())),
           "Dockerfile", toPath, true, null);
-      if (DEBUG) System.out.println("Done uploading Dockerfile and artifact");
+      AzureDockerSSHOps.upload(session, (new ByteArrayInputStream(dockerignoreContent.getBytes())),
+          ".dockerignore", toPath, true, null);
+      if (DEBUG) System.out.println("Done uploading Dockerfile and artifact: " + result);
+
+      return result;
 
     } catch (Exception e) {
       throw new AzureDockerException(e.getMessage(), e);
@@ -756,30 +857,78 @@ public class AzureDockerVMOps {
     }
   }
 
+  /**
+   * Makes sure the Docker daemon behind the session is running. The daemon is started and polled once per session;
+   * later calls return immediately until {@link #invalidateDockerDaemonStartup(Session)} reports the daemon gone.
+   */
   public static void waitForDockerDaemonStartup(Session session) {
+    DockerDaemonState state;
+    synchronized (dockerDaemonStates) {
+      state = dockerDaemonStates.get(session);
+      if (state == null) {
+        state = new DockerDaemonState();
+        dockerDaemonStates.put(session, state);
+      }
+    }
 
-    // Start Docker daemon and wait until timeout or "docker ps" returns errorcode 0
-    //**********************************//
+    // concurrent operations on the same host wait for a single startup check
+    synchronized (state) {
+      if (state.isReady) {
+        return;
+      }
 
-    try {
-      if (!session.isConnected()) session.connect();
+      // Start Docker daemon and wait until timeout or "docker ps" returns errorcode 0
+      //**********************************//
 
-      if (DEBUG) System.out.format("Executing \"sudo service docker start\"");
-      String cmdOut1 = AzureDockerSSHOps.executeCommand("sudo service docker start \n", session, true);
-      if (DEBUG) System.out.println(cmdOut1);
-      if (DEBUG) System.out.println("Done executing \"sudo service docker start\"");
+      try {
+        if (!session.isConnected()) session.connect();
 
-      for (int timeout = 500; timeout < 60000; timeout += 500) {
-        if (DEBUG) System.out.println("\tExecuting \"docker ps\"");
-        cmdOut1 = AzureDockerSSHOps.executeCommand("docker ps\n", session, true);
+        if (DEBUG) System.out.format("Executing \"sudo service docker start\"");
+        String cmdOut1 = AzureDockerSSHOps.executeCommand("sudo service docker start \n", session, true);
         if (DEBUG) System.out.println(cmdOut1);
-        if (DEBUG) System.out.println("\tDone executing \"docker ps\"");
-        if (cmdOut1.contains("exit-status: 0")) break;
-        Thread.sleep(500);
+        if (DEBUG) System.out.println("Done executing \"sudo service docker start\"");
+
+        long delay = DOCKER_DAEMON_POLL_MIN_DELAY_MS;
+        long deadline = System.currentTimeMillis() + DOCKER_DAEMON_STARTUP_TIMEOUT_MS;
+        while (true) {
+          if (DEBUG) System.out.println("\tExecuting \"docker ps\"");
+          cmdOut1 = AzureDockerSSHOps.executeCommand("docker ps\n", session, true);
+          if (DEBUG) System.out.println(cmdOut1);
+          if (DEBUG) System.out.println("\tDone executing \"docker ps\"");
+          if (cmdOut1.contains("exit-status: 0")) {
+            state.isReady = true;
+            break;
+          }
+          if (System.currentTimeMillis() + delay > deadline) break;
+          Thread.sleep(delay);
+          delay = Math.min(delay * 2, DOCKER_DAEMON_POLL_MAX_DELAY_MS);
+        }
+
+      } catch (Exception e) {
+        throw new AzureDockerException(e.getMessage(), e);
       }
+    }
+  }
 
-    } catch (Exception e) {
-      throw new AzureDockerException(e.getMessage(), e);
+  /**
+   * Forgets that the Docker daemon behind the session was running, so the next operation starts it again.
+   */
+  public static void invalidateDockerDaemonStartup(Session session) {
+    DockerDaemonState state;
+    synchronized (dockerDaemonStates) {
+      state = dockerDaemonStates.get(session);
+    }
+
+    if (state != null) {
+      state.isReady = false;
     }
   }
+
+  /**
+   * Tells whether a command failed because the Docker client could not reach the daemon at all.
+   */
+  public static boolean isDockerDaemonGone(String cmdOut) {
+    return cmdOut != null && cmdOut.contains(DOCKER_DAEMON_GONE_MESSAGE);
+  }
+
 }
\ No newline at end of file
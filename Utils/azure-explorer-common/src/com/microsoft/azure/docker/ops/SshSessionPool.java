@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.docker.ops;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.AzureDockerException;
+import com.microsoft.azure.docker.model.DockerHost;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one SSH session per Docker host and login across all Docker operations.
+ * <p/>
+ * Sessions are kept alive with server alive messages, reconnected on the next request once they drop and
+ * disconnected after they stay idle for {@link #IDLE_TIMEOUT_MS}. Channels opened through
+ * {@link #openChannel(Session, String)} are capped per session, since sshd refuses more than MaxSessions
+ * (10 by default) channels on one connection; they must be released with {@link #closeChannel(Channel)}.
+ */
+public class SshSessionPool {
+  public static final int MAX_CHANNELS_PER_SESSION = 8;
+  public static final long IDLE_TIMEOUT_MS = 10 * 60 * 1000;
+  private static final int SERVER_ALIVE_INTERVAL_MS = 30 * 1000;
+  private static final int SERVER_ALIVE_COUNT_MAX = 3;
+
+  private static final SshSessionPool instance = new SshSessionPool(MAX_CHANNELS_PER_SESSION, IDLE_TIMEOUT_MS);
+
+  private final int maxChannelsPerSession;
+  private final long idleTimeoutMs;
+  private final ConcurrentMap<String, PooledSession> sessions = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Session, PooledSession> sessionOwners = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Channel, PooledSession> channelOwners = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService evictor;
+
+  private final AtomicLong handshakeCount = new AtomicLong();
+  private final AtomicLong reconnectCount = new AtomicLong();
+  private final AtomicLong channelOpenCount = new AtomicLong();
+  private final AtomicLong idleEvictionCount = new AtomicLong();
+
+  private static class PooledSession {
+    final Semaphore channelPermits;
+    Session session;
+    volatile long lastUsed = System.currentTimeMillis();
+    boolean evicted;
+
+    PooledSession(int maxChannels) {
+      channelPermits = new Semaphore(maxChannels, true);
+    }
+  }
+
+  public static SshSessionPool getInstance() {
+    return instance;
+  }
+
+  public SshSessionPool(int maxChannelsPerSession, long idleTimeoutMs) {
+    this.maxChannelsPerSession = maxChannelsPerSession;
+    this.idleTimeoutMs = idleTimeoutMs;
+    this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "SshSessionPool.evictor");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    long period = Math.max(idleTimeoutMs / 2, 1000);
+    evictor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        evictIdleSessions();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the connected session for the host's login, doing the SSH handshake only when there is no session yet
+   * or the previous one was dropped.
+   */
+  public Session getSession(DockerHost dockerHost) {
+    String key = getKey(dockerHost);
+
+    while (true) {
+      PooledSession pooled = sessions.get(key);
+
+      if (pooled == null) {
+        PooledSession created = new PooledSession(maxChannelsPerSession);
+        pooled = sessions.putIfAbsent(key, created);
+        if (pooled == null) pooled = created;
+      }
+
+      // sessions to different hosts are negotiated in parallel; only requests for the same login wait for each other
+      synchronized (pooled) {
+        if (pooled.evicted) {
+          continue;
+        }
+
+        if (pooled.session == null || !pooled.session.isConnected()) {
+          if (pooled.session != null) {
+            sessionOwners.remove(pooled.session);
+            reconnectCount.incrementAndGet();
+          }
+
+          pooled.session = connect(dockerHost);
+          sessionOwners.put(pooled.session, pooled);
+        }
+
+        pooled.lastUsed = System.currentTimeMillis();
+        return pooled.session;
+      }
+    }
+  }
+
+  /**
+   * Opens a channel, waiting while the session already has {@link #MAX_CHANNELS_PER_SESSION} open channels.
+   * Sessions which were not created by this pool are not capped.
+   */
+  public Channel openChannel(Session session, String type) throws JSchException {
+    PooledSession pooled = sessionOwners.get(session);
+
+    if (pooled == null) {
+      Channel channel = session.openChannel(type);
+      channelOpenCount.incrementAndGet();
+      return channel;
+    }
+
+    try {
+      pooled.channelPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new JSchException("Interrupted while waiting for a free channel", e);
+    }
+
+    try {
+      Channel channel = session.openChannel(type);
+      channelOwners.put(channel, pooled);
+      channelOpenCount.incrementAndGet();
+      pooled.lastUsed = System.currentTimeMillis();
+      return channel;
+    } catch (JSchException | RuntimeException e) {
+      pooled.channelPermits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a session outside of the pool for a command that streams for as long as it is wanted, like
+   * {@code docker events}. On a pooled session such a command would hold a channel for good and keep the session from
+   * ever being evicted. The caller disconnects the session when done.
+   */
+  public Session openDedicatedSession(DockerHost dockerHost) {
+    return connect(dockerHost);
+  }
+
+  public void closeChannel(Channel channel) {
+    if (channel == null) {
+      return;
+    }
+
+    channel.disconnect();
+
+    PooledSession pooled = channelOwners.remove(channel);
+
+    if (pooled != null) {
+      pooled.lastUsed = System.currentTimeMillis();
+      pooled.channelPermits.release();
+    }
+  }
+
+  /**
+   * Disconnects every pooled session; sessions are opened again on the next request.
+   */
+  public void closeAll() {
+    for (Map.Entry<String, PooledSession> entry : sessions.entrySet()) {
+      evict(entry.getKey(), entry.getValue());
+    }
+  }
+
+  public long getHandshakeCount() {
+    return handshakeCount.get();
+  }
+
+  public long getReconnectCount() {
+    return reconnectCount.get();
+  }
+
+  public long getChannelOpenCount() {
+    return channelOpenCount.get();
+  }
+
+  public long getIdleEvictionCount() {
+    return idleEvictionCount.get();
+  }
+
+  public int getSessionCount() {
+    return sessions.size();
+  }
+
+  private void evictIdleSessions() {
+    long now = System.currentTimeMillis();
+
+    for (Map.Entry<String, PooledSession> entry : sessions.entrySet()) {
+      PooledSession pooled = entry.getValue();
+
+      synchronized (pooled) {
+        if (pooled.channelPermits.availablePermits() == maxChannelsPerSession &&
+            now - pooled.lastUsed > idleTimeoutMs &&
+            evict(entry.getKey(), pooled)) {
+          idleEvictionCount.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  private boolean evict(String key, PooledSession pooled) {
+    synchronized (pooled) {
+      if (pooled.evicted) {
+        return false;
+      }
+
+      pooled.evicted = true;
+      sessions.remove(key, pooled);
+
+      if (pooled.session != null) {
+        sessionOwners.remove(pooled.session);
+        pooled.session.disconnect();
+      }
+
+      return true;
+    }
+  }
+
+  private Session connect(DockerHost dockerHost) {
+    try {
+      JSch jsch = new JSch();
+      jsch.setKnownHosts(System.getProperty("user.home")+"/.ssh/known_hosts");
+      if (dockerHost.certVault.sshKey != null && !dockerHost.certVault.sshKey.isEmpty()) {
+        jsch.addIdentity(dockerHost.certVault.hostName, dockerHost.certVault.sshKey.getBytes(), dockerHost.certVault.sshPubKey.getBytes(), (byte[]) null);
+      }
+
+      Session session = createSession(jsch, dockerHost);
+
+      if (dockerHost.certVault.vmPwd != null && !dockerHost.certVault.vmPwd.isEmpty()) {
+        session.setPassword(dockerHost.certVault.vmPwd);
+      }
+      session.setConfig("StrictHostKeyChecking", "no");
+      session.setConfig("PreferredAuthentications", "publickey,keyboard-interactive,password");
+      // a dead connection is dropped after three unanswered alive messages and reopened by the next getSession()
+      session.setServerAliveInterval(SERVER_ALIVE_INTERVAL_MS);
+      session.setServerAliveCountMax(SERVER_ALIVE_COUNT_MAX);
+      session.connect();
+      handshakeCount.incrementAndGet();
+
+      return session;
+    } catch (Exception e) {
+      throw new AzureDockerException("Create Log In Instance: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Creates the not yet connected session for the host's login on the default SSH port.
+   */
+  protected Session createSession(JSch jsch, DockerHost dockerHost) throws JSchException {
+    return jsch.getSession(dockerHost.certVault.vmUsername, dockerHost.hostVM.dnsName);
+  }
+
+  /**
+   * The key holds a digest of the credentials rather than the credentials themselves, so a changed password or key
+   * gets a new session.
+   */
+  private static String getKey(DockerHost dockerHost) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(String.valueOf(dockerHost.certVault.vmPwd).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(String.valueOf(dockerHost.certVault.sshKey).getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder key = new StringBuilder()
+          .append(dockerHost.certVault.vmUsername).append('@').append(dockerHost.hostVM.dnsName).append('#');
+      for (byte b : digest.digest()) {
+        key.append(String.format("%02x", b));
+      }
+
+      return key.toString();
+    } catch (Exception e) {
+      throw new AzureDockerException("Create Log In Instance: " + e.getMessage(), e);
+    }
+  }
+}
@@ -24,8 +24,10 @@ package com.microsoft.azure.docker.ops.utils;
 import com.microsoft.azure.docker.model.*;
 import com.microsoft.azure.docker.ops.AzureDockerCertVaultOps;
 import com.microsoft.azure.docker.ops.AzureDockerVMOps;
+import com.microsoft.azure.Resource;
 import com.microsoft.azure.keyvault.KeyVaultClient;
 import com.microsoft.azure.management.Azure;
+import com.microsoft.azure.management.compute.VirtualMachine;
 import com.microsoft.azure.management.keyvault.Vault;
 import com.microsoft.azure.management.network.Network;
 import com.microsoft.azure.management.network.Subnet;
@@ -40,11 +42,11 @@ import com.microsoft.azuretools.sdkmanage.ServicePrincipalAzureManager;
 import com.microsoft.azuretools.utils.AzureRegisterProviderNamespaces;
 import com.microsoft.azuretools.utils.Pair;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
 import rx.Observable;
 import rx.Subscriber;
 import rx.functions.Action0;
 import rx.functions.Action1;
-import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 
 import java.net.HttpURLConnection;
@@ -53,11 +55,16 @@ import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class AzureDockerUtils {
   public static boolean DEBUG = false;
 
+  // concurrent management requests per refresh phase; the ARM throttling limits are per subscription and tenant
+  public static final int MAX_CONCURRENT_REQUESTS = 5;
+
   public static Boolean isValid(String str) {
     return str != null && !str.isEmpty();
   }
@@ -332,16 +339,18 @@ public class AzureDockerUtils {
       }
 
       if (DEBUG) System.out.format("Get AzureDockerHostsManage locations: %s\n", new Date().toString());
-      List<Subscription> azureSubscriptionList = azureAuthManager.getSubscriptions();
-      for (Subscription subscription : azureSubscriptionList) {
-        AzureDockerSubscription dockerSubscription = subsMap.get(subscription.subscriptionId());
-
-        if (dockerSubscription != null) {
-          List<String> locations = subscription.listLocations().stream().sorted(Comparator.comparing(Location::displayName))
-                  .map(o -> o.name().toLowerCase()).collect(Collectors.toList());
-          dockerSubscription.locations = locations;
+      List<Subscription> azureSubscriptionList = new ArrayList<>();
+      for (Subscription subscription : azureAuthManager.getSubscriptions()) {
+        if (subsMap.containsKey(subscription.subscriptionId())) {
+          azureSubscriptionList.add(subscription);
         }
       }
+      forEachSubscription(azureSubscriptionList, subscription -> {
+        List<String> locations = subscription.listLocations().stream().sorted(Comparator.comparing(Location::displayName))
+                .map(o -> o.name().toLowerCase()).collect(Collectors.toList());
+        subsMap.get(subscription.subscriptionId()).locations = locations;
+        return locations;
+      }, Subscription::subscriptionId, "Error loading subscription locations");
     } catch (Exception e) {
       e.printStackTrace();
       DefaultLoader.getUIHelper().showError(e.getMessage(), "Error loading subscription details");
@@ -354,93 +363,77 @@ public class AzureDockerUtils {
     Map<String, Pair<Vault, KeyVaultClient>> vaults = new HashMap<>();
 
     if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker key vault: %s\n", new Date().toString());
-    try {
-      for (AzureDockerSubscription dockerSubscription : azureDockerSubscriptions) {
-        // TODO
-        for (ResourceGroup group : dockerSubscription.azureClient.resourceGroups().list()) {
-          for (Vault vault : dockerSubscription.azureClient.vaults().listByResourceGroup(group.name())) {
-            if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker vault: %s at %s\n", vault.name(), new Date().toString());
-
-            if (vault.tags().get("dockerhost") != null) {
-              if (DEBUG) System.out.format("\t\t...adding Docker vault: %s at %s\n", vault.name(), new Date().toString());
-              vaults.put(vault.name(), new Pair<>(vault, dockerSubscription.keyVaultClient));
-            }
-          }
+    Map<String, List<Vault>> subscriptionVaults = forEachSubscription(azureDockerSubscriptions,
+        AzureDockerUtils::getDockerVaults, "Error loading key vaults");
+    for (AzureDockerSubscription dockerSubscription : azureDockerSubscriptions) {
+      List<Vault> dockerVaults = subscriptionVaults.get(dockerSubscription.id);
+      if (dockerVaults != null) {
+        for (Vault vault : dockerVaults) {
+          if (DEBUG) System.out.format("\t\t...adding Docker vault: %s at %s\n", vault.name(), new Date().toString());
+          vaults.put(vault.name(), new Pair<>(vault, dockerSubscription.keyVaultClient));
         }
       }
-    } catch (Exception e) {
-      e.printStackTrace();
-      DefaultLoader.getUIHelper().showError(e.getMessage(), "Error loading key vaults");
+    }
+
+    return vaults;
+  }
+
+  /* Lists the key vaults tagged by the plugin with a single subscription wide query instead of one per resource group;
+   *   only the tagged vaults are read in full
+   */
+  public static List<Vault> getDockerVaults(AzureDockerSubscription dockerSubscription) {
+    List<Vault> vaults = new ArrayList<>();
+    for (Resource resource : dockerSubscription.azureClient.vaults().inner().list()) {
+      if (resource.getTags() != null && resource.getTags().get("dockerhost") != null) {
+        if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker vault: %s at %s\n", resource.name(), new Date().toString());
+        vaults.add(dockerSubscription.azureClient.vaults().getById(resource.id()));
+      }
     }
 
     return vaults;
   }
 
   public static Map<String, AzureDockerCertVault> refreshDockerVaultDetails(List<AzureDockerSubscription> azureDockerSubscriptions) {
+    return refreshDockerVaultDetails(azureDockerSubscriptions, refreshDockerVaults(azureDockerSubscriptions));
+  }
+
+  /* Reads the Docker host secrets of the given key vaults, a few vaults at a time
+   */
+  public static Map<String, AzureDockerCertVault> refreshDockerVaultDetails(List<AzureDockerSubscription> azureDockerSubscriptions, Map<String, Pair<Vault, KeyVaultClient>> vaultsMap) {
     Map<String, AzureDockerCertVault> dockerVaultDetails = new HashMap<>();
 
     if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker key vault details: %s\n", new Date().toString());
-    try {
-
-
-      Observable.from(azureDockerSubscriptions).flatMap(dockerSubscription -> {
-        return Observable.create(new Observable.OnSubscribe<AzureDockerCertVault>() {
-          @Override
-          public void call(Subscriber<? super AzureDockerCertVault> vaultSubscriber) {
-            dockerSubscription.azureClient.resourceGroups().listAsync().flatMap(new Func1<ResourceGroup, Observable<Vault>>() {
-              @Override
-              public Observable<Vault> call(ResourceGroup resourceGroup) {
-                return dockerSubscription.azureClient.vaults().listByResourceGroupAsync(resourceGroup.name());
-              }
-            }).subscribeOn(Schedulers.io()).toBlocking().subscribe(new Action1<Vault>() {
-              @Override
-              public void call(Vault vaultWithInner) {
-                if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker vault details for: %s at %s\n", vaultWithInner.name(), new Date().toString());
+    Map<String, AzureDockerSubscription> subscriptionsMap = new HashMap<>();
+    for (AzureDockerSubscription dockerSubscription : azureDockerSubscriptions) {
+      subscriptionsMap.put(dockerSubscription.id, dockerSubscription);
+    }
 
-                try {
-                  AzureDockerCertVault certVault = new AzureDockerCertVault();
-                  certVault.name = vaultWithInner.name();
-                  certVault.id = vaultWithInner.id();
-                  certVault.resourceGroupName = vaultWithInner.resourceGroupName();
-                  certVault.userId = dockerSubscription.userId;
-                  certVault.servicePrincipalId = dockerSubscription.servicePrincipalId;
-                  certVault.region = vaultWithInner.regionName();
-                  certVault.uri = vaultWithInner.vaultUri();
-                  AzureDockerCertVault certVaultTemp = AzureDockerCertVaultOps.getVault(certVault, dockerSubscription.keyVaultClient);
-                  if (certVaultTemp == null) {
-                    try {
-                      // try to assign read permissions to the key vault in case it was created with a different service principal
-                      AzureDockerCertVaultOps.setVaultPermissionsRead(dockerSubscription.azureClient, certVault);
-                      certVault = AzureDockerCertVaultOps.getVault(certVault, dockerSubscription.keyVaultClient);
-                    } catch (Exception ignored) {}
-                  } else {
-                    certVault = certVaultTemp;
-                  }
+    List<Vault> vaults = new ArrayList<>();
+    for (Pair<Vault, KeyVaultClient> vault : vaultsMap.values()) {
+      vaults.add(vault.first());
+    }
 
-                  if (certVault != null && certVault.hostName != null) {
-                    vaultSubscriber.onNext(certVault);
-                  }
-                } catch (Exception e) {
-                  e.printStackTrace();
-                }
-              }
-            });
-            vaultSubscriber.onCompleted();
-          }
-        }).subscribeOn(Schedulers.io());
-      }, 5).subscribeOn(Schedulers.io())
-              .toBlocking().subscribe(new Action1<AzureDockerCertVault>() {
-                @Override
-                public void call(AzureDockerCertVault certVault) {
-                  if (certVault != null && certVault.hostName != null && certVault.name != null) {
-                    if (DEBUG)
-                      System.out.format("\t\t...adding Docker vault details: %s at %s\n", certVault.name, new Date().toString());
-                    dockerVaultDetails.put(certVault.name, certVault);
-                  }
-                }
-              });
+    try {
+      ParallelExecutor.Result<AzureDockerCertVault> result = ParallelExecutor.<Vault, AzureDockerCertVault>forEach(vaults, vault -> {
+        // the vault id is "/subscriptions/<sid>/resourceGroups/..."
+        AzureDockerSubscription dockerSubscription = subscriptionsMap.get(vault.id().split("/")[2]);
+        return dockerSubscription != null ? getDockerVaultDetails(dockerSubscription, vault) : null;
+      }).withMaxConcurrency(MAX_CONCURRENT_REQUESTS)
+          .withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL)
+          .execute();
+
+      for (AzureDockerCertVault certVault : result.getResults()) {
+        if (certVault != null && certVault.hostName != null && certVault.name != null) {
+          if (DEBUG) System.out.format("\t\t...adding Docker vault details: %s at %s\n", certVault.name, new Date().toString());
+          dockerVaultDetails.put(certVault.name, certVault);
+        }
+      }
+      for (Throwable failure : result.getFailures().values()) {
+        failure.printStackTrace();
+      }
       if (DEBUG) System.out.format("\tDone getting AzureDockerHostsManage Docker key vault details: %s\n", new Date().toString());
-
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     } catch (Exception e) {
       e.printStackTrace();
       DefaultLoader.getUIHelper().showError(e.getMessage(), "Error loading key vault details");
@@ -449,51 +442,112 @@ public class AzureDockerUtils {
     return dockerVaultDetails;
   }
 
-  public static Map<String, List<AzureDockerVnet>> refreshDockerVnetDetails(List<AzureDockerSubscription> azureDockerSubscriptions) {
-    Map<String, List<AzureDockerVnet>> vnetMaps = new HashMap<>();
-
-    if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker virtual network details: %s\n", new Date().toString());
-    try {
-      for (AzureDockerSubscription dockerSubscription : azureDockerSubscriptions) {
-        vnetMaps.put(dockerSubscription.id, AzureDockerUtils.getVirtualNetworks(dockerSubscription.azureClient));
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-      DefaultLoader.getUIHelper().showError(e.getMessage(), "Error loading virtual network details");
+  private static AzureDockerCertVault getDockerVaultDetails(AzureDockerSubscription dockerSubscription, Vault vaultWithInner) {
+    if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker vault details for: %s at %s\n", vaultWithInner.name(), new Date().toString());
+
+    AzureDockerCertVault certVault = new AzureDockerCertVault();
+    certVault.name = vaultWithInner.name();
+    certVault.id = vaultWithInner.id();
+    certVault.resourceGroupName = vaultWithInner.resourceGroupName();
+    certVault.userId = dockerSubscription.userId;
+    certVault.servicePrincipalId = dockerSubscription.servicePrincipalId;
+    certVault.region = vaultWithInner.regionName();
+    certVault.uri = vaultWithInner.vaultUri();
+    AzureDockerCertVault certVaultTemp = AzureDockerCertVaultOps.getVault(certVault, dockerSubscription.keyVaultClient);
+    if (certVaultTemp == null) {
+      try {
+        // try to assign read permissions to the key vault in case it was created with a different service principal
+        AzureDockerCertVaultOps.setVaultPermissionsRead(dockerSubscription.azureClient, certVault);
+        certVault = AzureDockerCertVaultOps.getVault(certVault, dockerSubscription.keyVaultClient);
+      } catch (Exception ignored) {}
+    } else {
+      certVault = certVaultTemp;
     }
 
-    return vnetMaps;
+    return certVault;
   }
 
-  public static Map<String, List<AzureDockerStorageAccount>> refreshDockerStorageAccountDetails(List<AzureDockerSubscription> azureDockerSubscriptions) {
-    Map<String, List<AzureDockerStorageAccount>> storageMaps = new HashMap<>();
+  public static Map<String, List<AzureDockerVnet>> refreshDockerVnetDetails(List<AzureDockerSubscription> azureDockerSubscriptions) {
+    if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker virtual network details: %s\n", new Date().toString());
+    return forEachSubscription(azureDockerSubscriptions, dockerSubscription -> {
+      return AzureDockerUtils.getVirtualNetworks(dockerSubscription.azureClient);
+    }, "Error loading virtual network details");
+  }
 
+  public static Map<String, List<AzureDockerStorageAccount>> refreshDockerStorageAccountDetails(List<AzureDockerSubscription> azureDockerSubscriptions) {
     if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker storage account details: %s\n", new Date().toString());
-    try {
-      for (AzureDockerSubscription dockerSubscription : azureDockerSubscriptions) {
-        storageMaps.put(dockerSubscription.id, AzureDockerUtils.getStorageAccounts(dockerSubscription.azureClient));
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
-      DefaultLoader.getUIHelper().showError(e.getMessage(), "Error loading storage account details");
-    }
-
-    return storageMaps;
+    return forEachSubscription(azureDockerSubscriptions, dockerSubscription -> {
+      return AzureDockerUtils.getStorageAccounts(dockerSubscription.azureClient);
+    }, "Error loading storage account details");
   }
 
   public static Map<String, List<DockerHost>> refreshDockerHostDetails(List<AzureDockerSubscription> azureDockerSubscriptions, Map<String, AzureDockerCertVault> dockerVaultsMap) {
-    Map<String, List<DockerHost>> dockerHosts = new HashMap<>();
+    return refreshDockerHostDetails(getDockerHostVirtualMachines(azureDockerSubscriptions), dockerVaultsMap);
+  }
 
+  /* Lists the virtual machines tagged as Docker hosts for each subscription; this does not need the key vaults,
+   *   so it can run while they are being read
+   */
+  public static Map<String, List<VirtualMachine>> getDockerHostVirtualMachines(List<AzureDockerSubscription> azureDockerSubscriptions) {
+    if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker virtual machines: %s\n", new Date().toString());
+    return forEachSubscription(azureDockerSubscriptions, dockerSubscription -> {
+      List<VirtualMachine> virtualMachines = new ArrayList<>();
+      for (VirtualMachine vm : dockerSubscription.azureClient.virtualMachines().list()) {
+        if (vm.tags().get("dockerhost") != null) {
+          virtualMachines.add(vm);
+        }
+      }
+      return virtualMachines;
+    }, "Error loading virtual machine details");
+  }
+
+  public static Map<String, List<DockerHost>> refreshDockerHostDetails(Map<String, List<VirtualMachine>> dockerHostVirtualMachines, Map<String, AzureDockerCertVault> dockerVaultsMap) {
     if (DEBUG) System.out.format("\tGet AzureDockerHostsManage Docker virtual machine details: %s\n", new Date().toString());
+    return forEachSubscription(new ArrayList<>(dockerHostVirtualMachines.entrySet()), entry -> {
+      List<DockerHost> dockerHosts = new ArrayList<>(AzureDockerVMOps.getDockerHosts(entry.getValue(), dockerVaultsMap).values());
+      for (DockerHost dockerHost : dockerHosts) {
+        dockerHost.sid = entry.getKey();
+        if (dockerHost.hostVM != null) dockerHost.hostVM.sid = entry.getKey();
+      }
+      return dockerHosts;
+    }, Map.Entry::getKey, "Error loading virtual machine details");
+  }
+
+  private static <R> Map<String, R> forEachSubscription(List<AzureDockerSubscription> azureDockerSubscriptions,
+                                                        ParallelExecutor.Task<AzureDockerSubscription, R> task, String errorTitle) {
+    return forEachSubscription(azureDockerSubscriptions, task, dockerSubscription -> dockerSubscription.id, errorTitle);
+  }
+
+  /* Runs the task for a few subscriptions at a time and maps the results by subscription id; a subscription that
+   *   fails does not keep the others from loading
+   */
+  private static <T, R> Map<String, R> forEachSubscription(List<T> subscriptions, ParallelExecutor.Task<T, R> task,
+                                                           Function<T, String> subscriptionId, String errorTitle) {
+    Map<String, R> results = new HashMap<>();
+
     try {
-      for (AzureDockerSubscription dockerSubscription : azureDockerSubscriptions) {
-        dockerHosts.put(dockerSubscription.id, new ArrayList<>(AzureDockerVMOps.getDockerHosts(dockerSubscription.azureClient, dockerVaultsMap).values()));
+      ParallelExecutor.Result<R> result = ParallelExecutor.<T, R>forEach(subscriptions, task)
+          .withMaxConcurrency(MAX_CONCURRENT_REQUESTS)
+          .withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL)
+          .execute();
+
+      for (int i = 0; i < subscriptions.size(); i++) {
+        if (result.getResults().get(i) != null) {
+          results.put(subscriptionId.apply(subscriptions.get(i)), result.getResults().get(i));
+        }
       }
-    } catch (Exception e) {
-      e.printStackTrace();
-      DefaultLoader.getUIHelper().showError(e.getMessage(), "Error loading virtual machine details");
+      if (result.hasFailures()) {
+        for (Throwable failure : result.getFailures().values()) {
+          failure.printStackTrace();
+        }
+        DefaultLoader.getUIHelper().showError(result.getFirstFailure().getMessage(), errorTitle);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // not thrown when collecting all failures
     }
 
-    return dockerHosts;
+    return results;
   }
 }
@@ -21,57 +21,316 @@
  */
 package com.microsoft.tooling.msservices.helpers;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class ParallelThreadFactory implements ThreadFactory {
-    private int counter = 0;
-    private String prefix = "";
+    private final AtomicInteger counter = new AtomicInteger();
+    private final String prefix;
+
     public ParallelThreadFactory(String prefix) {
         this.prefix = prefix;
     }
+
     public Thread newThread(Runnable r) {
-        return new Thread(r, prefix + "-" + counter++);
+        Thread thread = new Thread(r, prefix + "-" + counter.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
     }
 }
 
+/**
+ * Runs a task for every element of a collection on a shared pool of daemon threads.
+ * <p/>
+ * Every call is bounded by its own concurrency limit: at most that many workers pull elements
+ * from the collection, so a large collection never floods the pool. The pool itself has no
+ * thread limit, so that a task may run an execution of its own without waiting for a free thread. {@link Execution#execute()}
+ * only returns once every worker has stopped, and results are returned in element order.
+ * <pre>
+ * Result&lt;List&lt;VirtualMachine&gt;&gt; result = ParallelExecutor.forEach(sids, task)
+ *         .withMaxConcurrency(4)
+ *         .withErrorMode(ErrorMode.COLLECT_ALL)
+ *         .execute();
+ * </pre>
+ */
 public final class ParallelExecutor {
+    public static final int DEFAULT_MAX_CONCURRENCY = Runtime.getRuntime().availableProcessors() * 2;
 
-    private static final int MAX_NUM_THREADS = Runtime.getRuntime().availableProcessors();
+    // Not bounded on purpose: tasks start executions of their own (the Docker refresh phases list the virtual
+    // machines of every subscription in parallel), and a bounded pool would reject or starve those nested workers.
+    // The number of threads is bounded instead by the sum of the concurrency limits of the running executions.
+    // Idle threads are released after a minute, so the pool costs nothing when the explorer is idle.
+    private static final ExecutorService pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ParallelThreadFactory("Parallel.For"));
 
-    private static final ExecutorService forPool = Executors.newFixedThreadPool(MAX_NUM_THREADS * 2, new ParallelThreadFactory("Parallel.For"));
+    public enum ErrorMode {
+        /**
+         * The first failure stops the remaining elements, interrupts the running ones and is
+         * rethrown by {@link Execution#execute()} as an {@link ExecutionException}.
+         */
+        FAIL_FAST,
+        /**
+         * Every element runs; failures are reported through {@link Result#getFailures()}.
+         */
+        COLLECT_ALL
+    }
 
-    public static <T> void For(final Iterable<T> elements, final Operation<T> operation) {
-        try {
-            // invokeAll blocks until all submitted tasks in the call complete
-            forPool.invokeAll(createCallables(elements, operation));
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    public interface Task<T, R> {
+        R call(T element) throws Exception;
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called from a worker thread each time an element completes, successfully or not.
+         */
+        void onProgress(int completed, int total);
+    }
+
+    private ParallelExecutor() {
+    }
+
+    @NotNull
+    public static <T, R> Execution<T, R> forEach(@NotNull Iterable<? extends T> elements,
+                                                 @NotNull Task<? super T, ? extends R> task) {
+        return new Execution<T, R>(elements, task);
     }
 
-    public static <T> Collection<Callable<Void>> createCallables(final Iterable<T> elements, final Operation<T> operation) {
-        List<Callable<Void>> callables = new LinkedList<Callable<Void>>();
-        for (final T elem : elements) {
-            callables.add(new Callable<Void>() {
-                @Override
-                public Void call() {
-                    operation.perform(elem);
-                    return null;
+    public static final class Execution<T, R> {
+        private final List<T> elements = new ArrayList<T>();
+        private final Task<? super T, ? extends R> task;
+        private final Set<Thread> workers = new HashSet<Thread>();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private ErrorMode errorMode = ErrorMode.FAIL_FAST;
+        private ProgressListener progressListener;
+
+        private Execution(@NotNull Iterable<? extends T> elements, @NotNull Task<? super T, ? extends R> task) {
+            for (T element : elements) {
+                this.elements.add(element);
+            }
+
+            this.task = task;
+        }
+
+        @NotNull
+        public Execution<T, R> withMaxConcurrency(int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        @NotNull
+        public Execution<T, R> withErrorMode(@NotNull ErrorMode errorMode) {
+            this.errorMode = errorMode;
+            return this;
+        }
+
+        @NotNull
+        public Execution<T, R> withProgressListener(@Nullable ProgressListener progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        /**
+         * Runs the task for every element and waits for all workers to stop.
+         *
+         * @throws ExecutionException    in {@link ErrorMode#FAIL_FAST} mode, wrapping the first failure
+         * @throws CancellationException if {@link #cancel()} was called
+         * @throws InterruptedException  if the calling thread was interrupted; running workers are interrupted too
+         */
+        @NotNull
+        public Result<R> execute() throws InterruptedException, ExecutionException {
+            if (!started.compareAndSet(false, true)) {
+                throw new IllegalStateException("The execution has already been started");
+            }
+
+            final Result<R> result = new Result<R>(elements.size());
+            int workerCount = Math.min(maxConcurrency, elements.size());
+
+            if (workerCount == 0) {
+                return result;
+            }
+
+            final AtomicInteger next = new AtomicInteger();
+            final AtomicInteger completed = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(workerCount);
+
+            for (int i = 0; i < workerCount; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (registerWorker()) {
+                                runWorker(result, next, completed);
+                            }
+                        } finally {
+                            unregisterWorker();
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                stopWorkers();
+                awaitUninterruptibly(done);
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+
+            if (cancelled) {
+                throw new CancellationException("The execution was cancelled");
+            }
+
+            if (errorMode == ErrorMode.FAIL_FAST && result.hasFailures()) {
+                throw new ExecutionException(result.getFirstFailure());
+            }
+
+            return result;
+        }
+
+        /**
+         * Stops handing out elements and interrupts the running workers. May be called from any thread.
+         */
+        public void cancel() {
+            cancelled = true;
+            stopWorkers();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void runWorker(@NotNull Result<R> result, @NotNull AtomicInteger next, @NotNull AtomicInteger completed) {
+            int total = elements.size();
+
+            while (!stopped.get() && !Thread.currentThread().isInterrupted()) {
+                int index = next.getAndIncrement();
+
+                if (index >= total) {
+                    return;
+                }
+
+                try {
+                    result.setResult(index, task.call(elements.get(index)));
+                } catch (Throwable t) {
+                    // failures caused by our own interrupt are not reported
+                    if (!stopped.get()) {
+                        result.setFailure(index, t);
+
+                        if (errorMode == ErrorMode.FAIL_FAST) {
+                            stopWorkers();
+                        }
+                    }
+                }
+
+                if (progressListener != null) {
+                    progressListener.onProgress(completed.incrementAndGet(), total);
                 }
-            });
+            }
+        }
+
+        private boolean registerWorker() {
+            synchronized (workers) {
+                workers.add(Thread.currentThread());
+                return !stopped.get();
+            }
+        }
+
+        private void unregisterWorker() {
+            synchronized (workers) {
+                workers.remove(Thread.currentThread());
+            }
+
+            // the pooled thread must not carry our interrupt into its next task
+            Thread.interrupted();
+        }
+
+        private void stopWorkers() {
+            synchronized (workers) {
+                stopped.set(true);
+
+                for (Thread worker : workers) {
+                    worker.interrupt();
+                }
+            }
         }
-        return callables;
-    }
 
-    public static interface Operation<T> {
-        public void perform(T pParameter);
+        private static void awaitUninterruptibly(@NotNull CountDownLatch latch) {
+            while (true) {
+                try {
+                    latch.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
     }
 
+    public static final class Result<R> {
+        private final List<R> results;
+        private final SortedMap<Integer, Throwable> failures = new TreeMap<Integer, Throwable>();
+
+        private Result(int size) {
+            results = new ArrayList<R>(Collections.<R>nCopies(size, null));
+        }
+
+        private synchronized void setResult(int index, R result) {
+            results.set(index, result);
+        }
+
+        private synchronized void setFailure(int index, @NotNull Throwable failure) {
+            failures.put(index, failure);
+        }
+
+        /**
+         * The task results in element order; failed elements have a {@code null} result.
+         */
+        @NotNull
+        public synchronized List<R> getResults() {
+            return Collections.unmodifiableList(new ArrayList<R>(results));
+        }
+
+        /**
+         * The failures keyed by element index, in element order.
+         */
+        @NotNull
+        public synchronized SortedMap<Integer, Throwable> getFailures() {
+            return Collections.unmodifiableSortedMap(new TreeMap<Integer, Throwable>(failures));
+        }
 
+        public synchronized boolean hasFailures() {
+            return !failures.isEmpty();
+        }
+
+        @Nullable
+        public synchronized Throwable getFirstFailure() {
+            return failures.isEmpty() ? null : failures.get(failures.firstKey());
+        }
+    }
 }
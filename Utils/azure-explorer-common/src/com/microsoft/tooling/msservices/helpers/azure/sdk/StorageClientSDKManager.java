@@ -21,8 +21,11 @@
  */
 package com.microsoft.tooling.msservices.helpers.azure.sdk;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Strings;
 import com.microsoft.azure.AzureEnvironment;
+import com.microsoft.azure.storage.AccessCondition;
 import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.*;
@@ -35,30 +38,70 @@ import com.microsoft.azure.storage.queue.QueueListingDetails;
 import com.microsoft.azure.storage.table.*;
 import com.microsoft.azuretools.authmanage.AuthMethodManager;
 import com.microsoft.tooling.msservices.helpers.CallableSingleArg;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
 import com.microsoft.tooling.msservices.model.storage.BlobContainer;
 import com.microsoft.tooling.msservices.model.storage.BlobDirectory;
 import com.microsoft.tooling.msservices.model.storage.BlobFile;
 import com.microsoft.tooling.msservices.model.storage.BlobItem;
+import com.microsoft.tooling.msservices.model.storage.BlobSyncResult;
 import com.microsoft.tooling.msservices.model.storage.ClientStorageAccount;
 import com.microsoft.tooling.msservices.model.storage.Queue;
+import com.microsoft.tooling.msservices.model.storage.QueueBulkOperationResult;
 import com.microsoft.tooling.msservices.model.storage.QueueMessage;
 import com.microsoft.tooling.msservices.model.storage.Table;
 import com.microsoft.tooling.msservices.model.storage.TableEntity;
 import com.microsoft.tooling.msservices.model.storage.TableEntity.Property;
+import com.microsoft.tooling.msservices.model.storage.TableEntityBatchResult;
 import com.microsoft.azure.management.storage.StorageAccount;
 import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
 import com.microsoft.azuretools.azurecommons.helpers.Nullable;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class StorageClientSDKManager {
+    private static final int MAX_TABLE_BATCH_SIZE = 100;
+    private static final int MAX_QUEUE_MESSAGE_BATCH_SIZE = 32;
+    /**
+     * The service returns at most 32 messages per peek and a peek always starts at the front of the queue, so no
+     * more messages can be looked at without dequeuing them.
+     */
+    public static final int MAX_QUEUE_PEEK_COUNT = MAX_QUEUE_MESSAGE_BATCH_SIZE;
+    private static final int QUEUE_WORKER_COUNT = 4;
+    private static final int BULK_QUEUE_VISIBILITY_TIMEOUT = 300;
+
+    private enum TableBatchAction {
+        INSERT,
+        REPLACE,
+        DELETE
+    }
+
+    private interface QueueMessageHandler {
+        void handle(@NotNull CloudQueue cloudQueue, @NotNull CloudQueueMessage cqm) throws Exception;
+    }
+
     private static StorageClientSDKManager apiManager;
 
     private StorageClientSDKManager() {
@@ -400,6 +443,82 @@ public class StorageClientSDKManager {
         }
     }
 
+    /**
+     * @return the length of the blob, or -1 if it does not exist
+     */
+    public long getBlobLength(@NotNull String connectionString, @NotNull String containerName, @NotNull String blobPath)
+            throws AzureCmdException {
+        try {
+            CloudBlobClient client = getCloudBlobClient(connectionString);
+            CloudBlockBlob blob = client.getContainerReference(containerName).getBlockBlobReference(blobPath);
+            if (!blob.exists()) {
+                return -1;
+            }
+
+            blob.downloadAttributes();
+            return blob.getProperties().getLength();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error retrieving the Blob File properties", t);
+        }
+    }
+
+    /**
+     * Sets a metadata value on the blob, which also moves its last modified time to now
+     */
+    public void setBlobMetadata(@NotNull String connectionString, @NotNull String containerName, @NotNull String blobPath,
+                                @NotNull String key, @NotNull String value)
+            throws AzureCmdException {
+        try {
+            CloudBlobClient client = getCloudBlobClient(connectionString);
+            CloudBlockBlob blob = client.getContainerReference(containerName).getBlockBlobReference(blobPath);
+            blob.downloadAttributes();
+            blob.getMetadata().put(key, value);
+            blob.uploadMetadata();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error updating the Blob File metadata", t);
+        }
+    }
+
+    /**
+     * Deletes the blobs under the prefix which were last modified before the given time. The delete is conditional
+     * on the blob not being modified since then, so a blob touched after it was listed is kept.
+     * @return the paths of the deleted blobs
+     */
+    @NotNull
+    public List<String> deleteBlobsModifiedBefore(@NotNull String connectionString, @NotNull String containerName,
+                                                  @NotNull String prefix, @NotNull Date before)
+            throws AzureCmdException {
+        List<String> deleted = new ArrayList<String>();
+        try {
+            CloudBlobClient client = getCloudBlobClient(connectionString);
+            CloudBlobContainer container = client.getContainerReference(containerName);
+            for (ListBlobItem item : container.listBlobs(prefix, true)) {
+                if (item instanceof CloudBlob) {
+                    CloudBlob blob = (CloudBlob) item;
+                    Date lastModified = blob.getProperties().getLastModified();
+                    if (lastModified == null || !lastModified.before(before)) {
+                        continue;
+                    }
+
+                    try {
+                        if (blob.deleteIfExists(DeleteSnapshotsOption.NONE,
+                                AccessCondition.generateIfNotModifiedSinceCondition(before), null, null)) {
+                            deleted.add(blob.getName());
+                        }
+                    } catch (StorageException e) {
+                        if (e.getHttpStatusCode() != HttpURLConnection.HTTP_PRECON_FAILED) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+
+            return deleted;
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error deleting the Blob Files", t);
+        }
+    }
+
     public void downloadBlobFileContent(@NotNull String connectionString,
                                         @NotNull BlobFile blobFile,
                                         @NotNull OutputStream content)
@@ -418,6 +537,276 @@ public class StorageClientSDKManager {
         }
     }
 
+    /**
+     * Returns the directories leading to <code>path</code>, starting with the root directory, without listing the
+     * container.
+     */
+    @NotNull
+    public List<BlobDirectory> getBlobDirectories(@NotNull String connectionString,
+                                                  @NotNull BlobContainer blobContainer,
+                                                  @NotNull String path)
+            throws AzureCmdException {
+        List<BlobDirectory> directories = new ArrayList<BlobDirectory>();
+        directories.add(getRootDirectory(connectionString, blobContainer));
+
+        try {
+            CloudBlobClient client = getCloudBlobClient(connectionString);
+            String delimiter = client.getDirectoryDelimiter();
+
+            CloudBlobContainer container = client.getContainerReference(blobContainer.getName());
+            int end = path.indexOf(delimiter);
+
+            while (end > 0) {
+                CloudBlobDirectory directory = container.getDirectoryReference(path.substring(0, end));
+                String uri = directory.getUri() != null ? directory.getUri().toString() : "";
+                String prefix = Strings.nullToEmpty(directory.getPrefix());
+
+                directories.add(new BlobDirectory(extractBlobItemName(prefix, delimiter), uri,
+                        blobContainer.getName(), prefix));
+                end = path.indexOf(delimiter, end + delimiter.length());
+            }
+
+            return directories;
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error retrieving the Blob Directory path", t);
+        }
+    }
+
+    /**
+     * Uploads the files under <code>localDirectory</code> whose size, MD5 or modification time differ from the blobs
+     * under <code>prefix</code>. Transfers run in parallel; <code>processFile</code> is notified with the relative
+     * path of every file once it was copied.
+     */
+    @NotNull
+    public BlobSyncResult uploadDirectory(@NotNull String connectionString,
+                                          @NotNull BlobContainer blobContainer,
+                                          @NotNull File localDirectory,
+                                          @NotNull String prefix,
+                                          boolean dryRun,
+                                          @Nullable CallableSingleArg<Void, String> processFile)
+            throws AzureCmdException {
+        return syncDirectory(connectionString, blobContainer, localDirectory, prefix, true, dryRun, processFile);
+    }
+
+    /**
+     * Downloads the blobs under <code>prefix</code> whose size, MD5 or modification time differ from the files under
+     * <code>localDirectory</code>. Downloaded files get the modification time of their blob.
+     */
+    @NotNull
+    public BlobSyncResult downloadDirectory(@NotNull String connectionString,
+                                            @NotNull BlobContainer blobContainer,
+                                            @NotNull File localDirectory,
+                                            @NotNull String prefix,
+                                            boolean dryRun,
+                                            @Nullable CallableSingleArg<Void, String> processFile)
+            throws AzureCmdException {
+        return syncDirectory(connectionString, blobContainer, localDirectory, prefix, false, dryRun, processFile);
+    }
+
+    @NotNull
+    private BlobSyncResult syncDirectory(@NotNull String connectionString,
+                                         @NotNull BlobContainer blobContainer,
+                                         @NotNull final File localDirectory,
+                                         @NotNull String prefix,
+                                         final boolean upload,
+                                         boolean dryRun,
+                                         @Nullable final CallableSingleArg<Void, String> processFile)
+            throws AzureCmdException {
+        final BlobSyncResult result = new BlobSyncResult(dryRun);
+        long start = System.currentTimeMillis();
+
+        final String blobPrefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+        final CloudBlobContainer container;
+        Map<String, CloudBlob> blobs;
+        Map<String, File> files;
+
+        try {
+            container = getCloudBlobClient(connectionString).getContainerReference(blobContainer.getName());
+            blobs = listBlobs(container, blobPrefix);
+            files = listFiles(localDirectory);
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error comparing the directory with the Blob Container", t);
+        }
+
+        List<String> transfers = new ArrayList<String>();
+
+        for (String path : upload ? files.keySet() : blobs.keySet()) {
+            File file = files.get(path);
+            CloudBlob blob = blobs.get(path);
+
+            try {
+                if (!upload) {
+                    // the blob name comes from the container, so it must not lead out of the local directory
+                    getLocalFile(localDirectory, path);
+                }
+
+                if (file == null || blob == null || isBlobSyncNeeded(file, blob.getProperties(), upload)) {
+                    transfers.add(path);
+                } else {
+                    result.addUnchanged(path);
+                }
+            } catch (Throwable t) {
+                result.addFailed(path, new AzureCmdException("Error comparing " + path, t));
+            }
+        }
+
+        if (dryRun) {
+            for (String path : transfers) {
+                result.addTransferred(path,
+                        upload ? files.get(path).length() : blobs.get(path).getProperties().getLength());
+            }
+        } else {
+            final Map<String, File> localFiles = files;
+            final Map<String, CloudBlob> remoteBlobs = blobs;
+
+            ParallelExecutor.Result<Void> transferResult;
+
+            try {
+                transferResult = ParallelExecutor.forEach(transfers, new ParallelExecutor.Task<String, Void>() {
+                    @Override
+                    public Void call(String path) throws Exception {
+                        if (upload) {
+                            File file = localFiles.get(path);
+                            BlobRequestOptions options = new BlobRequestOptions();
+                            options.setStoreBlobContentMD5(true);
+
+                            container.getBlockBlobReference(blobPrefix + path)
+                                    .uploadFromFile(file.getAbsolutePath(), null, options, null);
+                            result.addTransferred(path, file.length());
+                        } else {
+                            CloudBlob blob = remoteBlobs.get(path);
+                            File file = getLocalFile(localDirectory, path);
+                            File parent = file.getParentFile();
+
+                            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                                throw new IOException("Cannot create directory " + parent);
+                            }
+
+                            blob.downloadToFile(file.getAbsolutePath());
+
+                            if (blob.getProperties().getLastModified() != null) {
+                                file.setLastModified(blob.getProperties().getLastModified().getTime());
+                            }
+
+                            result.addTransferred(path, file.length());
+                        }
+
+                        if (processFile != null) {
+                            processFile.call(path);
+                        }
+
+                        return null;
+                    }
+                }).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+            } catch (Throwable t) {
+                throw new AzureCmdException("Error transferring the directory", t);
+            }
+
+            for (Map.Entry<Integer, Throwable> failure : transferResult.getFailures().entrySet()) {
+                String path = transfers.get(failure.getKey());
+                result.addFailed(path, new AzureCmdException("Error transferring " + path, failure.getValue()));
+            }
+        }
+
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Resolves the relative path of a blob under <code>localDirectory</code>, rejecting paths like
+     * <code>../outside</code> that would end up anywhere else.
+     */
+    @NotNull
+    static File getLocalFile(@NotNull File localDirectory, @NotNull String path) throws IOException {
+        File root = localDirectory.getCanonicalFile();
+        File file = new File(root, path.replace('/', File.separatorChar)).getCanonicalFile();
+
+        if (file.equals(root) || !file.toPath().startsWith(root.toPath())) {
+            throw new IOException(String.format("Blob %s is outside of the directory %s", path, root));
+        }
+
+        return file;
+    }
+
+    @NotNull
+    private static Map<String, CloudBlob> listBlobs(@NotNull CloudBlobContainer container, @NotNull String prefix)
+            throws StorageException, URISyntaxException {
+        Map<String, CloudBlob> blobs = new TreeMap<String, CloudBlob>();
+
+        for (ListBlobItem item : container.listBlobs(prefix, true, EnumSet.noneOf(BlobListingDetails.class),
+                null, null)) {
+            if (item instanceof CloudBlob) {
+                CloudBlob blob = (CloudBlob) item;
+                blobs.put(blob.getName().substring(prefix.length()), blob);
+            }
+        }
+
+        return blobs;
+    }
+
+    @NotNull
+    private static Map<String, File> listFiles(@NotNull File directory) throws IOException {
+        final Map<String, File> files = new TreeMap<String, File>();
+
+        if (!directory.isDirectory()) {
+            return files;
+        }
+
+        final Path root = directory.toPath();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.put(root.relativize(file).toString().replace(File.separatorChar, '/'), file.toFile());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return files;
+    }
+
+    private static boolean isBlobSyncNeeded(@NotNull File file, @NotNull BlobProperties properties, boolean upload)
+            throws IOException, NoSuchAlgorithmException {
+        if (file.length() != properties.getLength()) {
+            return true;
+        }
+
+        // the MD5 is authoritative when the blob has one, otherwise fall back to the modification time
+        if (!Strings.isNullOrEmpty(properties.getContentMD5())) {
+            return !properties.getContentMD5().equals(getContentMD5(file));
+        }
+
+        if (properties.getLastModified() == null) {
+            return true;
+        }
+
+        return upload
+                ? file.lastModified() > properties.getLastModified().getTime()
+                : properties.getLastModified().getTime() > file.lastModified();
+    }
+
+    @NotNull
+    private static String getContentMD5(@NotNull File file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        InputStream inputStream = new FileInputStream(file);
+
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return Base64.encode(digest.digest());
+    }
+
     @NotNull
     public List<Queue> getQueues(@NotNull StorageAccount storageAccount)
             throws AzureCmdException {
@@ -486,25 +875,8 @@ public class StorageClientSDKManager {
 
             CloudQueue cloudQueue = client.getQueueReference(queueName);
 
-            for (CloudQueueMessage cqm : cloudQueue.peekMessages(32)) {
-                String id = Strings.nullToEmpty(cqm.getId());
-                String content = Strings.nullToEmpty(cqm.getMessageContentAsString());
-
-                Calendar insertionTime = new GregorianCalendar();
-
-                if (cqm.getInsertionTime() != null) {
-                    insertionTime.setTime(cqm.getInsertionTime());
-                }
-
-                Calendar expirationTime = new GregorianCalendar();
-
-                if (cqm.getExpirationTime() != null) {
-                    expirationTime.setTime(cqm.getExpirationTime());
-                }
-
-                int dequeueCount = cqm.getDequeueCount();
-
-                qmList.add(new QueueMessage(id, queueName, content, insertionTime, expirationTime, dequeueCount));
+            for (CloudQueueMessage cqm : cloudQueue.peekMessages(MAX_QUEUE_MESSAGE_BATCH_SIZE)) {
+                qmList.add(getQueueMessage(queueName, cqm));
             }
 
             return qmList;
@@ -549,36 +921,264 @@ public class StorageClientSDKManager {
             CloudQueue cloudQueue = client.getQueueReference(queueName);
             CloudQueueMessage cqm = cloudQueue.retrieveMessage();
 
-            String id = "";
-            String content = "";
-            Calendar insertionTime = new GregorianCalendar();
-            Calendar expirationTime = new GregorianCalendar();
-            int dequeueCount = 0;
+            if (cqm == null) {
+                return new QueueMessage("", queueName, "", new GregorianCalendar(), new GregorianCalendar(), 0);
+            }
 
-            if (cqm != null) {
-                id = Strings.nullToEmpty(cqm.getId());
-                content = Strings.nullToEmpty(cqm.getMessageContentAsString());
+            QueueMessage queueMessage = getQueueMessage(queueName, cqm);
+            cloudQueue.deleteMessage(cqm);
 
-                if (cqm.getInsertionTime() != null) {
-                    insertionTime.setTime(cqm.getInsertionTime());
-                }
+            return queueMessage;
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error dequeuing the first Queue Message", t);
+        }
+    }
 
-                if (cqm.getExpirationTime() != null) {
-                    expirationTime.setTime(cqm.getExpirationTime());
-                }
+    /**
+     * Peeks at up to <code>maxCount</code> messages at the front of the queue. Peeking neither hides the messages
+     * nor increases their dequeue count, but it cannot page, so <code>maxCount</code> must be between 1 and
+     * {@link #MAX_QUEUE_PEEK_COUNT}.
+     */
+    @NotNull
+    public QueueBulkOperationResult inspectQueueMessages(@NotNull StorageAccount storageAccount,
+                                                         @NotNull Queue queue,
+                                                         int maxCount,
+                                                         @NotNull CallableSingleArg<Void, QueueMessage> consumer)
+            throws AzureCmdException {
+        checkQueuePeekCount(maxCount);
 
-                dequeueCount = cqm.getDequeueCount();
+        return inspectQueueMessages(getCloudQueue(storageAccount, queue), maxCount, consumer);
+    }
+
+    @NotNull
+    QueueBulkOperationResult inspectQueueMessages(@NotNull CloudQueue cloudQueue,
+                                                  int maxCount,
+                                                  @NotNull CallableSingleArg<Void, QueueMessage> consumer)
+            throws AzureCmdException {
+        checkQueuePeekCount(maxCount);
+
+        long start = System.currentTimeMillis();
+        long processed = 0;
+
+        try {
+            for (CloudQueueMessage cqm : cloudQueue.peekMessages(maxCount)) {
+                consumer.call(getQueueMessage(cloudQueue.getName(), cqm));
+                processed++;
             }
+        } catch (Throwable t) {
+            throw new AzureCmdException(String.format("Error inspecting the Queue Messages after %d messages",
+                    processed), t);
+        }
+
+        return new QueueBulkOperationResult(processed, System.currentTimeMillis() - start);
+    }
+
+    private static void checkQueuePeekCount(int maxCount) {
+        if (maxCount < 1 || maxCount > MAX_QUEUE_PEEK_COUNT) {
+            throw new IllegalArgumentException(String.format(
+                    "Only 1 to %d Queue Messages can be peeked at, dequeue them to go further than that",
+                    MAX_QUEUE_PEEK_COUNT));
+        }
+    }
 
-            QueueMessage queueMessage = new QueueMessage(id, queueName, content, insertionTime, expirationTime, dequeueCount);
+    @NotNull
+    private static CloudQueue getCloudQueue(@NotNull StorageAccount storageAccount, @NotNull Queue queue)
+            throws AzureCmdException {
+        try {
+            return getCloudQueueClient(storageAccount).getQueueReference(queue.getName());
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error retrieving the Queue", t);
+        }
+    }
+
+    @NotNull
+    public QueueBulkOperationResult dequeueQueueMessages(@NotNull StorageAccount storageAccount,
+                                                         @NotNull Queue queue,
+                                                         int maxCount)
+            throws AzureCmdException {
+        return processQueueMessages(getCloudQueue(storageAccount, queue), maxCount, BULK_QUEUE_VISIBILITY_TIMEOUT,
+                new QueueMessageHandler() {
+                    @Override
+                    public void handle(@NotNull CloudQueue cloudQueue, @NotNull CloudQueueMessage cqm)
+                            throws Exception {
+                        cloudQueue.deleteMessage(cqm);
+                    }
+                });
+    }
+
+    /**
+     * Moves up to <code>maxCount</code> messages to <code>targetQueue</code>. A message is only deleted from the
+     * source after it was added to the target, so a failure can duplicate a message but never lose it.
+     */
+    @NotNull
+    public QueueBulkOperationResult moveQueueMessages(@NotNull StorageAccount storageAccount,
+                                                      @NotNull Queue queue,
+                                                      @NotNull Queue targetQueue,
+                                                      int maxCount)
+            throws AzureCmdException {
+        final CloudQueue targetCloudQueue;
+
+        try {
+            targetCloudQueue = getCloudQueueClient(storageAccount).getQueueReference(targetQueue.getName());
+            targetCloudQueue.createIfNotExists();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error retrieving the target Queue", t);
+        }
+
+        return processQueueMessages(getCloudQueue(storageAccount, queue), maxCount, BULK_QUEUE_VISIBILITY_TIMEOUT,
+                new QueueMessageHandler() {
+                    @Override
+                    public void handle(@NotNull CloudQueue cloudQueue, @NotNull CloudQueueMessage cqm)
+                            throws Exception {
+                        targetCloudQueue.addMessage(new CloudQueueMessage(cqm.getMessageContentAsByte()));
+                        cloudQueue.deleteMessage(cqm);
+                    }
+                });
+    }
+
+    /**
+     * Writes up to <code>maxCount</code> messages to <code>content</code> as JSON lines. When
+     * <code>delete</code> is set the exported messages are dequeued and removed from the queue, in as many batches
+     * as needed. Otherwise they are only peeked at, like {@link #inspectQueueMessages}, so the queue is left
+     * untouched and <code>maxCount</code> must not exceed {@link #MAX_QUEUE_PEEK_COUNT}.
+     */
+    @NotNull
+    public QueueBulkOperationResult exportQueueMessages(@NotNull StorageAccount storageAccount,
+                                                        @NotNull Queue queue,
+                                                        int maxCount,
+                                                        boolean delete,
+                                                        @NotNull Writer content)
+            throws AzureCmdException {
+        if (!delete) {
+            checkQueuePeekCount(maxCount);
+        }
+
+        return exportQueueMessages(getCloudQueue(storageAccount, queue), maxCount, delete, content);
+    }
+
+    @NotNull
+    QueueBulkOperationResult exportQueueMessages(@NotNull final CloudQueue cloudQueue,
+                                                 int maxCount,
+                                                 boolean delete,
+                                                 @NotNull final Writer content)
+            throws AzureCmdException {
+        final ObjectMapper mapper = new ObjectMapper();
+        final CallableSingleArg<Void, QueueMessage> writer = new CallableSingleArg<Void, QueueMessage>() {
+            @Override
+            public Void call(QueueMessage queueMessage) throws Exception {
+                ObjectNode node = mapper.createObjectNode();
+                node.put("id", queueMessage.getId());
+                node.put("content", queueMessage.getContent());
+                node.put("insertionTime", queueMessage.getInsertionTime().getTimeInMillis());
+                node.put("expirationTime", queueMessage.getExpirationTime().getTimeInMillis());
+                node.put("dequeueCount", queueMessage.getDequeueCount());
+
+                synchronized (content) {
+                    content.write(mapper.writeValueAsString(node));
+                    content.write('\n');
+                }
 
-            if (cqm != null) {
-                cloudQueue.deleteMessage(cqm);
+                return null;
             }
+        };
+
+        QueueBulkOperationResult result;
+
+        if (delete) {
+            result = processQueueMessages(cloudQueue, maxCount, BULK_QUEUE_VISIBILITY_TIMEOUT,
+                    new QueueMessageHandler() {
+                        @Override
+                        public void handle(@NotNull CloudQueue cloudQueue, @NotNull CloudQueueMessage cqm)
+                                throws Exception {
+                            writer.call(getQueueMessage(cloudQueue.getName(), cqm));
+                            cloudQueue.deleteMessage(cqm);
+                        }
+                    });
+        } else {
+            result = inspectQueueMessages(cloudQueue, maxCount, writer);
+        }
 
-            return queueMessage;
+        try {
+            content.flush();
         } catch (Throwable t) {
-            throw new AzureCmdException("Error dequeuing the first Queue Message", t);
+            throw new AzureCmdException("Error exporting the Queue Messages", t);
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs several workers that each retrieve batches of up to 32 messages until <code>maxCount</code> messages
+     * were handled, the queue runs out of visible messages or a handler fails.
+     */
+    @NotNull
+    private QueueBulkOperationResult processQueueMessages(@NotNull final CloudQueue cloudQueue,
+                                                          final int maxCount,
+                                                          final int visibilityTimeoutInSeconds,
+                                                          @NotNull final QueueMessageHandler handler)
+            throws AzureCmdException {
+        final AtomicInteger remaining = new AtomicInteger(maxCount);
+        final AtomicLong processed = new AtomicLong();
+        long start = System.currentTimeMillis();
+
+        List<Integer> workers = new ArrayList<Integer>();
+
+        for (int i = 0; i < QUEUE_WORKER_COUNT; i++) {
+            workers.add(i);
+        }
+
+        try {
+            // the first failing worker interrupts the others
+            ParallelExecutor.forEach(workers, new ParallelExecutor.Task<Integer, Void>() {
+                @Override
+                public Void call(Integer worker) throws Exception {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        int batchSize = claimQueueMessages(remaining);
+
+                        if (batchSize == 0) {
+                            break;
+                        }
+
+                        int received = 0;
+
+                        for (CloudQueueMessage cqm : cloudQueue.retrieveMessages(batchSize,
+                                visibilityTimeoutInSeconds, null, null)) {
+                            handler.handle(cloudQueue, cqm);
+                            processed.incrementAndGet();
+                            received++;
+                        }
+
+                        if (received < batchSize) {
+                            // the queue has no more visible messages, give the unused quota back and stop
+                            remaining.addAndGet(batchSize - received);
+                            break;
+                        }
+                    }
+
+                    return null;
+                }
+            }).execute();
+        } catch (Throwable t) {
+            throw new AzureCmdException(String.format("Error processing the Queue Messages after %d messages",
+                    processed.get()), t instanceof ExecutionException ? t.getCause() : t);
+        }
+
+        return new QueueBulkOperationResult(processed.get(), System.currentTimeMillis() - start);
+    }
+
+    private static int claimQueueMessages(@NotNull AtomicInteger remaining) {
+        while (true) {
+            int current = remaining.get();
+
+            if (current <= 0) {
+                return 0;
+            }
+
+            int batchSize = Math.min(current, MAX_QUEUE_MESSAGE_BATCH_SIZE);
+
+            if (remaining.compareAndSet(current, current - batchSize)) {
+                return batchSize;
+            }
         }
     }
 
@@ -727,6 +1327,176 @@ public class StorageClientSDKManager {
         }
     }
 
+    @NotNull
+    public TableEntityBatchResult createTableEntities(@NotNull StorageAccount storageAccount,
+                                                      @NotNull String tableName,
+                                                      @NotNull List<TableEntity> tableEntities)
+            throws AzureCmdException {
+        return executeTableEntityBatches(storageAccount, tableName, tableEntities, TableBatchAction.INSERT);
+    }
+
+    @NotNull
+    public TableEntityBatchResult updateTableEntities(@NotNull StorageAccount storageAccount,
+                                                      @NotNull String tableName,
+                                                      @NotNull List<TableEntity> tableEntities)
+            throws AzureCmdException {
+        return executeTableEntityBatches(storageAccount, tableName, tableEntities, TableBatchAction.REPLACE);
+    }
+
+    @NotNull
+    public TableEntityBatchResult deleteTableEntities(@NotNull StorageAccount storageAccount,
+                                                      @NotNull String tableName,
+                                                      @NotNull List<TableEntity> tableEntities)
+            throws AzureCmdException {
+        return executeTableEntityBatches(storageAccount, tableName, tableEntities, TableBatchAction.DELETE);
+    }
+
+    @NotNull
+    public TableEntityBatchResult importTableEntities(@NotNull StorageAccount storageAccount,
+                                                      @NotNull String tableName,
+                                                      @NotNull Reader content,
+                                                      @NotNull TableEntitySerializer.Format format)
+            throws AzureCmdException {
+        return createTableEntities(storageAccount, tableName, TableEntitySerializer.read(content, tableName, format));
+    }
+
+    public void exportTableEntities(@NotNull StorageAccount storageAccount,
+                                    @NotNull Table table,
+                                    @NotNull String filter,
+                                    @NotNull Writer content,
+                                    @NotNull TableEntitySerializer.Format format)
+            throws AzureCmdException {
+        TableEntitySerializer.write(getTableEntities(storageAccount, table, filter), content, format);
+    }
+
+    /**
+     * Entity group transactions must target a single partition and hold at most {@link #MAX_TABLE_BATCH_SIZE}
+     * operations, so the entities are grouped by partition key and chunked before being sent in parallel.
+     */
+    @NotNull
+    private TableEntityBatchResult executeTableEntityBatches(@NotNull StorageAccount storageAccount,
+                                                             @NotNull final String tableName,
+                                                             @NotNull List<TableEntity> tableEntities,
+                                                             @NotNull final TableBatchAction action)
+            throws AzureCmdException {
+        final TableEntityBatchResult batchResult = new TableEntityBatchResult();
+        final CloudTable cloudTable;
+
+        try {
+            cloudTable = getCloudTableClient(storageAccount).getTableReference(tableName);
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error retrieving the Table reference", t);
+        }
+
+        Map<String, List<TableEntity>> partitions = new LinkedHashMap<String, List<TableEntity>>();
+
+        for (TableEntity tableEntity : tableEntities) {
+            List<TableEntity> partition = partitions.get(tableEntity.getPartitionKey());
+
+            if (partition == null) {
+                partition = new ArrayList<TableEntity>();
+                partitions.put(tableEntity.getPartitionKey(), partition);
+            }
+
+            partition.add(tableEntity);
+        }
+
+        List<List<TableEntity>> batches = new ArrayList<List<TableEntity>>();
+
+        for (List<TableEntity> partition : partitions.values()) {
+            for (int i = 0; i < partition.size(); i += MAX_TABLE_BATCH_SIZE) {
+                batches.add(partition.subList(i, Math.min(i + MAX_TABLE_BATCH_SIZE, partition.size())));
+            }
+        }
+
+        try {
+            // every batch records its own outcome in batchResult, so one failed batch must not stop the others
+            ParallelExecutor.forEach(batches, new ParallelExecutor.Task<List<TableEntity>, Void>() {
+                @Override
+                public Void call(List<TableEntity> batch) {
+                    executeTableEntityBatch(cloudTable, tableName, batch, action, batchResult);
+                    return null;
+                }
+            }).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+        } catch (Throwable t) {
+            throw new AzureCmdException("Error executing the Table batch operations", t);
+        }
+
+        return batchResult;
+    }
+
+    private static void executeTableEntityBatch(@NotNull CloudTable cloudTable,
+                                                @NotNull String tableName,
+                                                @NotNull List<TableEntity> batch,
+                                                @NotNull TableBatchAction action,
+                                                @NotNull TableEntityBatchResult batchResult) {
+        List<DynamicTableEntity> entities = new ArrayList<DynamicTableEntity>(batch.size());
+        TableBatchOperation batchOperation = new TableBatchOperation();
+
+        try {
+            for (TableEntity tableEntity : batch) {
+                DynamicTableEntity entity = getDynamicTableEntity(tableEntity);
+                entities.add(entity);
+
+                switch (action) {
+                    case INSERT:
+                        batchOperation.insert(entity, true);
+                        break;
+                    case REPLACE:
+                        batchOperation.replace(entity);
+                        break;
+                    case DELETE:
+                        batchOperation.delete(entity);
+                        break;
+                }
+            }
+
+            TableRequestOptions tro = new TableRequestOptions();
+            tro.setTablePayloadFormat(TablePayloadFormat.JsonFullMetadata);
+
+            List<TableResult> results = cloudTable.execute(batchOperation, tro, null);
+
+            for (int i = 0; i < batch.size(); i++) {
+                if (action == TableBatchAction.DELETE) {
+                    batchResult.addSucceeded(batch.get(i));
+                } else {
+                    DynamicTableEntity resultEntity = i < results.size() && results.get(i).getResult() != null
+                            ? results.get(i).<DynamicTableEntity>getResultAsType()
+                            : entities.get(i);
+                    batchResult.addSucceeded(getTableEntity(tableName, resultEntity));
+                }
+            }
+        } catch (Throwable t) {
+            // a failing operation rolls back the whole entity group transaction
+            int failedIndex = getFailedBatchIndex(t);
+
+            for (int i = 0; i < batch.size(); i++) {
+                String message = failedIndex < 0 || failedIndex == i
+                        ? "Error processing the Table Entity"
+                        : "Table Entity was not processed because the batch was rolled back";
+                batchResult.addFailed(batch.get(i), new AzureCmdException(message, t));
+            }
+        }
+    }
+
+    private static int getFailedBatchIndex(@NotNull Throwable t) {
+        // the service reports the failing operation as "<index>:<message>"
+        if (t instanceof StorageException && ((StorageException) t).getExtendedErrorInformation() != null) {
+            String errorMessage = Strings.nullToEmpty(
+                    ((StorageException) t).getExtendedErrorInformation().getErrorMessage());
+            int separator = errorMessage.indexOf(':');
+
+            if (separator > 0) {
+                try {
+                    return Integer.parseInt(errorMessage.substring(0, separator).trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+
+        return -1;
+    }
+
     @NotNull
     public static String getConnectionString(StorageAccount storageAccount) {
         return String.format(ClientStorageAccount.DEFAULT_CONN_STR_TEMPLATE,
@@ -891,6 +1661,29 @@ public class StorageClientSDKManager {
         }
     }
 
+    @NotNull
+    private static QueueMessage getQueueMessage(@NotNull String queueName, @NotNull CloudQueueMessage cqm)
+            throws StorageException {
+        String id = Strings.nullToEmpty(cqm.getId());
+        String content = Strings.nullToEmpty(cqm.getMessageContentAsString());
+
+        Calendar insertionTime = new GregorianCalendar();
+
+        if (cqm.getInsertionTime() != null) {
+            insertionTime.setTime(cqm.getInsertionTime());
+        }
+
+        Calendar expirationTime = new GregorianCalendar();
+
+        if (cqm.getExpirationTime() != null) {
+            expirationTime.setTime(cqm.getExpirationTime());
+        }
+
+        int dequeueCount = cqm.getDequeueCount();
+
+        return new QueueMessage(id, queueName, content, insertionTime, expirationTime, dequeueCount);
+    }
+
     @NotNull
     private static TableEntity getTableEntity(@NotNull String tableName,
                                               @NotNull DynamicTableEntity dte) {
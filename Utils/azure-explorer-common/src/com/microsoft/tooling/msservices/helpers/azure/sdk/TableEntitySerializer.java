@@ -0,0 +1,410 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.tooling.msservices.helpers.azure.sdk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.tooling.msservices.model.storage.TableEntity;
+import com.microsoft.tooling.msservices.model.storage.TableEntity.Property;
+import com.microsoft.tooling.msservices.model.storage.TableEntity.PropertyType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Reads and writes table entities as CSV or JSON for bulk import and export.
+ * <p/>
+ * CSV files start with a header of <code>PartitionKey,RowKey</code> followed by one <code>name:Type</code> column per
+ * property, where <code>Type</code> is a {@link PropertyType}. JSON files hold an array of objects with
+ * <code>PartitionKey</code>, <code>RowKey</code> and a <code>Properties</code> object mapping each property name to
+ * its <code>Type</code> and <code>Value</code>.
+ * <p/>
+ * In CSV an empty cell means the entity does not have the property, while a quoted empty cell (<code>""</code>)
+ * holds an empty string, so both survive an export and import round trip.
+ */
+public final class TableEntitySerializer {
+    public enum Format {
+        CSV,
+        JSON
+    }
+
+    private static final String PARTITION_KEY = "PartitionKey";
+    private static final String ROW_KEY = "RowKey";
+    private static final String PROPERTIES = "Properties";
+    private static final String TYPE = "Type";
+    private static final String VALUE = "Value";
+    private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private TableEntitySerializer() {
+    }
+
+    public static void write(@NotNull List<TableEntity> tableEntities, @NotNull Writer writer, @NotNull Format format)
+            throws AzureCmdException {
+        try {
+            if (format == Format.CSV) {
+                writeCsv(tableEntities, writer);
+            } else {
+                writeJson(tableEntities, writer);
+            }
+
+            writer.flush();
+        } catch (IOException e) {
+            throw new AzureCmdException("Error exporting the Table Entities", e);
+        }
+    }
+
+    @NotNull
+    public static List<TableEntity> read(@NotNull Reader reader, @NotNull String tableName, @NotNull Format format)
+            throws AzureCmdException {
+        try {
+            if (format == Format.CSV) {
+                return readCsv(reader.markSupported() ? reader : new BufferedReader(reader), tableName);
+            } else {
+                return readJson(reader, tableName);
+            }
+        } catch (IOException e) {
+            throw new AzureCmdException("Error importing the Table Entities", e);
+        }
+    }
+
+    private static void writeCsv(@NotNull List<TableEntity> tableEntities, @NotNull Writer writer)
+            throws IOException, AzureCmdException {
+        Map<String, PropertyType> columns = new TreeMap<String, PropertyType>();
+
+        for (TableEntity tableEntity : tableEntities) {
+            for (Map.Entry<String, Property> entry : tableEntity.getProperties().entrySet()) {
+                PropertyType type = columns.get(entry.getKey());
+
+                if (type != null && type != entry.getValue().getType()) {
+                    throw new AzureCmdException(String.format(
+                            "Property %s has more than one type and cannot be exported as CSV", entry.getKey()));
+                }
+
+                columns.put(entry.getKey(), entry.getValue().getType());
+            }
+        }
+
+        List<String> header = new ArrayList<String>();
+        header.add(PARTITION_KEY);
+        header.add(ROW_KEY);
+
+        for (Map.Entry<String, PropertyType> column : columns.entrySet()) {
+            header.add(column.getKey() + ":" + column.getValue().name());
+        }
+
+        writeCsvRecord(header, writer);
+
+        for (TableEntity tableEntity : tableEntities) {
+            List<String> record = new ArrayList<String>();
+            record.add(tableEntity.getPartitionKey());
+            record.add(tableEntity.getRowKey());
+
+            for (String column : columns.keySet()) {
+                Property property = tableEntity.getProperties().get(column);
+                record.add(property == null ? null : formatValue(property));
+            }
+
+            writeCsvRecord(record, writer);
+        }
+    }
+
+    private static void writeCsvRecord(@NotNull List<String> fields, @NotNull Writer writer) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.get(i);
+
+            if (i > 0) {
+                writer.write(',');
+            }
+
+            if (field == null) {
+                continue;
+            }
+
+            if (field.isEmpty() || field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                    || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+
+        writer.write("\r\n");
+    }
+
+    @NotNull
+    private static List<TableEntity> readCsv(@NotNull Reader reader, @NotNull String tableName)
+            throws IOException, AzureCmdException {
+        List<TableEntity> tableEntities = new ArrayList<TableEntity>();
+        List<String> header = readCsvRecord(reader);
+
+        if (header == null) {
+            return tableEntities;
+        }
+
+        if (header.size() < 2 || !PARTITION_KEY.equals(header.get(0)) || !ROW_KEY.equals(header.get(1))) {
+            throw new AzureCmdException("CSV header must start with " + PARTITION_KEY + "," + ROW_KEY);
+        }
+
+        List<String> names = new ArrayList<String>();
+        List<PropertyType> types = new ArrayList<PropertyType>();
+
+        for (String column : header.subList(2, header.size())) {
+            column = column == null ? "" : column;
+            int separator = column.lastIndexOf(':');
+
+            if (separator <= 0) {
+                throw new AzureCmdException("CSV column " + column + " must have the form name:Type");
+            }
+
+            names.add(column.substring(0, separator));
+            types.add(parseType(column.substring(separator + 1)));
+        }
+
+        List<String> record;
+
+        while ((record = readCsvRecord(reader)) != null) {
+            if (record.size() == 1 && record.get(0) == null) {
+                continue;
+            }
+
+            if (record.size() != header.size()) {
+                throw new AzureCmdException(String.format("CSV record %d has %d fields, expected %d",
+                        tableEntities.size() + 1, record.size(), header.size()));
+            }
+
+            Map<String, Property> properties = new HashMap<String, Property>();
+
+            for (int i = 0; i < names.size(); i++) {
+                String value = record.get(i + 2);
+
+                if (value != null) {
+                    properties.put(names.get(i), parseValue(types.get(i), value));
+                }
+            }
+
+            tableEntities.add(new TableEntity(nullToEmpty(record.get(0)), nullToEmpty(record.get(1)), tableName, "",
+                    new GregorianCalendar(), properties));
+        }
+
+        return tableEntities;
+    }
+
+    /**
+     * Reads one CSV record, returning <code>null</code> at the end of the input. A field that is empty and was not
+     * quoted is returned as <code>null</code>.
+     */
+    private static List<String> readCsvRecord(@NotNull Reader reader) throws IOException {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        boolean any = false;
+        int c;
+
+        while ((c = reader.read()) != -1) {
+            any = true;
+
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(toField(field, wasQuoted));
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+
+        if (!any) {
+            return null;
+        }
+
+        fields.add(toField(field, wasQuoted));
+        return fields;
+    }
+
+    private static String toField(@NotNull StringBuilder field, boolean quoted) {
+        return field.length() == 0 && !quoted ? null : field.toString();
+    }
+
+    @NotNull
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static void writeJson(@NotNull List<TableEntity> tableEntities, @NotNull Writer writer)
+            throws IOException, AzureCmdException {
+        ObjectMapper mapper = new ObjectMapper();
+        ArrayNode array = mapper.createArrayNode();
+
+        for (TableEntity tableEntity : tableEntities) {
+            ObjectNode node = array.addObject();
+            node.put(PARTITION_KEY, tableEntity.getPartitionKey());
+            node.put(ROW_KEY, tableEntity.getRowKey());
+
+            ObjectNode properties = node.putObject(PROPERTIES);
+
+            for (Map.Entry<String, Property> entry : tableEntity.getProperties().entrySet()) {
+                ObjectNode property = properties.putObject(entry.getKey());
+                property.put(TYPE, entry.getValue().getType().name());
+                property.put(VALUE, formatValue(entry.getValue()));
+            }
+        }
+
+        mapper.writerWithDefaultPrettyPrinter().writeValue(writer, array);
+    }
+
+    @NotNull
+    private static List<TableEntity> readJson(@NotNull Reader reader, @NotNull String tableName)
+            throws IOException, AzureCmdException {
+        List<TableEntity> tableEntities = new ArrayList<TableEntity>();
+        JsonNode array = new ObjectMapper().readTree(reader);
+
+        if (array == null) {
+            return tableEntities;
+        }
+
+        if (!array.isArray()) {
+            throw new AzureCmdException("JSON content must be an array of Table Entities");
+        }
+
+        for (JsonNode node : array) {
+            if (!node.hasNonNull(PARTITION_KEY) || !node.hasNonNull(ROW_KEY)) {
+                throw new AzureCmdException("Every Table Entity must have a " + PARTITION_KEY + " and a " + ROW_KEY);
+            }
+
+            Map<String, Property> properties = new HashMap<String, Property>();
+            JsonNode propertiesNode = node.get(PROPERTIES);
+
+            if (propertiesNode != null) {
+                Iterator<Map.Entry<String, JsonNode>> fields = propertiesNode.fields();
+
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    PropertyType type = parseType(field.getValue().path(TYPE).asText());
+
+                    properties.put(field.getKey(), parseValue(type, field.getValue().path(VALUE).asText()));
+                }
+            }
+
+            tableEntities.add(new TableEntity(node.get(PARTITION_KEY).asText(), node.get(ROW_KEY).asText(),
+                    tableName, "", new GregorianCalendar(), properties));
+        }
+
+        return tableEntities;
+    }
+
+    @NotNull
+    private static String formatValue(@NotNull Property property) throws AzureCmdException {
+        switch (property.getType()) {
+            case Boolean:
+                return property.getValueAsBoolean().toString();
+            case DateTime:
+                return getDateFormat().format(property.getValueAsCalendar().getTime());
+            case Double:
+                return property.getValueAsDouble().toString();
+            case Uuid:
+                return property.getValueAsUuid().toString();
+            case Integer:
+                return property.getValueAsInteger().toString();
+            case Long:
+                return property.getValueAsLong().toString();
+            default:
+                return property.getValueAsString();
+        }
+    }
+
+    @NotNull
+    private static Property parseValue(@NotNull PropertyType type, @NotNull String value) throws AzureCmdException {
+        try {
+            switch (type) {
+                case Boolean:
+                    return new Property(Boolean.valueOf(value));
+                case DateTime:
+                    Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+                    calendar.setTime(getDateFormat().parse(value));
+                    return new Property(calendar);
+                case Double:
+                    return new Property(Double.valueOf(value));
+                case Uuid:
+                    return new Property(UUID.fromString(value));
+                case Integer:
+                    return new Property(Integer.valueOf(value));
+                case Long:
+                    return new Property(Long.valueOf(value));
+                default:
+                    return new Property(value);
+            }
+        } catch (ParseException e) {
+            throw new AzureCmdException("Invalid " + type.name() + " value: " + value, e);
+        } catch (IllegalArgumentException e) {
+            throw new AzureCmdException("Invalid " + type.name() + " value: " + value, e);
+        }
+    }
+
+    @NotNull
+    private static PropertyType parseType(@NotNull String type) throws AzureCmdException {
+        try {
+            return PropertyType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            throw new AzureCmdException("Unknown property type: " + type, e);
+        }
+    }
+
+    @NotNull
+    private static SimpleDateFormat getDateFormat() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.tooling.msservices.model.storage;
+
+import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of synchronizing a local directory tree with a blob container prefix. In a dry run the transferred paths
+ * are the ones that would have been copied and no bytes are moved.
+ */
+public class BlobSyncResult {
+    private final boolean dryRun;
+    private final List<String> transferred = new ArrayList<String>();
+    private final List<String> unchanged = new ArrayList<String>();
+    private final Map<String, AzureCmdException> failed = new LinkedHashMap<String, AzureCmdException>();
+    private long transferredBytes;
+    private long elapsedMillis;
+
+    public BlobSyncResult(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public synchronized void addTransferred(@NotNull String path, long size) {
+        transferred.add(path);
+        transferredBytes += size;
+    }
+
+    public synchronized void addUnchanged(@NotNull String path) {
+        unchanged.add(path);
+    }
+
+    public synchronized void addFailed(@NotNull String path, @NotNull AzureCmdException error) {
+        failed.put(path, error);
+    }
+
+    @NotNull
+    public synchronized List<String> getTransferred() {
+        return Collections.unmodifiableList(new ArrayList<String>(transferred));
+    }
+
+    @NotNull
+    public synchronized List<String> getUnchanged() {
+        return Collections.unmodifiableList(new ArrayList<String>(unchanged));
+    }
+
+    @NotNull
+    public synchronized Map<String, AzureCmdException> getFailed() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, AzureCmdException>(failed));
+    }
+
+    public synchronized long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public synchronized double getBytesPerSecond() {
+        return elapsedMillis > 0 ? transferredBytes * 1000.0 / elapsedMillis : transferredBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s%d transferred (%d bytes, %.1f KB/s), %d unchanged, %d failed",
+                dryRun ? "[dry run] " : "", transferred.size(), transferredBytes, getBytesPerSecond() / 1024,
+                unchanged.size(), failed.size());
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.tooling.msservices.model.storage;
+
+/**
+ * Summary of a bulk queue operation, used to report how many messages were processed and how fast.
+ */
+public class QueueBulkOperationResult {
+    private final long messageCount;
+    private final long elapsedMillis;
+
+    public QueueBulkOperationResult(long messageCount, long elapsedMillis) {
+        this.messageCount = messageCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getMessagesPerSecond() {
+        return elapsedMillis > 0 ? messageCount * 1000.0 / elapsedMillis : messageCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d messages in %.1f s (%.1f messages/s)",
+                messageCount, elapsedMillis / 1000.0, getMessagesPerSecond());
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.tooling.msservices.model.storage;
+
+import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a bulk table operation: the entities stored by the service and, for every entity that could not be
+ * processed, the error that caused it.
+ */
+public class TableEntityBatchResult {
+    private final List<TableEntity> succeeded = new ArrayList<TableEntity>();
+    private final Map<TableEntity, AzureCmdException> failed = new IdentityHashMap<TableEntity, AzureCmdException>();
+
+    public synchronized void addSucceeded(@NotNull TableEntity tableEntity) {
+        succeeded.add(tableEntity);
+    }
+
+    public synchronized void addFailed(@NotNull TableEntity tableEntity, @NotNull AzureCmdException error) {
+        failed.put(tableEntity, error);
+    }
+
+    @NotNull
+    public synchronized List<TableEntity> getSucceeded() {
+        return Collections.unmodifiableList(new ArrayList<TableEntity>(succeeded));
+    }
+
+    @NotNull
+    public synchronized Map<TableEntity, AzureCmdException> getFailed() {
+        return Collections.unmodifiableMap(new IdentityHashMap<TableEntity, AzureCmdException>(failed));
+    }
+
+    public synchronized boolean hasFailures() {
+        return !failed.isEmpty();
+    }
+}
@@ -28,13 +28,40 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
 import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public abstract class RefreshableNode extends Node {
     protected boolean initialized;
     public static String REFRESH_ICON_LIGHT = "RefreshLight_16.png";
     public static String REFRESH_ICON_DARK = "RefreshDark_16.png";
     private static final String REFRESH = "Refresh";
+    protected static final int DEFAULT_PAGE_SIZE = 50;
+
+    // shared by every caller of load() while a refresh is in flight
+    private final Object loadLock = new Object();
+    private SettableFuture<List<Node>> loadFuture;
+    // while refreshItems() runs on refreshThread the new children are collected here
+    // and only merged into the tree once the refresh completes, so the last known
+    // children stay visible in the meantime
+    private volatile Thread refreshThread;
+    private List<Node> pendingChildNodes;
+    // all the children returned by the last refresh, plus the ones added since;
+    // when paginated only the first visibleChildCount of them are in the tree.
+    // Merging fires the tree listeners, which may wait on the UI thread, so
+    // childNodesLock is only ever taken on background threads. loadedChildNodesLock
+    // only guards the two fields below and is never held while touching the tree.
+    private final Object childNodesLock = new Object();
+    private final Object loadedChildNodesLock = new Object();
+    private List<Node> loadedChildNodes = new ArrayList<Node>();
+    private int visibleChildCount;
+    private LoadMoreNode loadMoreNode;
 
     public RefreshableNode(String id, String name, Node parent, String iconPath) {
         super(id, name, parent, iconPath);
@@ -70,29 +97,140 @@ public abstract class RefreshableNode extends Node {
         }
     }
 
+    @Override
+    public void addChildNode(Node child) {
+        if (isCollectingChildNodes()) {
+            pendingChildNodes.add(child);
+            return;
+        }
+
+        // added outside of a refresh, e.g. by a listener: remember the child so that
+        // "load more" and the next merge keep it, and show it ahead of "load more"
+        synchronized (loadedChildNodesLock) {
+            loadedChildNodes.add(child);
+            visibleChildCount++;
+        }
+
+        LoadMoreNode loadMore = loadMoreNode;
+        boolean moveLoadMore = loadMore != null && super.isDirectChild(loadMore);
+
+        if (moveLoadMore) {
+            super.removeDirectChildNode(loadMore);
+        }
+
+        super.addChildNode(child);
+
+        if (moveLoadMore) {
+            super.addChildNode(loadMore);
+        }
+    }
+
+    @Override
+    public void removeDirectChildNode(Node childNode) {
+        if (isCollectingChildNodes()) {
+            pendingChildNodes.remove(childNode);
+            return;
+        }
+
+        synchronized (loadedChildNodesLock) {
+            int index = loadedChildNodes.indexOf(childNode);
+
+            if (index >= 0) {
+                loadedChildNodes.remove(index);
+
+                if (index < visibleChildCount) {
+                    visibleChildCount--;
+                }
+            }
+        }
+
+        super.removeDirectChildNode(childNode);
+    }
+
+    @Override
+    public boolean isDirectChild(Node node) {
+        return isCollectingChildNodes() ? pendingChildNodes.contains(node) : super.isDirectChild(node);
+    }
+
+    @Override
+    public void removeAllChildNodes() {
+        if (isCollectingChildNodes()) {
+            pendingChildNodes.clear();
+        } else {
+            synchronized (loadedChildNodesLock) {
+                loadedChildNodes = new ArrayList<Node>();
+                visibleChildCount = 0;
+            }
+
+            super.removeAllChildNodes();
+        }
+    }
+
+    // Sub-classes with potentially many children override this method to show
+    // them page by page. Zero, the default, shows all children at once.
+    protected int getPageSize() {
+        return 0;
+    }
+
+    // Decides whether a child kept from the previous refresh can stay in the tree
+    // in place of the refreshed node with the same id. Sub-classes may override this
+    // method when their children carry state that is not reflected in name and icon.
+    protected boolean isSameChildNode(Node existing, Node refreshed) {
+        return existing.getClass() == refreshed.getClass()
+                && Objects.equals(existing.getName(), refreshed.getName())
+                && Objects.equals(existing.getIconPath(), refreshed.getIconPath());
+    }
+
+    // Hands the state of a refreshed child over to the existing node that stays in
+    // the tree in its place. Sub-classes whose children wrap a model object override
+    // this method to copy the refreshed model and return true; by default nothing
+    // is copied and the refreshed node replaces the existing one.
+    protected boolean updateChildNode(Node existing, Node refreshed) {
+        return false;
+    }
+
     // Sub-classes are expected to override this method if they wish to
     // refresh items synchronously. The default implementation does nothing.
     protected abstract void refreshItems() throws AzureCmdException;
 
     // Sub-classes are expected to override this method if they wish
     // to refresh items asynchronously. The default implementation simply
-    // delegates to "refreshItems" *synchronously* and completes the Future
-    // with the result of calling getChildNodes.
-    protected synchronized void refreshItems(SettableFuture<List<Node>> future, boolean forceRefresh) {
-        if (!loading) {
-            setLoading(true);
-            try {
-                removeAllChildNodes();
-                if (forceRefresh) {
-                    refreshFromAzure();
+    // delegates to "refreshItems" *synchronously*, merges the children it
+    // added with the current ones and completes the Future with the result
+    // of calling getChildNodes.
+    protected void refreshItems(SettableFuture<List<Node>> future, boolean forceRefresh) {
+        List<Node> newChildNodes = new ArrayList<Node>();
+
+        setLoading(true);
+        pendingChildNodes = newChildNodes;
+        refreshThread = Thread.currentThread();
+
+        try {
+            if (forceRefresh) {
+                refreshFromAzure();
+            }
+            refreshItems();
+        } catch (Exception e) {
+            // keep showing the last known children
+            future.setException(e);
+            return;
+        } finally {
+            refreshThread = null;
+            pendingChildNodes = null;
+            setLoading(false);
+        }
+
+        if (!future.isCancelled()) {
+            synchronized (childNodesLock) {
+                synchronized (loadedChildNodesLock) {
+                    loadedChildNodes = newChildNodes;
+                    visibleChildCount = Math.max(visibleChildCount, getPageSize());
                 }
-                refreshItems();
-                future.set(getChildNodes());
-            } catch (Exception e) {
-                future.setException(e);
-            } finally {
-                setLoading(false);
+
+                showChildNodes();
             }
+
+            future.set(getChildNodes());
         }
     }
 
@@ -102,30 +240,48 @@ public abstract class RefreshableNode extends Node {
     public ListenableFuture<List<Node>> load(boolean forceRefresh) {
         initialized = true;
         final RefreshableNode node = this;
-        final SettableFuture<List<Node>> future = SettableFuture.create();
+        final SettableFuture<List<Node>> future;
+
+        synchronized (loadLock) {
+            if (loadFuture != null) {
+                return loadFuture;
+            }
+
+            future = SettableFuture.create();
+            loadFuture = future;
+        }
+
+        Futures.addCallback(future, new FutureCallback<List<Node>>() {
+            @Override
+            public void onSuccess(List<Node> nodes) {
+                clearLoadFuture(future);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                clearLoadFuture(future);
+            }
+        });
 
         DefaultLoader.getIdeHelper().runInBackground(getProject(), "Loading " + getName() + "...", true, true, null,
                 new Runnable() {
                     @Override
                     public void run() {
-                        if (!loading) {
-                            final String nodeName = node.getName();
-                            updateName(nodeName + " (Refreshing...)", null);
-//                        node.setName(nodeName + " (Refreshing...)");
-
-                            Futures.addCallback(future, new FutureCallback<List<Node>>() {
-                                @Override
-                                public void onSuccess(List<Node> nodes) {
-                                    updateName(nodeName, null);
-                                }
+                        final String nodeName = node.getName();
+                        updateName(nodeName + " (Refreshing...)", null);
 
-                                @Override
-                                public void onFailure(Throwable throwable) {
-                                    updateName(nodeName, throwable);
-                                }
-                            });
-                            node.refreshItems(future, forceRefresh);
-                        }
+                        Futures.addCallback(future, new FutureCallback<List<Node>>() {
+                            @Override
+                            public void onSuccess(List<Node> nodes) {
+                                updateName(nodeName, null);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable throwable) {
+                                updateName(nodeName, future.isCancelled() ? null : throwable);
+                            }
+                        });
+                        node.refreshItems(future, forceRefresh);
                     }
 
                     private void updateName(String name, final Throwable throwable) {
@@ -150,4 +306,128 @@ public abstract class RefreshableNode extends Node {
 
         return future;
     }
-}
\ No newline at end of file
+
+    public void showMoreChildNodes() {
+        DefaultLoader.getIdeHelper().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (childNodesLock) {
+                    synchronized (loadedChildNodesLock) {
+                        visibleChildCount += getPageSize();
+                    }
+
+                    showChildNodes();
+                }
+            }
+        });
+    }
+
+    private void clearLoadFuture(SettableFuture<List<Node>> future) {
+        synchronized (loadLock) {
+            if (loadFuture == future) {
+                loadFuture = null;
+            }
+        }
+    }
+
+    private boolean isCollectingChildNodes() {
+        return refreshThread != null && refreshThread == Thread.currentThread();
+    }
+
+    private void showChildNodes() {
+        List<Node> visibleChildNodes;
+        int remaining;
+
+        synchronized (loadedChildNodesLock) {
+            int count = loadedChildNodes.size();
+
+            if (getPageSize() > 0) {
+                count = Math.min(count, visibleChildCount);
+            }
+
+            visibleChildNodes = new ArrayList<Node>(loadedChildNodes.subList(0, count));
+            remaining = loadedChildNodes.size() - count;
+        }
+
+        // the "load more" node always goes last, so take it out before merging
+        if (loadMoreNode != null) {
+            super.removeDirectChildNode(loadMoreNode);
+        }
+
+        mergeChildNodes(visibleChildNodes);
+
+        if (remaining > 0) {
+            if (loadMoreNode == null) {
+                loadMoreNode = new LoadMoreNode(this);
+            }
+
+            loadMoreNode.setName(String.format("Load more (%d remaining)...", remaining));
+            super.addChildNode(loadMoreNode);
+        }
+    }
+
+    // Replaces the children in the tree with newChildNodes, keeping the existing
+    // node for every child whose id is unchanged so that the tree does not
+    // collapse or flicker. New children are inserted at their place in
+    // newChildNodes, right after the child that precedes them there.
+    private void mergeChildNodes(List<Node> newChildNodes) {
+        Map<String, Node> newChildNodesById = new HashMap<String, Node>();
+        Set<String> duplicateIds = new HashSet<String>();
+
+        for (Node child : newChildNodes) {
+            if (child.getId() != null && newChildNodesById.put(child.getId(), child) != null) {
+                duplicateIds.add(child.getId());
+            }
+        }
+
+        newChildNodesById.keySet().removeAll(duplicateIds);
+
+        // refreshed child -> the existing node kept in the tree in its place
+        Map<Node, Node> kept = new IdentityHashMap<Node, Node>();
+
+        for (Node existing : new ArrayList<Node>(childNodes)) {
+            Node refreshed = existing.getId() != null ? newChildNodesById.get(existing.getId()) : null;
+
+            if (refreshed != null && (refreshed == existing
+                    || (isSameChildNode(existing, refreshed) && updateChildNode(existing, refreshed)))) {
+                kept.put(refreshed, existing);
+
+                synchronized (loadedChildNodesLock) {
+                    int index = loadedChildNodes.indexOf(refreshed);
+
+                    if (index >= 0) {
+                        loadedChildNodes.set(index, existing);
+                    }
+                }
+            } else {
+                super.removeDirectChildNode(existing);
+            }
+        }
+
+        int index = 0;
+
+        for (Node child : newChildNodes) {
+            Node existing = kept.get(child);
+
+            if (existing != null) {
+                index = childNodes.indexOf(existing) + 1;
+            } else {
+                childNodes.add(index++, child);
+            }
+        }
+    }
+
+    private static class LoadMoreNode extends Node {
+        private final RefreshableNode owner;
+
+        LoadMoreNode(RefreshableNode owner) {
+            super(owner.getId() + ".loadMore", "Load more...", owner, null);
+            this.owner = owner;
+        }
+
+        @Override
+        protected void onNodeClick(NodeActionEvent e) {
+            owner.showMoreChildNodes();
+        }
+    }
+}
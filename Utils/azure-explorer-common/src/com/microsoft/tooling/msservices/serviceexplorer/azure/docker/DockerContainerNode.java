@@ -22,11 +22,16 @@
 package com.microsoft.tooling.msservices.serviceexplorer.azure.docker;
 
 import com.microsoft.azure.docker.AzureDockerHostsManager;
+import com.microsoft.azure.docker.model.AzureDockerBulkResult;
+import com.microsoft.azure.docker.model.AzureDockerCommandResult;
 import com.microsoft.azure.docker.model.DockerContainer;
 import com.microsoft.azure.docker.model.DockerHost;
 import com.microsoft.azure.docker.model.DockerImage;
+import com.microsoft.azure.docker.ops.AzureDockerBulkOps;
 import com.microsoft.azure.docker.ops.AzureDockerContainerOps;
+import com.microsoft.azure.docker.ops.AzureDockerHostEventsSubscriber;
 import com.microsoft.azure.docker.ops.AzureDockerImageOps;
+import com.microsoft.azure.docker.ops.AzureDockerSSHOps;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
 import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
 import com.microsoft.tooling.msservices.serviceexplorer.*;
@@ -36,6 +41,7 @@ import java.awt.*;
 import java.net.URI;
 import java.util.*;
 
+import static com.microsoft.azure.docker.model.DockerHost.DockerHostVMState.RUNNING;
 import static com.microsoft.azure.docker.ops.utils.AzureDockerUtils.checkDockerContainerUrlAvailability;
 
 public class DockerContainerNode extends AzureRefreshableNode {
@@ -54,6 +60,7 @@ public class DockerContainerNode extends AzureRefreshableNode {
   public static final String ACTION_STOP = "Stop";
   public static final String ACTION_RESTART = "Restart";
   public static final String ACTION_OPEN_WEB_APP = "Browse";
+  public static final String ACTION_RESTART_ON_ALL_HOSTS = "Restart on All Hosts";
 
   DockerContainer dockerContainer;
   DockerHost dockerHost;
@@ -81,6 +88,16 @@ public class DockerContainerNode extends AzureRefreshableNode {
   @Override
   protected void refreshItems() throws AzureCmdException {
     try {
+      AzureDockerHostEventsSubscriber subscriber = dockerManager.getDockerHostEventsSubscriber(dockerHost);
+      if (subscriber != null && subscriber.isLive()) {
+        // the events stream keeps the container current
+        DockerContainer updatedDockerContainer = subscriber.getDockerContainer(dockerContainer.id);
+        if (updatedDockerContainer != null) {
+          updateDockerContainer(updatedDockerContainer);
+        }
+        return;
+      }
+
       Map<String, DockerImage> dockerImages = AzureDockerImageOps.getImages(dockerHost);
       Map<String, DockerContainer> dockerContainers = AzureDockerContainerOps.getContainers(dockerHost);
       AzureDockerContainerOps.setContainersAndImages(dockerContainers, dockerImages);
@@ -101,12 +118,22 @@ public class DockerContainerNode extends AzureRefreshableNode {
     return dockerHost;
   }
 
+  public DockerContainer getDockerContainer() {
+    return dockerContainer;
+  }
+
   public AzureDockerHostsManager getDockerManager() {
     return dockerManager;
   }
 
+  void updateDockerContainer(DockerContainer updatedDockerContainer) {
+    dockerContainer = updatedDockerContainer;
+    setDockerContainerIconPath();
+  }
+
   private void setDockerContainerIconPath() {
-    if (dockerHost.dockerImages.get(dockerContainer.image).isPluginImage) {
+    DockerImage dockerImage = dockerHost.dockerImages != null ? dockerHost.dockerImages.get(dockerContainer.image) : null;
+    if (dockerImage != null && dockerImage.isPluginImage) {
       if (dockerContainer.isRunning) {
         setIconPath(DOCKER_CONTAINER_WEB_RUN_ICON);
       } else {
@@ -152,7 +179,7 @@ public class DockerContainerNode extends AzureRefreshableNode {
         DefaultLoader.getIdeHelper().runInBackground(null, "Stopping Docker Container", false, true, "Stopping Docker Container...", new Runnable() {
           @Override
           public void run() {
-            AzureDockerContainerOps.stop(dockerContainer, dockerHost.session);
+            AzureDockerContainerOps.stop(dockerContainer, AzureDockerSSHOps.getLoginInstance(dockerHost));
             dockerContainer.isRunning = false;
             setDockerContainerIconPath();
           }
@@ -165,7 +192,7 @@ public class DockerContainerNode extends AzureRefreshableNode {
         DefaultLoader.getIdeHelper().runInBackground(null, "Starting Docker Container", false, true, "Starting Docker Container...", new Runnable() {
           @Override
           public void run() {
-            AzureDockerContainerOps.start(dockerContainer, dockerHost.session);
+            AzureDockerContainerOps.start(dockerContainer, AzureDockerSSHOps.getLoginInstance(dockerHost));
             dockerContainer.isRunning = true;
             DockerImage dockerImage = dockerHost.dockerImages.get(dockerContainer.image);
             if (dockerImage != null) {
@@ -194,18 +221,57 @@ public class DockerContainerNode extends AzureRefreshableNode {
         DefaultLoader.getIdeHelper().runInBackground(null, "Restarting Docker Container", false, true, "Restarting Docker Container...", new Runnable() {
           @Override
           public void run() {
-            AzureDockerContainerOps.stop(dockerContainer, dockerHost.session);
-            AzureDockerContainerOps.start(dockerContainer, dockerHost.session);
+            AzureDockerContainerOps.stop(dockerContainer, AzureDockerSSHOps.getLoginInstance(dockerHost));
+            AzureDockerContainerOps.start(dockerContainer, AzureDockerSSHOps.getLoginInstance(dockerHost));
             dockerContainer.isRunning = true;
             setDockerContainerIconPath();
           }
         });
       }
     });
+    addAction(ACTION_RESTART_ON_ALL_HOSTS, ACTION_START_ICON, new RestartOnAllDockerHostsAction());
     addAction(ACTION_DELETE, ACTION_DELETE_ICON, new DeleteDockerContainerAction());
     super.loadActions();
   }
 
+  public class RestartOnAllDockerHostsAction extends AzureNodeActionPromptListener {
+    public RestartOnAllDockerHostsAction() {
+      super(DockerContainerNode.this,
+          String.format("This operation will restart the Docker container %s on every running Docker host. Are you sure you want to continue?",
+              dockerContainer.name),
+          "Restarting Docker Containers");
+    }
+
+    @Override
+    protected void azureNodeAction(NodeActionEvent e)
+        throws AzureCmdException {
+      try {
+        java.util.List<DockerHost> dockerHosts = new ArrayList<>();
+        for (DockerHost host : dockerManager.getDockerHostsList()) {
+          if (host.state == RUNNING && host.certVault != null) {
+            dockerHosts.add(host);
+          }
+        }
+
+        AzureDockerBulkResult<AzureDockerCommandResult> result = AzureDockerBulkOps.execute(dockerHosts,
+            AzureDockerBulkOps.restartContainer(dockerContainer.name), null);
+        for (AzureDockerBulkResult.HostResult<AzureDockerCommandResult> hostResult : result.getHostResults(AzureDockerBulkResult.Status.SUCCEEDED)) {
+          if (hostResult.dockerHost.apiUrl.equals(dockerHost.apiUrl)) {
+            dockerContainer.isRunning = true;
+            setDockerContainerIconPath();
+          }
+        }
+        DockerHostModule.showBulkResult(result, "Restarting Docker Containers");
+      } catch (Exception ex) {
+        DefaultLoader.getUIHelper().logError(ex.getMessage(), ex);
+      }
+    }
+
+    @Override
+    protected void onSubscriptionsChanged(NodeActionEvent e) throws AzureCmdException {
+    }
+  }
+
   public class DeleteDockerContainerAction extends AzureNodeActionPromptListener {
     public DeleteDockerContainerAction() {
       super(DockerContainerNode.this,
@@ -218,7 +284,7 @@ public class DockerContainerNode extends AzureRefreshableNode {
     protected void azureNodeAction(NodeActionEvent e)
         throws AzureCmdException {
       try {
-        AzureDockerContainerOps.delete(dockerContainer, dockerHost.session);
+        AzureDockerContainerOps.delete(dockerContainer, AzureDockerSSHOps.getLoginInstance(dockerHost));
 
         DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
           @Override
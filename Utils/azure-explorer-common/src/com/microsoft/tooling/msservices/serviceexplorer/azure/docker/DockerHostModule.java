@@ -22,7 +22,9 @@
 package com.microsoft.tooling.msservices.serviceexplorer.azure.docker;
 
 import com.microsoft.azure.docker.AzureDockerHostsManager;
+import com.microsoft.azure.docker.model.AzureDockerBulkResult;
 import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.ops.AzureDockerBulkOps;
 import com.microsoft.azuretools.authmanage.AuthMethodManager;
 import com.microsoft.azuretools.sdkmanage.AzureManager;
 import com.microsoft.azuretools.utils.AzureUIRefreshCore;
@@ -32,11 +34,18 @@ import com.microsoft.tooling.msservices.components.DefaultLoader;
 import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
 import com.microsoft.tooling.msservices.serviceexplorer.AzureRefreshableNode;
 import com.microsoft.tooling.msservices.serviceexplorer.Node;
+import com.microsoft.tooling.msservices.serviceexplorer.NodeActionEvent;
+import com.microsoft.tooling.msservices.serviceexplorer.NodeActionListener;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class DockerHostModule extends AzureRefreshableNode {
   private static final String DOCKER_HOST_MODULE_ID = DockerHostModule.class.getName();
   private static final String DOCKER_HOST_ICON = "DockerContainer_16.png";
   private static final String BASE_MODULE_NAME = "Docker Hosts";
+  public static final String ACTION_REFRESH_ALL_HOSTS = "Refresh All Hosts";
 
   private AzureDockerHostsManager dockerManager;
 
@@ -94,6 +103,55 @@ public class DockerHostModule extends AzureRefreshableNode {
 //    super.onNodeClick(e);
 //  }
 
+  @Override
+  protected void loadActions() {
+    addAction(ACTION_REFRESH_ALL_HOSTS, new NodeActionListener() {
+      @Override
+      public void actionPerformed(NodeActionEvent e) {
+        DefaultLoader.getIdeHelper().runInBackground(null, "Refreshing Docker Hosts", false, true, "Refreshing Docker Hosts...", new Runnable() {
+          @Override
+          public void run() {
+            refreshAllDockerHosts();
+          }
+        });
+      }
+    });
+    super.loadActions();
+  }
+
+  private void refreshAllDockerHosts() {
+    final Map<DockerHost, DockerHostNode> dockerHostNodes = new LinkedHashMap<>();
+    for (Node child : getChildNodes()) {
+      if (child instanceof DockerHostNode) {
+        dockerHostNodes.put(((DockerHostNode) child).getDockerHost(), (DockerHostNode) child);
+      }
+    }
+
+    // the hosts reload side by side instead of one after the other
+    AzureDockerBulkResult<List<Node>> result = AzureDockerBulkOps.execute(dockerHostNodes.keySet(),
+        new AzureDockerBulkOps.DockerHostOperation<List<Node>>() {
+          @Override
+          public List<Node> execute(DockerHost dockerHost) throws Exception {
+            return dockerHostNodes.get(dockerHost).load(true).get();
+          }
+        }, null);
+    showBulkResult(result, "Refreshing Docker Hosts");
+  }
+
+  static void showBulkResult(AzureDockerBulkResult<?> result, String title) {
+    if (result.isSuccess()) {
+      return;
+    }
+
+    StringBuilder msg = new StringBuilder(result.toString());
+    for (AzureDockerBulkResult.HostResult<?> hostResult : result.getHostResults()) {
+      if (hostResult.status != AzureDockerBulkResult.Status.SUCCEEDED) {
+        msg.append("\n").append(hostResult);
+      }
+    }
+    DefaultLoader.getUIHelper().showError(msg.toString(), title);
+  }
+
   @Override
   protected void refreshFromAzure() throws Exception {
     try {
@@ -26,6 +26,7 @@ import com.microsoft.azure.docker.model.DockerContainer;
 import com.microsoft.azure.docker.model.DockerHost;
 import com.microsoft.azure.docker.model.DockerImage;
 import com.microsoft.azure.docker.ops.AzureDockerContainerOps;
+import com.microsoft.azure.docker.ops.AzureDockerHostEventsSubscriber;
 import com.microsoft.azure.docker.ops.AzureDockerImageOps;
 import com.microsoft.azure.docker.ops.AzureDockerVMOps;
 import com.microsoft.azure.management.Azure;
@@ -63,6 +64,65 @@ public class DockerHostNode extends AzureRefreshableNode {
   DockerHost dockerHost;
   AzureDockerHostsManager dockerManager;
 
+  // applies the changes reported by the host's Docker events to the image and container nodes
+  // the subscriber calls back on its events thread; the tree is only changed on the UI thread
+  private final AzureDockerHostEventsSubscriber.DockerHostEventsListener dockerHostEventsListener =
+      new AzureDockerHostEventsSubscriber.DockerHostEventsListener() {
+    @Override
+    public void onContainerAdded(final DockerImage dockerImage, final DockerContainer dockerContainer) {
+      DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          DockerImageNode dockerImageNode = findDockerImageNode(dockerImage);
+          if (dockerImageNode != null) {
+            dockerImageNode.addDockerContainerNode(dockerContainer);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void onContainerChanged(final DockerImage dockerImage, final DockerContainer dockerContainer) {
+      DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          DockerImageNode dockerImageNode = findDockerImageNode(dockerImage);
+          if (dockerImageNode != null) {
+            dockerImageNode.updateDockerContainerNode(dockerContainer);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void onContainerRemoved(final DockerImage dockerImage, final DockerContainer dockerContainer) {
+      DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          DockerImageNode dockerImageNode = findDockerImageNode(dockerImage);
+          if (dockerImageNode != null) {
+            dockerImageNode.removeDockerContainerNode(dockerContainer);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void onImagesChanged(final Map<String, DockerImage> dockerImages) {
+      DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          removeAllChildNodes();
+          for (DockerImage dockerImage : dockerImages.values()) {
+            try {
+              addChildNode(new DockerImageNode(DockerHostNode.this, dockerManager, dockerHost, dockerImage));
+            } catch (Exception ignored) {}
+          }
+        }
+      });
+    }
+  };
+
   public DockerHostNode(Node parent, AzureDockerHostsManager dockerManager, DockerHost dockerHost)
       throws AzureCmdException {
     super(dockerHost.apiUrl, dockerHost.name, parent, DOCKERHOST_WAIT_ICON_PATH, true);
@@ -111,12 +171,23 @@ public class DockerHostNode extends AzureRefreshableNode {
         dockerManager.updateDockerHost(updatedDockerHost);
         dockerHost = updatedDockerHost;
 
-        if (dockerHost.certVault != null) {
+        if (dockerHost.state != RUNNING) {
+          dockerManager.unsubscribeFromDockerHostEvents(dockerHost);
+        }
+        AzureDockerHostEventsSubscriber subscriber = dockerManager.getDockerHostEventsSubscriber(dockerHost);
+        if (subscriber != null && subscriber.isLive() && subscriber.getDockerHost().dockerImages != null) {
+          // the events stream kept the images and containers current, so there is nothing to list
+          dockerHost.dockerImages = subscriber.getDockerHost().dockerImages;
+          dockerManager.subscribeToDockerHostEvents(dockerHost, dockerHostEventsListener, false);
+        } else if (dockerHost.certVault != null) {
           try { // it might throw here if the credentials are invalid
             Map<String, DockerImage> dockerImages = AzureDockerImageOps.getImages(dockerHost);
             Map<String, DockerContainer> dockerContainers = AzureDockerContainerOps.getContainers(dockerHost);
             AzureDockerContainerOps.setContainersAndImages(dockerContainers, dockerImages);
             dockerHost.dockerImages = dockerImages;
+            if (dockerHost.state == RUNNING) {
+              dockerManager.subscribeToDockerHostEvents(dockerHost, dockerHostEventsListener, true);
+            }
           } catch (Exception e) {
             DefaultLoader.getUIHelper().logError(e.getMessage(), e);
           }
@@ -132,6 +203,17 @@ public class DockerHostNode extends AzureRefreshableNode {
     }
   }
 
+  private DockerImageNode findDockerImageNode(DockerImage dockerImage) {
+    String key = AzureDockerImageOps.getDockerImageMapKey(dockerImage);
+    for (Node child : getChildNodes()) {
+      if (child instanceof DockerImageNode && key.equals(AzureDockerImageOps.getDockerImageMapKey(((DockerImageNode) child).dockerImage))) {
+        return (DockerImageNode) child;
+      }
+    }
+
+    return null;
+  }
+
   private String getDockerHostIcon() {
     switch (dockerHost.state) {
       case RUNNING:
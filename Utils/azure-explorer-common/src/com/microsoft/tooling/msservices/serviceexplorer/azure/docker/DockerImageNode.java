@@ -26,7 +26,9 @@ import com.microsoft.azure.docker.model.DockerContainer;
 import com.microsoft.azure.docker.model.DockerHost;
 import com.microsoft.azure.docker.model.DockerImage;
 import com.microsoft.azure.docker.ops.AzureDockerContainerOps;
+import com.microsoft.azure.docker.ops.AzureDockerHostEventsSubscriber;
 import com.microsoft.azure.docker.ops.AzureDockerImageOps;
+import com.microsoft.azure.docker.ops.AzureDockerSSHOps;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
 import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
 import com.microsoft.tooling.msservices.serviceexplorer.AzureRefreshableNode;
@@ -73,8 +75,11 @@ public class DockerImageNode extends AzureRefreshableNode {
   @Override
   protected void refreshItems() {
     try {
-      Map<String, DockerContainer> dockerContainers = AzureDockerContainerOps.getContainers(dockerHost);
-      AzureDockerContainerOps.setContainersAndImages(dockerContainers, dockerHost.dockerImages);
+      AzureDockerHostEventsSubscriber subscriber = dockerManager.getDockerHostEventsSubscriber(dockerHost);
+      if (subscriber == null || !subscriber.isLive()) {
+        Map<String, DockerContainer> dockerContainers = AzureDockerContainerOps.getContainers(dockerHost);
+        AzureDockerContainerOps.setContainersAndImages(dockerContainers, dockerHost.dockerImages);
+      }
       if (dockerHost.dockerImages != null) {
         dockerImage = dockerHost.dockerImages.get(AzureDockerImageOps.getDockerImageMapKey(dockerImage));
         if (dockerImage != null) {
@@ -88,6 +93,40 @@ public class DockerImageNode extends AzureRefreshableNode {
     }
   }
 
+  void addDockerContainerNode(DockerContainer dockerContainer) {
+    try {
+      addChildNode(new DockerContainerNode(this, dockerManager, dockerHost, dockerContainer));
+    } catch (Exception e) {
+      DefaultLoader.getUIHelper().logError(e.getMessage(), e);
+    }
+  }
+
+  void updateDockerContainerNode(DockerContainer dockerContainer) {
+    DockerContainerNode dockerContainerNode = findDockerContainerNode(dockerContainer);
+    if (dockerContainerNode != null) {
+      dockerContainerNode.updateDockerContainer(dockerContainer);
+    } else {
+      addDockerContainerNode(dockerContainer);
+    }
+  }
+
+  void removeDockerContainerNode(DockerContainer dockerContainer) {
+    DockerContainerNode dockerContainerNode = findDockerContainerNode(dockerContainer);
+    if (dockerContainerNode != null) {
+      removeDirectChildNode(dockerContainerNode);
+    }
+  }
+
+  private DockerContainerNode findDockerContainerNode(DockerContainer dockerContainer) {
+    for (Node child : getChildNodes()) {
+      if (child instanceof DockerContainerNode && child.getId().equals(dockerContainer.id)) {
+        return (DockerContainerNode) child;
+      }
+    }
+
+    return null;
+  }
+
   public DockerHost getDockerHost() {
     return dockerHost;
   }
@@ -113,7 +152,7 @@ public class DockerImageNode extends AzureRefreshableNode {
     @Override
     protected void azureNodeAction(NodeActionEvent e) {
       try {
-        AzureDockerImageOps.delete(dockerImage, dockerHost.session);
+        AzureDockerImageOps.delete(dockerImage, AzureDockerSSHOps.getLoginInstance(dockerHost));
 
         DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
           @Override
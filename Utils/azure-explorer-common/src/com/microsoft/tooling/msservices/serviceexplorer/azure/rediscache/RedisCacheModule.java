@@ -21,7 +21,6 @@
  */
 package com.microsoft.tooling.msservices.serviceexplorer.azure.rediscache;
 
-import com.microsoft.azure.management.Azure;
 import com.microsoft.azure.management.redis.DayOfWeek;
 import com.microsoft.azure.management.redis.RebootType;
 import com.microsoft.azure.management.redis.RedisAccessKeys;
@@ -49,7 +48,6 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 public final class RedisCacheModule extends AzureRefreshableNode {
     private static final String REDIS_SERVICE_MODULE_ID = com.microsoft.tooling.msservices.serviceexplorer.azure.rediscache.RedisCacheModule.class.getName();
@@ -70,18 +68,29 @@ public final class RedisCacheModule extends AzureRefreshableNode {
             }
 
             SubscriptionManager subscriptionManager = azureManager.getSubscriptionManager();
-            Set<String> sidList = subscriptionManager.getAccountSidList();
-            for (String sid : sidList) {
-                try {
-                    Azure azure = azureManager.getAzure(sid);
-                    for (RedisCache cache : azure.redisCaches().list())
-                    {
-                        addChildNode(new RedisCacheNode(this, sid, cache));
-                    }
-                } catch (Exception ex) {
-                    failedSubscriptions.add(new ImmutablePair<>(sid, ex.getMessage()));
+            final List<String> sidList = new ArrayList<>(subscriptionManager.getAccountSidList());
+            final AzureManager manager = azureManager;
+            // subscriptions are listed in parallel, their nodes are added in subscription order
+            ParallelExecutor.Result<List<RedisCache>> result = ParallelExecutor.forEach(sidList,
+                    new ParallelExecutor.Task<String, List<RedisCache>>() {
+                        @Override
+                        public List<RedisCache> call(String sid) throws Exception {
+                            return manager.getAzure(sid).redisCaches().list();
+                        }
+                    }).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+
+            for (int i = 0; i < sidList.size(); i++) {
+                String sid = sidList.get(i);
+                Throwable failure = result.getFailures().get(i);
+
+                if (failure != null) {
+                    failedSubscriptions.add(new ImmutablePair<>(sid, failure.getMessage()));
                     continue;
                 }
+
+                for (RedisCache item : result.getResults().get(i)) {
+                    addChildNode(new RedisCacheNode(this, sid, item));
+                }
             }
         } catch (Exception ex) {
             DefaultLoader.getUIHelper().logError("An error occurred when trying to load Redis Caches\n\n" + ex.getMessage(), ex);
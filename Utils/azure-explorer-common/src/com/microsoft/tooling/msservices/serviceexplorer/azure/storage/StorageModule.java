@@ -29,6 +29,7 @@ import com.microsoft.azuretools.sdkmanage.AzureManager;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
 import com.microsoft.tooling.msservices.helpers.ExternalStorageHelper;
 import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
 import com.microsoft.tooling.msservices.helpers.azure.sdk.StorageClientSDKManager;
 import com.microsoft.tooling.msservices.model.storage.ClientStorageAccount;
 import com.microsoft.tooling.msservices.serviceexplorer.AzureRefreshableNode;
@@ -38,7 +39,6 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 public class StorageModule extends AzureRefreshableNode {
     private static final String STORAGE_MODULE_ID = com.microsoft.tooling.msservices.serviceexplorer.azure.storage.StorageModule.class.getName();
@@ -49,6 +49,17 @@ public class StorageModule extends AzureRefreshableNode {
         super(STORAGE_MODULE_ID, BASE_MODULE_NAME, parent, ICON_PATH);
     }
 
+    @Override
+    protected int getPageSize() {
+        return DEFAULT_PAGE_SIZE;
+    }
+
+    @Override
+    protected boolean updateChildNode(Node existing, Node refreshed) {
+        ((StorageNode) existing).setStorageAccount(((StorageNode) refreshed).getStorageAccount());
+        return true;
+    }
+
     @Override
     protected void refreshItems()
             throws AzureCmdException {
@@ -62,19 +73,29 @@ public class StorageModule extends AzureRefreshableNode {
             }
 
             SubscriptionManager subscriptionManager = azureManager.getSubscriptionManager();
-            Set<String> sidList = subscriptionManager.getAccountSidList();
-            for (String sid : sidList) {
-                try {
-                    Azure azure = azureManager.getAzure(sid);
-                    List<com.microsoft.azure.management.storage.StorageAccount> storageAccounts = azure.storageAccounts().list();
-                    for (StorageAccount sm : storageAccounts) {
-                        addChildNode(new StorageNode(this, sid, sm));
-                    }
+            final List<String> sidList = new ArrayList<>(subscriptionManager.getAccountSidList());
+            final AzureManager manager = azureManager;
+            // subscriptions are listed in parallel, their nodes are added in subscription order
+            ParallelExecutor.Result<List<StorageAccount>> result = ParallelExecutor.forEach(sidList,
+                    new ParallelExecutor.Task<String, List<StorageAccount>>() {
+                        @Override
+                        public List<StorageAccount> call(String sid) throws Exception {
+                            return manager.getAzure(sid).storageAccounts().list();
+                        }
+                    }).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+
+            for (int i = 0; i < sidList.size(); i++) {
+                String sid = sidList.get(i);
+                Throwable failure = result.getFailures().get(i);
 
-                } catch (Exception ex) {
-                    failedSubscriptions.add(new ImmutablePair<>(sid, ex.getMessage()));
+                if (failure != null) {
+                    failedSubscriptions.add(new ImmutablePair<>(sid, failure.getMessage()));
                     continue;
                 }
+
+                for (StorageAccount item : result.getResults().get(i)) {
+                    addChildNode(new StorageNode(this, sid, item));
+                }
             }
         } catch (Exception ex) {
             DefaultLoader.getUIHelper().logError("An error occurred when trying to load Storage Accounts\n\n" + ex.getMessage(), ex);
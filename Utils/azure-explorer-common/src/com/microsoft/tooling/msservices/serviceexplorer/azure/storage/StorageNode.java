@@ -41,7 +41,7 @@ import java.util.Map;
 public class StorageNode extends RefreshableNode {
     private static final String STORAGE_ACCOUNT_ICON_PATH = "StorageAccount_16.png";
 
-    private final StorageAccount storageAccount;
+    private StorageAccount storageAccount;
     private String subscriptionId;
 
     public StorageNode(Node parent, String subscriptionId, StorageAccount storageAccount) {
@@ -108,6 +108,10 @@ public class StorageNode extends RefreshableNode {
         return storageAccount;
     }
 
+    public void setStorageAccount(StorageAccount storageAccount) {
+        this.storageAccount = storageAccount;
+    }
+
     @Override
     public String getToolTip() {
         return storageAccount.name() + "\n" + storageAccount.regionName()
@@ -21,13 +21,13 @@
  */
 package com.microsoft.tooling.msservices.serviceexplorer.azure.vmarm;
 
-import com.microsoft.azure.management.Azure;
 import com.microsoft.azure.management.compute.VirtualMachine;
 import com.microsoft.azuretools.authmanage.AuthMethodManager;
 import com.microsoft.azuretools.authmanage.SubscriptionManager;
 import com.microsoft.azuretools.sdkmanage.AzureManager;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
 import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
 import com.microsoft.tooling.msservices.serviceexplorer.AzureRefreshableNode;
 import com.microsoft.tooling.msservices.serviceexplorer.Node;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -35,7 +35,6 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 public class VMArmModule extends AzureRefreshableNode {
     private static final String VM_SERVICE_MODULE_ID = com.microsoft.tooling.msservices.serviceexplorer.azure.vmarm.VMArmModule.class.getName();
@@ -46,6 +45,17 @@ public class VMArmModule extends AzureRefreshableNode {
         super(VM_SERVICE_MODULE_ID, BASE_MODULE_NAME, parent, ICON_PATH);
     }
 
+    @Override
+    protected int getPageSize() {
+        return DEFAULT_PAGE_SIZE;
+    }
+
+    @Override
+    protected boolean updateChildNode(Node existing, Node refreshed) {
+        ((VMNode) existing).setVirtualMachine(((VMNode) refreshed).getVirtualMachine());
+        return true;
+    }
+
     @Override
     protected void refreshItems() throws AzureCmdException {
         List<Pair<String, String>> failedSubscriptions = new ArrayList<>();
@@ -57,20 +67,29 @@ public class VMArmModule extends AzureRefreshableNode {
             }
 
             SubscriptionManager subscriptionManager = azureManager.getSubscriptionManager();
-            Set<String> sidList = subscriptionManager.getAccountSidList();
-            for (String sid : sidList) {
-                try {
-                    Azure azure = azureManager.getAzure(sid);
-                    List<VirtualMachine> virtualMachines = azure.virtualMachines().list();
+            final List<String> sidList = new ArrayList<>(subscriptionManager.getAccountSidList());
+            final AzureManager manager = azureManager;
+            // subscriptions are listed in parallel, their nodes are added in subscription order
+            ParallelExecutor.Result<List<VirtualMachine>> result = ParallelExecutor.forEach(sidList,
+                    new ParallelExecutor.Task<String, List<VirtualMachine>>() {
+                        @Override
+                        public List<VirtualMachine> call(String sid) throws Exception {
+                            return manager.getAzure(sid).virtualMachines().list();
+                        }
+                    }).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
 
-                    for (VirtualMachine vm : virtualMachines) {
-                        addChildNode(new VMNode(this, sid, vm));
-                    }
+            for (int i = 0; i < sidList.size(); i++) {
+                String sid = sidList.get(i);
+                Throwable failure = result.getFailures().get(i);
 
-                } catch (Exception ex) {
-                    failedSubscriptions.add(new ImmutablePair<>(sid, ex.getMessage()));
+                if (failure != null) {
+                    failedSubscriptions.add(new ImmutablePair<>(sid, failure.getMessage()));
                     continue;
                 }
+
+                for (VirtualMachine item : result.getResults().get(i)) {
+                    addChildNode(new VMNode(this, sid, item));
+                }
             }
         } catch (Exception ex) {
             DefaultLoader.getUIHelper().logError("An error occurred when trying to load Virtual Machines\n\n" + ex.getMessage(), ex);
@@ -162,6 +162,14 @@ public class VMNode extends RefreshableNode {
         refreshItemsInternal();
     }
 
+    public VirtualMachine getVirtualMachine() {
+        return virtualMachine;
+    }
+
+    public void setVirtualMachine(VirtualMachine virtualMachine) {
+        this.virtualMachine = virtualMachine;
+    }
+
     private String getVMIconPath() {
         try {
             for (InstanceViewStatus status : virtualMachine.instanceView().statuses()) {
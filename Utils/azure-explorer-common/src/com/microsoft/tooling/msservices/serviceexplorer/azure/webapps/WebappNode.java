@@ -59,6 +59,15 @@ public class WebappNode extends Node {
 		return webApp;
 	}
 
+	public ResourceGroup getResourceGroup() {
+		return resourceGroup;
+	}
+
+	public void setWebApp(WebApp webApp, ResourceGroup resourceGroup) {
+		this.webApp = webApp;
+		this.resourceGroup = resourceGroup;
+	}
+
 	@Override
 	public List<NodeAction> getNodeActions() {
 		boolean running = RUN_STATUS.equals(webApp.inner().state());
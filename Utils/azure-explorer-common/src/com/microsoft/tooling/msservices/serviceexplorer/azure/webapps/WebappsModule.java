@@ -48,6 +48,11 @@ public class WebappsModule extends AzureRefreshableNode {
 		createListener();
 	}
 
+	@Override
+	protected int getPageSize() {
+		return DEFAULT_PAGE_SIZE;
+	}
+
 	@Override
 	protected void refreshItems() throws AzureCmdException {
 		if (AzureModel.getInstance().getResourceGroupToWebAppMap() == null) {
@@ -56,15 +61,9 @@ public class WebappsModule extends AzureRefreshableNode {
 			} catch (Exception ex) {
 				DefaultLoader.getUIHelper().logError("Error updating webapps cache", ex);
 			}
-			DefaultLoader.getIdeHelper().invokeLater(new Runnable() {
-				@Override
-				public void run() {
-					fillWebappsNodes();
-				}
-			});
-		} else {
-			fillWebappsNodes();
 		}
+		// the children have to be added on the refreshing thread to be part of this refresh
+		fillWebappsNodes();
 	}
 
 	@Override
@@ -75,12 +74,15 @@ public class WebappsModule extends AzureRefreshableNode {
 	private void fillWebappsNodes() {
 		Map<SubscriptionDetail, List<ResourceGroup>> srgMap = AzureModel.getInstance().getSubscriptionToResourceGroupMap();
 		Map<ResourceGroup, List<WebApp>> rgwaMap = AzureModel.getInstance().getResourceGroupToWebAppMap();
-		if (srgMap != null) {
+		if (srgMap != null && rgwaMap != null) {
 			for (SubscriptionDetail sd : srgMap.keySet()) {
 				if (!sd.isSelected()) continue;
 
 				for (ResourceGroup rg : srgMap.get(sd)) {
-					for (WebApp webApp : rgwaMap.get(rg)) {
+					List<WebApp> webApps = rgwaMap.get(rg);
+					if (webApps == null) continue;
+
+					for (WebApp webApp : webApps) {
 						addChildNode(new WebappNode(this, webApp, rg,
 								RUN_STATUS.equalsIgnoreCase(webApp.inner().state()) ? WEB_RUN_ICON : WEB_STOP_ICON));
 					}
@@ -89,6 +91,13 @@ public class WebappsModule extends AzureRefreshableNode {
 		}
 	}
 
+	@Override
+	protected boolean updateChildNode(Node existing, Node refreshed) {
+		WebappNode refreshedNode = (WebappNode) refreshed;
+		((WebappNode) existing).setWebApp(refreshedNode.getWebApp(), refreshedNode.getResourceGroup());
+		return true;
+	}
+
 	private void createListener() {
 		String id = "WebappsModule";
 		AzureUIRefreshListener listener = new AzureUIRefreshListener() {
@@ -0,0 +1,100 @@
+package com.microsoft.azure.docker.ops;
+
+import com.microsoft.azure.docker.model.AzureDockerBulkResult;
+import com.microsoft.azure.docker.model.DockerHost;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs bulk operations against in-memory hosts, the operations stand in for the SSH and Remote API calls.
+ */
+public class AzureDockerBulkOpsTest {
+  private static final int HOST_COUNT = 12;
+
+  @Test
+  public void hostsAreWorkedOnAtMostMaxConcurrencyAtATime() {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger progressCalls = new AtomicInteger();
+
+    AzureDockerBulkResult<String> result = AzureDockerBulkOps.execute(createHosts(HOST_COUNT), dockerHost -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(50);
+      } finally {
+        running.decrementAndGet();
+      }
+      return dockerHost.name;
+    }, 3, 10000, (hostResult, completed, total) -> {
+      progressCalls.incrementAndGet();
+      assertEquals(HOST_COUNT, total);
+    });
+
+    assertTrue(result.isSuccess());
+    assertEquals(3, maxRunning.get());
+    assertEquals(HOST_COUNT, progressCalls.get());
+    // the results keep the order the hosts were given in
+    for (int i = 0; i < HOST_COUNT; i++) {
+      assertEquals("host" + i, result.getHostResults().get(i).result);
+    }
+  }
+
+  @Test
+  public void hostWhichStopsRespondingTimesOutWithoutHoldingUpTheOthers() throws InterruptedException {
+    final CountDownLatch interrupted = new CountDownLatch(1);
+
+    AzureDockerBulkResult<String> result = AzureDockerBulkOps.execute(createHosts(4), dockerHost -> {
+      if (dockerHost.name.equals("host1")) {
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+          throw e;
+        }
+      }
+      return dockerHost.name;
+    }, 4, 200, null);
+
+    assertFalse(result.isSuccess());
+    assertEquals(3, result.getHostResults(AzureDockerBulkResult.Status.SUCCEEDED).size());
+    List<AzureDockerBulkResult.HostResult<String>> timedOut = result.getHostResults(AzureDockerBulkResult.Status.TIMED_OUT);
+    assertEquals(1, timedOut.size());
+    assertEquals("host1", timedOut.get(0).dockerHost.name);
+    assertTrue(result.getDurationMs() < 10000);
+    // the abandoned operation is interrupted instead of being left running
+    assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void failingHostIsReportedWithoutStoppingTheOthers() {
+    AzureDockerBulkResult<String> result = AzureDockerBulkOps.execute(createHosts(HOST_COUNT), dockerHost -> {
+      if (dockerHost.name.equals("host5")) {
+        throw new IllegalStateException("daemon is down");
+      }
+      return dockerHost.name;
+    }, null);
+
+    assertEquals(HOST_COUNT - 1, result.getHostResults(AzureDockerBulkResult.Status.SUCCEEDED).size());
+    AzureDockerBulkResult.HostResult<String> failed = result.getHostResults().get(5);
+    assertEquals(AzureDockerBulkResult.Status.FAILED, failed.status);
+    assertEquals("daemon is down", failed.error.getMessage());
+  }
+
+  private static List<DockerHost> createHosts(int count) {
+    List<DockerHost> dockerHosts = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      DockerHost dockerHost = new DockerHost();
+      dockerHost.name = "host" + i;
+      dockerHosts.add(dockerHost);
+    }
+
+    return dockerHosts;
+  }
+}
@@ -0,0 +1,174 @@
+package com.microsoft.azure.docker.ops;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Computes deltas between in-memory artifacts and rebuilds the new artifact from the old one the way the host's rebuild
+ * script does.
+ */
+public class AzureDockerDeltaUploadOpsTest {
+  private static final int BLOCK_SIZE = 2048;
+  private static final int BLOCK_COUNT = 16;
+
+  @Test
+  public void signatureRoundTrip() throws IOException {
+    byte[] old = randomBytes(BLOCK_COUNT * BLOCK_SIZE + 100, 1);
+
+    AzureDockerDeltaUploadOps.Signature signature = signatureOf(old);
+
+    // the trailing partial block has no entry; it is always sent as new bytes
+    assertEquals(BLOCK_SIZE, signature.blockSize);
+    assertEquals(BLOCK_COUNT, signature.weakChecksums.length);
+    assertEquals(BLOCK_COUNT, signature.strongChecksums.length);
+    assertEquals(16, signature.strongChecksums[0].length);
+  }
+
+  @Test(expected = IOException.class)
+  public void unknownSignatureIsRejected() throws IOException {
+    AzureDockerDeltaUploadOps.Signature.parse("rsync 3\n2048 4096\n");
+  }
+
+  @Test
+  public void unchangedArtifactCopiesEveryBlock() throws IOException {
+    byte[] old = randomBytes(BLOCK_COUNT * BLOCK_SIZE, 2);
+
+    AzureDockerDeltaUploadOps.Delta delta = computeDelta(old, old);
+
+    assertNotNull(delta);
+    assertEquals(0, delta.literalLength);
+    assertEquals(1, delta.operations.size());
+    assertArrayEquals(new long[]{0, 0, BLOCK_COUNT}, delta.operations.get(0));
+    assertArrayEquals(old, rebuild(old, old, delta));
+  }
+
+  @Test
+  public void trailingPartialBlockIsSentAsNewBytes() throws IOException {
+    byte[] old = randomBytes(BLOCK_COUNT * BLOCK_SIZE + 100, 3);
+
+    AzureDockerDeltaUploadOps.Delta delta = computeDelta(old, old);
+
+    assertNotNull(delta);
+    assertEquals(100, delta.literalLength);
+    assertEquals(2, delta.operations.size());
+    assertArrayEquals(new long[]{0, 0, BLOCK_COUNT}, delta.operations.get(0));
+    assertArrayEquals(old, rebuild(old, old, delta));
+  }
+
+  @Test
+  public void insertedBytesAreTheOnlyNewBytes() throws IOException {
+    byte[] old = randomBytes(BLOCK_COUNT * BLOCK_SIZE, 4);
+    byte[] inserted = randomBytes(300, 5);
+    int at = 5 * BLOCK_SIZE + 700;
+    byte[] changed = concat(Arrays.copyOfRange(old, 0, at), inserted, Arrays.copyOfRange(old, at, old.length));
+
+    AzureDockerDeltaUploadOps.Delta delta = computeDelta(old, changed);
+
+    // the block the bytes went into cannot be matched any more, the blocks after it are found at their new offset
+    assertNotNull(delta);
+    assertEquals(BLOCK_SIZE + inserted.length, delta.literalLength);
+    assertArrayEquals(changed, rebuild(old, changed, delta));
+  }
+
+  @Test
+  public void removedBlocksAreSkipped() throws IOException {
+    byte[] old = randomBytes(BLOCK_COUNT * BLOCK_SIZE, 6);
+    byte[] changed = concat(Arrays.copyOfRange(old, 0, 3 * BLOCK_SIZE), Arrays.copyOfRange(old, 5 * BLOCK_SIZE, old.length));
+
+    AzureDockerDeltaUploadOps.Delta delta = computeDelta(old, changed);
+
+    assertNotNull(delta);
+    assertEquals(0, delta.literalLength);
+    assertEquals(2, delta.operations.size());
+    assertArrayEquals(new long[]{0, 0, 3}, delta.operations.get(0));
+    assertArrayEquals(new long[]{0, 5, BLOCK_COUNT - 5}, delta.operations.get(1));
+    assertArrayEquals(changed, rebuild(old, changed, delta));
+  }
+
+  @Test
+  public void mostlyNewArtifactIsNotWorthADelta() throws IOException {
+    byte[] old = randomBytes(BLOCK_COUNT * BLOCK_SIZE, 7);
+    byte[] changed = randomBytes(BLOCK_COUNT * BLOCK_SIZE, 8);
+
+    AzureDockerDeltaUploadOps.Delta delta = AzureDockerDeltaUploadOps.computeDelta(ByteBuffer.wrap(changed), signatureOf(old),
+        changed.length / 2);
+
+    assertNull(delta);
+  }
+
+  @Test
+  public void artifactIsReadWithoutKeepingItOpen() throws IOException {
+    byte[] bytes = randomBytes(BLOCK_SIZE * 3 + 5, 9);
+    File artifact = File.createTempFile("delta-upload", ".war");
+    try {
+      Files.write(artifact.toPath(), bytes);
+
+      ByteBuffer content = AzureDockerDeltaUploadOps.read(artifact);
+
+      assertEquals(bytes.length, content.limit());
+      assertEquals(ByteBuffer.wrap(bytes), content);
+      // a mapped file could not be deleted on Windows at this point
+      assertTrue(artifact.delete());
+    } finally {
+      artifact.delete();
+    }
+  }
+
+  private static AzureDockerDeltaUploadOps.Signature signatureOf(byte[] old) throws IOException {
+    byte[] signature = AzureDockerDeltaUploadOps.createSignature(ByteBuffer.wrap(old), BLOCK_SIZE);
+    return AzureDockerDeltaUploadOps.Signature.parse(new String(signature, StandardCharsets.UTF_8));
+  }
+
+  private static AzureDockerDeltaUploadOps.Delta computeDelta(byte[] old, byte[] changed) throws IOException {
+    return AzureDockerDeltaUploadOps.computeDelta(ByteBuffer.wrap(changed), signatureOf(old), changed.length);
+  }
+
+  // does what the dd/tail/head script does on the host
+  private static byte[] rebuild(byte[] old, byte[] changed, AzureDockerDeltaUploadOps.Delta delta) {
+    // the delta file holds the new bytes of all the literal operations, in order
+    ByteArrayOutputStream deltaFile = new ByteArrayOutputStream();
+    for (long[] operation : delta.operations) {
+      if (operation[0] == 1) {
+        deltaFile.write(changed, (int) operation[3], (int) operation[2]);
+      }
+    }
+    byte[] literals = deltaFile.toByteArray();
+    assertEquals(delta.literalLength, literals.length);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (long[] operation : delta.operations) {
+      if (operation[0] == 0) {
+        out.write(old, (int) operation[1] * BLOCK_SIZE, (int) operation[2] * BLOCK_SIZE);
+      } else {
+        out.write(literals, (int) operation[1], (int) operation[2]);
+      }
+    }
+
+    return out.toByteArray();
+  }
+
+  private static byte[] randomBytes(int length, long seed) {
+    byte[] bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.write(part, 0, part.length);
+    }
+
+    return out.toByteArray();
+  }
+}
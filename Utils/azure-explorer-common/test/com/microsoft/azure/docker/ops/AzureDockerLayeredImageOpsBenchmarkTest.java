@@ -0,0 +1,169 @@
+package com.microsoft.azure.docker.ops;
+
+import com.microsoft.azure.docker.model.AzureDockerImageInstance;
+import com.microsoft.azure.docker.model.KnownDockerImages;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Rebuilds after a one-class change of a WAR with a large {@code WEB-INF/lib}: the libraries layer must be
+ * byte-identical across builds, so only the application layer is sent and rebuilt. When a local {@code docker} is
+ * available, both the single-artifact image and the layered one are rebuilt from the changed WAR.
+ */
+public class AzureDockerLayeredImageOpsBenchmarkTest {
+  private static final int LIBRARY_COUNT = 40;
+  private static final int LIBRARY_SIZE = 512 * 1024;
+  private static final int CLASS_COUNT = 50;
+
+  private File workDir;
+
+  @Before
+  public void createWorkDir() throws IOException {
+    workDir = Files.createTempDirectory("layered-benchmark").toFile();
+  }
+
+  @After
+  public void deleteWorkDir() {
+    deleteRecursively(workDir);
+  }
+
+  @Test
+  public void rebuildAfterClassChangeSendsOnlyAppLayer() throws Exception {
+    File war = new File(workDir, "app.war");
+    writeWar(war, 1);
+    AzureDockerLayeredImageOps.Layers first = AzureDockerLayeredImageOps.createLayers(newImageInstance(war));
+    assertNotNull(first);
+    byte[] firstLibs = Files.readAllBytes(first.libsLayer.toPath());
+    byte[] firstApp = Files.readAllBytes(first.appLayer.toPath());
+    first.delete();
+
+    writeWar(war, 2);
+    AzureDockerLayeredImageOps.Layers second = AzureDockerLayeredImageOps.createLayers(newImageInstance(war));
+    assertNotNull(second);
+    try {
+      assertArrayEquals("libraries layer changed", firstLibs, Files.readAllBytes(second.libsLayer.toPath()));
+      assertFalse("application layer did not change", Arrays.equals(firstApp, Files.readAllBytes(second.appLayer.toPath())));
+
+      long appBytes = second.appLayer.length();
+      assertTrue("app layer " + appBytes + " not small against artifact " + war.length(), appBytes * 20 < war.length());
+      assertTrue(second.dockerfileContent.contains("ADD app" + AzureDockerLayeredImageOps.LIBS_LAYER_SUFFIX + " "));
+      assertTrue(second.dockerfileContent.contains("ADD app" + AzureDockerLayeredImageOps.APP_LAYER_SUFFIX + " "));
+    } finally {
+      second.delete();
+    }
+  }
+
+  @Test
+  public void dockerRebuildTime() throws Exception {
+    assumeTrue("needs a local docker", run(workDir, "docker", "version") == 0);
+
+    File war = new File(workDir, "app.war");
+    writeWar(war, 1);
+    File single = new File(workDir, "single");
+    File layered = new File(workDir, "layered");
+    prepareContexts(war, single, layered);
+    assertEquals(0, run(single, "docker", "build", "-q", "-t", "azuredocker-benchmark-single", "."));
+    assertEquals(0, run(layered, "docker", "build", "-q", "-t", "azuredocker-benchmark-layered", "."));
+
+    writeWar(war, 2);
+    prepareContexts(war, single, layered);
+    assertEquals(0, run(single, "docker", "build", "-q", "-t", "azuredocker-benchmark-single", "."));
+    assertEquals(0, run(layered, "docker", "build", "-q", "-t", "azuredocker-benchmark-layered", "."));
+
+    run(workDir, "docker", "rmi", "-f", "azuredocker-benchmark-single", "azuredocker-benchmark-layered");
+  }
+
+  private AzureDockerImageInstance newImageInstance(File war) {
+    AzureDockerImageInstance imageInstance = new AzureDockerImageInstance();
+    imageInstance.predefinedDockerfile = KnownDockerImages.TOMCAT8.name();
+    imageInstance.artifactPath = war.getPath();
+    imageInstance.dockerfileContent = KnownDockerImages.TOMCAT8.getDockerfileContent()
+        .replace(KnownDockerImages.DOCKER_ARTIFACT_FILENAME, war.getName());
+    return imageInstance;
+  }
+
+  private void prepareContexts(File war, File single, File layered) throws IOException {
+    deleteRecursively(single);
+    deleteRecursively(layered);
+    single.mkdirs();
+    layered.mkdirs();
+
+    // "scratch" keeps the comparison to the artifact steps, without pulling the Tomcat image
+    Files.copy(war.toPath(), new File(single, war.getName()).toPath());
+    Files.write(new File(single, "Dockerfile").toPath(),
+        ("FROM scratch\nADD " + war.getName() + " /webapps/\n").getBytes(StandardCharsets.UTF_8));
+
+    AzureDockerLayeredImageOps.Layers layers = AzureDockerLayeredImageOps.createLayers(newImageInstance(war));
+    assertNotNull(layers);
+    try {
+      Files.copy(layers.libsLayer.toPath(), new File(layered, layers.libsLayer.getName()).toPath());
+      Files.copy(layers.appLayer.toPath(), new File(layered, layers.appLayer.getName()).toPath());
+      Files.write(new File(layered, "Dockerfile").toPath(), String.format("FROM scratch\nADD %s /webapps/\nADD %s /webapps/\n",
+          layers.libsLayer.getName(), layers.appLayer.getName()).getBytes(StandardCharsets.UTF_8));
+    } finally {
+      layers.delete();
+    }
+  }
+
+  private static void writeWar(File war, int version) throws IOException {
+    Random random = new Random(42);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+      // random content does not compress, like the class files inside real library jars
+      byte[] library = new byte[LIBRARY_SIZE];
+      for (int i = 0; i < LIBRARY_COUNT; i++) {
+        random.nextBytes(library);
+        out.putNextEntry(new ZipEntry("WEB-INF/lib/library-" + i + ".jar"));
+        out.write(library);
+        out.closeEntry();
+      }
+
+      byte[] clazz = new byte[2048];
+      for (int i = 0; i < CLASS_COUNT; i++) {
+        random.nextBytes(clazz);
+        if (i == 0) {
+          clazz[0] = (byte) version;
+        }
+        out.putNextEntry(new ZipEntry("WEB-INF/classes/com/example/Class" + i + ".class"));
+        out.write(clazz);
+        out.closeEntry();
+      }
+      out.putNextEntry(new ZipEntry("index.jsp"));
+      out.write("<html><body>benchmark</body></html>".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+  }
+
+  private static int run(File dir, String... command) throws InterruptedException {
+    try {
+      Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+      return process.waitFor();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,318 @@
+package com.microsoft.azure.docker.ops;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.microsoft.azure.docker.model.AzureDockerCertVault;
+import com.microsoft.azure.docker.model.AzureDockerException;
+import com.microsoft.azure.docker.model.AzureDockerVM;
+import com.microsoft.azure.docker.model.DockerContainer;
+import com.microsoft.azure.docker.model.DockerHost;
+import com.microsoft.azure.docker.model.DockerImage;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import okhttp3.Call;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the Remote API client against a stub daemon which, like the hosts set up by the toolkit, only accepts
+ * clients presenting a certificate signed by the host's CA. The certificates are made with openssl, the same way
+ * the host setup scripts make them, and the test is skipped where openssl is missing.
+ */
+public class AzureDockerRemoteApiOpsTest {
+  private static final String IMAGES = "[" +
+      "{\"Id\":\"sha256:0123456789abcdef0123\",\"RepoTags\":[\"registry:5000/app:1.0\",\"nginx:latest\"],\"Size\":123456789}," +
+      "{\"Id\":\"sha256:fedcba9876543210fedc\",\"RepoTags\":[\"<none>:<none>\"],\"Size\":10}]";
+  private static final String RUNNING = "{\"Id\":\"c1\",\"Names\":[\"/web\"],\"Image\":\"nginx\",\"Command\":\"nginx\"," +
+      "\"State\":\"running\",\"Status\":\"Up 2 minutes\",\"SizeRw\":1500,\"SizeRootFs\":2000000," +
+      "\"Ports\":[{\"PrivatePort\":443,\"Type\":\"tcp\"},{\"PrivatePort\":80,\"PublicPort\":8080,\"Type\":\"tcp\"}]}";
+  private static final String STOPPED = "{\"Id\":\"c2\",\"Names\":[\"/db\"],\"Image\":\"registry:5000/app:1.0\"," +
+      "\"State\":\"exited\",\"Status\":\"Exited (0) 1 hour ago\",\"SizeRw\":0,\"SizeRootFs\":0,\"Ports\":[]}";
+  private static final String STOPPED_DETAILS = "{\"HostConfig\":{\"PortBindings\":{\"5432/tcp\":[{\"HostPort\":\"15432\"}]}}}";
+
+  private static File certDir;
+  private static SSLContext serverContext;
+
+  private HttpsServer server;
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+  private DockerHost dockerHost;
+  private volatile boolean isFailing;
+
+  @BeforeClass
+  public static void createCertificates() throws Exception {
+    certDir = Files.createTempDirectory("docker-tls").toFile();
+    assumeTrue("needs openssl", openssl("version"));
+
+    assertTrue(openssl("genrsa", "-out", "ca-key.pem", "2048"));
+    assertTrue(openssl("req", "-new", "-x509", "-days", "1", "-key", "ca-key.pem", "-subj", "/CN=test-ca", "-out", "ca.pem"));
+
+    assertTrue(openssl("genrsa", "-out", "server-key.pem", "2048"));
+    assertTrue(openssl("req", "-new", "-key", "server-key.pem", "-subj", "/CN=localhost", "-out", "server.csr"));
+    Files.write(new File(certDir, "server.cnf").toPath(), "subjectAltName=IP:127.0.0.1,DNS:localhost\n".getBytes(StandardCharsets.US_ASCII));
+    assertTrue(openssl("x509", "-req", "-days", "1", "-in", "server.csr", "-CA", "ca.pem", "-CAkey", "ca-key.pem",
+        "-CAcreateserial", "-extfile", "server.cnf", "-out", "server.pem"));
+    assertTrue(openssl("pkcs12", "-export", "-in", "server.pem", "-inkey", "server-key.pem", "-passout", "pass:secret",
+        "-out", "server.p12"));
+
+    // the hosts write "RSA PRIVATE KEY" client keys; openssl 3 needs to be asked for that format
+    if (!openssl("genrsa", "-traditional", "-out", "key.pem", "2048")) {
+      assertTrue(openssl("genrsa", "-out", "key.pem", "2048"));
+    }
+    assertTrue(openssl("req", "-new", "-key", "key.pem", "-subj", "/CN=client", "-out", "client.csr"));
+    Files.write(new File(certDir, "client.cnf").toPath(), "extendedKeyUsage=clientAuth\n".getBytes(StandardCharsets.US_ASCII));
+    assertTrue(openssl("x509", "-req", "-days", "1", "-in", "client.csr", "-CA", "ca.pem", "-CAkey", "ca-key.pem",
+        "-CAcreateserial", "-extfile", "client.cnf", "-out", "cert.pem"));
+    assertTrue(read("key.pem").contains("BEGIN RSA PRIVATE KEY"));
+    // a self-signed client certificate the daemon does not know
+    assertTrue(openssl("genrsa", "-out", "other-key.pem", "2048"));
+    assertTrue(openssl("req", "-new", "-x509", "-days", "1", "-key", "other-key.pem", "-subj", "/CN=other", "-out", "other.pem"));
+
+    KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    try (InputStream in = new FileInputStream(new File(certDir, "server.p12"))) {
+      keyStore.load(in, "secret".toCharArray());
+    }
+    KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagerFactory.init(keyStore, "secret".toCharArray());
+
+    KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    trustStore.load(null, null);
+    try (InputStream in = new FileInputStream(new File(certDir, "ca.pem"))) {
+      Certificate ca = CertificateFactory.getInstance("X.509").generateCertificate(in);
+      trustStore.setCertificateEntry("ca", ca);
+    }
+    TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagerFactory.init(trustStore);
+
+    serverContext = SSLContext.getInstance("TLS");
+    serverContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+  }
+
+  @AfterClass
+  public static void deleteCertificates() {
+    File[] files = certDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    certDir.delete();
+  }
+
+  @Before
+  public void startDaemon() throws Exception {
+    server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setHttpsConfigurator(new HttpsConfigurator(serverContext) {
+      @Override
+      public void configure(HttpsParameters params) {
+        SSLParameters sslParameters = getSSLContext().getDefaultSSLParameters();
+        sslParameters.setNeedClientAuth(true);
+        params.setSSLParameters(sslParameters);
+      }
+    });
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String request = exchange.getRequestURI().toString();
+        requests.add(request);
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+
+        if (isFailing) {
+          respond(exchange, 500, "{\"message\":\"boom\"}");
+        } else if (request.equals("/images/json")) {
+          respond(exchange, 200, IMAGES);
+        } else if (request.equals("/containers/json?all=1&size=1")) {
+          respond(exchange, 200, "[" + RUNNING + "," + STOPPED + "]");
+        } else if (request.startsWith("/containers/json?all=1&size=1&filters=")) {
+          respond(exchange, 200, exchange.getRequestURI().getQuery().contains("\"c1\"") ? "[" + RUNNING + "]" : "[]");
+        } else if (request.equals("/containers/c2/json")) {
+          respond(exchange, 200, STOPPED_DETAILS);
+        } else if (request.startsWith("/events")) {
+          streamEvents(exchange);
+        } else {
+          respond(exchange, 404, "{\"message\":\"page not found\"}");
+        }
+      }
+    });
+    server.start();
+
+    dockerHost = new DockerHost();
+    dockerHost.apiUrl = "tcp://127.0.0.1";
+    dockerHost.port = String.valueOf(server.getAddress().getPort());
+    dockerHost.isTLSSecured = true;
+    dockerHost.hostVM = new AzureDockerVM();
+    dockerHost.hostVM.dnsName = "myhost.westus.cloudapp.azure.com";
+    dockerHost.certVault = new AzureDockerCertVault();
+    dockerHost.certVault.tlsCACert = read("ca.pem");
+    dockerHost.certVault.tlsClientCert = read("cert.pem");
+    dockerHost.certVault.tlsClientKey = read("key.pem");
+  }
+
+  @After
+  public void stopDaemon() {
+    AzureDockerRemoteApiOps.invalidate(dockerHost);
+    server.stop(0);
+  }
+
+  @Test
+  public void imagesAreListedByNameAndTag() {
+    assertTrue(AzureDockerRemoteApiOps.isAvailable(dockerHost));
+
+    Map<String, DockerImage> images = AzureDockerRemoteApiOps.getImages(dockerHost);
+
+    assertEquals(2, images.size());
+    DockerImage app = images.get("registry:5000/app:1.0");
+    assertEquals("registry:5000/app", app.name);
+    assertEquals("1.0", app.tag);
+    assertEquals("0123456789ab", app.id);
+    assertEquals("123MB", app.size);
+    DockerImage nginx = images.get("nginx");
+    assertEquals("", nginx.tag);
+    assertEquals("tcp://127.0.0.1", nginx.dockerHostApiUrl);
+  }
+
+  @Test
+  public void containersGetTheirPublishedOrBoundPorts() {
+    Map<String, DockerContainer> containers = AzureDockerRemoteApiOps.getContainers(dockerHost);
+
+    DockerContainer web = containers.get("web");
+    assertTrue(web.isRunning);
+    assertEquals("8080:80/tcp", web.ports);
+    assertEquals("http://myhost.westus.cloudapp.azure.com:8080/", web.url);
+    assertEquals("1.5kB (virtual 2MB)", web.size);
+
+    DockerContainer db = containers.get("db");
+    assertFalse(db.isRunning);
+    assertEquals("15432:5432/tcp", db.ports);
+    assertTrue(requests.contains("/containers/c2/json"));
+  }
+
+  @Test
+  public void singleContainerIsReadByFilter() {
+    assertEquals("web", AzureDockerRemoteApiOps.getContainer(dockerHost, "c1").name);
+    assertNull(AzureDockerRemoteApiOps.getContainer(dockerHost, "gone"));
+  }
+
+  @Test
+  public void listingsReuseOneConnection() {
+    for (int i = 0; i < 5; i++) {
+      AzureDockerRemoteApiOps.getImages(dockerHost);
+      AzureDockerRemoteApiOps.getContainers(dockerHost);
+    }
+
+    assertEquals(15, requests.size());
+    assertEquals(1, clientPorts.size());
+  }
+
+  @Test
+  public void clientWithoutTheHostsCertificatesIsRejected() throws Exception {
+    dockerHost.certVault.tlsClientCert = read("other.pem");
+    dockerHost.certVault.tlsClientKey = read("other-key.pem");
+
+    try {
+      AzureDockerRemoteApiOps.getImages(dockerHost);
+      fail("the daemon accepted a client certificate of another CA");
+    } catch (AzureDockerException expected) {
+      assertTrue(requests.isEmpty());
+    }
+  }
+
+  @Test
+  public void failedRequestRaisesDockerException() {
+    isFailing = true;
+
+    try {
+      AzureDockerRemoteApiOps.getImages(dockerHost);
+      fail();
+    } catch (AzureDockerException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("/images/json failed: 500"));
+    }
+  }
+
+  @Test
+  public void eventsAreStreamedFromTheGivenTime() throws Exception {
+    final List<String> actions = new ArrayList<>();
+    Call call = AzureDockerRemoteApiOps.newEventsCall(dockerHost, 1500000000);
+
+    AzureDockerRemoteApiOps.readEvents(call, new Consumer<JsonNode>() {
+      @Override
+      public void accept(JsonNode event) {
+        actions.add(event.path("Action").asText() + " " + event.path("Actor").path("ID").asText());
+      }
+    });
+
+    assertTrue(requests.contains("/events?since=1500000000"));
+    assertEquals(Arrays.asList("create c1", "start c1", "die c1"), actions);
+  }
+
+  private static void streamEvents(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, 0);
+    try (OutputStream out = exchange.getResponseBody()) {
+      for (String action : new String[] {"create", "start", "die"}) {
+        out.write(String.format("{\"Type\":\"container\",\"Action\":\"%s\",\"Actor\":{\"ID\":\"c1\"},\"time\":1500000001}\n", action)
+            .getBytes(StandardCharsets.UTF_8));
+        out.flush();
+      }
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static boolean openssl(String... args) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("openssl");
+    command.addAll(Arrays.asList(args));
+    try {
+      Process process = new ProcessBuilder(command).directory(certDir).redirectErrorStream(true)
+          .redirectOutput(new File(certDir, "openssl.log")).start();
+      return process.waitFor(60, TimeUnit.SECONDS) && process.exitValue() == 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static String read(String fileName) throws IOException {
+    return new String(Files.readAllBytes(new File(certDir, fileName).toPath()), StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,139 @@
+package com.microsoft.azure.docker.ops;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.AzureDockerCommandResult;
+import com.microsoft.azure.docker.model.AzureDockerException;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.CommandFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.AcceptAllPasswordAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs commands through an embedded SSH server which executes them with the local shell.
+ */
+public class AzureDockerSSHOpsTest {
+  private SshServer server;
+  private Session session;
+
+  @BeforeClass
+  public static void checkShell() {
+    assumeTrue("needs /bin/sh", new File("/bin/sh").canExecute());
+  }
+
+  @Before
+  public void connect() throws Exception {
+    server = SshServer.setUpDefaultServer();
+    server.setHost("127.0.0.1");
+    server.setPort(0);
+    server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+    server.setPasswordAuthenticator(AcceptAllPasswordAuthenticator.INSTANCE);
+    server.setCommandFactory(new CommandFactory() {
+      @Override
+      public Command createCommand(String command) {
+        return new ProcessShellFactory("/bin/sh", "-c", command).create();
+      }
+    });
+    server.start();
+
+    session = new JSch().getSession("docker", "127.0.0.1", server.getPort());
+    session.setPassword("secret");
+    session.setConfig("StrictHostKeyChecking", "no");
+    session.connect();
+  }
+
+  @After
+  public void disconnect() throws Exception {
+    session.disconnect();
+    server.stop(true);
+  }
+
+  @Test
+  public void outputAndExitStatusAreReturned() {
+    AzureDockerCommandResult result = AzureDockerSSHOps.execute("printf 'a\\r\\nb'; echo oops >&2; exit 3", session);
+
+    assertEquals(3, result.exitStatus);
+    assertEquals("a\r\nb", result.output);
+    assertEquals("oops\n", result.error);
+  }
+
+  @Test
+  public void linesArriveWhileTheCommandRuns() throws Exception {
+    final CountDownLatch firstLine = new CountDownLatch(1);
+    final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    final AtomicReference<AzureDockerCommandResult> result = new AtomicReference<>();
+
+    Thread runner = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        result.set(AzureDockerSSHOps.execute("echo one; sleep 3; printf 'two\\r\\nthree'", session, new Consumer<String>() {
+          @Override
+          public void accept(String line) {
+            lines.add(line);
+            firstLine.countDown();
+          }
+        }));
+      }
+    });
+    runner.start();
+
+    assertTrue("the first line waited for the command to end", firstLine.await(2, TimeUnit.SECONDS));
+    runner.join(10000);
+
+    assertEquals(0, result.get().exitStatus);
+    assertEquals(Arrays.asList("one", "two", "three"), lines);
+    // streamed lines are not kept a second time in the result
+    assertEquals("", result.get().output);
+  }
+
+  @Test
+  public void interruptEndsAFollowingCommand() throws Exception {
+    final CountDownLatch lines = new CountDownLatch(3);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Thread runner = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          AzureDockerSSHOps.execute("while true; do echo line; sleep 0.1; done", session, new Consumer<String>() {
+            @Override
+            public void accept(String line) {
+              lines.countDown();
+            }
+          });
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    });
+    runner.start();
+
+    assertTrue(lines.await(5, TimeUnit.SECONDS));
+    runner.interrupt();
+    runner.join(5000);
+
+    assertFalse(runner.isAlive());
+    assertTrue(failure.get() instanceof AzureDockerException);
+    // the session stays usable for the next command
+    assertEquals("next\n", AzureDockerSSHOps.execute("echo next", session).output);
+  }
+}
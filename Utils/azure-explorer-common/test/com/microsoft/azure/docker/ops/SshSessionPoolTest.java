@@ -0,0 +1,216 @@
+package com.microsoft.azure.docker.ops;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.microsoft.azure.docker.model.AzureDockerCertVault;
+import com.microsoft.azure.docker.model.AzureDockerVM;
+import com.microsoft.azure.docker.model.DockerHost;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the session pool against an embedded SSH server on a free local port.
+ */
+public class SshSessionPoolTest {
+  private static final String USER = "docker";
+  private static final String PASSWORD = "secret";
+
+  private SshServer server;
+  private final AtomicInteger serverSessions = new AtomicInteger();
+  private final AtomicInteger authentications = new AtomicInteger();
+  private TestPool pool;
+
+  private class TestPool extends SshSessionPool {
+    TestPool(int maxChannelsPerSession, long idleTimeoutMs) {
+      super(maxChannelsPerSession, idleTimeoutMs);
+    }
+
+    @Override
+    protected Session createSession(JSch jsch, DockerHost dockerHost) throws JSchException {
+      return jsch.getSession(dockerHost.certVault.vmUsername, dockerHost.hostVM.dnsName, server.getPort());
+    }
+  }
+
+  @Before
+  public void startServer() throws Exception {
+    server = SshServer.setUpDefaultServer();
+    server.setHost("127.0.0.1");
+    server.setPort(0);
+    server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+    server.setPasswordAuthenticator(new PasswordAuthenticator() {
+      @Override
+      public boolean authenticate(String username, String password, ServerSession session) {
+        authentications.incrementAndGet();
+        return USER.equals(username) && password.startsWith(PASSWORD);
+      }
+    });
+    server.addSessionListener(new SessionListener() {
+      @Override
+      public void sessionCreated(org.apache.sshd.common.session.Session session) {
+        serverSessions.incrementAndGet();
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void stopServer() throws Exception {
+    if (pool != null) {
+      pool.closeAll();
+    }
+    server.stop(true);
+  }
+
+  @Test
+  public void sameLoginSharesOneHandshake() {
+    pool = new TestPool(SshSessionPool.MAX_CHANNELS_PER_SESSION, SshSessionPool.IDLE_TIMEOUT_MS);
+    DockerHost host = createHost(PASSWORD);
+
+    Session first = pool.getSession(host);
+    for (int i = 0; i < 20; i++) {
+      assertSame(first, pool.getSession(createHost(PASSWORD)));
+    }
+
+    assertTrue(first.isConnected());
+    assertEquals(1, pool.getHandshakeCount());
+    assertEquals(1, serverSessions.get());
+    assertEquals(1, authentications.get());
+    assertEquals(1, pool.getSessionCount());
+  }
+
+  @Test
+  public void changedPasswordOpensNewSession() {
+    pool = new TestPool(SshSessionPool.MAX_CHANNELS_PER_SESSION, SshSessionPool.IDLE_TIMEOUT_MS);
+
+    Session first = pool.getSession(createHost(PASSWORD));
+    Session second = pool.getSession(createHost(PASSWORD + "2"));
+
+    assertNotSame(first, second);
+    assertEquals(2, pool.getHandshakeCount());
+    assertEquals(2, pool.getSessionCount());
+  }
+
+  @Test
+  public void droppedSessionIsReconnected() throws Exception {
+    pool = new TestPool(SshSessionPool.MAX_CHANNELS_PER_SESSION, SshSessionPool.IDLE_TIMEOUT_MS);
+    DockerHost host = createHost(PASSWORD);
+    Session first = pool.getSession(host);
+
+    for (org.apache.sshd.common.session.Session session : server.getActiveSessions()) {
+      session.close(true);
+    }
+    waitFor(new Condition() {
+      @Override
+      public boolean isMet() {
+        return !first.isConnected();
+      }
+    });
+
+    Session second = pool.getSession(host);
+
+    assertNotSame(first, second);
+    assertTrue(second.isConnected());
+    assertEquals(2, pool.getHandshakeCount());
+    assertEquals(1, pool.getReconnectCount());
+  }
+
+  @Test
+  public void channelsAreCappedPerSession() throws Exception {
+    pool = new TestPool(2, SshSessionPool.IDLE_TIMEOUT_MS);
+    final Session session = pool.getSession(createHost(PASSWORD));
+    Channel first = pool.openChannel(session, "exec");
+    pool.openChannel(session, "exec");
+
+    final AtomicReference<Channel> third = new AtomicReference<>();
+    final CountDownLatch opened = new CountDownLatch(1);
+    Thread waiter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          third.set(pool.openChannel(session, "exec"));
+          opened.countDown();
+        } catch (JSchException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    waiter.start();
+
+    assertFalse(opened.await(300, TimeUnit.MILLISECONDS));
+
+    pool.closeChannel(first);
+
+    assertTrue(opened.await(5, TimeUnit.SECONDS));
+    assertNotNull(third.get());
+    assertEquals(3, pool.getChannelOpenCount());
+  }
+
+  @Test
+  public void idleSessionIsEvicted() throws Exception {
+    pool = new TestPool(SshSessionPool.MAX_CHANNELS_PER_SESSION, 100);
+    final Session session = pool.getSession(createHost(PASSWORD));
+
+    waitFor(new Condition() {
+      @Override
+      public boolean isMet() {
+        return pool.getIdleEvictionCount() == 1;
+      }
+    });
+
+    assertEquals(0, pool.getSessionCount());
+    assertFalse(session.isConnected());
+    assertNotSame(session, pool.getSession(createHost(PASSWORD)));
+  }
+
+  @Test
+  public void sessionWithOpenChannelIsNotEvicted() throws Exception {
+    pool = new TestPool(SshSessionPool.MAX_CHANNELS_PER_SESSION, 100);
+    Session session = pool.getSession(createHost(PASSWORD));
+    Channel channel = pool.openChannel(session, "exec");
+
+    Thread.sleep(2500);
+
+    assertEquals(0, pool.getIdleEvictionCount());
+    assertTrue(session.isConnected());
+
+    pool.closeChannel(channel);
+  }
+
+  private interface Condition {
+    boolean isMet();
+  }
+
+  private static void waitFor(Condition condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+
+    while (!condition.isMet()) {
+      assertTrue("timed out", System.currentTimeMillis() < deadline);
+      Thread.sleep(50);
+    }
+  }
+
+  private static DockerHost createHost(String password) {
+    DockerHost host = new DockerHost();
+    host.hostVM = new AzureDockerVM();
+    host.hostVM.dnsName = "127.0.0.1";
+    host.certVault = new AzureDockerCertVault();
+    host.certVault.vmUsername = USER;
+    host.certVault.vmPwd = password;
+    return host;
+  }
+}
@@ -0,0 +1,182 @@
+package com.microsoft.tooling.msservices.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the ordering, error modes and concurrency limit of parallel executions.
+ */
+public class ParallelExecutorTest {
+    private static final int ELEMENT_COUNT = 40;
+
+    @Test
+    public void testResultsAreInElementOrder() throws Exception {
+        // the first elements take the longest, so they complete last
+        ParallelExecutor.Result<String> result = ParallelExecutor.forEach(range(ELEMENT_COUNT),
+                new ParallelExecutor.Task<Integer, String>() {
+                    @Override
+                    public String call(Integer element) throws Exception {
+                        Thread.sleep(ELEMENT_COUNT - element);
+                        return "element " + element;
+                    }
+                }).withMaxConcurrency(8).execute();
+
+        assertFalse(result.hasFailures());
+        assertEquals(ELEMENT_COUNT, result.getResults().size());
+        for (int i = 0; i < ELEMENT_COUNT; i++) {
+            assertEquals("element " + i, result.getResults().get(i));
+        }
+    }
+
+    @Test
+    public void testNoElementsReturnsAnEmptyResult() throws Exception {
+        ParallelExecutor.Result<String> result = ParallelExecutor.forEach(Collections.<Integer>emptyList(),
+                new ParallelExecutor.Task<Integer, String>() {
+                    @Override
+                    public String call(Integer element) {
+                        throw new AssertionError("no element to run");
+                    }
+                }).execute();
+
+        assertTrue(result.getResults().isEmpty());
+        assertFalse(result.hasFailures());
+    }
+
+    @Test
+    public void testCollectAllRunsEveryElement() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+
+        ParallelExecutor.Result<Integer> result = ParallelExecutor.forEach(range(ELEMENT_COUNT),
+                new ParallelExecutor.Task<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer element) {
+                        calls.incrementAndGet();
+                        if (element % 10 == 3) {
+                            throw new IllegalStateException("failed " + element);
+                        }
+                        return element;
+                    }
+                }).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+
+        assertEquals(ELEMENT_COUNT, calls.get());
+        SortedMap<Integer, Throwable> failures = result.getFailures();
+        assertEquals(Arrays.asList(3, 13, 23, 33), new ArrayList<Integer>(failures.keySet()));
+        assertEquals("failed 3", result.getFirstFailure().getMessage());
+        assertNull(result.getResults().get(13));
+        assertEquals(Integer.valueOf(14), result.getResults().get(14));
+    }
+
+    @Test
+    public void testFailFastStopsTheOtherElements() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        try {
+            ParallelExecutor.forEach(range(ELEMENT_COUNT), new ParallelExecutor.Task<Integer, Integer>() {
+                @Override
+                public Integer call(Integer element) throws Exception {
+                    calls.incrementAndGet();
+                    if (element == 0) {
+                        Thread.sleep(50);
+                        throw new IllegalStateException("failed " + element);
+                    }
+
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        throw e;
+                    }
+                    return element;
+                }
+            }).withMaxConcurrency(2).execute();
+            fail("The failure should have been rethrown");
+        } catch (ExecutionException e) {
+            assertEquals("failed 0", e.getCause().getMessage());
+        }
+
+        // the running element was interrupted and no other element was started
+        assertTrue(interrupted.await(0, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testMaxConcurrencyLimitsTheRunningElements() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger progress = new AtomicInteger();
+
+        ParallelExecutor.forEach(range(ELEMENT_COUNT), new ParallelExecutor.Task<Integer, Void>() {
+            @Override
+            public Void call(Integer element) throws Exception {
+                int count = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), count));
+                }
+                Thread.sleep(10);
+                running.decrementAndGet();
+                return null;
+            }
+        }).withMaxConcurrency(3).withProgressListener(new ParallelExecutor.ProgressListener() {
+            @Override
+            public void onProgress(int completed, int total) {
+                progress.incrementAndGet();
+            }
+        }).execute();
+
+        assertEquals(3, maxRunning.get());
+        assertEquals(ELEMENT_COUNT, progress.get());
+    }
+
+    @Test
+    public void testTaskMayRunAnExecutionOfItsOwn() throws Exception {
+        ParallelExecutor.Result<Integer> result = ParallelExecutor.forEach(range(4),
+                new ParallelExecutor.Task<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer element) throws Exception {
+                        int sum = 0;
+                        for (Integer value : ParallelExecutor.forEach(range(10), new ParallelExecutor.Task<Integer, Integer>() {
+                            @Override
+                            public Integer call(Integer nested) {
+                                return nested;
+                            }
+                        }).withMaxConcurrency(4).execute().getResults()) {
+                            sum += value;
+                        }
+                        return sum;
+                    }
+                }).execute();
+
+        assertEquals(Arrays.asList(45, 45, 45, 45), result.getResults());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxConcurrencyMustBePositive() {
+        ParallelExecutor.forEach(range(1), new ParallelExecutor.Task<Integer, Void>() {
+            @Override
+            public Void call(Integer element) {
+                return null;
+            }
+        }).withMaxConcurrency(0);
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> elements = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            elements.add(i);
+        }
+
+        return elements;
+    }
+}
@@ -0,0 +1,153 @@
+package com.microsoft.tooling.msservices.helpers.azure.sdk;
+
+import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.tooling.msservices.model.storage.BlobContainer;
+import com.microsoft.tooling.msservices.model.storage.BlobSyncResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the directory sync against the local storage emulator or Azurite on the default blob port, and is skipped
+ * when neither is running.
+ */
+public class BlobDirectorySyncEmulatorTest {
+    private static final String CONNECTION_STRING = "UseDevelopmentStorage=true";
+
+    private CloudBlobContainer cloudContainer;
+    private BlobContainer blobContainer;
+    private File localDirectory;
+
+    @BeforeClass
+    public static void checkEmulator() {
+        boolean listening;
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", 10000), 500);
+            listening = true;
+        } catch (IOException e) {
+            listening = false;
+        }
+
+        assumeTrue("The storage emulator is not listening on port 10000", listening);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        String name = "sync-" + UUID.randomUUID().toString().substring(0, 8);
+        cloudContainer = CloudStorageAccount.parse(CONNECTION_STRING).createCloudBlobClient()
+                .getContainerReference(name);
+        cloudContainer.create();
+        blobContainer = new BlobContainer(name, cloudContainer.getUri().toString(), "", new GregorianCalendar(), "");
+
+        localDirectory = Files.createTempDirectory("blob-sync").toFile();
+        write(new File(localDirectory, "a.txt"), "first");
+        write(new File(localDirectory, "nested/b.txt"), "second");
+        write(new File(localDirectory, "nested/deeper/c.bin"), "third");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (cloudContainer != null) {
+            cloudContainer.deleteIfExists();
+        }
+
+        delete(localDirectory);
+    }
+
+    @Test
+    public void testUploadOnlyCopiesChangedFiles() throws Exception {
+        StorageClientSDKManager manager = StorageClientSDKManager.getManager();
+
+        BlobSyncResult first = manager.uploadDirectory(CONNECTION_STRING, blobContainer, localDirectory, "dir", false,
+                null);
+        assertEquals(Arrays.asList("a.txt", "nested/b.txt", "nested/deeper/c.bin"), sorted(first.getTransferred()));
+        assertTrue(first.getFailed().isEmpty());
+        assertTrue(cloudContainer.getBlockBlobReference("dir/nested/b.txt").exists());
+
+        BlobSyncResult second = manager.uploadDirectory(CONNECTION_STRING, blobContainer, localDirectory, "dir/",
+                false, null);
+        assertTrue(second.getTransferred().isEmpty());
+        assertEquals(3, second.getUnchanged().size());
+
+        write(new File(localDirectory, "nested/b.txt"), "changed");
+        BlobSyncResult dryRun = manager.uploadDirectory(CONNECTION_STRING, blobContainer, localDirectory, "dir",
+                true, null);
+        assertEquals(Arrays.asList("nested/b.txt"), dryRun.getTransferred());
+        assertEquals("second", cloudContainer.getBlockBlobReference("dir/nested/b.txt").downloadText());
+
+        BlobSyncResult third = manager.uploadDirectory(CONNECTION_STRING, blobContainer, localDirectory, "dir",
+                false, null);
+        assertEquals(Arrays.asList("nested/b.txt"), third.getTransferred());
+        assertEquals("changed", cloudContainer.getBlockBlobReference("dir/nested/b.txt").downloadText());
+    }
+
+    @Test
+    public void testDownloadRecreatesTheTree() throws Exception {
+        StorageClientSDKManager manager = StorageClientSDKManager.getManager();
+        manager.uploadDirectory(CONNECTION_STRING, blobContainer, localDirectory, "dir", false, null);
+
+        File target = Files.createTempDirectory("blob-sync-download").toFile();
+
+        try {
+            BlobSyncResult download = manager.downloadDirectory(CONNECTION_STRING, blobContainer, target, "dir",
+                    false, null);
+            assertEquals(3, download.getTransferred().size());
+            assertEquals("third", read(new File(target, "nested/deeper/c.bin")));
+
+            BlobSyncResult again = manager.downloadDirectory(CONNECTION_STRING, blobContainer, target, "dir",
+                    false, null);
+            assertTrue(again.getTransferred().isEmpty());
+            assertEquals(3, again.getUnchanged().size());
+        } finally {
+            delete(target);
+        }
+    }
+
+    private static List<String> sorted(List<String> paths) {
+        String[] array = paths.toArray(new String[paths.size()]);
+        Arrays.sort(array);
+        return Arrays.asList(array);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void delete(File file) {
+        if (file == null) {
+            return;
+        }
+
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,51 @@
+package com.microsoft.tooling.msservices.helpers.azure.sdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks where the directory download would write the blobs, without a storage account.
+ */
+public class BlobSyncLocalPathTest {
+    private File localDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        localDirectory = Files.createTempDirectory("blob-sync-path").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        localDirectory.delete();
+    }
+
+    @Test
+    public void testBlobPathsStayUnderTheDirectory() throws IOException {
+        File root = localDirectory.getCanonicalFile();
+
+        assertEquals(new File(root, "a.txt"), StorageClientSDKManager.getLocalFile(localDirectory, "a.txt"));
+        assertEquals(new File(root, "nested" + File.separator + "b.txt"),
+                StorageClientSDKManager.getLocalFile(localDirectory, "nested/b.txt"));
+        assertEquals(new File(root, "b.txt"), StorageClientSDKManager.getLocalFile(localDirectory, "nested/../b.txt"));
+    }
+
+    @Test
+    public void testBlobPathsLeavingTheDirectoryAreRejected() {
+        for (String path : new String[] {"../escape.txt", "nested/../../escape.txt", "..", "", "nested/.."}) {
+            try {
+                StorageClientSDKManager.getLocalFile(localDirectory, path);
+                fail("The blob " + path + " should be rejected");
+            } catch (IOException expected) {
+            }
+        }
+
+        assertFalse(new File(localDirectory.getParentFile(), "escape.txt").exists());
+    }
+}
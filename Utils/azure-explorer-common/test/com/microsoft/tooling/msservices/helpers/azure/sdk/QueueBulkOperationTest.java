@@ -0,0 +1,118 @@
+package com.microsoft.tooling.msservices.helpers.azure.sdk;
+
+import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.queue.CloudQueue;
+import com.microsoft.azure.storage.queue.CloudQueueMessage;
+import com.microsoft.tooling.msservices.helpers.CallableSingleArg;
+import com.microsoft.tooling.msservices.model.storage.QueueBulkOperationResult;
+import com.microsoft.tooling.msservices.model.storage.QueueMessage;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the bulk queue operations, against the local storage emulator or Azurite on the default queue port when
+ * one of them is running.
+ */
+public class QueueBulkOperationTest {
+    private static final String CONNECTION_STRING = "UseDevelopmentStorage=true";
+    private static final int MESSAGE_COUNT = 40;
+
+    private CloudQueue cloudQueue;
+
+    @After
+    public void tearDown() throws Exception {
+        if (cloudQueue != null) {
+            cloudQueue.deleteIfExists();
+        }
+    }
+
+    @Test
+    public void testPeekCountIsLimited() throws Exception {
+        StorageClientSDKManager manager = StorageClientSDKManager.getManager();
+        CloudQueue queue = CloudStorageAccount.parse(CONNECTION_STRING).createCloudQueueClient()
+                .getQueueReference("never-created");
+
+        for (int maxCount : new int[] {0, StorageClientSDKManager.MAX_QUEUE_PEEK_COUNT + 1}) {
+            try {
+                manager.inspectQueueMessages(queue, maxCount, new CallableSingleArg<Void, QueueMessage>() {
+                    @Override
+                    public Void call(QueueMessage queueMessage) {
+                        return null;
+                    }
+                });
+                fail("Peeking at " + maxCount + " messages should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testInspectLeavesTheMessagesInPlace() throws Exception {
+        createQueue();
+        StorageClientSDKManager manager = StorageClientSDKManager.getManager();
+        final List<QueueMessage> messages = new ArrayList<QueueMessage>();
+
+        QueueBulkOperationResult result = manager.inspectQueueMessages(cloudQueue,
+                StorageClientSDKManager.MAX_QUEUE_PEEK_COUNT, new CallableSingleArg<Void, QueueMessage>() {
+                    @Override
+                    public Void call(QueueMessage queueMessage) {
+                        messages.add(queueMessage);
+                        return null;
+                    }
+                });
+
+        assertEquals(StorageClientSDKManager.MAX_QUEUE_PEEK_COUNT, result.getMessageCount());
+        assertEquals("message 0", messages.get(0).getContent());
+        assertEquals(0, messages.get(0).getDequeueCount());
+
+        cloudQueue.downloadAttributes();
+        assertEquals(MESSAGE_COUNT, cloudQueue.getApproximateMessageCount());
+        assertEquals("message 0", cloudQueue.peekMessage().getMessageContentAsString());
+    }
+
+    @Test
+    public void testExportWithDeletePagesPastOnePeek() throws Exception {
+        createQueue();
+        StorageClientSDKManager manager = StorageClientSDKManager.getManager();
+        StringWriter content = new StringWriter();
+
+        QueueBulkOperationResult result = manager.exportQueueMessages(cloudQueue, MESSAGE_COUNT + 10, true, content);
+
+        assertEquals(MESSAGE_COUNT, result.getMessageCount());
+        assertEquals(MESSAGE_COUNT, content.toString().split("\n").length);
+        assertTrue(content.toString().contains("\"content\":\"message 39\""));
+        assertNull(cloudQueue.peekMessage());
+    }
+
+    private void createQueue() throws Exception {
+        boolean listening;
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", 10001), 500);
+            listening = true;
+        } catch (IOException e) {
+            listening = false;
+        }
+
+        assumeTrue("The storage emulator is not listening on port 10001", listening);
+
+        cloudQueue = CloudStorageAccount.parse(CONNECTION_STRING).createCloudQueueClient()
+                .getQueueReference("bulk-" + UUID.randomUUID().toString().substring(0, 8));
+        cloudQueue.create();
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            cloudQueue.addMessage(new CloudQueueMessage("message " + i));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.microsoft.tooling.msservices.helpers.azure.sdk;
+
+import com.microsoft.tooling.msservices.model.storage.TableEntity;
+import com.microsoft.tooling.msservices.model.storage.TableEntity.Property;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TableEntitySerializerTest {
+    private static TableEntity createEntity(String partitionKey, String rowKey, Map<String, Property> properties) {
+        return new TableEntity(partitionKey, rowKey, "table", "", new GregorianCalendar(), properties);
+    }
+
+    private static List<TableEntity> roundTrip(List<TableEntity> entities, TableEntitySerializer.Format format)
+            throws Exception {
+        StringWriter writer = new StringWriter();
+        TableEntitySerializer.write(entities, writer, format);
+        return TableEntitySerializer.read(new StringReader(writer.toString()), "table", format);
+    }
+
+    private static List<TableEntity> createEntities() {
+        Map<String, Property> first = new HashMap<String, Property>();
+        first.put("name", new Property(""));
+        first.put("count", new Property(3));
+
+        Map<String, Property> second = new HashMap<String, Property>();
+        second.put("name", new Property("a, \"quoted\"\nvalue"));
+
+        return Arrays.asList(createEntity("p1", "r1", first), createEntity("p1", "", second));
+    }
+
+    @Test
+    public void testCsvKeepsEmptyStringsApartFromMissingProperties() throws Exception {
+        List<TableEntity> entities = roundTrip(createEntities(), TableEntitySerializer.Format.CSV);
+
+        assertEquals(2, entities.size());
+        assertEquals("", entities.get(0).getProperties().get("name").getValueAsString());
+        assertEquals(Integer.valueOf(3), entities.get(0).getProperties().get("count").getValueAsInteger());
+
+        assertEquals("", entities.get(1).getRowKey());
+        assertEquals("a, \"quoted\"\nvalue", entities.get(1).getProperties().get("name").getValueAsString());
+        assertFalse(entities.get(1).getProperties().containsKey("count"));
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        List<TableEntity> entities = roundTrip(createEntities(), TableEntitySerializer.Format.JSON);
+
+        assertEquals(2, entities.size());
+        assertEquals("", entities.get(0).getProperties().get("name").getValueAsString());
+        assertFalse(entities.get(1).getProperties().containsKey("count"));
+    }
+
+    @Test
+    public void testCsvEmptyCellMeansMissingProperty() throws Exception {
+        String csv = "PartitionKey,RowKey,name:String,count:Integer\r\np1,r1,,\r\np1,r2,\"\",7\r\n";
+        List<TableEntity> entities = TableEntitySerializer.read(new StringReader(csv), "table",
+                TableEntitySerializer.Format.CSV);
+
+        assertTrue(entities.get(0).getProperties().isEmpty());
+        assertEquals("", entities.get(1).getProperties().get("name").getValueAsString());
+        assertEquals(Integer.valueOf(7), entities.get(1).getProperties().get("count").getValueAsInteger());
+    }
+}
@@ -0,0 +1,78 @@
+package com.microsoft.tooling.msservices.serviceexplorer;
+
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Refreshes a node synchronously and checks how the refreshed children are merged into the current ones.
+ */
+public class RefreshableNodeTest {
+    @Test
+    public void testNewChildrenAreInsertedInRefreshOrder() throws Exception {
+        TestNode node = new TestNode();
+        node.refresh("b", "d");
+        Node b = node.getChildNodes().get(0);
+        Node d = node.getChildNodes().get(1);
+
+        node.refresh("a", "b", "c", "d", "e");
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), getChildIds(node));
+        // the unchanged children keep their node
+        assertSame(b, node.getChildNodes().get(1));
+        assertSame(d, node.getChildNodes().get(3));
+    }
+
+    @Test
+    public void testRemovedChildrenLeaveTheOthersInPlace() throws Exception {
+        TestNode node = new TestNode();
+        node.refresh("a", "b", "c");
+        Node c = node.getChildNodes().get(2);
+
+        node.refresh("b2", "c");
+
+        assertEquals(Arrays.asList("b2", "c"), getChildIds(node));
+        assertSame(c, node.getChildNodes().get(1));
+    }
+
+    private static List<String> getChildIds(Node node) {
+        List<String> ids = new ArrayList<String>();
+        for (Node child : node.getChildNodes()) {
+            ids.add(child.getId());
+        }
+
+        return ids;
+    }
+
+    private static class TestNode extends RefreshableNode {
+        private List<String> childIds = new ArrayList<String>();
+
+        TestNode() {
+            super("test", "Test", null, null, true);
+        }
+
+        void refresh(String... ids) throws Exception {
+            childIds = Arrays.asList(ids);
+            SettableFuture<List<Node>> future = SettableFuture.create();
+            refreshItems(future, false);
+            future.get();
+        }
+
+        @Override
+        protected void refreshItems() {
+            for (String id : childIds) {
+                addChildNode(new Node(id, id, this, null, true));
+            }
+        }
+
+        @Override
+        protected boolean updateChildNode(Node existing, Node refreshed) {
+            return true;
+        }
+    }
+}
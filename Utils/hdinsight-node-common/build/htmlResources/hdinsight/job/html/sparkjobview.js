@@ -89,7 +89,7 @@ $(function () {
             }
         }
         if(sourceType == "intellij") {
-            JobUtils.openSparkUIHistory(id);
+            JobUtils.openSparkUIHistory(projectId, id);
         } else {
             JobUtils.openSparkUIHistory(clusterName, id);
         }
@@ -98,7 +98,7 @@ $(function () {
 
     $("#openYarnUIButton").click(function () {
         if(sourceType == "intellij"){
-            JobUtils.openYarnUIHistory(typeof appId == 'undefined' ? "" : appId.toString());
+            JobUtils.openYarnUIHistory(projectId, typeof appId == 'undefined' ? "" : appId.toString());
         } else {
             JobUtils.openYarnUIHistory(clusterName, typeof appId == 'undefined' ? "" : appId.toString());
         }
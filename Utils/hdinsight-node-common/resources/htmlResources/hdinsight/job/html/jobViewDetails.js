@@ -399,4 +399,33 @@ function generateExecutorDetailsLine(data) {
         html += '<td>' + data[d] + '</td>';
     });
     return html;
-}
\ No newline at end of file
+}
+
+var eventLogSummaryColumn = ["stageId","attemptId","name","numTasks","failedTasks","duration","taskTimeMedian","taskTimeP95","taskTimeMax","taskSkew","gcRatio","shuffleReadBytes","shuffleWriteBytes","diskBytesSpilled"];
+function renderEventLogSummary(stages) {
+    d3.select("#eventLogSummaryTbody")
+        .selectAll('tr')
+        .data(stages)
+        .enter()
+        .append('tr')
+        .attr('align', 'center')
+        .attr('class','ui-widget-content')
+        .html(function(d){
+            return generateEventLogSummaryLine(d);
+        });
+}
+
+function generateEventLogSummaryLine(stage) {
+    // the summary has the raw statistics, the derived columns are computed as in SparkApplicationSummary.StageSummary
+    var values = {
+        duration: stage.submissionTime > 0 && stage.completionTime >= stage.submissionTime ? stage.completionTime - stage.submissionTime : 0,
+        taskSkew: stage.taskTimeMedian > 0 ? (stage.taskTimeMax / stage.taskTimeMedian).toFixed(1) : (stage.taskTimeMax > 0 ? stage.taskTimeMax : 1),
+        gcRatio: stage.executorRunTime > 0 ? (stage.gcTime / stage.executorRunTime).toFixed(2) : 0
+    };
+    var html = '';
+    eventLogSummaryColumn.forEach(function(d) {
+        var value = d in values ? values[d] : stage[d];
+        html += '<td>' + $('<div/>').text(value == null ? '' : value).html() + '</td>';
+    });
+    return html;
+}
@@ -36,6 +36,7 @@ $(function () {
         $("#basicInformationTitle").html("Basic Application Information");
         d3.selectAll("#stageSummaryTbody tr").remove();
         d3.selectAll("#taskSummaryTbody tr").remove();
+        d3.selectAll("#eventLogSummaryTbody tr").remove();
         $("#errorMessage").text("");
         $("#jobOutputTextarea").text("");
         $("#livyJobLog").text("");
@@ -65,6 +66,7 @@ $(function () {
         setStoredRDD();
         setStageDetailsWithTaskDetails();
         setExecutorsDetails();
+        setEventLogSummary();
     });
 
     $("#sparkEventButton").click(function () {
@@ -89,7 +91,7 @@ $(function () {
             }
         }
         if(sourceType == "intellij") {
-            JobUtils.openSparkUIHistory(id);
+            JobUtils.openSparkUIHistory(projectId, id);
         } else {
             JobUtils.openSparkUIHistory(clusterName, id);
         }
@@ -98,7 +100,7 @@ $(function () {
 
     $("#openYarnUIButton").click(function () {
         if(sourceType == "intellij"){
-            JobUtils.openYarnUIHistory(typeof appId == 'undefined' ? "" : appId.toString());
+            JobUtils.openYarnUIHistory(projectId, typeof appId == 'undefined' ? "" : appId.toString());
         } else {
             JobUtils.openYarnUIHistory(clusterName, typeof appId == 'undefined' ? "" : appId.toString());
         }
@@ -458,6 +460,32 @@ function setExecutorsDetails() {
         }
     })
 }
+function setEventLogSummary() {
+    var selectedApp = findElement(applicationList, function (d) {
+        return d.id == appId;
+    });
+    // the event log of a running application is incomplete, and the summary is kept once computed
+    if (selectedApp == null || !selectedApp.attempts[selectedApp.attempts.length - 1].completed) {
+        $("#event_log_summary_message").text("The event log summary is available once the application has completed");
+        return;
+    }
+
+    $("#event_log_summary_message").text("Reading the Spark event log...");
+    var summaryAppId = appId;
+    getMessageAsync(localhost + projectId + "/applications/" + appId + "?restType=eventlogsummary&applicationId=" + appId, function (s) {
+        if (summaryAppId != appId) {
+            return;
+        }
+        try {
+            var summary = JSON.parse(s);
+            $("#event_log_summary_message").text("");
+            renderEventLogSummary(summary.stages);
+        } catch (e) {
+            $("#event_log_summary_message").text(s);
+        }
+    });
+}
+
 function setDebugInfo(s) {
     $("#debuginfo").text(s);
 }
@@ -31,18 +31,24 @@ import com.microsoft.azuretools.authmanage.AuthMethodManager;
 import com.microsoft.azuretools.authmanage.models.SubscriptionDetail;
 import com.microsoft.azuretools.azurecommons.helpers.StringHelper;
 import com.microsoft.tooling.msservices.components.DefaultLoader;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
 import com.microsoft.azure.hdinsight.sdk.common.AggregatedException;
 import com.microsoft.azure.hdinsight.sdk.common.AuthenticationErrorHandler;
 import com.microsoft.azure.hdinsight.sdk.common.HDIException;
+import com.microsoft.azure.hdinsight.sdk.common.HttpClientPool;
 import com.microsoft.azure.hdinsight.sdk.storage.HDStorageAccount;
 import com.microsoft.tooling.msservices.model.storage.ClientStorageAccount;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 public class ClusterManagerEx {
 
     private static final String OSTYPE = "linux";
+    private static final int MAX_CONCURRENT_CONFIGURATION_REQUESTS = 5;
 
     private static ClusterManagerEx instance = null;
 
@@ -89,15 +95,24 @@ public class ClusterManagerEx {
         return getClusterDetailsWithoutAsync(false, project);
     }
 
-    public List<IClusterDetail> getClusterDetailsWithoutAsync(boolean isIgnoreErrorCluster, Object projectObject) {
-        cachedClusterDetails = ClusterMetaDataService.getInstance().getCachedClusterDetails();
-        if(cachedClusterDetails.size() == 0) {
-            cachedClusterDetails = getClusterDetails(projectObject);
+    public List<IClusterDetail> getClusterDetailsWithoutAsync(boolean isIgnoreErrorCluster, final Object projectObject) {
+        List<IClusterDetail> clusterDetails = ClusterMetaDataService.getInstance().getCachedClusterDetails();
+        if(clusterDetails.size() == 0) {
+            clusterDetails = getClusterDetails(projectObject);
+        } else {
+            // serve the cached clusters and list them again in the background once they are stale
+            ClusterMetaDataService.getInstance().refreshIfExpired(new Runnable() {
+                @Override
+                public void run() {
+                    getClusterDetails(projectObject);
+                }
+            });
+            fetchClusterConfigurationsInBackground(clusterDetails, projectObject);
         }
 
         if (isIgnoreErrorCluster == true) {
             List<IClusterDetail> result = new ArrayList<>();
-            for (IClusterDetail clusterDetail : cachedClusterDetails) {
+            for (IClusterDetail clusterDetail : clusterDetails) {
                 if (clusterDetail instanceof ClusterDetail && !clusterDetail.getState().equalsIgnoreCase("Running")) {
                     continue;
                 }
@@ -105,12 +120,13 @@ public class ClusterManagerEx {
             }
             return result;
         } else {
-            return cachedClusterDetails;
+            return clusterDetails;
         }
     }
 
-    public synchronized List<IClusterDetail> getClusterDetails(Object project) {
-        cachedClusterDetails.clear();
+    public synchronized List<IClusterDetail> getClusterDetails(final Object project) {
+        // callers may still hold the previous list, so it is replaced instead of cleared
+        cachedClusterDetails = new ArrayList<>();
 
         if(!isLIstAdditionalClusterSuccess) {
             hdinsightAdditionalClusterDetails = getAdditionalClusters(project);
@@ -170,12 +186,63 @@ public class ClusterManagerEx {
         cachedClusterDetails.addAll(hdinsightAdditionalClusterDetails);
         cachedClusterDetails.addAll(emulatorClusterDetails);
         ClusterMetaDataService.getInstance().addCachedClusters(cachedClusterDetails);
+
+        fetchClusterConfigurationsInBackground(new ArrayList<>(cachedClusterDetails), project);
         return cachedClusterDetails;
     }
 
+    /**
+     * Fetches the cluster configurations ahead of a submission, which would otherwise wait for them one by one
+     */
+    private void fetchClusterConfigurationsInBackground(final List<IClusterDetail> clusterDetails, final Object project) {
+        ClusterMetaDataService.getInstance().runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                getClusterConfigurations(clusterDetails, project);
+            }
+        });
+    }
+
+    /**
+     * Fetches the configuration, and with it the storage accounts, of the running clusters which don't have it yet,
+     * several clusters at a time
+     * @return the failures by cluster name
+     */
+    public Map<String, Throwable> getClusterConfigurations(List<IClusterDetail> clusterDetails, final Object project) {
+        final List<IClusterDetail> pendingClusters = new ArrayList<>();
+        for (IClusterDetail clusterDetail : clusterDetails) {
+            if (clusterDetail instanceof ClusterDetail && !clusterDetail.isConfigInfoAvailable()
+                    && "Running".equalsIgnoreCase(clusterDetail.getState())) {
+                pendingClusters.add(clusterDetail);
+            }
+        }
+
+        Map<String, Throwable> failures = new HashMap<>();
+        try {
+            ParallelExecutor.Result<Void> result = ParallelExecutor.forEach(pendingClusters, new ParallelExecutor.Task<IClusterDetail, Void>() {
+                @Override
+                public Void call(IClusterDetail clusterDetail) throws Exception {
+                    clusterDetail.getConfigurationInfo(project);
+                    return null;
+                }
+            }).withMaxConcurrency(MAX_CONCURRENT_CONFIGURATION_REQUESTS).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+
+            for (Map.Entry<Integer, Throwable> failure : result.getFailures().entrySet()) {
+                failures.put(pendingClusters.get(failure.getKey()).getName(), failure.getValue());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            for (IClusterDetail clusterDetail : pendingClusters) {
+                failures.put(clusterDetail.getName(), e);
+            }
+        }
+
+        return failures;
+    }
+
     public synchronized  void addEmulatorCluster(EmulatorClusterDetail emulatorClusterDetail) {
         emulatorClusterDetails.add(emulatorClusterDetail);
         cachedClusterDetails.add(emulatorClusterDetail);
+        ClusterMetaDataService.getInstance().addCachedCluster(emulatorClusterDetail);
 
         saveEmulatorClusters();
     }
@@ -184,6 +251,7 @@ public class ClusterManagerEx {
 
         hdinsightAdditionalClusterDetails.add(hdInsightClusterDetail);
         cachedClusterDetails.add(hdInsightClusterDetail);
+        ClusterMetaDataService.getInstance().addCachedCluster(hdInsightClusterDetail);
 
         saveAdditionalClusters();
     }
@@ -191,6 +259,8 @@ public class ClusterManagerEx {
     public synchronized  void removeEmulatorCluster(EmulatorClusterDetail emulatorClusterDetail) {
         emulatorClusterDetails.remove(emulatorClusterDetail);
         cachedClusterDetails.remove(emulatorClusterDetail);
+        ClusterMetaDataService.getInstance().removeCachedCluster(emulatorClusterDetail);
+        HttpClientPool.getInstance().release(emulatorClusterDetail.getConnectionUrl());
 
         saveEmulatorClusters();
     }
@@ -199,6 +269,8 @@ public class ClusterManagerEx {
 
         hdinsightAdditionalClusterDetails.remove(hdInsightClusterDetail);
         cachedClusterDetails.remove(hdInsightClusterDetail);
+        ClusterMetaDataService.getInstance().removeCachedCluster(hdInsightClusterDetail);
+        HttpClientPool.getInstance().release(hdInsightClusterDetail.getConnectionUrl());
 
         saveAdditionalClusters();
     }
@@ -235,13 +307,7 @@ public class ClusterManagerEx {
     }
 
     public boolean isEmulatorClusterExist(String clusterName) {
-        for( IClusterDetail clusterDetail : cachedClusterDetails) {
-            if( clusterDetail.getName().equals(clusterName)) {
-                return true;
-            }
-        }
-
-        return false;
+        return ClusterMetaDataService.getInstance().getCachedCluster(clusterName) != null;
     }
 
     private void saveEmulatorClusters() {
@@ -21,11 +21,15 @@
  */
 package com.microsoft.azure.hdinsight.common;
 
+/**
+ * The submission state of a tool window. It is read by the job monitor threads while the UI updates it,
+ * so every field is volatile.
+ */
 public class JobStatusManager {
-    private boolean isJobKilled = false;
-    private boolean isApplicationGenerated = false;
-    private String applicationId;
-    private boolean isRunning = false;
+    private volatile boolean isJobKilled = false;
+    private volatile boolean isApplicationGenerated = false;
+    private volatile String applicationId;
+    private volatile boolean isRunning = false;
 
     public void resetJobStateManager() {
         isJobKilled = false;
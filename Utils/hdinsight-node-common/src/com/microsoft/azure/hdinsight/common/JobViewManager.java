@@ -28,11 +28,11 @@ import com.microsoft.azuretools.azurecommons.helpers.NotNull;
 import com.microsoft.azuretools.azurecommons.helpers.Nullable;
 import javafx.util.Pair;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JobViewManager {
-    private static Map<String, IClusterDetail> jobViewPanelMap = new HashMap<String, IClusterDetail>();
+    private static Map<String, IClusterDetail> jobViewPanelMap = new ConcurrentHashMap<String, IClusterDetail>();
 
     public synchronized static void registerJovViewNode(@NotNull String uuid, @NotNull IClusterDetail clusterDetail) {
         jobViewPanelMap.put(uuid, clusterDetail);
@@ -26,6 +26,7 @@ import com.microsoft.azuretools.azurecommons.helpers.NotNull;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public abstract class MultiHttpFutureCallback implements FutureCallback<List<String>> {
@@ -43,10 +44,10 @@ public abstract class MultiHttpFutureCallback implements FutureCallback<List<Str
     private static void dealWithFailure(@NotNull Throwable throwable,@NotNull final HttpExchange httpExchange) {
         httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         try {
-            String str = throwable.getMessage();
-            httpExchange.sendResponseHeaders(200, str.length());
+            byte[] bytes = String.valueOf(throwable.getMessage()).getBytes(StandardCharsets.UTF_8);
+            httpExchange.sendResponseHeaders(200, bytes.length);
             OutputStream stream = httpExchange.getResponseBody();
-            stream.write(str.getBytes());
+            stream.write(bytes);
             stream.close();
         }catch (Exception e) {
             //LOGGER.error("Get job history error", e);
@@ -23,7 +23,7 @@ package com.microsoft.azure.hdinsight.common;
 
 import com.microsoft.azure.hdinsight.sdk.common.HttpResponse;
 import com.microsoft.azure.hdinsight.sdk.storage.IHDIStorageAccount;
-import com.microsoft.azure.hdinsight.sdk.storage.adls.WebHDFSUtils;
+import com.microsoft.azure.hdinsight.spark.common.SparkArtifactStore;
 import com.microsoft.azuretools.authmanage.AuthMethodManager;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
 import org.apache.commons.io.FileUtils;
@@ -36,7 +36,6 @@ import java.net.URL;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
 
 public class StreamUtil {
 
@@ -116,17 +115,8 @@ public class StreamUtil {
 
     private static StreamUtil streamUtil = new StreamUtil();
     private static ClassLoader classLoader = streamUtil.getClass().getClassLoader();
-    private static final String SPARK_SUBMISSION_FOLDER = "SparkSubmission";
 
     public static String uploadArtifactToADLS(@NotNull File localFile, IHDIStorageAccount storageAccount) throws Exception {
-        String rootPath = storageAccount.getDefaultContainerOrRootPath();
-        if(rootPath.startsWith("/")) {
-            rootPath = rootPath.substring(1);
-        }
-        final String uuid = UUID.randomUUID().toString();
-        // rootPath should be in format: /path_name/
-        final String remoteFilePath = String.format("%s%s/%s/%s", rootPath, SPARK_SUBMISSION_FOLDER, uuid, localFile.getName());
-        WebHDFSUtils.uploadFileToADLS(storageAccount, localFile, remoteFilePath, true);
-        return String.format("adl://%s.azuredatalakestore.net/%s", storageAccount.getName(), remoteFilePath);
+        return SparkArtifactStore.getInstance().upload(localFile, storageAccount);
     }
 }
@@ -22,55 +22,157 @@
 package com.microsoft.azure.hdinsight.common.task;
 
 import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.microsoft.azure.hdinsight.common.HttpResponseWithoutHeader;
 import com.microsoft.azure.hdinsight.sdk.cluster.IClusterDetail;
 import com.microsoft.azure.hdinsight.sdk.common.HDIException;
+import com.microsoft.azure.hdinsight.sdk.common.HttpClientPool;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class MultiRestTask extends Task<List<String>> {
+    /**
+     * Max number of requests sent to one cluster at a time, across all the running tasks
+     */
+    public static final int MAX_CONCURRENT_REQUESTS_PER_CLUSTER = HttpClientPool.MAX_CONNECTIONS_PER_ENDPOINT;
+
+    private static final int MAX_REQUEST_THREADS = 32;
+
+    private static final ConcurrentMap<String, Semaphore> clusterPermits = new ConcurrentHashMap<>();
+
+    // the task itself runs on the TaskExecutor and waits for its requests, which would deadlock if they had to queue
+    // behind other waiting tasks there; once all of these threads are busy the waiting task sends the request itself
+    private static final ThreadPoolExecutor requestExecutor = createRequestExecutor();
+
     protected final IClusterDetail clusterDetail;
     protected final List<String> paths;
-    private final CredentialsProvider credentialsProvider =  new BasicCredentialsProvider();
+    private final long[] durations;
 
     public MultiRestTask(@NotNull IClusterDetail clusterDetail, @NotNull List<String> paths, @NotNull FutureCallback<List<String>> callback) {
         super(callback);
         this.clusterDetail = clusterDetail;
         this.paths = paths;
-        try {
-            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(clusterDetail.getHttpUserName(), clusterDetail.getHttpPassword()));
-        } catch (HDIException e) {
-            e.printStackTrace();
-        }
+        this.durations = new long[paths.size()];
     }
 
+    /**
+     * Sends the requests concurrently and returns the results in the order of the paths.
+     * The first failed request, eg with an authentication error, cancels the ones not completed yet.
+     */
     @Override
     public List<String> call() throws Exception {
-        CloseableHttpClient httpclient = HttpClients.custom().setDefaultCredentialsProvider(credentialsProvider).build();
-        List<String> results = new ArrayList<>();
-        for(String path: paths) {
-            HttpGet httpGet = new HttpGet(path);
-            httpGet.addHeader("Content-Type", "application/json");
-            CloseableHttpResponse response = httpclient.execute(httpGet);
+        final String userName = clusterDetail.getHttpUserName();
+        final String password = clusterDetail.getHttpPassword();
+        final Semaphore permits = getClusterPermits(clusterDetail);
+
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(requestExecutor);
+        List<Future<Integer>> futures = new ArrayList<>();
+        final String[] results = new String[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            final int index = i;
+            futures.add(completionService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    permits.acquire();
+                    long start = System.currentTimeMillis();
+                    try {
+                        String path = paths.get(index);
+                        results[index] = get(HttpClientPool.getInstance().getClient(path, userName, password), path);
+                        return index;
+                    } finally {
+                        durations[index] = System.currentTimeMillis() - start;
+                        permits.release();
+                    }
+                }
+            }));
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+
+                    throw e;
+                }
+            }
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        logger.fine(String.format("%d requests to %s in %d ms, per request: %s",
+                paths.size(), clusterDetail.getName(), System.currentTimeMillis() - start, getRequestDurations()));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return the time spent on each request in ms, in the order of the paths, including the wait for the cluster limit
+     */
+    @NotNull
+    public List<Long> getRequestDurations() {
+        List<Long> list = new ArrayList<>();
+        for (long duration : durations) {
+            list.add(duration);
+        }
+
+        return list;
+    }
+
+    @NotNull
+    private static String get(@NotNull CloseableHttpClient httpclient, @NotNull String path) throws Exception {
+        HttpGet httpGet = new HttpGet(path);
+        httpGet.addHeader("Content-Type", "application/json");
+        try (CloseableHttpResponse response = httpclient.execute(httpGet)) {
             int code = response.getStatusLine().getStatusCode();
             if(code == 200 || code == 201) {
-                results.add(EntityUtils.toString(response.getEntity()));
+                return EntityUtils.toString(response.getEntity());
             } else {
+                EntityUtils.consume(response.getEntity());
                 throw new HDIException(response.getStatusLine().getReasonPhrase(), code);
             }
         }
+    }
+
+    @NotNull
+    private static ThreadPoolExecutor createRequestExecutor() {
+        return new ThreadPoolExecutor(0, MAX_REQUEST_THREADS, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("hdinsight-rest-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @NotNull
+    private static Semaphore getClusterPermits(@NotNull IClusterDetail clusterDetail) {
+        Semaphore permits = clusterPermits.get(clusterDetail.getName());
+        if (permits == null) {
+            clusterPermits.putIfAbsent(clusterDetail.getName(), new Semaphore(MAX_CONCURRENT_REQUESTS_PER_CLUSTER));
+            permits = clusterPermits.get(clusterDetail.getName());
+        }
 
-        return results;
+        return permits;
     }
 }
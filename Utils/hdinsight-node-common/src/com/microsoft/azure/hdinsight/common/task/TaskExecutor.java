@@ -25,14 +25,30 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class TaskExecutor {
-    private static ListeningExecutorService executors = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+    private static final int MAX_THREADS = 16;
+    private static final int MAX_QUEUED_TASKS = 256;
+
+    // bounded: once the queue is full the submitting thread runs the task itself, which slows the producer down
+    private static ListeningExecutorService executors = MoreExecutors.listeningDecorator(createExecutor());
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_TASKS),
+                new ThreadFactoryBuilder().setNameFormat("hdinsight-task-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
     public static <T> ListenableFuture<T> submit(@NotNull Task<T> task) {
         final ListenableFuture<T> listenableFuture = executors.submit(task);
@@ -21,17 +21,56 @@
  */
 package com.microsoft.azure.hdinsight.metadata;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.microsoft.azure.hdinsight.sdk.cluster.IClusterDetail;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-
+/**
+ * Caches the cluster list. Clusters of different subscriptions or attached by the user may share a name, so the
+ * list keeps every cluster and a lower case name index, pointing at the first cluster listed with a name, only
+ * serves lookups. The snapshot is replaced as a whole, so readers always see one consistent list; once it is older
+ * than the time to live, it is still served while a refresh runs in the background.
+ */
 public class ClusterMetaDataService {
+    public static final long DEFAULT_TIME_TO_LIVE_MS = TimeUnit.MINUTES.toMillis(10);
+
     private static ClusterMetaDataService instance = new ClusterMetaDataService();
-    private List<IClusterDetail> cachedClusters = new ArrayList<>();
-//    private Map<Project, List<IClusterDetail>> cachedClustersMap = new HashMap<>();
+
+    private static class Snapshot {
+        private final List<IClusterDetail> clusters;
+        private final Map<String, IClusterDetail> clustersByName;
+
+        Snapshot(@NotNull List<IClusterDetail> clusters) {
+            Map<String, IClusterDetail> clustersByName = new HashMap<>();
+            for (IClusterDetail clusterDetail : clusters) {
+                String key = clusterDetail.getName().toLowerCase();
+                if (!clustersByName.containsKey(key)) {
+                    clustersByName.put(key, clusterDetail);
+                }
+            }
+
+            this.clusters = Collections.unmodifiableList(clusters);
+            this.clustersByName = clustersByName;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(new ArrayList<IClusterDetail>());
+    private volatile long cachedTime = 0;
+    private volatile long timeToLiveMs = DEFAULT_TIME_TO_LIVE_MS;
+    private final AtomicBoolean isRefreshing = new AtomicBoolean(false);
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("hdinsight-cluster-refresh-%d").setDaemon(true).build());
 
     private ClusterMetaDataService() {
     }
@@ -40,20 +79,83 @@ public class ClusterMetaDataService {
         return instance;
     }
 
+    /**
+     * @return a copy of the cached clusters, in the order they were listed
+     */
     public List<IClusterDetail> getCachedClusterDetails () {
-        return cachedClusters;
+        return new ArrayList<>(snapshot.clusters);
     }
 
-    public void addCachedClusters(@NotNull List<IClusterDetail> clusterDetails) {
-        cachedClusters = clusterDetails;
+    public synchronized void addCachedClusters(@NotNull List<IClusterDetail> clusterDetails) {
+        snapshot = new Snapshot(new ArrayList<>(clusterDetails));
+        cachedTime = System.currentTimeMillis();
     }
 
-    public boolean isCachedClusterExist(@NotNull IClusterDetail clusterDetail) {
-        for (IClusterDetail iClusterDetail : cachedClusters) {
-            if (iClusterDetail.getName().equalsIgnoreCase(clusterDetail.getName())) {
-                return true;
+    /**
+     * Adds a cluster the user attached, keeping the time the clusters were listed
+     */
+    public synchronized void addCachedCluster(@NotNull IClusterDetail clusterDetail) {
+        List<IClusterDetail> clusters = new ArrayList<>(snapshot.clusters);
+        clusters.add(clusterDetail);
+        snapshot = new Snapshot(clusters);
+    }
+
+    public synchronized void removeCachedCluster(@NotNull IClusterDetail clusterDetail) {
+        List<IClusterDetail> clusters = new ArrayList<>(snapshot.clusters);
+        // by identity, another cluster with the same name stays
+        for (int i = 0; i < clusters.size(); i++) {
+            if (clusters.get(i) == clusterDetail) {
+                clusters.remove(i);
+                snapshot = new Snapshot(clusters);
+                return;
             }
         }
-        return false;
+    }
+
+    /**
+     * @return the first cached cluster with the name, ignoring case
+     */
+    @Nullable
+    public IClusterDetail getCachedCluster(@NotNull String clusterName) {
+        return snapshot.clustersByName.get(clusterName.toLowerCase());
+    }
+
+    public boolean isCachedClusterExist(@NotNull IClusterDetail clusterDetail) {
+        return snapshot.clustersByName.containsKey(clusterDetail.getName().toLowerCase());
+    }
+
+    public void setTimeToLiveMs(long timeToLiveMs) {
+        this.timeToLiveMs = timeToLiveMs;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() - cachedTime > timeToLiveMs;
+    }
+
+    /**
+     * Runs the refresh in the background when the cache has expired, unless a refresh is already running
+     */
+    public void refreshIfExpired(@NotNull final Runnable refresh) {
+        if (!isExpired() || !isRefreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        refreshExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh.run();
+                } finally {
+                    isRefreshing.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the background thread the cache is refreshed on
+     */
+    public void runInBackground(@NotNull Runnable task) {
+        refreshExecutor.submit(task);
     }
 }
@@ -59,7 +59,7 @@ public class ClusterDetail implements IClusterDetail {
     private IHDIStorageAccount defaultStorageAccount;
     private List<HDStorageAccount> additionalStorageAccounts;
 
-    private boolean isConfigInfoAvailable = false;
+    private volatile boolean isConfigInfoAvailable = false;
 
     public ClusterDetail(SubscriptionDetail paramSubscription, ClusterRawInfo paramClusterRawInfo){
         this.subscription = paramSubscription;
@@ -192,7 +192,12 @@ public class ClusterDetail implements IClusterDetail {
         }
     }
 
-    public void getConfigurationInfo(Object project) throws IOException, HDIException, AzureCmdException {
+    public synchronized void getConfigurationInfo(Object project) throws IOException, HDIException, AzureCmdException {
+        // it may have been fetched in the background while waiting for the lock
+        if (isConfigInfoAvailable) {
+            return;
+        }
+
         IClusterOperation clusterOperation = new ClusterOperationImpl(project);
         ClusterConfiguration clusterConfiguration =
                 clusterOperation.getClusterConfiguration(subscription, clusterRawInfo.getId());
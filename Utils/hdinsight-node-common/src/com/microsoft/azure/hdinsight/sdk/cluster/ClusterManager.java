@@ -22,22 +22,16 @@
 package com.microsoft.azure.hdinsight.sdk.cluster;
 
 import com.microsoft.azure.hdinsight.sdk.common.AggregatedException;
-import com.microsoft.azure.hdinsight.sdk.common.CommonRunnable;
-import com.microsoft.azure.hdinsight.sdk.common.HDIException;
 import com.microsoft.azuretools.authmanage.models.SubscriptionDetail;
-import com.microsoft.azuretools.azurecommons.helpers.AzureCmdException;
+import com.microsoft.tooling.msservices.helpers.ParallelExecutor;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
 
 public class ClusterManager {
 
     private final int MAX_CONCURRENT = 5;
-    private final int TIME_OUT = 5 * 60;
 
     // Singleton Instance
     private static ClusterManager instance = null;
@@ -103,40 +97,36 @@ public class ClusterManager {
     }
 
     private List<IClusterDetail> getClusterDetails(List<SubscriptionDetail> subscriptions, final Object project) throws AggregatedException {
-        ExecutorService taskExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT);
         final List<IClusterDetail> cachedClusterList = new ArrayList<>();
         final List<Exception> aggregateExceptions = new ArrayList<>();
+        ParallelExecutor.Result<List<ClusterRawInfo>> result;
 
-        for (SubscriptionDetail subscription : subscriptions) {
-            taskExecutor.execute(new CommonRunnable<SubscriptionDetail, Exception>(subscription) {
+        try {
+            result = ParallelExecutor.forEach(subscriptions, new ParallelExecutor.Task<SubscriptionDetail, List<ClusterRawInfo>>() {
                 @Override
-                public void runSpecificParameter(SubscriptionDetail parameter) throws IOException, HDIException, AzureCmdException {
+                public List<ClusterRawInfo> call(SubscriptionDetail subscription) throws Exception {
                     IClusterOperation clusterOperation = new ClusterOperationImpl(project);
-                    List<ClusterRawInfo> clusterRawInfoList = clusterOperation.listCluster(parameter);
-                    if (clusterRawInfoList != null) {
-                        for (ClusterRawInfo item : clusterRawInfoList) {
-                            IClusterDetail tempClusterDetail = new ClusterDetail(parameter, item);
-                            synchronized (ClusterManager.class) {
-                                cachedClusterList.add(tempClusterDetail);
-                            }
-                        }
-                    }
+                    return clusterOperation.listCluster(subscription);
                 }
+            }).withMaxConcurrency(MAX_CONCURRENT).withErrorMode(ParallelExecutor.ErrorMode.COLLECT_ALL).execute();
+        } catch (InterruptedException | ExecutionException exception) {
+            aggregateExceptions.add(exception);
+            throw new AggregatedException(aggregateExceptions);
+        }
 
-                @Override
-                public void exceptionHandle(Exception e) {
-                    synchronized (aggregateExceptions) {
-                        aggregateExceptions.add(e);
-                    }
+        // clusters are listed in subscription order, whichever subscription answers first
+        for (int i = 0; i < subscriptions.size(); i++) {
+            List<ClusterRawInfo> clusterRawInfoList = result.getResults().get(i);
+
+            if (clusterRawInfoList != null) {
+                for (ClusterRawInfo item : clusterRawInfoList) {
+                    cachedClusterList.add(new ClusterDetail(subscriptions.get(i), item));
                 }
-            });
+            }
         }
 
-        taskExecutor.shutdown();
-        try {
-            taskExecutor.awaitTermination(TIME_OUT, TimeUnit.SECONDS);
-        } catch (InterruptedException exception) {
-            aggregateExceptions.add(exception);
+        for (Throwable failure : result.getFailures().values()) {
+            aggregateExceptions.add(failure instanceof Exception ? (Exception) failure : new Exception(failure));
         }
 
         if (aggregateExceptions.size() > 0) {
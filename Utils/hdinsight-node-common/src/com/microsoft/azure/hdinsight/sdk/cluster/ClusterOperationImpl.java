@@ -37,11 +37,32 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class ClusterOperationImpl implements IClusterOperation {
 
      private final String VERSION = "2015-03-01-preview";
 
+     // the token library refreshes tokens well before they expire, so one can be reused for a few minutes
+     private static final long ACCESS_TOKEN_REUSE_MS = TimeUnit.MINUTES.toMillis(3);
+
+     private static final Gson gson = new Gson();
+     private static final Map<String, CachedAccessToken> accessTokens = new ConcurrentHashMap<>();
+
+     private static class CachedAccessToken {
+          private final AzureManager azureManager;
+          private final String token;
+          private final long acquiredTime;
+
+          private CachedAccessToken(AzureManager azureManager, String token, long acquiredTime) {
+               this.azureManager = azureManager;
+               this.token = token;
+               this.acquiredTime = acquiredTime;
+          }
+     }
+
      private Object project;
 
      public ClusterOperationImpl(Object project) {
@@ -74,11 +95,13 @@ public class ClusterOperationImpl implements IClusterOperation {
                     public List<ClusterRawInfo> execute(String response) {
                          Type listType = new TypeToken<List<ClusterRawInfo>>() {
                          }.getType();
-                         List<ClusterRawInfo> clusterRawInfoList = new Gson().fromJson(response, listType);
+                         List<ClusterRawInfo> clusterRawInfoList = gson.fromJson(response, listType);
                          return clusterRawInfoList;
                     }
                }.run(response);
           } catch (Throwable th) {
+               // the token may have been revoked, get a new one next time
+               accessTokens.remove(subscription.getTenantId());
                throw new AzureCmdException("Error listing HDInsight clusters", th);
           }
      }
@@ -111,7 +134,7 @@ public class ClusterOperationImpl implements IClusterOperation {
                     public ClusterConfiguration execute(String response) {
                          Type listType = new TypeToken<ClusterConfiguration>() {
                          }.getType();
-                         ClusterConfiguration clusterConfiguration = new Gson().fromJson(response, listType);
+                         ClusterConfiguration clusterConfiguration = gson.fromJson(response, listType);
 
                          if (clusterConfiguration == null || clusterConfiguration.getConfigurations() == null) {
                               return null;
@@ -121,6 +144,7 @@ public class ClusterOperationImpl implements IClusterOperation {
                     }
                }.run(response);
           } catch (Throwable th) {
+               accessTokens.remove(subscription.getTenantId());
                throw new AzureCmdException("Error getting cluster configuration", th);
           }
      }
@@ -134,7 +158,13 @@ public class ClusterOperationImpl implements IClusterOperation {
                return null;
           }
 
-          String accessToken = azureManager.getAccessToken(tenantId);
-          return requestCallback.execute(accessToken);
+          CachedAccessToken cached = accessTokens.get(tenantId);
+          if (cached == null || cached.azureManager != azureManager
+                  || System.currentTimeMillis() - cached.acquiredTime > ACCESS_TOKEN_REUSE_MS) {
+               cached = new CachedAccessToken(azureManager, azureManager.getAccessToken(tenantId), System.currentTimeMillis());
+               accessTokens.put(tenantId, cached);
+          }
+
+          return requestCallback.execute(cached.token);
      }
 }
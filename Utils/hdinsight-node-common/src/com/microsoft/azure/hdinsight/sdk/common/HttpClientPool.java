@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.sdk.common;
+
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.AuthenticationException;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one connection-pooled http client per cluster endpoint and user, so the requests sent to a cluster
+ * gateway reuse keep-alive connections instead of doing a new TLS handshake each time.
+ * The credentials are scoped to the endpoint and sent preemptively, which saves the 401 round trip.
+ * The clients are owned by the pool: callers must close the responses but never the clients.
+ */
+public class HttpClientPool {
+    public static final int MAX_CONNECTIONS_PER_ENDPOINT = 8;
+    public static final long DEFAULT_KEEP_ALIVE_MS = 30 * 1000;
+    public static final long IDLE_CONNECTION_TIMEOUT_MS = 60 * 1000;
+
+    private static HttpClientPool instance = null;
+
+    public static HttpClientPool getInstance() {
+        if (instance == null) {
+            synchronized (HttpClientPool.class) {
+                if (instance == null) {
+                    instance = new HttpClientPool();
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    private final Map<String, PooledClient> clients = new HashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    private HttpClientPool() {
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "HDInsight http connection evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                closeIdleConnections();
+            }
+        }, IDLE_CONNECTION_TIMEOUT_MS, IDLE_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the pooled http client for the endpoint of the url and the given user
+     * @param url : any url of the cluster endpoint, eg https://cluster.azurehdinsight.net/livy/batches
+     * @param userName : user name, null for anonymous access
+     * @param password : password
+     * @return the shared client, which must not be closed by the caller
+     */
+    @NotNull
+    public CloseableHttpClient getClient(@NotNull String url, @Nullable String userName, @Nullable String password) {
+        HttpHost host = getHost(url);
+        String key = host.toURI() + "|" + (userName == null ? "" : userName);
+        synchronized (clients) {
+            PooledClient client = clients.get(key);
+            if (client == null) {
+                client = new PooledClient(host);
+                clients.put(key, client);
+            }
+
+            client.setCredentials(userName, password);
+            return client.httpClient;
+        }
+    }
+
+    /**
+     * Close the clients and the pooled connections of the endpoint of the url, eg when a cluster is removed
+     * @param url : any url of the cluster endpoint
+     */
+    public void release(@Nullable String url) {
+        if (url == null) {
+            return;
+        }
+
+        String prefix = getHost(url).toURI() + "|";
+        List<PooledClient> released = new ArrayList<>();
+        synchronized (clients) {
+            Iterator<Map.Entry<String, PooledClient>> iterator = clients.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, PooledClient> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    released.add(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+
+        for (PooledClient client : released) {
+            client.close();
+        }
+    }
+
+    public void closeAll() {
+        List<PooledClient> released;
+        synchronized (clients) {
+            released = new ArrayList<>(clients.values());
+            clients.clear();
+        }
+
+        for (PooledClient client : released) {
+            client.close();
+        }
+    }
+
+    public void closeIdleConnections() {
+        synchronized (clients) {
+            for (PooledClient client : clients.values()) {
+                client.connectionManager.closeExpiredConnections();
+                client.connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * @return the connection pool statistics of every pooled client, keyed by endpoint and user
+     */
+    @NotNull
+    public Map<String, EndpointStats> getStats() {
+        Map<String, EndpointStats> stats = new HashMap<>();
+        synchronized (clients) {
+            for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+                PooledClient client = entry.getValue();
+                stats.put(entry.getKey(), new EndpointStats(client.host.toURI(), client.connectionManager.getTotalStats(),
+                        client.requestCount.get(), client.connectCount.get()));
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * @param url : any url of the cluster endpoint, eg https://cluster.azurehdinsight.net/livy/batches
+     * @return the endpoint the url belongs to, eg https://cluster.azurehdinsight.net
+     */
+    @NotNull
+    public static String getEndpoint(@NotNull String url) {
+        return getHost(url).toURI();
+    }
+
+    @NotNull
+    private static HttpHost getHost(@NotNull String url) {
+        URI uri = URI.create(url);
+        return new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+    }
+
+    public static class EndpointStats {
+        public final String endpoint;
+        public final int leased;
+        public final int available;
+        public final int pending;
+        public final int max;
+        public final long requests;
+        public final long connections;
+
+        EndpointStats(@NotNull String endpoint, @NotNull PoolStats poolStats, long requests, long connections) {
+            this.endpoint = endpoint;
+            this.leased = poolStats.getLeased();
+            this.available = poolStats.getAvailable();
+            this.pending = poolStats.getPending();
+            this.max = poolStats.getMax();
+            this.requests = requests;
+            this.connections = connections;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d requests over %d connections, leased %d, available %d, pending %d, max %d",
+                    endpoint, requests, connections, leased, available, pending, max);
+        }
+    }
+
+    private static class PooledClient {
+        private final HttpHost host;
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        private final CloseableHttpClient httpClient;
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong connectCount = new AtomicLong();
+
+        PooledClient(@NotNull final HttpHost host) {
+            this.host = host;
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_ENDPOINT);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ENDPOINT);
+
+            ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    long duration = super.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : DEFAULT_KEEP_ALIVE_MS;
+                }
+            };
+
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultCredentialsProvider(credentialsProvider)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .addInterceptorFirst(new HttpRequestInterceptor() {
+                        @Override
+                        public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+                            requestCount.incrementAndGet();
+                            Credentials credentials = credentialsProvider.getCredentials(new AuthScope(host));
+                            if (credentials != null && !request.containsHeader(HttpHeaders.AUTHORIZATION)) {
+                                try {
+                                    request.addHeader(new BasicScheme().authenticate(credentials, request, context));
+                                } catch (AuthenticationException e) {
+                                    throw new HttpException(e.getMessage(), e);
+                                }
+                            }
+                        }
+                    })
+                    .addInterceptorLast(new HttpResponseInterceptor() {
+                        @Override
+                        public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+                            // the first response received over a connection means a new connection was opened
+                            HttpConnection connection = HttpCoreContext.adapt(context).getConnection();
+                            if (connection != null && connection.getMetrics().getRequestCount() == 1) {
+                                connectCount.incrementAndGet();
+                            }
+                        }
+                    })
+                    .build();
+        }
+
+        void setCredentials(@Nullable String userName, @Nullable String password) {
+            if (userName == null) {
+                credentialsProvider.clear();
+            } else {
+                credentialsProvider.setCredentials(new AuthScope(host), new UsernamePasswordCredentials(userName, password));
+            }
+        }
+
+        void close() {
+            try {
+                httpClient.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.sdk.storage.adls;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.hdinsight.sdk.common.HDIException;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Uploads a file to an Azure Data Lake Store through WebHDFS: a CREATE, then one APPEND per chunk with the
+ * offset it is written at. A chunk that fails is retried on its own; when the outcome of an APPEND is unknown,
+ * the file length on the store tells whether it has to be sent again, so a transient failure no longer restarts
+ * the whole upload.
+ */
+public class ADLSFileUploader {
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    public static final int MAX_ATTEMPTS_PER_CHUNK = 4;
+    public static final long DEFAULT_RETRY_DELAY_MS = 1000;
+
+    public interface AccessTokenProvider {
+        /**
+         * @param refresh : true when the previous token was rejected
+         */
+        @NotNull
+        String getAccessToken(boolean refresh) throws Exception;
+    }
+
+    public interface ProgressListener {
+        void onProgress(long uploadedBytes, long totalBytes);
+    }
+
+    private final HttpClient httpClient;
+    private final String fileUrl;
+    private final AccessTokenProvider tokenProvider;
+    private final int chunkSize;
+    private final long retryDelayMs;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private String accessToken;
+
+    /**
+     * @param fileUrl : WebHDFS url of the remote file, eg https://store.azuredatalakestore.net/webhdfs/v1/path/file.jar
+     */
+    public ADLSFileUploader(@NotNull HttpClient httpClient, @NotNull String fileUrl, @NotNull AccessTokenProvider tokenProvider) {
+        this(httpClient, fileUrl, tokenProvider, DEFAULT_CHUNK_SIZE, DEFAULT_RETRY_DELAY_MS);
+    }
+
+    public ADLSFileUploader(@NotNull HttpClient httpClient, @NotNull String fileUrl, @NotNull AccessTokenProvider tokenProvider,
+                            int chunkSize, long retryDelayMs) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        this.httpClient = httpClient;
+        this.fileUrl = fileUrl;
+        this.tokenProvider = tokenProvider;
+        this.chunkSize = chunkSize;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public void upload(@NotNull File localFile, @Nullable ProgressListener listener) throws Exception {
+        HttpPut create = new HttpPut(fileUrl + "?op=" + RestOperatorEnum.CREATE + "&overwrite=true&write=true");
+        create.addHeader("Content-Type", "application/json");
+        int createCode = execute(create);
+        if (createCode == 403) {
+            throw new HDIException("Forbidden. Attached Azure DataLake Store is not supported in Automated login model. Please logout first and try Interactive login model", createCode);
+        }
+
+        if (createCode != 200 && createCode != 201) {
+            throw new HDIException("Failed to create " + fileUrl, createCode);
+        }
+
+        long total = localFile.length();
+        byte[] buffer = new byte[(int) Math.min(chunkSize, Math.max(total, 1))];
+        try (RandomAccessFile file = new RandomAccessFile(localFile, "r")) {
+            long offset = 0;
+            while (offset < total) {
+                int length = (int) Math.min(buffer.length, total - offset);
+                file.seek(offset);
+                file.readFully(buffer, 0, length);
+                offset = appendChunk(buffer, length, offset);
+                if (listener != null) {
+                    listener.onProgress(offset, total);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the offset after the chunk
+     */
+    private long appendChunk(@NotNull byte[] buffer, int length, long offset) throws Exception {
+        Exception lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS_PER_CHUNK; attempt++) {
+            if (attempt > 1) {
+                Thread.sleep(retryDelayMs * (1L << (attempt - 2)));
+
+                // the previous attempt may have been written even though its response was lost
+                long remoteLength = getRemoteLength();
+                if (remoteLength == offset + length) {
+                    return remoteLength;
+                } else if (remoteLength != offset) {
+                    throw new HDIException(String.format("Unexpected length %d of %s while appending at offset %d",
+                            remoteLength, fileUrl, offset));
+                }
+            }
+
+            HttpPost append = new HttpPost(fileUrl + "?op=" + RestOperatorEnum.APPEND + "&append=true&offset=" + offset);
+            append.setEntity(new ByteArrayEntity(buffer, 0, length, ContentType.APPLICATION_OCTET_STREAM));
+            try {
+                int code = execute(append);
+                if (code == 200 || code == 201) {
+                    return offset + length;
+                }
+
+                lastError = new HDIException(String.format("Failed to append to %s at offset %d", fileUrl, offset), code);
+                if (code != 400 && code != 408 && code != 429 && code < 500) {
+                    throw lastError;
+                }
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+
+        throw lastError;
+    }
+
+    private long getRemoteLength() throws Exception {
+        HttpGet status = new HttpGet(fileUrl + "?op=" + RestOperatorEnum.GETFILESTATUS);
+        HttpResponse response = executeWithToken(status);
+        try {
+            int code = response.getStatusLine().getStatusCode();
+            if (code != 200) {
+                throw new HDIException("Failed to get the status of " + fileUrl, code);
+            }
+
+            JsonNode fileStatus = mapper.readTree(EntityUtils.toString(response.getEntity())).path("FileStatus");
+            return fileStatus.path("length").asLong(-1);
+        } finally {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+
+    private int execute(@NotNull HttpRequestBase request) throws Exception {
+        HttpResponse response = executeWithToken(request);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    /**
+     * Sends the request with the cached access token, and once more with a new token if it was rejected
+     */
+    @NotNull
+    private HttpResponse executeWithToken(@NotNull HttpRequestBase request) throws Exception {
+        boolean refreshed = accessToken == null;
+        if (accessToken == null) {
+            accessToken = tokenProvider.getAccessToken(false);
+        }
+
+        request.setHeader("Authorization", "Bearer " + accessToken);
+        HttpResponse response = httpClient.execute(request);
+        if (response.getStatusLine().getStatusCode() != 401 || refreshed) {
+            return response;
+        }
+
+        EntityUtils.consume(response.getEntity());
+        accessToken = tokenProvider.getAccessToken(true);
+        request.setHeader("Authorization", "Bearer " + accessToken);
+        return httpClient.execute(request);
+    }
+}
@@ -34,6 +34,7 @@ public enum RestOperatorEnum {
     GETCONTENTSUMMARY("GETCONTENTSUMMARY"),
     SETPERMISSION("SETPERMISSION"),
     SETOWNER("SETOWNER"),
+    SETTIMES("SETTIMES"),
     MODIFYACLENTRIES("MODIFYACLENTRIES"),
     REMOVEACLENTRIES("REMOVEACLENTRIES"),
     SETACL("SETACL"),
@@ -21,23 +21,26 @@
  */
 package com.microsoft.azure.hdinsight.sdk.storage.adls;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.azure.hdinsight.common.HDInsightLoader;
 import com.microsoft.azure.hdinsight.sdk.common.HDIException;
 import com.microsoft.azure.hdinsight.sdk.storage.IHDIStorageAccount;
-import com.microsoft.azure.hdinsight.spark.common.SparkBatchSubmission;
 import com.microsoft.azuretools.authmanage.AuthMethodManager;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class WebHDFSUtils {
     private static String getUserAgent() {
@@ -48,55 +51,96 @@ public class WebHDFSUtils {
     }
 
     public static final String ADLS_REST_API_PATH = "https://{store.name}.azuredatalakestore.net/webhdfs/v1/{store.path}?op={store.operator}";
+    private static final String ADLS_FILE_PATH = "https://{store.name}.azuredatalakestore.net/webhdfs/v1/{store.path}";
 
     public static final HttpClient ADLS_CLIENT = HttpClients.custom().setUserAgent(getUserAgent()).build();
 
     public static void uploadFileToADLS(@NotNull IHDIStorageAccount storageAccount, @NotNull File localFile, @NotNull String remotePath, boolean overWrite) throws Exception {
+        uploadFileToADLS(storageAccount, localFile, remotePath, overWrite, null);
+    }
 
-        String commonRestUrl = ADLS_REST_API_PATH.replace(UrlConfEnum.STORENAME.toString(), storageAccount.getName())
+    public static void uploadFileToADLS(@NotNull final IHDIStorageAccount storageAccount,
+                                        @NotNull File localFile,
+                                        @NotNull String remotePath,
+                                        boolean overWrite,
+                                        @Nullable ADLSFileUploader.ProgressListener listener) throws Exception {
+        String fileUrl = ADLS_FILE_PATH.replace(UrlConfEnum.STORENAME.toString(), storageAccount.getName())
                 .replace(UrlConfEnum.STOREPATH.toString(), remotePath);
 
-        HttpResponse createResponse = createFileOnADLS(getAccessToken(storageAccount), getUrlWithOperatorConf(commonRestUrl, RestOperatorEnum.CREATE));
-        int createResponseCode = createResponse.getStatusLine().getStatusCode();
-        if(createResponseCode == 403) {
-            throw new HDIException("Forbidden. Attached Azure DataLake Store is not supported in Automated login model. Please logout first and try Interactive login model", createResponseCode);
-        }
+        new ADLSFileUploader(ADLS_CLIENT, fileUrl, new ADLSFileUploader.AccessTokenProvider() {
+            @NotNull
+            @Override
+            public String getAccessToken(boolean refresh) throws Exception {
+                return WebHDFSUtils.getAccessToken(storageAccount);
+            }
+        }).upload(localFile, listener);
+    }
 
-        if(createResponseCode != 200 && createResponseCode != 201) {
-            throw new HDIException(createResponse.getStatusLine().getReasonPhrase(), createResponseCode);
-        }
+    /**
+     * @return the length of the remote file, or -1 if it does not exist
+     */
+    public static long getFileLength(@NotNull IHDIStorageAccount storageAccount, @NotNull String remotePath) throws Exception {
+        JsonNode status = execute(storageAccount, new HttpGet(getOperationUrl(storageAccount, remotePath, RestOperatorEnum.GETFILESTATUS)));
+        return status == null ? -1 : status.path("FileStatus").path("length").asLong(-1);
+    }
 
-        HttpResponse appendResponse = appendFileToADLS(getAccessToken(storageAccount), getUrlWithOperatorConf(commonRestUrl, RestOperatorEnum.APPEND), localFile);
-        int appendResponseCode = appendResponse.getStatusLine().getStatusCode();
-        if(appendResponseCode != 200 && appendResponseCode != 201) {
-            throw new HDIException(appendResponse.getStatusLine().getReasonPhrase(), appendResponseCode);
+    /**
+     * @return the modification time in milliseconds of each child of the remote directory, empty if it does not exist
+     */
+    @NotNull
+    public static Map<String, Long> listModificationTimes(@NotNull IHDIStorageAccount storageAccount, @NotNull String remotePath) throws Exception {
+        Map<String, Long> children = new HashMap<>();
+        JsonNode list = execute(storageAccount, new HttpGet(getOperationUrl(storageAccount, remotePath, RestOperatorEnum.LISTSTATUS)));
+        if (list != null) {
+            for (JsonNode child : list.path("FileStatuses").path("FileStatus")) {
+                children.put(child.path("pathSuffix").asText(), child.path("modificationTime").asLong());
+            }
         }
+
+        return children;
     }
 
-    private static String getUrlWithOperatorConf(String restUrl, RestOperatorEnum operatorEnum) {
-        if(operatorEnum == RestOperatorEnum.CREATE) {
-            restUrl = restUrl.replace(UrlConfEnum.STOREOPERATOR.toString(), RestOperatorEnum.CREATE.toString());
-            restUrl = restUrl + "&overwrite=true&write=true";
-        } else {
-            restUrl = restUrl.replace(UrlConfEnum.STOREOPERATOR.toString(), RestOperatorEnum.APPEND.toString());
-            restUrl = restUrl + "&append=true";
+    public static void setModificationTime(@NotNull IHDIStorageAccount storageAccount, @NotNull String remotePath, long modificationTime) throws Exception {
+        String url = getOperationUrl(storageAccount, remotePath, RestOperatorEnum.SETTIMES) + "&modificationtime=" + modificationTime;
+        if (execute(storageAccount, new HttpPut(url)) == null) {
+            throw new HDIException("Failed to set the modification time of " + remotePath, 404);
         }
-        return restUrl;
     }
 
-    private static HttpResponse createFileOnADLS(@NotNull String accessToken, String url) throws IOException {
-        HttpPut httpPut = new HttpPut(url);
-        httpPut.addHeader("Content-Type ", "application/json");
-        httpPut.addHeader("Authorization", "Bearer " + accessToken);
-        return ADLS_CLIENT.execute(httpPut);
+    /**
+     * @return false if the remote path does not exist
+     */
+    public static boolean delete(@NotNull IHDIStorageAccount storageAccount, @NotNull String remotePath, boolean recursive) throws Exception {
+        String url = getOperationUrl(storageAccount, remotePath, RestOperatorEnum.DELETE) + "&recursive=" + recursive;
+        JsonNode result = execute(storageAccount, new HttpDelete(url));
+        return result != null && result.path("boolean").asBoolean();
+    }
+
+    private static String getOperationUrl(@NotNull IHDIStorageAccount storageAccount, @NotNull String remotePath, @NotNull RestOperatorEnum operator) {
+        return ADLS_REST_API_PATH.replace(UrlConfEnum.STORENAME.toString(), storageAccount.getName())
+                .replace(UrlConfEnum.STOREPATH.toString(), remotePath)
+                .replace(UrlConfEnum.STOREOPERATOR.toString(), operator.toString());
     }
 
-    private static HttpResponse appendFileToADLS(@NotNull String accessToken, String url, File localFile) throws IOException {
-        HttpPost httpPost = new HttpPost(url);
-        httpPost.addHeader("Content-Type", "application/json");
-        httpPost.addHeader("Authorization", "Bearer " + accessToken);
-        httpPost.setEntity(new InputStreamEntity(new FileInputStream(localFile), ContentType.APPLICATION_OCTET_STREAM));
-        return ADLS_CLIENT.execute(httpPost);
+    /**
+     * @return the response document, or null if the remote path does not exist
+     */
+    @Nullable
+    private static JsonNode execute(@NotNull IHDIStorageAccount storageAccount, @NotNull HttpRequestBase request) throws Exception {
+        request.setHeader("Authorization", "Bearer " + getAccessToken(storageAccount));
+        HttpResponse response = ADLS_CLIENT.execute(request);
+        try {
+            int code = response.getStatusLine().getStatusCode();
+            if (code == 404) {
+                return null;
+            } else if (code != 200) {
+                throw new HDIException(String.format("Failed to %s %s", request.getMethod(), request.getURI()), code);
+            }
+
+            return new ObjectMapper().readTree(EntityUtils.toString(response.getEntity()));
+        } finally {
+            EntityUtils.consume(response.getEntity());
+        }
     }
 
     private static String getAccessToken(@NotNull IHDIStorageAccount storageAccount) throws Exception {
@@ -0,0 +1,366 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.spark.common;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.microsoft.azure.hdinsight.sdk.storage.HDStorageAccount;
+import com.microsoft.azure.hdinsight.sdk.storage.IHDIStorageAccount;
+import com.microsoft.azure.hdinsight.sdk.storage.StorageAccountTypeEnum;
+import com.microsoft.azure.hdinsight.sdk.storage.adls.WebHDFSUtils;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.StringHelper;
+import com.microsoft.tooling.msservices.components.DefaultLoader;
+import com.microsoft.tooling.msservices.helpers.CallableSingleArg;
+import com.microsoft.tooling.msservices.helpers.IDEHelper;
+import com.microsoft.tooling.msservices.helpers.azure.sdk.StorageClientSDKManager;
+import com.microsoft.tooling.msservices.model.storage.BlobContainer;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the artifacts of Spark job submissions under SparkSubmission/artifacts/{sha256}/{file name} of the cluster
+ * storage, so a jar which has not changed since a previous submission is found by its content hash instead of being
+ * uploaded again. Using an artifact refreshes its last modified time. Removing the artifacts which were not used for
+ * a retention period is opt-in: it only runs in the background once the retention is set, and never touches anything
+ * outside SparkSubmission/artifacts/.
+ */
+public class SparkArtifactStore {
+    public static final String SPARK_SUBMISSION_FOLDER = "SparkSubmission";
+    public static final String ARTIFACTS_FOLDER = "artifacts";
+    /**
+     * IDE property with the number of days an unused artifact is kept, cleanup is disabled when it is not set
+     */
+    public static final String RETENTION_DAYS_PROPERTY = "com.microsoft.azure.hdinsight.SparkArtifactRetentionDays";
+    private static final long CLEANUP_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+    private static final String LAST_USED_METADATA = "lastused";
+    private static final int BLOB_BLOCK_SIZE = 1024 * 1024;
+
+    private static final Logger LOG = Logger.getLogger(SparkArtifactStore.class);
+    private static final SparkArtifactStore instance = new SparkArtifactStore();
+
+    public static SparkArtifactStore getInstance() {
+        return instance;
+    }
+
+    public static class Artifact {
+        private final File localFile;
+        private final IHDIStorageAccount storageAccount;
+        private final String hash;
+        private final String remotePath;
+        private final String uri;
+        private boolean stored;
+
+        private Artifact(@NotNull File localFile, @NotNull IHDIStorageAccount storageAccount, @NotNull String hash,
+                         @NotNull String remotePath, @NotNull String uri) {
+            this.localFile = localFile;
+            this.storageAccount = storageAccount;
+            this.hash = hash;
+            this.remotePath = remotePath;
+            this.uri = uri;
+        }
+
+        @NotNull
+        public File getLocalFile() {
+            return localFile;
+        }
+
+        @NotNull
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return the uri the cluster reads the artifact from, eg wasb://container@account.blob.core.windows.net/path
+         */
+        @NotNull
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return true if the artifact is already in the storage and needs no upload
+         */
+        public boolean isStored() {
+            return stored;
+        }
+    }
+
+    private static class FileHash {
+        private final long length;
+        private final long lastModified;
+        private final String hash;
+
+        private FileHash(long length, long lastModified, @NotNull String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Map<String, FileHash> fileHashes = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastCleanupTimes = new ConcurrentHashMap<>();
+    private final Set<String> usedHashes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("spark-artifact-cleanup-%d").setDaemon(true).build());
+    private volatile long retentionMs = 0;
+
+    private SparkArtifactStore() {
+    }
+
+    /**
+     * @param retentionMs : how long an unused artifact is kept, 0 to fall back to {@link #RETENTION_DAYS_PROPERTY}
+     */
+    public void setRetentionMs(long retentionMs) {
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * @return how long an unused artifact is kept, 0 if the artifacts are never removed
+     */
+    public long getRetentionMs() {
+        if (retentionMs > 0) {
+            return retentionMs;
+        }
+
+        IDEHelper ideHelper = DefaultLoader.getIdeHelper();
+        String days = ideHelper == null ? null : ideHelper.getProperty(RETENTION_DAYS_PROPERTY);
+        if (StringHelper.isNullOrWhiteSpace(days)) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, TimeUnit.DAYS.toMillis(Long.parseLong(days.trim())));
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring the invalid " + RETENTION_DAYS_PROPERTY + " value " + days);
+            return 0;
+        }
+    }
+
+    /**
+     * Uploads the file unless the storage already has an artifact with the same content
+     * @return the uri the cluster reads the artifact from
+     */
+    @NotNull
+    public String upload(@NotNull File localFile, @NotNull IHDIStorageAccount storageAccount) throws Exception {
+        Artifact artifact = locate(localFile, storageAccount);
+        if (!artifact.isStored()) {
+            upload(artifact);
+        }
+
+        return artifact.getUri();
+    }
+
+    /**
+     * Finds where the file is stored by its content hash, and refreshes the last used time of the stored artifact
+     */
+    @NotNull
+    public Artifact locate(@NotNull File localFile, @NotNull IHDIStorageAccount storageAccount) throws Exception {
+        String hash = getHash(localFile);
+        usedHashes.add(hash);
+
+        String folder = String.format("%s/%s/%s", SPARK_SUBMISSION_FOLDER, ARTIFACTS_FOLDER, hash);
+        Artifact artifact;
+        if (storageAccount.getAccountType() == StorageAccountTypeEnum.BLOB) {
+            HDStorageAccount blobStorageAccount = (HDStorageAccount) storageAccount;
+            String path = String.format("%s/%s", folder, localFile.getName());
+            artifact = new Artifact(localFile, storageAccount, hash, path, String.format("wasb://%s@%s/%s",
+                    blobStorageAccount.getDefaultContainer(), blobStorageAccount.getFullStorageBlobName(), path));
+            artifact.stored = refreshBlob(blobStorageAccount, path, localFile.length());
+        } else if (storageAccount.getAccountType() == StorageAccountTypeEnum.ADLS) {
+            String rootPath = getADLSRootPath(storageAccount);
+            String path = String.format("%s%s/%s", rootPath, folder, localFile.getName());
+            artifact = new Artifact(localFile, storageAccount, hash, path,
+                    String.format("adl://%s.azuredatalakestore.net/%s", storageAccount.getName(), path));
+            artifact.stored = refreshADLSFile(storageAccount, rootPath + folder, path, localFile.length());
+        } else {
+            throw new UnsupportedOperationException("unknown storage account type");
+        }
+
+        scheduleCleanup(storageAccount);
+        return artifact;
+    }
+
+    public void upload(@NotNull Artifact artifact) throws Exception {
+        IHDIStorageAccount storageAccount = artifact.storageAccount;
+        if (storageAccount.getAccountType() == StorageAccountTypeEnum.BLOB) {
+            HDStorageAccount blobStorageAccount = (HDStorageAccount) storageAccount;
+            try (InputStream inputStream = new BufferedInputStream(new FileInputStream(artifact.localFile))) {
+                StorageClientSDKManager.getManager().uploadBlobFileContent(
+                        blobStorageAccount.getConnectionString(),
+                        getBlobContainer(blobStorageAccount),
+                        artifact.remotePath,
+                        inputStream,
+                        new CallableSingleArg<Void, Long>() {
+                            @Override
+                            public Void call(Long uploadedBytes) throws Exception {
+                                return null;
+                            }
+                        },
+                        BLOB_BLOCK_SIZE,
+                        artifact.localFile.length());
+            }
+        } else {
+            WebHDFSUtils.uploadFileToADLS(storageAccount, artifact.localFile, artifact.remotePath, true);
+        }
+
+        artifact.stored = true;
+    }
+
+    /**
+     * Removes the artifacts which were not used for the retention period, at most once a day for each storage,
+     * unless no retention is configured
+     */
+    public void scheduleCleanup(@NotNull final IHDIStorageAccount storageAccount) {
+        final long retention = getRetentionMs();
+        if (retention <= 0) {
+            return;
+        }
+
+        final String key = storageAccount.getName() + "|" + storageAccount.getDefaultContainerOrRootPath();
+        long now = System.currentTimeMillis();
+        Long lastCleanupTime = lastCleanupTimes.get(key);
+        if (lastCleanupTime != null && now - lastCleanupTime < CLEANUP_INTERVAL_MS) {
+            return;
+        }
+
+        if (lastCleanupTime == null ? lastCleanupTimes.putIfAbsent(key, now) != null : !lastCleanupTimes.replace(key, lastCleanupTime, now)) {
+            return;
+        }
+
+        cleanupExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cleanup(storageAccount, System.currentTimeMillis() - retention);
+                } catch (Exception e) {
+                    LOG.warn("Failed to clean up the Spark artifacts of " + key, e);
+                }
+            }
+        });
+    }
+
+    void cleanup(@NotNull IHDIStorageAccount storageAccount, long before) throws Exception {
+        if (storageAccount.getAccountType() == StorageAccountTypeEnum.BLOB) {
+            HDStorageAccount blobStorageAccount = (HDStorageAccount) storageAccount;
+            // conditional on the last modified time, so an artifact refreshed by a concurrent submission is kept
+            StorageClientSDKManager.getManager().deleteBlobsModifiedBefore(blobStorageAccount.getConnectionString(),
+                    blobStorageAccount.getDefaultContainer(), SPARK_SUBMISSION_FOLDER + "/" + ARTIFACTS_FOLDER + "/",
+                    new Date(before));
+        } else if (storageAccount.getAccountType() == StorageAccountTypeEnum.ADLS) {
+            String artifactsPath = getADLSRootPath(storageAccount) + SPARK_SUBMISSION_FOLDER + "/" + ARTIFACTS_FOLDER;
+            for (Map.Entry<String, Long> child : WebHDFSUtils.listModificationTimes(storageAccount, artifactsPath).entrySet()) {
+                if (!usedHashes.contains(child.getKey()) && child.getValue() < before) {
+                    WebHDFSUtils.delete(storageAccount, artifactsPath + "/" + child.getKey(), true);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the SHA-256 of the file content, computed again only when the file has changed
+     */
+    @NotNull
+    String getHash(@NotNull File localFile) throws IOException {
+        String key = localFile.getAbsolutePath();
+        long length = localFile.length();
+        long lastModified = localFile.lastModified();
+        FileHash cached = fileHashes.get(key);
+        if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+            return cached.hash;
+        }
+
+        String hash = Files.hash(localFile, Hashing.sha256()).toString();
+        fileHashes.put(key, new FileHash(length, lastModified, hash));
+        return hash;
+    }
+
+    /**
+     * A blob only becomes visible once its block list is committed, so one with the expected length is complete
+     */
+    private boolean refreshBlob(@NotNull HDStorageAccount storageAccount, @NotNull String path, long length) {
+        try {
+            StorageClientSDKManager manager = StorageClientSDKManager.getManager();
+            if (manager.getBlobLength(storageAccount.getConnectionString(), storageAccount.getDefaultContainer(), path) != length) {
+                return false;
+            }
+
+            manager.setBlobMetadata(storageAccount.getConnectionString(), storageAccount.getDefaultContainer(), path,
+                    LAST_USED_METADATA, String.valueOf(System.currentTimeMillis()));
+            return true;
+        } catch (Exception e) {
+            LOG.warn("Failed to look up the stored artifact " + path, e);
+            return false;
+        }
+    }
+
+    /**
+     * An interrupted upload leaves a shorter file behind, so only a file with the expected length is reused
+     */
+    private boolean refreshADLSFile(@NotNull IHDIStorageAccount storageAccount, @NotNull String folder, @NotNull String path, long length) {
+        try {
+            if (WebHDFSUtils.getFileLength(storageAccount, path) != length) {
+                return false;
+            }
+
+            WebHDFSUtils.setModificationTime(storageAccount, folder, System.currentTimeMillis());
+            return true;
+        } catch (Exception e) {
+            LOG.warn("Failed to look up the stored artifact " + path, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the root path of the storage in format: path_name/
+     */
+    @NotNull
+    private static String getADLSRootPath(@NotNull IHDIStorageAccount storageAccount) {
+        String rootPath = storageAccount.getDefaultContainerOrRootPath();
+        return rootPath.startsWith("/") ? rootPath.substring(1) : rootPath;
+    }
+
+    @NotNull
+    private static BlobContainer getBlobContainer(@NotNull HDStorageAccount storageAccount) throws Exception {
+        for (BlobContainer container : StorageClientSDKManager.getManager().getBlobContainers(storageAccount.getConnectionString())) {
+            if (container.getName().equalsIgnoreCase(storageAccount.getDefaultContainer())) {
+                return container;
+            }
+        }
+
+        throw new IOException("Can't find the default container " + storageAccount.getDefaultContainer());
+    }
+}
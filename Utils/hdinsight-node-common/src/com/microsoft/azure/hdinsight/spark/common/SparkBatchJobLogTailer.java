@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.spark.common;
+
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.microsoft.azure.hdinsight.sdk.common.HttpResponse;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tails the Livy log of a batch job: every fetch only asks Livy for the lines after the last
+ * one already seen, in pages of at most {@code pageSize} lines, so a long running job does not
+ * re-download its whole log on each poll. When the job is followed, the job state comes from
+ * {@link SparkBatchJobMonitor} and the log is fetched on a small shared pool of log threads, so
+ * a slow Livy log never holds up the monitor threads polling the other jobs.
+ */
+public class SparkBatchJobLogTailer {
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_MAX_PAGES_PER_POLL = 10;
+
+    private static final Logger LOG = Logger.getLogger(SparkBatchJobLogTailer.class);
+    private static final int LOG_FETCH_THREADS = 4;
+
+    /**
+     * A followed job has at most one periodic fetch and its final fetch waiting, so the queue stays within
+     * twice the number of followed jobs
+     */
+    private static final ThreadPoolExecutor logFetchExecutor = new ThreadPoolExecutor(
+            LOG_FETCH_THREADS, LOG_FETCH_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("spark-job-log-%d").setDaemon(true).build());
+
+    static {
+        logFetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public interface LogLinesListener {
+        /**
+         * Called for every page of new log lines, in log order.
+         * @param lines : new lines, at most one page
+         * @param fromIndex : index of the first line in the Livy log
+         */
+        void onLogLines(List<String> lines, int fromIndex);
+    }
+
+    /**
+     * Log lines and the end of a followed job, called on a log thread except for {@link #onStateChanged}
+     */
+    public interface JobLogListener extends LogLinesListener {
+        /**
+         * Called on a monitor thread when a poll found a new state
+         */
+        void onStateChanged(@NotNull String state);
+
+        /**
+         * Checked after every poll, the job stops being followed once it returns true, eg after the job was killed
+         */
+        boolean isCancelled();
+
+        /**
+         * Called once, after the last log lines
+         * @param finalState : the final state, or null if the job was cancelled or could not be followed
+         * @param failure : why the job could not be followed, or null
+         */
+        void onFinished(@Nullable String finalState, @Nullable Exception failure);
+    }
+
+    private final String connectUrl;
+    private final int batchId;
+    private final int pageSize;
+    private final int maxPagesPerPoll;
+    private final AtomicBoolean isFetchQueued = new AtomicBoolean(false);
+    private final AtomicBoolean isFinishing = new AtomicBoolean(false);
+
+    private int lastIndex = 0;
+
+    public SparkBatchJobLogTailer(String connectUrl, int batchId) {
+        this(connectUrl, batchId, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES_PER_POLL);
+    }
+
+    public SparkBatchJobLogTailer(String connectUrl, int batchId, int pageSize, int maxPagesPerPoll) {
+        if (pageSize <= 0 || maxPagesPerPoll <= 0) {
+            throw new IllegalArgumentException("Page size and pages per poll must be positive");
+        }
+
+        this.connectUrl = connectUrl;
+        this.batchId = batchId;
+        this.pageSize = pageSize;
+        this.maxPagesPerPoll = maxPagesPerPoll;
+    }
+
+    /**
+     * Tracks the job with the job monitor and fetches up to {@code maxPagesPerPoll} pages of new lines after
+     * each poll, skipping the poll while the previous fetch is still running. Once the job reaches a final
+     * state the remaining lines are fetched and the listener is told the job has finished.
+     * Returns at once, a tailer follows its job only once.
+     */
+    public void follow(@NotNull final JobLogListener listener) {
+        SparkBatchJobMonitor.getInstance().track(connectUrl, batchId, new SparkBatchJobMonitor.JobStateListener() {
+            @Override
+            public void onPolled(@NotNull final SparkBatchJobMonitor.TrackedJob job) {
+                if (listener.isCancelled()) {
+                    job.cancel();
+                    finish(listener, null, null, false);
+                } else if (job.isFinished()) {
+                    // Livy has dropped the log of a batch it no longer knows
+                    finish(listener, job.getState(), null, !SparkBatchJobMonitor.STATE_NOT_FOUND.equals(job.getState()));
+                } else if (isFetchQueued.compareAndSet(false, true)) {
+                    logFetchExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                if (!isFinishing.get()) {
+                                    fetchNewLines(listener, maxPagesPerPoll);
+                                }
+                            } catch (IOException e) {
+                                job.cancel();
+                                finish(listener, null, e, false);
+                            } finally {
+                                isFetchQueued.set(false);
+                            }
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onStateChanged(@NotNull SparkBatchJobMonitor.TrackedJob job, @Nullable String previousState) {
+                listener.onStateChanged(job.getState());
+            }
+
+            @Override
+            public void onPollFailed(@NotNull SparkBatchJobMonitor.TrackedJob job, @NotNull Exception exception) {
+                finish(listener, null, new IOException(String.format("Failed to get status of batch %d", batchId), exception), false);
+            }
+        });
+    }
+
+    private void finish(@NotNull final JobLogListener listener,
+                        @Nullable final String finalState,
+                        @Nullable final Exception failure,
+                        final boolean isFetchingRest) {
+        if (!isFinishing.compareAndSet(false, true)) {
+            return;
+        }
+
+        logFetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception finishFailure = failure;
+                if (isFetchingRest) {
+                    try {
+                        fetchNewLines(listener, Integer.MAX_VALUE);
+                    } catch (IOException e) {
+                        finishFailure = e;
+                    }
+                }
+
+                try {
+                    listener.onFinished(finishFailure == null ? finalState : null, finishFailure);
+                } catch (Exception e) {
+                    LOG.warn("Spark job log listener failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches the lines after the last seen one, until Livy has no more or {@code maxPages} pages were read.
+     * @return number of new lines
+     */
+    public synchronized int fetchNewLines(LogLinesListener listener, int maxPages) throws IOException {
+        int fetched = 0;
+        for (int page = 0; page < maxPages; page++) {
+            HttpResponse response = SparkBatchSubmission.getInstance().getBatchJobLog(connectUrl, batchId, lastIndex, pageSize);
+            if (response.getCode() != 200) {
+                throw new IOException(String.format("Failed to get log of batch %d from %d. error code : %d, reason : %s",
+                        batchId, lastIndex, response.getCode(), response.getContent()));
+            }
+
+            SparkJobLog jobLog = new Gson().fromJson(response.getMessage(), new TypeToken<SparkJobLog>() {
+            }.getType());
+            if (jobLog == null || jobLog.getLog() == null || jobLog.getLog().isEmpty()) {
+                break;
+            }
+
+            List<String> lines = jobLog.getLog();
+            listener.onLogLines(lines, lastIndex);
+            lastIndex += lines.size();
+            fetched += lines.size();
+
+            if (lines.size() < pageSize || lastIndex >= jobLog.getTotal()) {
+                break;
+            }
+        }
+
+        return fetched;
+    }
+
+    public static boolean isFinalState(String state) {
+        return isFailedState(state) || "success".equals(state);
+    }
+
+    public static boolean isFailedState(String state) {
+        return "error".equals(state) || "dead".equals(state);
+    }
+
+    public synchronized int getLastIndex() {
+        return lastIndex;
+    }
+}
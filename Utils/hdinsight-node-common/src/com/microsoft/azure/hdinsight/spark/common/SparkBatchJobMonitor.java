@@ -0,0 +1,360 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.spark.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.microsoft.azure.hdinsight.sdk.common.HttpResponse;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the state of Livy batch jobs. All the jobs tracked on one Livy endpoint share a single poll, which lists
+ * the batches with one request and asks for a batch on its own only when it is missing from the list. The poll
+ * interval drops to the minimum whenever a job changes state, and otherwise doubles up to a cap that is lower
+ * while a job is still starting.
+ */
+public class SparkBatchJobMonitor {
+    public static final long MIN_POLL_INTERVAL_MS = 1000;
+    public static final long STARTING_MAX_POLL_INTERVAL_MS = 3000;
+    public static final long MAX_POLL_INTERVAL_MS = 10000;
+    public static final int MAX_CONSECUTIVE_FAILURES = 10;
+    public static final int BATCH_LIST_SIZE = 100;
+
+    /**
+     * The state of a batch Livy doesn't know, eg after it was killed
+     */
+    public static final String STATE_NOT_FOUND = "not_found";
+
+    private static final Logger LOG = Logger.getLogger(SparkBatchJobMonitor.class);
+    private static final int POLL_THREADS = 2;
+    private static final SparkBatchJobMonitor instance = new SparkBatchJobMonitor();
+
+    public static SparkBatchJobMonitor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Listener methods are called on a monitor thread, so they should not block for long
+     */
+    public interface JobStateListener {
+        /**
+         * Called after every poll of the job, including the one which found its final state
+         */
+        void onPolled(@NotNull TrackedJob job);
+
+        /**
+         * Called before {@link #onPolled} when the poll found a new state
+         */
+        void onStateChanged(@NotNull TrackedJob job, @Nullable String previousState);
+
+        /**
+         * Called when the job could not be polled {@link #MAX_CONSECUTIVE_FAILURES} times in a row,
+         * after which it is no longer tracked
+         */
+        void onPollFailed(@NotNull TrackedJob job, @NotNull Exception exception);
+    }
+
+    public class TrackedJob {
+        private final String connectUrl;
+        private final int batchId;
+        private final JobStateListener listener;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile String state;
+        private int consecutiveFailures = 0;
+
+        private TrackedJob(@NotNull String connectUrl, int batchId, @NotNull JobStateListener listener) {
+            this.connectUrl = connectUrl;
+            this.batchId = batchId;
+            this.listener = listener;
+        }
+
+        public int getBatchId() {
+            return batchId;
+        }
+
+        /**
+         * @return the last polled state in lower case, or null before the first poll
+         */
+        @Nullable
+        public String getState() {
+            return state;
+        }
+
+        public boolean isFinished() {
+            return isFinalState(state);
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Stops tracking the job
+         */
+        public void cancel() {
+            untrack(this);
+        }
+    }
+
+    private static class BatchList {
+        private int total;
+        private List<SparkSubmitResponse> sessions;
+    }
+
+    private class ClusterPoller implements Runnable {
+        private final String connectUrl;
+        private final Map<Integer, TrackedJob> jobs = new HashMap<>();
+        private long intervalMs = MIN_POLL_INTERVAL_MS;
+        private boolean isPollSoon = false;
+        private ScheduledFuture<?> nextPoll;
+        private int lastTotal = 0;
+
+        private ClusterPoller(@NotNull String connectUrl) {
+            this.connectUrl = connectUrl;
+        }
+
+        @Override
+        public void run() {
+            boolean isChanged = false;
+            try {
+                isChanged = poll();
+            } catch (Throwable t) {
+                LOG.warn("Failed to poll the Spark jobs of " + connectUrl, t);
+            } finally {
+                // an exception from a scheduled task would silently end the polling
+                schedule(isChanged);
+            }
+        }
+
+        /**
+         * @return true if any job has changed state
+         */
+        private boolean poll() {
+            List<TrackedJob> polledJobs;
+            synchronized (SparkBatchJobMonitor.this) {
+                polledJobs = new ArrayList<>(jobs.values());
+            }
+
+            boolean isChanged = false;
+            Map<Integer, String> states = new HashMap<>();
+            Exception listFailure = null;
+            try {
+                states = listStates();
+            } catch (Exception e) {
+                listFailure = e;
+            }
+
+            for (TrackedJob job : polledJobs) {
+                try {
+                    String state = listFailure == null ? states.get(job.batchId) : null;
+                    if (state == null) {
+                        state = getState(job.batchId);
+                    }
+
+                    job.consecutiveFailures = 0;
+                    isChanged |= update(job, state);
+                } catch (Exception e) {
+                    if (++job.consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                        untrack(job);
+                        try {
+                            job.listener.onPollFailed(job, e);
+                        } catch (Exception listenerException) {
+                            LOG.warn("Spark job listener failed", listenerException);
+                        }
+                    }
+                }
+            }
+
+            return isChanged;
+        }
+
+        /**
+         * @return true if the state has changed
+         */
+        private boolean update(@NotNull TrackedJob job, @NotNull String state) {
+            String previousState = job.state;
+            job.state = state;
+            boolean isChanged = !state.equals(previousState);
+            try {
+                if (isChanged) {
+                    job.listener.onStateChanged(job, previousState);
+                }
+
+                job.listener.onPolled(job);
+            } catch (Exception e) {
+                LOG.warn("Spark job listener failed", e);
+            }
+
+            if (isFinalState(state)) {
+                untrack(job);
+            }
+
+            return isChanged;
+        }
+
+        private void schedule(boolean isChanged) {
+            synchronized (SparkBatchJobMonitor.this) {
+                if (jobs.isEmpty()) {
+                    pollers.remove(connectUrl);
+                    return;
+                }
+
+                long maxIntervalMs = MAX_POLL_INTERVAL_MS;
+                for (TrackedJob job : jobs.values()) {
+                    if (job.state == null || isStartingState(job.state)) {
+                        maxIntervalMs = STARTING_MAX_POLL_INTERVAL_MS;
+                    }
+                }
+
+                intervalMs = isChanged || isPollSoon ? MIN_POLL_INTERVAL_MS : Math.min(intervalMs * 2, maxIntervalMs);
+                isPollSoon = false;
+                nextPoll = scheduler.schedule(this, intervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Lists the latest batches, the ones most likely to be tracked
+         * @return the states by batch id
+         */
+        @NotNull
+        private Map<Integer, String> listStates() throws IOException {
+            String url = String.format("%s?from=%d&size=%d", connectUrl, Math.max(0, lastTotal - BATCH_LIST_SIZE), BATCH_LIST_SIZE);
+            HttpResponse response = SparkBatchSubmission.getInstance().getAllBatchesSparkJobs(url);
+            if (response.getCode() != 200) {
+                throw new IOException(String.format("Failed to list batches. error code : %d, reason : %s",
+                        response.getCode(), response.getContent()));
+            }
+
+            BatchList batchList = gson.fromJson(response.getMessage(), BatchList.class);
+            Map<Integer, String> states = new HashMap<>();
+            if (batchList != null && batchList.sessions != null) {
+                lastTotal = batchList.total;
+                for (SparkSubmitResponse batch : batchList.sessions) {
+                    if (batch.getState() != null) {
+                        states.put(batch.getId(), batch.getState().toLowerCase());
+                    }
+                }
+            }
+
+            return states;
+        }
+
+        @NotNull
+        private String getState(int batchId) throws IOException {
+            HttpResponse response = SparkBatchSubmission.getInstance().getBatchSparkJobStatus(connectUrl, batchId);
+            if (response.getCode() == 404) {
+                return STATE_NOT_FOUND;
+            }
+
+            SparkSubmitResponse status = gson.fromJson(response.getMessage(), SparkSubmitResponse.class);
+            if (status == null || status.getState() == null) {
+                throw new IOException(String.format("Failed to get status of batch %d. error code : %d, reason : %s",
+                        batchId, response.getCode(), response.getContent()));
+            }
+
+            return status.getState().toLowerCase();
+        }
+    }
+
+    private final Gson gson = new Gson();
+    private final Map<String, ClusterPoller> pollers = new HashMap<>();
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(POLL_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("spark-job-monitor-%d").setDaemon(true).build());
+
+    private SparkBatchJobMonitor() {
+    }
+
+    /**
+     * Starts tracking a batch job until it reaches a final state
+     * @param connectUrl : eg http://localhost:8998/batches
+     */
+    @NotNull
+    public synchronized TrackedJob track(@NotNull String connectUrl, int batchId, @NotNull JobStateListener listener) {
+        TrackedJob job = new TrackedJob(connectUrl, batchId, listener);
+        ClusterPoller poller = pollers.get(connectUrl);
+        if (poller == null) {
+            poller = new ClusterPoller(connectUrl);
+            pollers.put(connectUrl, poller);
+            poller.jobs.put(batchId, job);
+            scheduler.submit(poller);
+        } else {
+            TrackedJob previousJob = poller.jobs.put(batchId, job);
+            if (previousJob != null) {
+                previousJob.done.countDown();
+            }
+
+            // poll soon for the new job rather than at the end of a long interval
+            if (poller.nextPoll != null && poller.nextPoll.getDelay(TimeUnit.MILLISECONDS) > MIN_POLL_INTERVAL_MS
+                    && poller.nextPoll.cancel(false)) {
+                poller.intervalMs = MIN_POLL_INTERVAL_MS;
+                poller.nextPoll = scheduler.schedule(poller, MIN_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } else {
+                poller.isPollSoon = true;
+            }
+        }
+
+        return job;
+    }
+
+    /**
+     * @return the number of tracked jobs by Livy endpoint
+     */
+    @NotNull
+    public synchronized Map<String, Integer> getTrackedJobCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (ClusterPoller poller : pollers.values()) {
+            counts.put(poller.connectUrl, poller.jobs.size());
+        }
+
+        return counts;
+    }
+
+    private synchronized void untrack(@NotNull TrackedJob job) {
+        ClusterPoller poller = pollers.get(job.connectUrl);
+        if (poller != null && poller.jobs.get(job.batchId) == job) {
+            poller.jobs.remove(job.batchId);
+        }
+
+        job.done.countDown();
+    }
+
+    public static boolean isFinalState(@Nullable String state) {
+        return SparkBatchJobLogTailer.isFinalState(state) || STATE_NOT_FOUND.equals(state);
+    }
+
+    public static boolean isStartingState(@Nullable String state) {
+        return "not_started".equals(state) || "starting".equals(state);
+    }
+}
@@ -23,20 +23,19 @@ package com.microsoft.azure.hdinsight.spark.common;
 
 import com.microsoft.azure.hdinsight.common.HDInsightLoader;
 import com.microsoft.azure.hdinsight.common.StreamUtil;
+import com.microsoft.azure.hdinsight.sdk.common.HttpClientPool;
 import com.microsoft.azure.hdinsight.sdk.common.HttpResponse;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SparkBatchSubmission {
 
@@ -64,19 +63,33 @@ public class SparkBatchSubmission {
         return instance;
     }
 
-    private CredentialsProvider credentialsProvider =  new BasicCredentialsProvider();
+    // keyed by cluster endpoint, so the jobs of several clusters can be monitored at the same time
+    private final ConcurrentMap<String, UsernamePasswordCredentials> credentials = new ConcurrentHashMap<>();
 
     /**
-     * Set http request credential using username and password
+     * Set http request credential of a cluster endpoint using username and password
+     * @param connectUrl : any url of the cluster endpoint, eg http://localhost:8998/batches
      * @param username : username
      * @param password : password
      */
-    public void setCredentialsProvider(String username, String password){
-        credentialsProvider.setCredentials(new AuthScope(AuthScope.ANY), new UsernamePasswordCredentials(username, password));
+    public void setCredentialsProvider(String connectUrl, String username, String password){
+        credentials.put(HttpClientPool.getEndpoint(connectUrl), new UsernamePasswordCredentials(username, password));
+    }
+
+    /**
+     * Get the pooled http client of the cluster endpoint, which keeps its connections alive between requests
+     * @param connectUrl : eg http://localhost:8998/batches
+     * @return the shared client, not to be closed by the caller
+     */
+    private CloseableHttpClient getHttpClient(String connectUrl) {
+        UsernamePasswordCredentials endpointCredentials = credentials.get(HttpClientPool.getEndpoint(connectUrl));
+        return endpointCredentials == null
+                ? HttpClientPool.getInstance().getClient(connectUrl, null, null)
+                : HttpClientPool.getInstance().getClient(connectUrl, endpointCredentials.getUserName(), endpointCredentials.getPassword());
     }
 
     public HttpResponse getHttpResponseViaGet(String connectUrl) throws IOException {
-        CloseableHttpClient httpclient = HttpClients.custom().setDefaultCredentialsProvider(credentialsProvider).build();
+        CloseableHttpClient httpclient = getHttpClient(connectUrl);
 
         HttpGet httpGet = new HttpGet(connectUrl);
         httpGet.addHeader("Content-Type", "application/json");
@@ -104,7 +117,7 @@ public class SparkBatchSubmission {
      * @return response result
      */
     public HttpResponse createBatchSparkJob(String connectUrl, SparkSubmissionParameter submissionParameter)throws IOException{
-        CloseableHttpClient httpclient = HttpClients.custom().setDefaultCredentialsProvider(credentialsProvider).build();
+        CloseableHttpClient httpclient = getHttpClient(connectUrl);
         HttpPost httpPost = new HttpPost(connectUrl);
         httpPost.addHeader("Content-Type", "application/json");
         httpPost.addHeader("User-Agent", userAgentName);
@@ -134,7 +147,7 @@ public class SparkBatchSubmission {
      * @throws IOException
      */
     public HttpResponse killBatchJob(String connectUrl, int batchId)throws IOException {
-        CloseableHttpClient httpclient = HttpClients.custom().setDefaultCredentialsProvider(credentialsProvider).build();
+        CloseableHttpClient httpclient = getHttpClient(connectUrl);
         HttpDelete httpDelete = new HttpDelete(connectUrl +  "/" + batchId);
         httpDelete.addHeader("User-Agent", userAgentName);
         httpDelete.addHeader("Content-Type", "application/json");
@@ -152,6 +165,19 @@ public class SparkBatchSubmission {
      * @throws IOException
      */
     public HttpResponse getBatchJobFullLog(String connectUrl, int batchId)throws IOException {
-        return getHttpResponseViaGet(String.format("%s/%d/log?from=%d&size=%d", connectUrl, batchId, 0, Integer.MAX_VALUE));
+        return getBatchJobLog(connectUrl, batchId, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * get a page of batch job log
+     * @param connectUrl : eg http://localhost:8998/batches
+     * @param batchId : batch Id
+     * @param from : index of the first log line to return
+     * @param size : max number of log lines to return
+     * @return response result
+     * @throws IOException
+     */
+    public HttpResponse getBatchJobLog(String connectUrl, int batchId, int from, int size)throws IOException {
+        return getHttpResponseViaGet(String.format("%s/%d/log?from=%d&size=%d", connectUrl, batchId, from, size));
     }
 }
@@ -145,6 +145,10 @@ public class SparkSubmissionParameter {
         this.file = filePath;
     }
 
+    public void setReferencedJars(List<String> jars) {
+        this.jars = jars;
+    }
+
     public static List<SparkSubmissionJobConfigCheckResult> checkJobConfigMap(Map<String, Object> jobConfigMap) {
 
         List<SparkSubmissionJobConfigCheckResult> messageList = new ArrayList<>();
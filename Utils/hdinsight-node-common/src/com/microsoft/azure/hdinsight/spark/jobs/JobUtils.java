@@ -28,7 +28,7 @@ import com.microsoft.azure.hdinsight.common.HDInsightHelper;
 import com.microsoft.azure.hdinsight.common.HDInsightLoader;
 import com.microsoft.azure.hdinsight.common.JobViewManager;
 import com.microsoft.azure.hdinsight.sdk.cluster.IClusterDetail;
-import com.microsoft.azure.hdinsight.spark.jobs.framework.RequestDetail;
+import com.microsoft.azure.hdinsight.spark.jobs.analytics.SparkEventLogAnalyzer;
 import com.microsoft.azure.hdinsight.spark.jobs.livy.LivyBatchesInformation;
 import com.microsoft.azure.hdinsight.spark.jobs.livy.LivySession;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
@@ -39,21 +39,27 @@ import javafx.application.Application;
 import javafx.stage.Stage;
 import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpEntity;
+import org.apache.log4j.Logger;
 
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /*
     this class is pass to Web Page when load html from WebEngin
     non-related web page action should not be here.
  */
 public class JobUtils {
+    private static final Logger LOG = Logger.getLogger(JobUtils.class);
+
     private static String defaultYarnUIHistoryFormat = "https://%s.azurehdinsight.net/yarnui/hn/cluster";
     private static String yarnUIHisotryFormat = "https://%s.azurehdinsight.net/yarnui/hn/cluster/app/%s";
 
@@ -63,6 +69,7 @@ public class JobUtils {
 
     private static final String JobLogFolderName = "SparkJobLog";
     private static final String SPARK_EVENT_LOG_FOLDER_NAME = "SparkEventLog";
+    private static final Pattern APPLICATION_ID_PATTERN = Pattern.compile("application_\\d+_\\d+");
 
     public static URI getLivyLogPath(@NotNull String rootPath, @NotNull String applicationId) {
         String path = StringHelper.concat(rootPath, File.separator, JobLogFolderName, File.separator, applicationId);
@@ -96,24 +103,34 @@ public class JobUtils {
         return result;
     }
 
-    public void openYarnUIHistory(String applicationId) {
-        RequestDetail requestDetail = JobViewDummyHttpServer.getCurrentRequestDetail();
+    public void openYarnUIHistory(String uuid, String applicationId) {
+        IClusterDetail clusterDetail = JobViewManager.getCluster(uuid);
+        if (clusterDetail == null) {
+            DefaultLoader.getUIHelper().showError("Unknown cluster " + uuid, "Open YARN UI Error");
+            return;
+        }
+
         String yarnHistoryUrl = null;
         if(StringHelper.isNullOrWhiteSpace(applicationId)) {
-            yarnHistoryUrl = String.format(defaultYarnUIHistoryFormat, requestDetail.getClusterDetail().getName());
+            yarnHistoryUrl = String.format(defaultYarnUIHistoryFormat, clusterDetail.getName());
         } else {
-            yarnHistoryUrl = String.format(yarnUIHisotryFormat, requestDetail.getClusterDetail().getName(), applicationId);
+            yarnHistoryUrl = String.format(yarnUIHisotryFormat, clusterDetail.getName(), applicationId);
         }
         openDefaultBrowser(yarnHistoryUrl);
     }
 
-    public void openSparkUIHistory(String applicationId) {
-        RequestDetail requestDetail = JobViewDummyHttpServer.getCurrentRequestDetail();
+    public void openSparkUIHistory(String uuid, String applicationId) {
+        IClusterDetail clusterDetail = JobViewManager.getCluster(uuid);
+        if (clusterDetail == null) {
+            DefaultLoader.getUIHelper().showError("Unknown cluster " + uuid, "Open Spark UI Error");
+            return;
+        }
+
         String sparkHistoryUrl = null;
         if(StringHelper.isNullOrWhiteSpace(applicationId)) {
-            sparkHistoryUrl = String.format(defaultSparkUIHistoryFormat, requestDetail.getClusterDetail().getName());
+            sparkHistoryUrl = String.format(defaultSparkUIHistoryFormat, clusterDetail.getName());
         } else {
-            sparkHistoryUrl = String.format(sparkUIHistoryFormat, requestDetail.getClusterDetail().getName(), applicationId);
+            sparkHistoryUrl = String.format(sparkUIHistoryFormat, clusterDetail.getName(), applicationId);
         }
 
         openDefaultBrowser(sparkHistoryUrl);
@@ -146,23 +163,105 @@ public class JobUtils {
     private static final String Event_LOG_FILE_NAME = "eventLogs.zip";
 
     public void openSparkEventLog(String uuid, String applicationId) {
-        IClusterDetail clusterDetail = JobViewManager.getCluster(uuid);
-        String path = StringHelper.concat(HDInsightLoader.getHDInsightHelper().getPluginRootPath(), File.separator, SPARK_EVENT_LOG_FOLDER_NAME, File.separator, applicationId);
-        File downloadFile = new File(path, Event_LOG_FILE_NAME);
-        File file = new File(path);
-        if(!file.exists() || !downloadFile.exists()) {
-            if(!file.exists()) {
-                file.mkdirs();
-            }
-            String restApi = String.format(EVENT_LOG_REST_API, applicationId);
+        File downloadFile = downloadSparkEventLog(uuid, applicationId);
+        if (downloadFile == null) {
+            DefaultLoader.getUIHelper().showError("Unknown Spark application " + applicationId, "Open Spark Event Log Error");
+            return;
+        }
 
+        if (downloadFile.exists()) {
             try {
-                HttpEntity entity = SparkRestUtil.getEntity(clusterDetail,restApi);
-                FileUtils.copyInputStreamToFile(entity.getContent(), downloadFile);
+                // computed while the explorer is opened so that the summary is ready for the job view
+                SparkEventLogAnalyzer.getSummary(downloadFile);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.warn("Failed to summarize the Spark event log of " + applicationId, e);
             }
         }
-        openFileExplorer(file.toURI());
+
+        openFileExplorer(downloadFile.getParentFile().toURI());
+    }
+
+    /**
+     * Returns the stage, task skew, GC and shuffle statistics of an application as JSON, downloading its event
+     * log if needed. The statistics are saved next to the event log, so only the first call reads the log.
+     * The job view asks for them through {@link JobViewDummyHttpServer}, off the page thread.
+     */
+    public static String getSparkEventLogSummary(String uuid, String applicationId) {
+        try {
+            File downloadFile = downloadSparkEventLog(uuid, applicationId);
+            if (downloadFile == null || !downloadFile.exists()) {
+                return "";
+            }
+
+            return new Gson().toJson(SparkEventLogAnalyzer.getSummary(downloadFile));
+        } catch (Exception e) {
+            LOG.warn("Failed to summarize the Spark event log of " + applicationId, e);
+            return "";
+        }
+    }
+
+    /**
+     * @return the event log zip of the application, or null if the application id is not a valid one
+     */
+    @Nullable
+    private static File downloadSparkEventLog(String uuid, String applicationId) {
+        File path = getSparkEventLogFolder(applicationId);
+        if (path == null) {
+            return null;
+        }
+
+        File downloadFile = new File(path, Event_LOG_FILE_NAME);
+        if (downloadFile.exists()) {
+            return downloadFile;
+        }
+
+        if (!path.exists()) {
+            path.mkdirs();
+        }
+
+        IClusterDetail clusterDetail = JobViewManager.getCluster(uuid);
+        String restApi = String.format(EVENT_LOG_REST_API, applicationId);
+
+        // the log is streamed to a temporary file of its own and renamed once complete, so that neither an
+        // interrupted download nor a concurrent one for the same application is taken for the whole event log
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(Event_LOG_FILE_NAME, ".tmp", path);
+            HttpEntity entity = SparkRestUtil.getEntity(clusterDetail,restApi);
+            try (InputStream inputStream = entity.getContent()) {
+                FileUtils.copyInputStreamToFile(inputStream, tempFile);
+            }
+
+            if (!tempFile.renameTo(downloadFile) && !downloadFile.exists()) {
+                LOG.warn("Failed to save the Spark event log " + downloadFile);
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to download the Spark event log of " + applicationId, e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+
+        return downloadFile;
+    }
+
+    /**
+     * The application id comes from the job view request, so it must name a folder right under the event log folder
+     */
+    @Nullable
+    private static File getSparkEventLogFolder(@Nullable String applicationId) {
+        if (applicationId == null || !APPLICATION_ID_PATTERN.matcher(applicationId).matches()) {
+            return null;
+        }
+
+        try {
+            File root = new File(HDInsightLoader.getHDInsightHelper().getPluginRootPath(), SPARK_EVENT_LOG_FOLDER_NAME).getCanonicalFile();
+            File folder = new File(root, applicationId).getCanonicalFile();
+            return root.equals(folder.getParentFile()) ? folder : null;
+        } catch (IOException e) {
+            LOG.warn("Failed to resolve the Spark event log folder of " + applicationId, e);
+            return null;
+        }
     }
 }
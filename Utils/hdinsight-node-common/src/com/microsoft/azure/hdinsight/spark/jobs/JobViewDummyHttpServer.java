@@ -22,39 +22,56 @@
 package com.microsoft.azure.hdinsight.spark.jobs;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.microsoft.azure.hdinsight.common.HttpFutureCallback;
-import com.microsoft.azure.hdinsight.common.MultiHttpFutureCallback;
 import com.microsoft.azure.hdinsight.common.task.*;
+import com.microsoft.azure.hdinsight.sdk.common.HDIException;
+import com.microsoft.azure.hdinsight.sdk.common.HttpClientPool;
 import com.microsoft.azure.hdinsight.spark.jobs.framework.RequestDetail;
 import com.microsoft.azure.hdinsight.sdk.cluster.IClusterDetail;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Local proxy between the job view pages and the cluster REST APIs.
+ * Every request is handled on a bounded pool with a bounded queue; once the queue is full the server's
+ * dispatcher thread runs the request itself, so it stops accepting new ones until the load goes down.
+ * The Spark and YARN REST responses are streamed from the cluster to the page as they arrive.
+ */
 public class JobViewDummyHttpServer {
-    private static RequestDetail requestDetail;
+    private static final Logger LOG = Logger.getLogger(JobViewDummyHttpServer.class);
+
     public static final int PORT = 39128;
     private static HttpServer server;
     private static final int NO_OF_THREADS = 10;
-    private static ExecutorService executorService;
+    private static final int MAX_QUEUED_REQUESTS = 100;
+    private static final int MAX_CACHED_RESPONSE_BYTES = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static ThreadPoolExecutor executorService;
     private static boolean isEnabled = false;
 
-    public static RequestDetail getCurrentRequestDetail() {
-        return requestDetail;
-    }
-
     public synchronized static boolean isEnabled() {
         return isEnabled;
     }
@@ -84,103 +101,167 @@ public class JobViewDummyHttpServer {
             server.createContext("/clusters/", new HttpHandler() {
                 @Override
                 public void handle(final HttpExchange httpExchange) throws IOException {
-                    requestDetail = RequestDetail.getRequestDetail(httpExchange.getRequestURI());
-                    if (requestDetail == null) {
-                        return;
-                    }
-
-                    IClusterDetail clusterDetail = requestDetail.getClusterDetail();
-                    final String queryUrl = requestDetail.getQueryUrl();
-                    if (requestDetail.getApiType() == RequestDetail.APIType.YarnHistory) {
-                        TaskExecutor.submit(new YarnHistoryTask(clusterDetail, queryUrl, new HttpFutureCallback(httpExchange) {
-                            @Override
-                            public void onSuccess(String str) {
-                                httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                                try {
-                                    // work around of get job result
-                                    //TODO: get job result by REST API
-                                    Document doc = Jsoup.parse(str);
-                                    Elements contentElements = doc.getElementsByClass("content");
-                                    if (contentElements.size() == 1) {
-                                        Elements elements = contentElements.get(0).getElementsByTag("pre");
-                                        if (elements.size() == 1) {
-                                            str = elements.get(0).html();
-                                        }
-                                    }
-
-                                    httpExchange.sendResponseHeaders(200, str.length());
-                                    OutputStream stream = httpExchange.getResponseBody();
-                                    stream.write(str.getBytes());
-                                    stream.close();
-                                } catch (IOException e) {
-                                    int a = 1;
-//                                    LOGGER.error("Get job history error", e);
-                                }
-                            }
-
-                        }));
-                    } else if (requestDetail.getApiType() == RequestDetail.APIType.LivyBatchesRest) {
-                        TaskExecutor.submit(new LivyTask(clusterDetail, queryUrl, new HttpFutureCallback(httpExchange) {
-                            @Override
-                            public void onSuccess(String str) {
-                                httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                                try {
-                                    String applicationId = requestDetail.getProperty("applicationId");
-                                    if (applicationId != null) {
-                                        str = JobUtils.getJobInformation(str, applicationId);
-                                    }
-
-                                    httpExchange.sendResponseHeaders(200, str.length());
-                                    OutputStream stream = httpExchange.getResponseBody();
-                                    stream.write(str.getBytes());
-                                    stream.close();
-                                } catch (IOException e) {
-//                                    LOGGER.error("Get job history error", e);
-                                }
-                            }
-                        }));
-                    } else if(requestDetail.getApiType() == RequestDetail.APIType.MultiTask){
-                        TaskExecutor.submit(new MultiRestTask(clusterDetail, requestDetail.getQueryUrls(), new MultiHttpFutureCallback(httpExchange){
-                            public void onSuccess(List<String> strs) {
-                                httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                                try {
-                                    String str = tasksDetailsConvert(strs);
-                                    httpExchange.sendResponseHeaders(200, str.length());
-                                    OutputStream stream = httpExchange.getResponseBody();
-                                    stream.write(str.getBytes());
-                                    stream.close();
-                                } catch (IOException e) {
-//                                    LOGGER.error("Get job history error", e);
-                                }
-                            }
-                        }));
-                    } else {
-                        TaskExecutor.submit(new RestTask(clusterDetail, queryUrl, new HttpFutureCallback(httpExchange) {
-                            @Override
-                            public void onSuccess(@NotNull String str) {
-                                httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                                try {
-                                    httpExchange.sendResponseHeaders(200, str.length());
-                                    OutputStream stream = httpExchange.getResponseBody();
-                                    stream.write(str.getBytes());
-                                    stream.close();
-                                } catch (IOException e) {
-//                                    LOGGER.error("Get job history error", e);
-                                }
-                            }
-                        }));
+                    try {
+                        handleRequest(httpExchange);
+                    } catch (Exception e) {
+                        LOG.warn("Failed to handle job view request " + httpExchange.getRequestURI(), e);
+                    } finally {
+                        httpExchange.close();
                     }
                 }
             });
-            executorService = Executors.newFixedThreadPool(NO_OF_THREADS);
+            executorService = new ThreadPoolExecutor(NO_OF_THREADS, NO_OF_THREADS, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REQUESTS), new ThreadPoolExecutor.CallerRunsPolicy());
             server.setExecutor(executorService);
             server.start();
             isEnabled = true;
         } catch (IOException e) {
-//            LOGGER.error("Get job history error", e);
-//            DefaultLoader.getUIHelper().showError(e.getClass().getName(), e.getMessage());
+            LOG.error("Failed to start the job view http server", e);
         }
     }
+
+    private static void handleRequest(@NotNull final HttpExchange httpExchange) throws IOException {
+        final RequestDetail detail = RequestDetail.getRequestDetail(httpExchange.getRequestURI());
+        if (detail == null) {
+            sendResponse(httpExchange, 404, "Unknown job view request");
+            return;
+        }
+
+        IClusterDetail clusterDetail = detail.getClusterDetail();
+        if (clusterDetail == null) {
+            sendResponse(httpExchange, 404, "Unknown cluster " + detail.getClusterFormatId());
+            return;
+        }
+
+        final String clusterId = detail.getClusterFormatId();
+        final String cacheKey = httpExchange.getRequestURI().toString();
+        final String cachedResponse = JobViewResponseCache.getInstance().get(cacheKey);
+        if (cachedResponse != null) {
+            sendResponse(httpExchange, 200, cachedResponse);
+            return;
+        }
+
+        String str;
+        try {
+            if (detail.getApiType() == RequestDetail.APIType.YarnHistory) {
+                str = new YarnHistoryTask(clusterDetail, detail.getQueryUrl(), null).call();
+                // work around of get job result
+                //TODO: get job result by REST API
+                Document doc = Jsoup.parse(str);
+                Elements contentElements = doc.getElementsByClass("content");
+                if (contentElements.size() == 1) {
+                    Elements elements = contentElements.get(0).getElementsByTag("pre");
+                    if (elements.size() == 1) {
+                        str = elements.get(0).html();
+                    }
+                }
+
+                JobViewResponseCache.getInstance().put(cacheKey, clusterId, str, false);
+            } else if (detail.getApiType() == RequestDetail.APIType.LivyBatchesRest) {
+                str = new LivyTask(clusterDetail, detail.getQueryUrl(), null).call();
+                String applicationId = detail.getProperty("applicationId");
+                if (applicationId != null) {
+                    str = JobUtils.getJobInformation(str, applicationId);
+                }
+
+                JobViewResponseCache.getInstance().put(cacheKey, clusterId, str, false);
+            } else if (detail.getApiType() == RequestDetail.APIType.EventLogSummary) {
+                // kept next to the downloaded event log, so it is not cached here
+                str = JobUtils.getSparkEventLogSummary(clusterId, detail.getProperty("applicationId"));
+            } else if (detail.getApiType() == RequestDetail.APIType.MultiTask) {
+                str = tasksDetailsConvert(new MultiRestTask(clusterDetail, detail.getQueryUrls(), null).call());
+                JobViewResponseCache.getInstance().put(cacheKey, clusterId, str, true);
+            } else {
+                streamRestResponse(httpExchange, clusterDetail, detail, cacheKey);
+                return;
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to get " + detail.getQueryUrl(), e);
+            // the job view shows the error message in place of the content
+            str = String.valueOf(e.getMessage());
+        }
+
+        sendResponse(httpExchange, 200, str);
+    }
+
+    /**
+     * Copies the cluster response to the page while it is downloaded, keeping a copy for the cache
+     * unless it is larger than {@link #MAX_CACHED_RESPONSE_BYTES}
+     */
+    private static void streamRestResponse(@NotNull HttpExchange httpExchange,
+                                           @NotNull IClusterDetail clusterDetail,
+                                           @NotNull RequestDetail detail,
+                                           @NotNull String cacheKey) throws IOException {
+        String queryUrl = detail.getQueryUrl();
+        CloseableHttpResponse response;
+        try {
+            CloseableHttpClient httpclient = HttpClientPool.getInstance().getClient(queryUrl,
+                    clusterDetail.getHttpUserName(), clusterDetail.getHttpPassword());
+            HttpGet httpGet = new HttpGet(queryUrl);
+            httpGet.addHeader("Content-Type", "application/json");
+            response = httpclient.execute(httpGet);
+        } catch (HDIException | IOException e) {
+            LOG.warn("Failed to get " + queryUrl, e);
+            sendResponse(httpExchange, 200, String.valueOf(e.getMessage()));
+            return;
+        }
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try {
+            int code = response.getStatusLine().getStatusCode();
+            if (code != 200 && code != 201) {
+                EntityUtils.consume(response.getEntity());
+                sendResponse(httpExchange, 200, response.getStatusLine().getReasonPhrase());
+                return;
+            }
+
+            HttpEntity entity = response.getEntity();
+            long length = entity == null ? 0 : entity.getContentLength();
+            Header contentType = entity == null ? null : entity.getContentType();
+            if (contentType != null) {
+                httpExchange.getResponseHeaders().add("Content-Type", contentType.getValue());
+            }
+            httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            // 0 asks for a chunked response when the length is unknown, -1 means no body
+            httpExchange.sendResponseHeaders(200, length > 0 ? length : (length == 0 ? -1 : 0));
+            if (entity == null) {
+                return;
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream input = entity.getContent(); OutputStream output = httpExchange.getResponseBody()) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                    if (copy != null) {
+                        if (copy.size() + read > MAX_CACHED_RESPONSE_BYTES) {
+                            copy = null;
+                        } else {
+                            copy.write(buffer, 0, read);
+                        }
+                    }
+                }
+            }
+        } finally {
+            response.close();
+        }
+
+        if (copy != null) {
+            String content = new String(copy.toByteArray(), StandardCharsets.UTF_8);
+            JobViewResponseCache.getInstance().onApplicationResponse(detail.getClusterFormatId(), detail.getRestUrl(), content);
+            JobViewResponseCache.getInstance().put(cacheKey, detail.getClusterFormatId(), content, true);
+        }
+    }
+
+    private static void sendResponse(@NotNull HttpExchange httpExchange, int code, @Nullable String str) throws IOException {
+        byte[] bytes = str == null ? new byte[0] : str.getBytes(StandardCharsets.UTF_8);
+        httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        httpExchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream stream = httpExchange.getResponseBody()) {
+            stream.write(bytes);
+        }
+    }
+
     private static ObjectMapper mapper = new ObjectMapper();
 
     private static String tasksDetailsConvert(List<String> strs) throws IOException {
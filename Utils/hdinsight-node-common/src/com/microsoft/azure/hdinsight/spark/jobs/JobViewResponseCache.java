@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.spark.jobs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.microsoft.azure.hdinsight.common.HDInsightLoader;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+import com.microsoft.azuretools.azurecommons.helpers.StringHelper;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the responses served by the job view, keyed by cluster and REST path.
+ * The Spark history and YARN data of a completed application never changes, so those responses are kept
+ * until evicted, in a bounded memory LRU backed by a bounded disk folder. Other responses, eg of a running
+ * application or the Livy batches, only live in memory for a few seconds.
+ */
+public class JobViewResponseCache {
+    public static final long MAX_MEMORY_CHARS = 16 * 1024 * 1024;
+    public static final long MAX_DISK_BYTES = 256 * 1024 * 1024;
+    public static final long MUTABLE_ENTRY_TTL_MS = 5 * 1000;
+
+    private static final String CACHE_FOLDER_NAME = "SparkJobViewCache";
+    private static final Pattern APPLICATION_ID_PATTERN = Pattern.compile("application_\\d+_\\d+");
+    private static final Pattern SPARK_APPLICATION_PATTERN = Pattern.compile("^/applications/?(application_\\d+_\\d+)?/?$");
+    private static final Pattern YARN_APPLICATION_PATTERN = Pattern.compile("^/cluster/apps/(application_\\d+_\\d+)/?$");
+
+    private static JobViewResponseCache instance = null;
+
+    public static JobViewResponseCache getInstance() {
+        if (instance == null) {
+            synchronized (JobViewResponseCache.class) {
+                if (instance == null) {
+                    instance = new JobViewResponseCache(getDefaultCacheFolder());
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LinkedHashMap<String, Entry> memoryEntries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> completedApplications = ConcurrentHashMap.newKeySet();
+    @Nullable
+    private final File diskFolder;
+    private long memoryChars = 0;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public JobViewResponseCache(@Nullable File diskFolder) {
+        this.diskFolder = diskFolder;
+    }
+
+    /**
+     * @param key : cache key, the request uri which starts with the cluster id
+     * @return the cached response, or null if there is no valid one
+     */
+    @Nullable
+    public String get(@NotNull String key) {
+        synchronized (memoryEntries) {
+            Entry entry = memoryEntries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > System.currentTimeMillis()) {
+                    memoryHits.incrementAndGet();
+                    return entry.content;
+                }
+
+                removeMemoryEntry(key);
+            }
+        }
+
+        File file = getDiskFile(key);
+        if (file != null && file.isFile()) {
+            try {
+                String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                file.setLastModified(System.currentTimeMillis());
+                putMemoryEntry(key, new Entry(content, Long.MAX_VALUE));
+                diskHits.incrementAndGet();
+                return content;
+            } catch (IOException ignored) {
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param key : cache key, the request uri which starts with the cluster id
+     * @param clusterId : cluster id of the request
+     * @param content : response content
+     * @param immutableWhenCompleted : whether the response never changes once its application has completed
+     */
+    public void put(@NotNull String key, @NotNull String clusterId, @NotNull String content, boolean immutableWhenCompleted) {
+        String applicationId = getApplicationId(key);
+        boolean immutable = immutableWhenCompleted && applicationId != null
+                && completedApplications.contains(clusterId + "/" + applicationId);
+
+        putMemoryEntry(key, new Entry(content, immutable ? Long.MAX_VALUE : System.currentTimeMillis() + MUTABLE_ENTRY_TTL_MS));
+        if (immutable) {
+            writeDiskEntry(key, content);
+        }
+    }
+
+    /**
+     * Learns which applications have completed from the Spark history application responses
+     * and the YARN application responses
+     * @param clusterId : cluster id of the request
+     * @param restUrl : REST path of the request, without the cluster id
+     * @param content : response content
+     */
+    public void onApplicationResponse(@NotNull String clusterId, @NotNull String restUrl, @NotNull String content) {
+        try {
+            if (SPARK_APPLICATION_PATTERN.matcher(restUrl).matches()) {
+                JsonNode node = mapper.readTree(content);
+                if (node.isArray()) {
+                    for (JsonNode application : node) {
+                        onSparkApplication(clusterId, application);
+                    }
+                } else {
+                    onSparkApplication(clusterId, node);
+                }
+            } else if (YARN_APPLICATION_PATTERN.matcher(restUrl).matches()) {
+                JsonNode application = mapper.readTree(content).path("app");
+                String state = application.path("state").asText();
+                if (state.equals("FINISHED") || state.equals("FAILED") || state.equals("KILLED")) {
+                    completedApplications.add(clusterId + "/" + application.path("id").asText());
+                }
+            }
+        } catch (IOException ignored) {
+            // not an application response, nothing to learn
+        }
+    }
+
+    private void onSparkApplication(@NotNull String clusterId, @NotNull JsonNode application) {
+        JsonNode attempts = application.path("attempts");
+        if (!attempts.isArray() || attempts.size() == 0) {
+            return;
+        }
+
+        for (JsonNode attempt : attempts) {
+            if (!attempt.path("completed").asBoolean(false)) {
+                return;
+            }
+        }
+
+        completedApplications.add(clusterId + "/" + application.path("id").asText());
+    }
+
+    @NotNull
+    public Stats getStats() {
+        synchronized (memoryEntries) {
+            return new Stats(memoryHits.get(), diskHits.get(), misses.get(), evictions.get(), memoryEntries.size(), memoryChars);
+        }
+    }
+
+    public void clear() {
+        synchronized (memoryEntries) {
+            memoryEntries.clear();
+            memoryChars = 0;
+        }
+
+        completedApplications.clear();
+        if (diskFolder != null) {
+            FileUtils.deleteQuietly(diskFolder);
+        }
+    }
+
+    @Nullable
+    private static String getApplicationId(@NotNull String key) {
+        Matcher matcher = APPLICATION_ID_PATTERN.matcher(key);
+        return matcher.find() ? matcher.group() : null;
+    }
+
+    private void putMemoryEntry(@NotNull String key, @NotNull Entry entry) {
+        synchronized (memoryEntries) {
+            removeMemoryEntry(key);
+            if (entry.content.length() > MAX_MEMORY_CHARS) {
+                return;
+            }
+
+            memoryEntries.put(key, entry);
+            memoryChars += entry.content.length();
+
+            Iterator<Map.Entry<String, Entry>> iterator = memoryEntries.entrySet().iterator();
+            while (memoryChars > MAX_MEMORY_CHARS && iterator.hasNext()) {
+                memoryChars -= iterator.next().getValue().content.length();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void removeMemoryEntry(@NotNull String key) {
+        Entry removed = memoryEntries.remove(key);
+        if (removed != null) {
+            memoryChars -= removed.content.length();
+        }
+    }
+
+    @Nullable
+    private File getDiskFile(@NotNull String key) {
+        if (diskFolder == null) {
+            return null;
+        }
+
+        return new File(diskFolder, Hashing.sha1().hashString(key, StandardCharsets.UTF_8).toString());
+    }
+
+    private synchronized void writeDiskEntry(@NotNull String key, @NotNull String content) {
+        File file = getDiskFile(key);
+        if (file == null) {
+            return;
+        }
+
+        try {
+            FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return;
+        }
+
+        File[] files = diskFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File cached : files) {
+            size += cached.length();
+        }
+
+        if (size <= MAX_DISK_BYTES) {
+            return;
+        }
+
+        // drop the least recently used files until the folder is back under 80% of its limit
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                return Long.compare(first.lastModified(), second.lastModified());
+            }
+        });
+        for (File cached : files) {
+            if (size <= MAX_DISK_BYTES * 4 / 5) {
+                break;
+            }
+
+            long length = cached.length();
+            if (cached.delete()) {
+                size -= length;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Nullable
+    private static File getDefaultCacheFolder() {
+        try {
+            String pluginRootPath = HDInsightLoader.getHDInsightHelper().getPluginRootPath();
+            return new File(StringHelper.concat(pluginRootPath, File.separator, CACHE_FOLDER_NAME));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final String content;
+        private final long expiresAt;
+
+        Entry(@NotNull String content, long expiresAt) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class Stats {
+        public final long memoryHits;
+        public final long diskHits;
+        public final long misses;
+        public final long evictions;
+        public final int memoryEntries;
+        public final long memoryChars;
+
+        Stats(long memoryHits, long diskHits, long misses, long evictions, int memoryEntries, long memoryChars) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.memoryEntries = memoryEntries;
+            this.memoryChars = memoryChars;
+        }
+
+        public double getHitRatio() {
+            long total = memoryHits + diskHits + misses;
+            return total == 0 ? 0 : (double) (memoryHits + diskHits) / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d memory hits, %d disk hits, %d misses (%.0f%% hit ratio), %d evictions, %d entries of %d chars in memory",
+                    memoryHits, diskHits, misses, getHitRatio() * 100, evictions, memoryEntries, memoryChars);
+        }
+    }
+}
@@ -28,19 +28,15 @@ import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.microsoft.azure.hdinsight.sdk.cluster.ClusterDetail;
 import com.microsoft.azure.hdinsight.sdk.cluster.IClusterDetail;
 import com.microsoft.azure.hdinsight.sdk.common.HDIException;
+import com.microsoft.azure.hdinsight.sdk.common.HttpClientPool;
 import com.microsoft.azure.hdinsight.spark.jobs.structure.Application;
 import com.microsoft.azuretools.azurecommons.helpers.NotNull;
 import com.microsoft.azuretools.azurecommons.helpers.Nullable;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
@@ -52,7 +48,6 @@ public class SparkRestUtil {
 
     private static String sparkUIHistoryFormat = "https://%s.azurehdinsight.net/sparkhistory/history/%s/jobs";
     public static final String  SPARK_REST_API_ENDPOINT = "https://%s.azurehdinsight.net/sparkhistory/api/v1/%s";
-    private static CredentialsProvider provider = new BasicCredentialsProvider();
     private static JsonFactory jsonFactory = new JsonFactory();
     private static ObjectMapper objectMapper = new ObjectMapper(jsonFactory);
 
@@ -65,19 +60,20 @@ public class SparkRestUtil {
             List<Application> apps = objectMapper.readValue(json, TypeFactory.defaultInstance().constructType(List.class, Application.class));
             return apps;
         }
+        EntityUtils.consume(entity);
         return null;
     }
 
     public static HttpEntity getEntity(@NotNull IClusterDetail clusterDetail, @NotNull String restUrl) throws HDIException, IOException {
-        provider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(clusterDetail.getHttpUserName(),clusterDetail.getHttpPassword()));
-        HttpClient client = HttpClients.custom().setDefaultCredentialsProvider(provider).build();
         String url = String.format(SPARK_REST_API_ENDPOINT, clusterDetail.getName(), restUrl);
+        HttpClient client = HttpClientPool.getInstance().getClient(url, clusterDetail.getHttpUserName(), clusterDetail.getHttpPassword());
         HttpGet get = new HttpGet(url);
         HttpResponse response = client.execute(get);
         int code = response.getStatusLine().getStatusCode();
         if(code == HttpStatus.SC_OK || code == HttpStatus.SC_CREATED) {
             return response.getEntity();
         } else {
+            EntityUtils.consume(response.getEntity());
             throw new HDIException(response.getStatusLine().getReasonPhrase(),response.getStatusLine().getStatusCode());
         }
     }
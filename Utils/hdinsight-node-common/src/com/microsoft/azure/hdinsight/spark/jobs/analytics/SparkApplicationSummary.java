@@ -0,0 +1,482 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.spark.jobs.analytics;
+
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The statistics of a Spark application computed from its event log, one row per stage attempt.
+ * It is persisted column by column, so the values of a column sit next to each other and compress well.
+ */
+public class SparkApplicationSummary {
+    private static final int MAGIC = 0x53415353;
+    private static final int FORMAT_VERSION = 1;
+
+    public static class StageSummary {
+        private int stageId;
+        private int attemptId;
+        private String name;
+        private int numTasks;
+        private int completedTasks;
+        private int failedTasks;
+        private long submissionTime;
+        private long completionTime;
+        private long taskTimeTotal;
+        private long taskTimeMax;
+        private long taskTimeMedian;
+        private long taskTimeP95;
+        private long executorRunTime;
+        private long gcTime;
+        private long inputBytes;
+        private long shuffleReadBytes;
+        private long shuffleRemoteReadBytes;
+        private long shuffleReadRecords;
+        private long shuffleFetchWaitTime;
+        private long shuffleWriteBytes;
+        private long shuffleWriteRecords;
+        private long shuffleWriteTimeNs;
+        private long memoryBytesSpilled;
+        private long diskBytesSpilled;
+        private String failureReason;
+
+        StageSummary() {
+        }
+
+        StageSummary(int stageId, int attemptId) {
+            this.stageId = stageId;
+            this.attemptId = attemptId;
+        }
+
+        public int getStageId() {
+            return stageId;
+        }
+
+        public int getAttemptId() {
+            return attemptId;
+        }
+
+        @Nullable
+        public String getName() {
+            return name;
+        }
+
+        void setName(@Nullable String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the number of tasks the stage was submitted with
+         */
+        public int getNumTasks() {
+            return numTasks;
+        }
+
+        void setNumTasks(int numTasks) {
+            this.numTasks = numTasks;
+        }
+
+        public int getCompletedTasks() {
+            return completedTasks;
+        }
+
+        public int getFailedTasks() {
+            return failedTasks;
+        }
+
+        public long getSubmissionTime() {
+            return submissionTime;
+        }
+
+        void setSubmissionTime(long submissionTime) {
+            this.submissionTime = submissionTime;
+        }
+
+        public long getCompletionTime() {
+            return completionTime;
+        }
+
+        void setCompletionTime(long completionTime) {
+            this.completionTime = completionTime;
+        }
+
+        /**
+         * @return the wall clock duration in milliseconds, 0 if the stage has not completed
+         */
+        public long getDuration() {
+            return submissionTime > 0 && completionTime >= submissionTime ? completionTime - submissionTime : 0;
+        }
+
+        public long getTaskTimeTotal() {
+            return taskTimeTotal;
+        }
+
+        public long getTaskTimeMax() {
+            return taskTimeMax;
+        }
+
+        /**
+         * @return the approximate median task duration in milliseconds
+         */
+        public long getTaskTimeMedian() {
+            return taskTimeMedian;
+        }
+
+        /**
+         * @return the approximate 95th percentile of the task durations in milliseconds
+         */
+        public long getTaskTimeP95() {
+            return taskTimeP95;
+        }
+
+        /**
+         * @return how many times longer the slowest task ran than the median one, 1 for an even stage
+         */
+        public double getTaskSkew() {
+            return taskTimeMedian > 0 ? (double) taskTimeMax / taskTimeMedian : (taskTimeMax > 0 ? taskTimeMax : 1);
+        }
+
+        public long getExecutorRunTime() {
+            return executorRunTime;
+        }
+
+        public long getGcTime() {
+            return gcTime;
+        }
+
+        /**
+         * @return the share of the executor run time spent in garbage collection
+         */
+        public double getGcRatio() {
+            return executorRunTime > 0 ? (double) gcTime / executorRunTime : 0;
+        }
+
+        public long getInputBytes() {
+            return inputBytes;
+        }
+
+        public long getShuffleReadBytes() {
+            return shuffleReadBytes;
+        }
+
+        public long getShuffleRemoteReadBytes() {
+            return shuffleRemoteReadBytes;
+        }
+
+        public long getShuffleReadRecords() {
+            return shuffleReadRecords;
+        }
+
+        public long getShuffleFetchWaitTime() {
+            return shuffleFetchWaitTime;
+        }
+
+        public long getShuffleWriteBytes() {
+            return shuffleWriteBytes;
+        }
+
+        public long getShuffleWriteRecords() {
+            return shuffleWriteRecords;
+        }
+
+        public long getShuffleWriteTimeNs() {
+            return shuffleWriteTimeNs;
+        }
+
+        public long getMemoryBytesSpilled() {
+            return memoryBytesSpilled;
+        }
+
+        public long getDiskBytesSpilled() {
+            return diskBytesSpilled;
+        }
+
+        @Nullable
+        public String getFailureReason() {
+            return failureReason;
+        }
+
+        void setFailureReason(@Nullable String failureReason) {
+            this.failureReason = failureReason;
+        }
+
+        void setTaskStatistics(int completedTasks, int failedTasks, long taskTimeTotal, long taskTimeMax,
+                               long taskTimeMedian, long taskTimeP95) {
+            this.completedTasks = completedTasks;
+            this.failedTasks = failedTasks;
+            this.taskTimeTotal = taskTimeTotal;
+            this.taskTimeMax = taskTimeMax;
+            this.taskTimeMedian = taskTimeMedian;
+            this.taskTimeP95 = taskTimeP95;
+        }
+
+        void setMetrics(long executorRunTime, long gcTime, long inputBytes, long shuffleReadBytes, long shuffleRemoteReadBytes,
+                        long shuffleReadRecords, long shuffleFetchWaitTime, long shuffleWriteBytes, long shuffleWriteRecords,
+                        long shuffleWriteTimeNs, long memoryBytesSpilled, long diskBytesSpilled) {
+            this.executorRunTime = executorRunTime;
+            this.gcTime = gcTime;
+            this.inputBytes = inputBytes;
+            this.shuffleReadBytes = shuffleReadBytes;
+            this.shuffleRemoteReadBytes = shuffleRemoteReadBytes;
+            this.shuffleReadRecords = shuffleReadRecords;
+            this.shuffleFetchWaitTime = shuffleFetchWaitTime;
+            this.shuffleWriteBytes = shuffleWriteBytes;
+            this.shuffleWriteRecords = shuffleWriteRecords;
+            this.shuffleWriteTimeNs = shuffleWriteTimeNs;
+            this.memoryBytesSpilled = memoryBytesSpilled;
+            this.diskBytesSpilled = diskBytesSpilled;
+        }
+    }
+
+    private String applicationId;
+    private String applicationName;
+    private long startTime;
+    private long endTime;
+    private long eventCount;
+    private long sourceLength;
+    private List<StageSummary> stages = new ArrayList<>();
+
+    SparkApplicationSummary() {
+    }
+
+    SparkApplicationSummary(@Nullable String applicationId, @Nullable String applicationName, long startTime, long endTime,
+                            long eventCount, long sourceLength, @NotNull List<StageSummary> stages) {
+        this.applicationId = applicationId;
+        this.applicationName = applicationName;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.eventCount = eventCount;
+        this.sourceLength = sourceLength;
+        this.stages = stages;
+    }
+
+    @Nullable
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    @Nullable
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return the length of the event log file the summary was computed from
+     */
+    public long getSourceLength() {
+        return sourceLength;
+    }
+
+    @NotNull
+    public List<StageSummary> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    public long getTotalTasks() {
+        long total = 0;
+        for (StageSummary stage : stages) {
+            total += stage.completedTasks;
+        }
+
+        return total;
+    }
+
+    public long getTotalGcTime() {
+        long total = 0;
+        for (StageSummary stage : stages) {
+            total += stage.gcTime;
+        }
+
+        return total;
+    }
+
+    public long getTotalShuffleReadBytes() {
+        long total = 0;
+        for (StageSummary stage : stages) {
+            total += stage.shuffleReadBytes;
+        }
+
+        return total;
+    }
+
+    public long getTotalShuffleWriteBytes() {
+        long total = 0;
+        for (StageSummary stage : stages) {
+            total += stage.shuffleWriteBytes;
+        }
+
+        return total;
+    }
+
+    /**
+     * @return the stage attempt with the highest task skew, or null if there are no stages
+     */
+    @Nullable
+    public StageSummary getMostSkewedStage() {
+        StageSummary mostSkewed = null;
+        for (StageSummary stage : stages) {
+            if (mostSkewed == null || stage.getTaskSkew() > mostSkewed.getTaskSkew()) {
+                mostSkewed = stage;
+            }
+        }
+
+        return mostSkewed;
+    }
+
+    public void writeTo(@NotNull OutputStream outputStream) throws IOException {
+        GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream);
+        DataOutputStream out = new DataOutputStream(gzipStream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, applicationId);
+        writeString(out, applicationName);
+        out.writeLong(startTime);
+        out.writeLong(endTime);
+        out.writeLong(eventCount);
+        out.writeLong(sourceLength);
+
+        int count = stages.size();
+        out.writeInt(count);
+        for (StageSummary stage : stages) { out.writeInt(stage.stageId); }
+        for (StageSummary stage : stages) { out.writeInt(stage.attemptId); }
+        for (StageSummary stage : stages) { writeString(out, stage.name); }
+        for (StageSummary stage : stages) { out.writeInt(stage.numTasks); }
+        for (StageSummary stage : stages) { out.writeInt(stage.completedTasks); }
+        for (StageSummary stage : stages) { out.writeInt(stage.failedTasks); }
+        for (StageSummary stage : stages) { out.writeLong(stage.submissionTime); }
+        for (StageSummary stage : stages) { out.writeLong(stage.completionTime); }
+        for (StageSummary stage : stages) { out.writeLong(stage.taskTimeTotal); }
+        for (StageSummary stage : stages) { out.writeLong(stage.taskTimeMax); }
+        for (StageSummary stage : stages) { out.writeLong(stage.taskTimeMedian); }
+        for (StageSummary stage : stages) { out.writeLong(stage.taskTimeP95); }
+        for (StageSummary stage : stages) { out.writeLong(stage.executorRunTime); }
+        for (StageSummary stage : stages) { out.writeLong(stage.gcTime); }
+        for (StageSummary stage : stages) { out.writeLong(stage.inputBytes); }
+        for (StageSummary stage : stages) { out.writeLong(stage.shuffleReadBytes); }
+        for (StageSummary stage : stages) { out.writeLong(stage.shuffleRemoteReadBytes); }
+        for (StageSummary stage : stages) { out.writeLong(stage.shuffleReadRecords); }
+        for (StageSummary stage : stages) { out.writeLong(stage.shuffleFetchWaitTime); }
+        for (StageSummary stage : stages) { out.writeLong(stage.shuffleWriteBytes); }
+        for (StageSummary stage : stages) { out.writeLong(stage.shuffleWriteRecords); }
+        for (StageSummary stage : stages) { out.writeLong(stage.shuffleWriteTimeNs); }
+        for (StageSummary stage : stages) { out.writeLong(stage.memoryBytesSpilled); }
+        for (StageSummary stage : stages) { out.writeLong(stage.diskBytesSpilled); }
+        for (StageSummary stage : stages) { writeString(out, stage.failureReason); }
+
+        out.flush();
+        gzipStream.finish();
+    }
+
+    @NotNull
+    public static SparkApplicationSummary readFrom(@NotNull InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(inputStream));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported Spark application summary format");
+        }
+
+        SparkApplicationSummary summary = new SparkApplicationSummary();
+        summary.applicationId = readString(in);
+        summary.applicationName = readString(in);
+        summary.startTime = in.readLong();
+        summary.endTime = in.readLong();
+        summary.eventCount = in.readLong();
+        summary.sourceLength = in.readLong();
+
+        int count = in.readInt();
+        List<StageSummary> stages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) { stages.add(new StageSummary()); }
+        for (StageSummary stage : stages) { stage.stageId = in.readInt(); }
+        for (StageSummary stage : stages) { stage.attemptId = in.readInt(); }
+        for (StageSummary stage : stages) { stage.name = readString(in); }
+        for (StageSummary stage : stages) { stage.numTasks = in.readInt(); }
+        for (StageSummary stage : stages) { stage.completedTasks = in.readInt(); }
+        for (StageSummary stage : stages) { stage.failedTasks = in.readInt(); }
+        for (StageSummary stage : stages) { stage.submissionTime = in.readLong(); }
+        for (StageSummary stage : stages) { stage.completionTime = in.readLong(); }
+        for (StageSummary stage : stages) { stage.taskTimeTotal = in.readLong(); }
+        for (StageSummary stage : stages) { stage.taskTimeMax = in.readLong(); }
+        for (StageSummary stage : stages) { stage.taskTimeMedian = in.readLong(); }
+        for (StageSummary stage : stages) { stage.taskTimeP95 = in.readLong(); }
+        for (StageSummary stage : stages) { stage.executorRunTime = in.readLong(); }
+        for (StageSummary stage : stages) { stage.gcTime = in.readLong(); }
+        for (StageSummary stage : stages) { stage.inputBytes = in.readLong(); }
+        for (StageSummary stage : stages) { stage.shuffleReadBytes = in.readLong(); }
+        for (StageSummary stage : stages) { stage.shuffleRemoteReadBytes = in.readLong(); }
+        for (StageSummary stage : stages) { stage.shuffleReadRecords = in.readLong(); }
+        for (StageSummary stage : stages) { stage.shuffleFetchWaitTime = in.readLong(); }
+        for (StageSummary stage : stages) { stage.shuffleWriteBytes = in.readLong(); }
+        for (StageSummary stage : stages) { stage.shuffleWriteRecords = in.readLong(); }
+        for (StageSummary stage : stages) { stage.shuffleWriteTimeNs = in.readLong(); }
+        for (StageSummary stage : stages) { stage.memoryBytesSpilled = in.readLong(); }
+        for (StageSummary stage : stages) { stage.diskBytesSpilled = in.readLong(); }
+        for (StageSummary stage : stages) { stage.failureReason = readString(in); }
+
+        summary.stages = stages;
+        return summary;
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(@NotNull DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) Microsoft Corporation
+ * <p/>
+ * All rights reserved.
+ * <p/>
+ * MIT License
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+ * the Software.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.microsoft.azure.hdinsight.spark.jobs.analytics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azuretools.azurecommons.helpers.NotNull;
+import com.microsoft.azuretools.azurecommons.helpers.Nullable;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Computes a {@link SparkApplicationSummary} from a Spark event log, one JSON event per line.
+ * The log is read as a stream and only per stage accumulators are kept, so the memory used does not
+ * depend on the number of tasks in the log.
+ */
+public class SparkEventLogAnalyzer {
+    private static final Logger LOG = Logger.getLogger(SparkEventLogAnalyzer.class);
+
+    public static final String SUMMARY_FILE_NAME = "summary.bin";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String EVENT_PREFIX = "{\"Event\":\"";
+
+    private static final String APPLICATION_START = "SparkListenerApplicationStart";
+    private static final String APPLICATION_END = "SparkListenerApplicationEnd";
+    private static final String STAGE_SUBMITTED = "SparkListenerStageSubmitted";
+    private static final String STAGE_COMPLETED = "SparkListenerStageCompleted";
+    private static final String TASK_END = "SparkListenerTaskEnd";
+
+    private String applicationId;
+    private String applicationName;
+    private long startTime;
+    private long endTime;
+    private long eventCount;
+    private final Map<Long, StageAccumulator> stages = new TreeMap<>();
+
+    /**
+     * Returns the summary of a downloaded event log zip, reading it from the summary file next to the zip
+     * when that was computed from the same log, and analyzing the log and saving the summary otherwise.
+     */
+    @NotNull
+    public static SparkApplicationSummary getSummary(@NotNull File eventLogZip) throws IOException {
+        File summaryFile = new File(eventLogZip.getParentFile(), SUMMARY_FILE_NAME);
+        if (summaryFile.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(summaryFile))) {
+                SparkApplicationSummary summary = SparkApplicationSummary.readFrom(in);
+                if (summary.getSourceLength() == eventLogZip.length()) {
+                    return summary;
+                }
+            } catch (IOException e) {
+                LOG.warn("Ignore the unreadable Spark application summary " + summaryFile, e);
+            }
+        }
+
+        SparkApplicationSummary summary;
+        try (InputStream in = new FileInputStream(eventLogZip)) {
+            summary = new SparkEventLogAnalyzer().analyzeZip(in, eventLogZip.length());
+        }
+
+        // each caller writes a temporary file of its own, as the job view and the event log action may
+        // summarize the same application at the same time
+        File tempFile = File.createTempFile(SUMMARY_FILE_NAME, ".tmp", summaryFile.getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(tempFile)) {
+                summary.writeTo(out);
+            }
+
+            if ((summaryFile.exists() && !summaryFile.delete()) || !tempFile.renameTo(summaryFile)) {
+                LOG.warn("Failed to save the Spark application summary " + summaryFile);
+            }
+        } finally {
+            tempFile.delete();
+        }
+
+        return summary;
+    }
+
+    /**
+     * Analyzes all the event log files in a zip, as returned by the Spark history server logs REST API.
+     *
+     * @param zipStream the zip content, not closed by this method
+     * @param sourceLength the length of the zip, recorded in the summary to tell whether it is still up to date
+     */
+    @NotNull
+    public SparkApplicationSummary analyzeZip(@NotNull InputStream zipStream, long sourceLength) throws IOException {
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(zipStream));
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                // the reader is not closed as that would close the zip stream as well
+                analyzeLines(new InputStreamReader(zip, StandardCharsets.UTF_8));
+            }
+
+            zip.closeEntry();
+        }
+
+        return getSummary(sourceLength);
+    }
+
+    /**
+     * Adds the events of a plain text event log to the summary, not closing the reader.
+     */
+    public void analyzeLines(@NotNull Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader, 64 * 1024);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (!isInterestingEvent(line)) {
+                continue;
+            }
+
+            JsonNode event;
+            try {
+                event = MAPPER.readTree(line);
+            } catch (IOException e) {
+                // the last line of the log of a running application may have been cut off
+                LOG.debug("Skip the malformed Spark event " + line, e);
+                continue;
+            }
+
+            if (event != null) {
+                onEvent(event);
+            }
+        }
+    }
+
+    @NotNull
+    public SparkApplicationSummary getSummary(long sourceLength) {
+        List<SparkApplicationSummary.StageSummary> stageSummaries = new ArrayList<>(stages.size());
+        for (StageAccumulator stage : stages.values()) {
+            stageSummaries.add(stage.toSummary());
+        }
+
+        return new SparkApplicationSummary(
+                applicationId, applicationName, startTime, endTime, eventCount, sourceLength, stageSummaries);
+    }
+
+    /**
+     * Tells whether a line is worth parsing. Spark writes the event name first, so most events the summary
+     * does not use, such as the large SQL execution plans, are skipped without being parsed.
+     */
+    private static boolean isInterestingEvent(@NotNull String line) {
+        if (!line.startsWith(EVENT_PREFIX)) {
+            return !line.isEmpty();
+        }
+
+        return line.startsWith(TASK_END, EVENT_PREFIX.length()) ||
+                line.startsWith(STAGE_SUBMITTED, EVENT_PREFIX.length()) ||
+                line.startsWith(STAGE_COMPLETED, EVENT_PREFIX.length()) ||
+                line.startsWith(APPLICATION_START, EVENT_PREFIX.length()) ||
+                line.startsWith(APPLICATION_END, EVENT_PREFIX.length());
+    }
+
+    private void onEvent(@NotNull JsonNode event) {
+        eventCount++;
+        switch (event.path("Event").asText()) {
+            case TASK_END:
+                onTaskEnd(event);
+                break;
+            case STAGE_SUBMITTED:
+                onStageInfo(event.path("Stage Info"), false);
+                break;
+            case STAGE_COMPLETED:
+                onStageInfo(event.path("Stage Info"), true);
+                break;
+            case APPLICATION_START:
+                applicationId = textOrNull(event.path("App ID"));
+                applicationName = textOrNull(event.path("App Name"));
+                startTime = event.path("Timestamp").asLong();
+                break;
+            case APPLICATION_END:
+                endTime = event.path("Timestamp").asLong();
+                break;
+            default:
+                eventCount--;
+                break;
+        }
+    }
+
+    private void onStageInfo(@NotNull JsonNode info, boolean completed) {
+        StageAccumulator stage = getStage(info.path("Stage ID").asInt(), info.path("Stage Attempt ID").asInt());
+        stage.summary.setName(textOrNull(info.path("Stage Name")));
+        stage.summary.setNumTasks(info.path("Number of Tasks").asInt());
+        if (info.hasNonNull("Submission Time")) {
+            stage.summary.setSubmissionTime(info.path("Submission Time").asLong());
+        }
+
+        if (completed) {
+            stage.summary.setCompletionTime(info.path("Completion Time").asLong());
+            stage.summary.setFailureReason(textOrNull(info.path("Failure Reason")));
+        }
+    }
+
+    private void onTaskEnd(@NotNull JsonNode event) {
+        StageAccumulator stage = getStage(event.path("Stage ID").asInt(), event.path("Stage Attempt ID").asInt());
+        JsonNode info = event.path("Task Info");
+        if (info.path("Failed").asBoolean() || info.path("Killed").asBoolean()) {
+            stage.failedTasks++;
+            return;
+        }
+
+        stage.addTaskTime(info.path("Finish Time").asLong() - info.path("Launch Time").asLong());
+
+        JsonNode metrics = event.path("Task Metrics");
+        if (metrics.isMissingNode() || metrics.isNull()) {
+            return;
+        }
+
+        stage.executorRunTime += metrics.path("Executor Run Time").asLong();
+        stage.gcTime += metrics.path("JVM GC Time").asLong();
+        stage.memoryBytesSpilled += metrics.path("Memory Bytes Spilled").asLong();
+        stage.diskBytesSpilled += metrics.path("Disk Bytes Spilled").asLong();
+        stage.inputBytes += metrics.path("Input Metrics").path("Bytes Read").asLong();
+
+        JsonNode shuffleRead = metrics.path("Shuffle Read Metrics");
+        long remoteBytes = shuffleRead.path("Remote Bytes Read").asLong();
+        stage.shuffleRemoteReadBytes += remoteBytes;
+        stage.shuffleReadBytes += remoteBytes + shuffleRead.path("Local Bytes Read").asLong();
+        stage.shuffleReadRecords += shuffleRead.path("Total Records Read").asLong();
+        stage.shuffleFetchWaitTime += shuffleRead.path("Fetch Wait Time").asLong();
+
+        JsonNode shuffleWrite = metrics.path("Shuffle Write Metrics");
+        stage.shuffleWriteBytes += shuffleWrite.path("Shuffle Bytes Written").asLong();
+        stage.shuffleWriteRecords += shuffleWrite.path("Shuffle Records Written").asLong();
+        stage.shuffleWriteTimeNs += shuffleWrite.path("Shuffle Write Time").asLong();
+    }
+
+    @NotNull
+    private StageAccumulator getStage(int stageId, int attemptId) {
+        long key = ((long) stageId << 32) | (attemptId & 0xFFFFFFFFL);
+        StageAccumulator stage = stages.get(key);
+        if (stage == null) {
+            stage = new StageAccumulator(stageId, attemptId);
+            stages.put(key, stage);
+        }
+
+        return stage;
+    }
+
+    @Nullable
+    private static String textOrNull(@NotNull JsonNode node) {
+        return node.isMissingNode() || node.isNull() ? null : node.asText();
+    }
+
+    private static class StageAccumulator {
+        // task durations are counted in logarithmic buckets, 4 per power of 2, which keeps the
+        // percentiles within about 10% of the exact values in a fixed amount of memory
+        private static final int BUCKETS_PER_OCTAVE = 4;
+        private static final int BUCKET_COUNT = 64 * BUCKETS_PER_OCTAVE + 1;
+        private static final double LOG_2 = Math.log(2);
+
+        private final SparkApplicationSummary.StageSummary summary;
+        private final long[] taskTimeBuckets = new long[BUCKET_COUNT];
+        private int completedTasks;
+        private int failedTasks;
+        private long taskTimeTotal;
+        private long taskTimeMax;
+        private long executorRunTime;
+        private long gcTime;
+        private long inputBytes;
+        private long shuffleReadBytes;
+        private long shuffleRemoteReadBytes;
+        private long shuffleReadRecords;
+        private long shuffleFetchWaitTime;
+        private long shuffleWriteBytes;
+        private long shuffleWriteRecords;
+        private long shuffleWriteTimeNs;
+        private long memoryBytesSpilled;
+        private long diskBytesSpilled;
+
+        StageAccumulator(int stageId, int attemptId) {
+            this.summary = new SparkApplicationSummary.StageSummary(stageId, attemptId);
+        }
+
+        void addTaskTime(long taskTime) {
+            long duration = Math.max(taskTime, 0);
+            completedTasks++;
+            taskTimeTotal += duration;
+            taskTimeMax = Math.max(taskTimeMax, duration);
+            taskTimeBuckets[getBucket(duration)]++;
+        }
+
+        private static int getBucket(long duration) {
+            if (duration <= 0) {
+                return 0;
+            }
+
+            int bucket = 1 + (int) (BUCKETS_PER_OCTAVE * Math.log(duration) / LOG_2);
+            return Math.min(bucket, BUCKET_COUNT - 1);
+        }
+
+        private long getPercentile(double percentile) {
+            if (completedTasks == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(percentile * completedTasks);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += taskTimeBuckets[bucket];
+                if (seen >= Math.max(rank, 1)) {
+                    if (bucket == 0) {
+                        return 0;
+                    }
+
+                    // the geometric middle of the bucket, never above the exact maximum
+                    long estimate = Math.round(Math.pow(2, (bucket - 0.5) / BUCKETS_PER_OCTAVE));
+                    return Math.min(estimate, taskTimeMax);
+                }
+            }
+
+            return taskTimeMax;
+        }
+
+        @NotNull
+        SparkApplicationSummary.StageSummary toSummary() {
+            summary.setTaskStatistics(completedTasks, failedTasks, taskTimeTotal, taskTimeMax,
+                    getPercentile(0.5), getPercentile(0.95));
+            summary.setMetrics(executorRunTime, gcTime, inputBytes, shuffleReadBytes, shuffleRemoteReadBytes,
+                    shuffleReadRecords, shuffleFetchWaitTime, shuffleWriteBytes, shuffleWriteRecords,
+                    shuffleWriteTimeNs, memoryBytesSpilled, diskBytesSpilled);
+            return summary;
+        }
+    }
+}
@@ -40,10 +40,11 @@ public class RequestDetail {
     private final APIType apiType;
 
     private static Pattern clusterPattern = Pattern.compile("^/clusters/([^/]*)(/.*)");
-    private static final String sparkPreRestUrl = "https://%s.azurehdinsight.net/sparkhistory/api/v1";
-    private static final String yarnPreRestUrl = "https://%s.azurehdinsight.net/yarnui/ws/v1";
-    private static final String yarnHistoryUrl = "https://%s.azurehdinsight.net/yarnui";
-    private static final String LivyBatchesRestUrl = "https://%s.azurehdinsight.net/livy/batches";
+    // formatted with the cluster connection url, eg https://cluster.azurehdinsight.net
+    private static final String sparkPreRestUrl = "%s/sparkhistory/api/v1";
+    private static final String yarnPreRestUrl = "%s/yarnui/ws/v1";
+    private static final String yarnHistoryUrl = "%s/yarnui";
+    private static final String LivyBatchesRestUrl = "%s/livy/batches";
 
     @NotNull
     private IClusterDetail clusterDetail;
@@ -55,7 +56,8 @@ public class RequestDetail {
         YarnRest,
         YarnHistory,
         LivyBatchesRest,
-        MultiTask
+        MultiTask,
+        EventLogSummary
     }
 
     @Nullable
@@ -91,6 +93,8 @@ public class RequestDetail {
                 apiType = APIType.YarnHistory;
             } else if (type.equalsIgnoreCase("livy")) {
                 apiType = APIType.LivyBatchesRest;
+            } else if (type.equalsIgnoreCase("eventlogsummary")) {
+                apiType = APIType.EventLogSummary;
             } else {
                 apiType = APIType.SparkRest;
             }
@@ -125,7 +129,7 @@ public class RequestDetail {
     }
 
     public String getQueryUrl() {
-        String queryUrl = String.format(getPreURl(), clusterDetail.getName()) + getRestUrl();
+        String queryUrl = String.format(getPreURl(), clusterDetail.getConnectionUrl()) + getRestUrl();
         // get error message for Yarn website
         if (getApiType() == RequestDetail.APIType.YarnHistory) {
             if(queryUrl.endsWith("stderr")) {
@@ -154,7 +158,7 @@ public class RequestDetail {
 
             List<String> querys = new ArrayList<>();
             for(int i = 0; i < getQueryNumber(); ++i) {
-                String query = String.format(TASK_QUERY_URL, clusterDetail.getName(), applicationId, attemptdId, String.valueOf(i));
+                String query = String.format(TASK_QUERY_URL, clusterDetail.getConnectionUrl(), applicationId, attemptdId, String.valueOf(i));
                 querys.add(query);
             }
             return querys;
@@ -167,7 +171,7 @@ public class RequestDetail {
         return clusterFormatId;
     }
 
-    private String getRestUrl() {
+    public String getRestUrl() {
         return restUrl;
     }
 